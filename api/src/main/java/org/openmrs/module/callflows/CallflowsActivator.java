@@ -15,9 +15,15 @@ import org.openmrs.api.context.Context;
 import org.openmrs.module.BaseModuleActivator;
 import org.openmrs.module.DaemonToken;
 import org.openmrs.module.DaemonTokenAware;
+import org.openmrs.module.callflows.api.cache.CallSessionCache;
+import org.openmrs.module.callflows.api.domain.Constants;
 import org.openmrs.module.callflows.api.evaluation.EvaluationCommand;
 import org.openmrs.module.callflows.api.event.AbstractCallFlowEventListener;
+import org.openmrs.module.callflows.api.event.CallFlowEventExecutor;
 import org.openmrs.module.callflows.api.event.CallFlowEventListenerFactory;
+import org.openmrs.module.callflows.api.util.CallRetryScheduler;
+import org.openmrs.module.callflows.api.util.OutboundCallDispatcher;
+import org.openmrs.module.callflows.api.util.StatusEventPublisher;
 
 import java.util.List;
 
@@ -35,6 +41,10 @@ public class CallflowsActivator extends BaseModuleActivator implements DaemonTok
     public void started() {
         LOGGER.info("Started Callflows");
         CallFlowEventListenerFactory.registerEventListeners();
+        Context.getRegisteredComponent("callflows.callRetryScheduler", CallRetryScheduler.class).start();
+        Context.getRegisteredComponent("callflows.outboundCallDispatcher", OutboundCallDispatcher.class).start();
+        Context.getRegisteredComponent("callflows.statusEventPublisher", StatusEventPublisher.class).start();
+        startCallSessionCache();
     }
 
     /**
@@ -55,6 +65,15 @@ public class CallflowsActivator extends BaseModuleActivator implements DaemonTok
         CallFlowEventListenerFactory.unRegisterEventListeners();
     }
 
+    private void startCallSessionCache() {
+        // the sessions are local to the node, so the store is used only where the calls are routed by call ID
+        CallSessionCache callSessionCache = Context.getRegisteredComponent("callflows.callSessionCache",
+                CallSessionCache.class);
+        callSessionCache.setEnabled(Boolean.parseBoolean(Context.getAdministrationService()
+                .getGlobalProperty(Constants.CALL_SESSION_STORE_ENABLED_GP_KEY)));
+        callSessionCache.start();
+    }
+
     @Override
     public void setDaemonToken(DaemonToken daemonToken) {
         LOGGER.info("Set daemon token to Callflows Module event listeners");
@@ -62,9 +81,20 @@ public class CallflowsActivator extends BaseModuleActivator implements DaemonTok
         for (AbstractCallFlowEventListener eventListener : eventComponents) {
             eventListener.setDaemonToken(daemonToken);
         }
+        Context.getRegisteredComponent("callflows.eventExecutor", CallFlowEventExecutor.class)
+                .setDaemonToken(daemonToken);
 
         EvaluationCommand evaluationCommand = Context.getRegisteredComponent("callflows.baseEvaluationCommand",
                 EvaluationCommand.class);
         evaluationCommand.setDaemonToken(daemonToken);
+
+        Context.getRegisteredComponent("callflows.outboundCallDispatcher", OutboundCallDispatcher.class)
+                .setDaemonToken(daemonToken);
+        Context.getRegisteredComponent("callflows.callRetryScheduler", CallRetryScheduler.class)
+                .setDaemonToken(daemonToken);
+        Context.getRegisteredComponent("callflows.statusEventPublisher", StatusEventPublisher.class)
+                .setDaemonToken(daemonToken);
+        Context.getRegisteredComponent("callflows.callSessionCache", CallSessionCache.class)
+                .setDaemonToken(daemonToken);
     }
 }
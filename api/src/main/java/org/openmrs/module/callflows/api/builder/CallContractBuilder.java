@@ -0,0 +1,50 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.builder;
+
+import org.openmrs.module.callflows.api.contract.CallContract;
+import org.openmrs.module.callflows.api.domain.Call;
+
+/**
+ * Call Contract Builder
+ */
+public final class CallContractBuilder {
+
+    /**
+     * Creates a new CallContract from a provided Call
+     *
+     * @param call that is provided
+     * @return a CallContract
+     */
+    public static CallContract createFrom(Call call) {
+        CallContract contract = new CallContract();
+        contract.setId(call.getId());
+        contract.setCallId(call.getCallId());
+        contract.setProviderCallId(call.getProviderCallId());
+        contract.setConfig(call.getConfig());
+        contract.setDirection(call.getDirection() == null ? null : call.getDirection().name());
+        contract.setStatus(call.getStatus() == null ? null : call.getStatus().name());
+        contract.setStatusText(call.getStatusText());
+        contract.setActorId(call.getActorId());
+        contract.setActorType(call.getActorType());
+        contract.setRefKey(call.getRefKey());
+        contract.setExternalId(call.getExternalId());
+        contract.setExternalType(call.getExternalType());
+        contract.setSteps(call.getSteps());
+        contract.setCreationDate(call.getCreationDate());
+        contract.setStartTime(call.getStartTime());
+        contract.setEndTime(call.getEndTime());
+        return contract;
+    }
+
+    private CallContractBuilder() {
+    }
+}
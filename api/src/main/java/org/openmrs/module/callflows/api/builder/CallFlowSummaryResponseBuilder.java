@@ -0,0 +1,40 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.builder;
+
+import org.openmrs.module.callflows.api.contract.CallFlowSummaryResponse;
+import org.openmrs.module.callflows.api.domain.CallFlowSummary;
+
+/**
+ * Call Flow Summary Response Builder
+ */
+public final class CallFlowSummaryResponseBuilder {
+
+    /**
+     * Creates a new CallFlowSummaryResponse from a provided CallFlowSummary
+     *
+     * @param summary that is provided
+     * @return a CallFlowSummaryResponse
+     */
+    public static CallFlowSummaryResponse createFrom(CallFlowSummary summary) {
+        CallFlowSummaryResponse response = new CallFlowSummaryResponse();
+        response.setId(summary.getId());
+        response.setName(summary.getName());
+        response.setDescription(summary.getDescription());
+        response.setStatus(summary.getStatus() == null ? null : summary.getStatus().name());
+        response.setNodeCount(summary.getNodeCount());
+        response.setLastModified(summary.getLastModified());
+        return response;
+    }
+
+    private CallFlowSummaryResponseBuilder() {
+    }
+}
@@ -44,6 +44,10 @@ public final class ConfigBuilder {
         config.setOutboundCallLimit(configContract.getOutboundCallLimit());
         config.setOutboundCallRetryAttempts(configContract.getOutboundCallRetryAttempts());
         config.setOutboundCallRetrySeconds(configContract.getOutboundCallRetrySeconds());
+        config.setOutgoingCallMaxConnections(configContract.getOutgoingCallMaxConnections());
+        config.setOutgoingCallConnectTimeout(configContract.getOutgoingCallConnectTimeout());
+        config.setOutgoingCallReadTimeout(configContract.getOutgoingCallReadTimeout());
+        config.setOutgoingCallKeepAliveSeconds(configContract.getOutgoingCallKeepAliveSeconds());
         config.setCallAllowed(configContract.isCallAllowed());
 
         Map<String, String> testUsersMap = new LinkedHashMap<>();
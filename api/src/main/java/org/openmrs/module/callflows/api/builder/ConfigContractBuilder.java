@@ -44,6 +44,10 @@ public final class ConfigContractBuilder {
         configContract.setOutboundCallLimit(config.getOutboundCallLimit());
         configContract.setOutboundCallRetryAttempts(config.getOutboundCallRetryAttempts());
         configContract.setOutboundCallRetrySeconds(config.getOutboundCallRetrySeconds());
+        configContract.setOutgoingCallMaxConnections(config.getOutgoingCallMaxConnections());
+        configContract.setOutgoingCallConnectTimeout(config.getOutgoingCallConnectTimeout());
+        configContract.setOutgoingCallReadTimeout(config.getOutgoingCallReadTimeout());
+        configContract.setOutgoingCallKeepAliveSeconds(config.getOutgoingCallKeepAliveSeconds());
         configContract.setCallAllowed(config.getCallAllowed());
 
         Map<String, String> testUsersMap = new LinkedHashMap<>();
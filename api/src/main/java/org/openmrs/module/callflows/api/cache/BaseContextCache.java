@@ -0,0 +1,130 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.cache;
+
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.context.Context;
+import org.openmrs.api.context.ServiceContext;
+import org.openmrs.module.callflows.api.domain.Config;
+import org.openmrs.module.callflows.api.util.DateUtil;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory cache of the read-only Velocity contexts shared by all the calls of an IVR configuration.
+ * <p>
+ * The base context of a configuration holds the utility classes and the service beans listed in its services map.
+ * It is built once and every call renders with a child context chained on top of it, so the beans are not looked up
+ * and the utility classes are not put again on every request. Variables set by a call end up in its child context
+ * and never change the base. A base context is rebuilt when its configuration is replaced by a settings change.
+ * </p>
+ */
+public class BaseContextCache {
+
+    private final ConcurrentMap<String, BaseContext> contexts = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the context of a single call, chained on top of the base context of its configuration
+     *
+     * @param config the configuration of the call
+     * @return a new, empty context which sees all the entries of the base context
+     * @throws IllegalStateException if some services of the configuration can not be found
+     */
+    public VelocityContext createContext(Config config) {
+        return new VelocityContext(new HashMap<String, Object>(), getBaseContext(config));
+    }
+
+    /**
+     * Drops all cached base contexts
+     */
+    public void invalidateAll() {
+        contexts.clear();
+    }
+
+    /**
+     * Gets the number of cached base contexts
+     *
+     * @return the number of entries
+     */
+    public long size() {
+        return contexts.size();
+    }
+
+    private Context getBaseContext(Config config) {
+        BaseContext baseContext = contexts.get(config.getName());
+        // settings changes publish new configuration objects, so a different instance means the base is stale
+        if (baseContext == null || baseContext.config != config) {
+            baseContext = new BaseContext(config, buildContext(config));
+            contexts.put(config.getName(), baseContext);
+        }
+        return baseContext.context;
+    }
+
+    private Context buildContext(Config config) {
+        Map<String, Object> values = new HashMap<>();
+        // Some classes have very useful static methods that are useful when designing callflows
+        // These are included here in upper case as variables will predominantly be in lower case
+        // These are included only for convenience
+        values.put("String", String.class);
+        values.put("Integer", Integer.class);
+        values.put("Long", Long.class);
+        values.put("Float", Float.class);
+        values.put("Double", Double.class);
+        values.put("Date", Date.class);
+        values.put("SimpleDateFormat", SimpleDateFormat.class);
+        values.put("Calendar", Calendar.class);
+        values.put("DateUtil", DateUtil.class);
+        values.put("Math", Math.class);
+
+        loadBeans(values, config.getServicesMap());
+        return new VelocityContext(Collections.unmodifiableMap(values));
+    }
+
+    private void loadBeans(Map<String, Object> values, Map<String, String> bundlesToLoad) {
+        StringBuilder notFoundServices = new StringBuilder();
+
+        for (Map.Entry<String, String> entry : bundlesToLoad.entrySet()) {
+            Object service = ServiceContext.getInstance().getApplicationContext().getBean(entry.getValue());
+            if (service != null) {
+                values.put(entry.getKey(), service);
+            } else {
+                notFoundServices.append(entry.getValue());
+                notFoundServices.append("\n");
+            }
+        }
+        // We couldn't find some services
+        if (!notFoundServices.toString().isEmpty()) {
+            throw new IllegalStateException(String.format("Didn't load some services %s", notFoundServices));
+        }
+    }
+
+    /**
+     * The base context together with the configuration instance it was built from
+     */
+    private static final class BaseContext {
+
+        private final Config config;
+
+        private final Context context;
+
+        private BaseContext(Config config, Context context) {
+            this.config = config;
+            this.context = context;
+        }
+    }
+}
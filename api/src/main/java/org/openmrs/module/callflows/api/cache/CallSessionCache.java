@@ -0,0 +1,559 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.cache;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.callflows.api.dao.PersistedCallState;
+import org.openmrs.module.callflows.api.domain.Call;
+import org.openmrs.module.callflows.api.domain.types.CallStatus;
+import org.openmrs.module.callflows.api.service.CallService;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * In-memory store of the live state of the calls in progress, keyed by call ID.
+ * <p>
+ * A session is opened when a live call is first read or updated on this node. The following reads are served from
+ * memory and the updates are applied to the session and written behind: a background thread writes the sessions
+ * updated since its last pass every flush interval, so the updates of the steps in between are coalesced. A session
+ * is written right away, by the updating caller, when the call reaches a final status or when the steps not written
+ * yet exceed the maximum, so a crash of the node loses at most that many steps. Sessions not used for the idle time
+ * are written if needed and evicted. Each session keeps the state of its call as last written, so only the columns
+ * changed since are written.
+ * </p>
+ * <p>
+ * The sessions are local to the node and are not checked against the changes made by other nodes, so the callbacks
+ * of a call must always reach the node which holds its session, e.g. by routing the IVR provider's requests by call
+ * ID. Otherwise a node holding a stale session overwrites the updates made by the others. The store is therefore
+ * disabled by default and only enabled by the {@code callflows.callSessionStore.enabled} global property, when the
+ * module starts. Callers always get and hand over copies of the calls, which are never attached to a Hibernate
+ * session. While the store is disabled it keeps no sessions.
+ * </p>
+ */
+public class CallSessionCache implements Closeable {
+
+    private static final Log LOGGER = LogFactory.getLog(CallSessionCache.class);
+
+    private static final Set<CallStatus> LIVE_STATUSES = Collections.unmodifiableSet(EnumSet.of(
+            CallStatus.OPENMRS_INITIATED, CallStatus.INITIATED, CallStatus.STARTED, CallStatus.RINGING,
+            CallStatus.IN_PROGRESS, CallStatus.ANSWERED));
+
+    private static final int DEFAULT_MAX_SESSIONS = 10000;
+
+    private static final int DEFAULT_MAX_UNFLUSHED_STEPS = 1;
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000L;
+
+    private static final long DEFAULT_IDLE_SECONDS = 300L;
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 10L;
+
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicLong writtenCount = new AtomicLong();
+
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    private final AtomicLong synchronousWriteCount = new AtomicLong();
+
+    private boolean enabled;
+
+    private int maxSessions = DEFAULT_MAX_SESSIONS;
+
+    private int maxUnflushedSteps = DEFAULT_MAX_UNFLUSHED_STEPS;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private long flushIntervalMillis = DEFAULT_FLUSH_INTERVAL_MILLIS;
+
+    private long idleSeconds = DEFAULT_IDLE_SECONDS;
+
+    private CallService callService;
+
+    private DaemonToken daemonToken;
+
+    private ScheduledExecutorService flusher;
+
+    /**
+     * Gets the live state of a call
+     *
+     * @param callId of the call
+     * @return a copy of the call or null if the call has no session on this node
+     */
+    public Call get(String callId) {
+        Session session = enabled && callId != null ? sessions.get(callId) : null;
+        if (session == null) {
+            return null;
+        }
+        synchronized (session) {
+            if (session.evicted) {
+                return null;
+            }
+            session.touch();
+            return copyOf(session.call);
+        }
+    }
+
+    /**
+     * Opens the session of a call just read from or written to the database, unless the call is not live, the store
+     * is full or the call has a session already
+     *
+     * @param call the persisted call, may be null
+     */
+    public void open(Call call) {
+        if (!enabled || call == null || call.getCallId() == null || !LIVE_STATUSES.contains(call.getStatus())
+                || sessions.size() >= maxSessions || sessions.containsKey(call.getCallId())) {
+            return;
+        }
+        sessions.putIfAbsent(call.getCallId(), new Session(persistedCopyOf(call)));
+    }
+
+    /**
+     * Applies an update to the session of a call. The session is written before returning if the call reached a
+     * final status, which also closes the session, or if too many steps were not written yet.
+     *
+     * @param callId  of the call
+     * @param changes applied to the live state of the call
+     * @return a copy of the updated call or null if the call has no session on this node
+     */
+    public Call update(String callId, Consumer<Call> changes) {
+        Session session = enabled && callId != null ? sessions.get(callId) : null;
+        if (session == null) {
+            return null;
+        }
+        Call updated;
+        boolean ended;
+        boolean writeDue;
+        synchronized (session) {
+            if (session.evicted) {
+                return null;
+            }
+            changes.accept(session.call);
+            session.touch();
+            if (session.dirty) {
+                coalescedCount.incrementAndGet();
+            }
+            session.dirty = true;
+            updated = copyOf(session.call);
+            ended = !LIVE_STATUSES.contains(updated.getStatus());
+            writeDue = ended || steps(updated) - session.writtenSteps > maxUnflushedSteps;
+        }
+        if (writeDue) {
+            synchronousWriteCount.incrementAndGet();
+            write(Collections.singletonList(session), ended, true);
+        }
+        return updated;
+    }
+
+    /**
+     * Replaces the live state of a call which was written to the database by other means, e.g. after an error. The
+     * session is closed if the call is not live anymore.
+     *
+     * @param call the persisted call
+     */
+    public void replace(Call call) {
+        Session session = enabled && call != null && call.getCallId() != null ? sessions.get(call.getCallId()) : null;
+        if (session == null) {
+            return;
+        }
+        synchronized (session) {
+            session.call = persistedCopyOf(call);
+            session.writtenSteps = steps(call);
+            session.dirty = false;
+            session.touch();
+            if (!LIVE_STATUSES.contains(call.getStatus())) {
+                evict(session);
+            }
+        }
+    }
+
+    /**
+     * Writes the sessions updated since they were last written, in batches, and evicts the idle sessions. Sessions
+     * being written by their callers are skipped until the next pass.
+     */
+    public void flush() {
+        long idleSince = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(idleSeconds);
+        List<Session> active = new ArrayList<>();
+        List<Session> idle = new ArrayList<>();
+        for (Session session : sessions.values()) {
+            synchronized (session) {
+                boolean isIdle = session.lastAccessMillis < idleSince;
+                if (session.dirty) {
+                    (isIdle ? idle : active).add(session);
+                } else if (isIdle) {
+                    evict(session);
+                }
+            }
+        }
+        writeInBatches(active, false);
+        writeInBatches(idle, true);
+    }
+
+    /**
+     * Starts writing the sessions in the background every flush interval
+     */
+    public synchronized void start() {
+        if (!enabled || flusher != null) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("callflows-call-sessions").setDaemon(true).build());
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flushInDaemonThread();
+            }
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background writes and writes the sessions updated since their last write
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService stoppedFlusher;
+        synchronized (this) {
+            stoppedFlusher = flusher;
+            flusher = null;
+        }
+        if (stoppedFlusher == null) {
+            return;
+        }
+        stoppedFlusher.shutdown();
+        try {
+            if (!stoppedFlusher.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                stoppedFlusher.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushInDaemonThread();
+    }
+
+    /**
+     * Gets the number of open sessions
+     *
+     * @return the number of sessions
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Gets the number of session writes since the start
+     *
+     * @return the number of calls written
+     */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**
+     * Gets the number of updates applied on top of an update which was not written yet
+     *
+     * @return the number of coalesced updates
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Gets the number of sessions written by the updating callers, at the end of the calls or because of too many
+     * steps not written yet
+     *
+     * @return the number of synchronous writes
+     */
+    public long getSynchronousWriteCount() {
+        return synchronousWriteCount.get();
+    }
+
+    /**
+     * Enables the store, which requires the requests of a call to be routed to a single node
+     *
+     * @param enabled true to keep the sessions of the live calls
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Sets the maximum number of open sessions, the calls read when the store is full are not cached
+     *
+     * @param maxSessions the maximum number of sessions
+     */
+    public void setMaxSessions(int maxSessions) {
+        this.maxSessions = maxSessions;
+    }
+
+    /**
+     * Sets the maximum number of steps of a call which may be kept in memory only, 0 writes every step right away
+     *
+     * @param maxUnflushedSteps the maximum number of steps not written yet
+     */
+    public void setMaxUnflushedSteps(int maxUnflushedSteps) {
+        this.maxUnflushedSteps = maxUnflushedSteps;
+    }
+
+    /**
+     * Sets the maximum number of sessions written in one transaction by the background writes
+     *
+     * @param batchSize the batch size
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the time between two background writes
+     *
+     * @param flushIntervalMillis the interval in milliseconds
+     */
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    /**
+     * Sets how long a session is kept without being used, e.g. for a call which was dropped without a final status
+     *
+     * @param idleSeconds the idle time in seconds
+     */
+    public void setIdleSeconds(long idleSeconds) {
+        this.idleSeconds = idleSeconds;
+    }
+
+    /**
+     * Sets the service writing the sessions, the module's call service bean is used if not set
+     *
+     * @param callService the call service
+     */
+    public void setCallService(CallService callService) {
+        this.callService = callService;
+    }
+
+    /**
+     * Sets the token used to write the sessions in the background with the privileges of the module
+     *
+     * @param daemonToken the daemon token of the module
+     */
+    public void setDaemonToken(DaemonToken daemonToken) {
+        this.daemonToken = daemonToken;
+    }
+
+    private void flushInDaemonThread() {
+        try {
+            Daemon.runInDaemonThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flush();
+                    } catch (RuntimeException e) {
+                        LOGGER.error(String.format("Call sessions could not be written, %d are open", size()), e);
+                    }
+                }
+            }, daemonToken).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            LOGGER.error("Call sessions could not be written", e);
+        }
+    }
+
+    private void writeInBatches(List<Session> dirty, boolean evictAfterWrite) {
+        for (int from = 0; from < dirty.size(); from += batchSize) {
+            write(dirty.subList(from, Math.min(from + batchSize, dirty.size())), evictAfterWrite, false);
+        }
+    }
+
+    /**
+     * Writes the sessions in one transaction, the one of the updating caller for the synchronous writes. The write
+     * lock of a session is held during the write and the row lock taken by the write until the commit, so the writes
+     * of a session are committed in the order of its updates.
+     */
+    private void write(List<Session> batch, boolean evictAfterWrite, boolean wait) {
+        List<Session> locked = new ArrayList<>(batch.size());
+        try {
+            List<Call> calls = new ArrayList<>(batch.size());
+            List<Long> steps = new ArrayList<>(batch.size());
+            for (Session session : batch) {
+                if (wait) {
+                    session.writeLock.lock();
+                } else if (!session.writeLock.tryLock()) {
+                    continue;
+                }
+                locked.add(session);
+                synchronized (session) {
+                    if (session.dirty) {
+                        calls.add(copyOf(session.call));
+                        steps.add(steps(session.call));
+                        session.dirty = false;
+                    } else {
+                        calls.add(null);
+                        steps.add(null);
+                    }
+                }
+            }
+            writeCalls(locked, calls, steps, evictAfterWrite);
+        } finally {
+            for (Session session : locked) {
+                session.writeLock.unlock();
+            }
+        }
+    }
+
+    private void writeCalls(List<Session> locked, List<Call> calls, List<Long> steps, boolean evictAfterWrite) {
+        List<Call> written = new ArrayList<>(calls.size());
+        for (Call call : calls) {
+            if (call != null) {
+                written.add(call);
+            }
+        }
+        try {
+            if (!written.isEmpty()) {
+                getCallService().saveCallSessions(written);
+                writtenCount.addAndGet(written.size());
+            }
+        } catch (RuntimeException e) {
+            // the sessions are written again by the next pass
+            for (Session session : locked) {
+                synchronized (session) {
+                    session.dirty = true;
+                }
+            }
+            throw e;
+        }
+        for (int i = 0; i < locked.size(); i++) {
+            Session session = locked.get(i);
+            synchronized (session) {
+                if (steps.get(i) != null) {
+                    session.writtenSteps = Math.max(session.writtenSteps, steps.get(i));
+                    session.call.setPersistedState(calls.get(i).getPersistedState());
+                }
+                // an update applied during the write keeps the session open until it is written too
+                if (evictAfterWrite && !session.dirty) {
+                    evict(session);
+                }
+            }
+        }
+    }
+
+    private void evict(Session session) {
+        session.evicted = true;
+        sessions.remove(session.call.getCallId(), session);
+    }
+
+    private CallService getCallService() {
+        if (callService == null) {
+            callService = Context.getRegisteredComponent("callflows.callService", CallService.class);
+        }
+        return callService;
+    }
+
+    private static long steps(Call call) {
+        return call.getSteps() == null ? 0L : call.getSteps();
+    }
+
+    private static Call copyOf(Call call) {
+        Call copy = new Call();
+        copy.setId(call.getId());
+        copy.setUuid(call.getUuid());
+        copy.setCallId(call.getCallId());
+        copy.setProviderCallId(call.getProviderCallId());
+        copy.setDirection(call.getDirection());
+        copy.setStatus(call.getStatus());
+        copy.setStartFlow(call.getStartFlow());
+        copy.setStartFlowName(call.getStartFlowName());
+        copy.setStartNode(call.getStartNode());
+        copy.setStartTime(call.getStartTime());
+        copy.setEndFlow(call.getEndFlow());
+        copy.setEndFlowName(call.getEndFlowName());
+        copy.setEndNode(call.getEndNode());
+        copy.setEndTime(call.getEndTime());
+        copy.setProviderTime(call.getProviderTime());
+        copy.setSteps(call.getSteps());
+        copy.setConfig(call.getConfig());
+        copy.setActorId(call.getActorId());
+        copy.setActorType(call.getActorType());
+        copy.setStatusText(call.getStatusText());
+        copy.setExternalId(call.getExternalId());
+        copy.setExternalType(call.getExternalType());
+        copy.setPlayedMessages(call.getPlayedMessages());
+        copy.setRefKey(call.getRefKey());
+        copy.setContext(call.getContext() == null ? null : new HashMap<String, Object>(call.getContext()));
+        copy.setProviderData(call.getProviderData() == null ? null : new HashMap<String, String>(
+                call.getProviderData()));
+        copy.setCreationDate(call.getCreationDate());
+        copy.setCreator(call.getCreator());
+        copy.setDateCreated(call.getDateCreated());
+        copy.setChangedBy(call.getChangedBy());
+        copy.setDateChanged(call.getDateChanged());
+        copy.setVoided(call.getVoided());
+        copy.setVoidedBy(call.getVoidedBy());
+        copy.setDateVoided(call.getDateVoided());
+        copy.setVoidReason(call.getVoidReason());
+        copy.setPersistedState(call.getPersistedState());
+        return copy;
+    }
+
+    private static Call persistedCopyOf(Call call) {
+        Call copy = copyOf(call);
+        copy.setPersistedState(PersistedCallState.of(call));
+        return copy;
+    }
+
+    /**
+     * The live state of a call, guarded by the session itself, and the lock held while it is written
+     */
+    private static final class Session {
+
+        private final ReentrantLock writeLock = new ReentrantLock();
+
+        private Call call;
+
+        private long writtenSteps;
+
+        private boolean dirty;
+
+        private boolean evicted;
+
+        private long lastAccessMillis;
+
+        private Session(Call call) {
+            this.call = call;
+            this.writtenSteps = steps(call);
+            touch();
+        }
+
+        private void touch() {
+            lastAccessMillis = System.currentTimeMillis();
+        }
+    }
+}
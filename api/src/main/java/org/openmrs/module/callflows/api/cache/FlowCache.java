@@ -0,0 +1,161 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.module.callflows.api.domain.flow.Flow;
+
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * In-memory cache of parsed {@link Flow} objects.
+ * <p>
+ * Entries are keyed by the flow name, the call flow id and the version of the call flow,
+ * which is raised on every update, so a flow that was changed on another node is never
+ * served stale. Entries of a flow are additionally dropped when the call flow is created,
+ * updated or deleted on this node. The cache is bounded and evicts by size.
+ * </p>
+ * <p>
+ * The cached flows are shared between concurrent calls and must be treated as read-only.
+ * </p>
+ */
+public class FlowCache {
+
+    private static final Log LOGGER = LogFactory.getLog(FlowCache.class);
+
+    private static final long DEFAULT_MAXIMUM_SIZE = 500L;
+
+    private Cache<Key, Flow> cache;
+
+    /**
+     * Creates a flow cache with the default maximum size
+     */
+    public FlowCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Creates a flow cache holding at most {@code maximumSize} flows
+     *
+     * @param maximumSize the maximum number of parsed flows to keep
+     */
+    public FlowCache(long maximumSize) {
+        this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    /**
+     * Gets a parsed flow for the given version of a call flow, if it is cached
+     *
+     * @param name    of the call flow
+     * @param id      of the call flow
+     * @param version of the call flow
+     * @return the cached flow or null if there is none
+     */
+    public Flow get(String name, Integer id, Integer version) {
+        return cache.getIfPresent(new Key(name, id, version));
+    }
+
+    /**
+     * Caches a parsed flow for the given version of a call flow
+     *
+     * @param name    of the call flow
+     * @param id      of the call flow
+     * @param version of the call flow the flow was loaded from
+     * @param flow    the parsed flow, not null
+     */
+    public void put(String name, Integer id, Integer version, Flow flow) {
+        cache.put(new Key(name, id, version), flow);
+    }
+
+    /**
+     * Drops all cached versions of the flow with the given name
+     *
+     * @param name of the flow
+     */
+    public void invalidate(String name) {
+        if (name == null) {
+            return;
+        }
+        Iterator<Key> it = cache.asMap().keySet().iterator();
+        while (it.hasNext()) {
+            if (name.equals(it.next().name)) {
+                it.remove();
+            }
+        }
+        LOGGER.debug(String.format("Invalidated cached flow %s", name));
+    }
+
+    /**
+     * Drops all cached flows
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Gets the number of cached flows
+     *
+     * @return the approximate number of entries
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Gets the hit, miss and eviction statistics of this cache
+     *
+     * @return a snapshot of the statistics
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Cache key: the flow name plus the id and version of the call flow
+     */
+    private static final class Key {
+
+        private final String name;
+
+        private final Integer id;
+
+        private final Integer version;
+
+        private Key(String name, Integer id, Integer version) {
+            this.name = name;
+            this.id = id;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return Objects.equals(id, other.id) && Objects.equals(version, other.version)
+                    && Objects.equals(name, other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, id, version);
+        }
+    }
+}
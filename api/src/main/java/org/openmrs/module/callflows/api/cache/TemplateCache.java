@@ -0,0 +1,193 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.velocity.Template;
+import org.apache.velocity.context.Context;
+import org.apache.velocity.exception.ParseErrorException;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.RuntimeSingleton;
+import org.apache.velocity.runtime.parser.ParseException;
+
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * In-memory cache of parsed Velocity templates.
+ * <p>
+ * Every node template and element prompt of a flow is parsed into a Velocity {@link Template} once and rendered from
+ * the parsed syntax tree afterwards. Entries are keyed by flow name, step, template type and content, so an edited
+ * template is parsed again even before the entries of its flow are dropped. The cache is bounded and evicts by size.
+ * </p>
+ */
+public class TemplateCache {
+
+    private static final Log LOGGER = LogFactory.getLog(TemplateCache.class);
+
+    private static final long DEFAULT_MAXIMUM_SIZE = 5000L;
+
+    private Cache<Key, Template> cache;
+
+    /**
+     * Creates a template cache with the default maximum size
+     */
+    public TemplateCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Creates a template cache holding at most {@code maximumSize} templates
+     *
+     * @param maximumSize the maximum number of parsed templates to keep
+     */
+    public TemplateCache(long maximumSize) {
+        this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    /**
+     * Renders a template, parsing it first if it is not cached yet
+     *
+     * @param flowName the name of the flow the template belongs to
+     * @param step     the step of the node the template belongs to
+     * @param type     the type of the template, eg: vxml or the name of the element property
+     * @param content  the template content
+     * @param context  the context to render with
+     * @param writer   the writer to render into
+     * @throws ParseErrorException if the template content can not be parsed
+     */
+    public void render(String flowName, String step, String type, String content, Context context, Writer writer) {
+        getTemplate(flowName, step, type, content).merge(context, writer);
+    }
+
+    /**
+     * Drops all cached templates of the flow with the given name
+     *
+     * @param flowName name of the flow
+     */
+    public void invalidate(String flowName) {
+        if (flowName == null) {
+            return;
+        }
+        Iterator<Key> it = cache.asMap().keySet().iterator();
+        while (it.hasNext()) {
+            if (flowName.equals(it.next().flowName)) {
+                it.remove();
+            }
+        }
+        LOGGER.debug(String.format("Invalidated cached templates of flow %s", flowName));
+    }
+
+    /**
+     * Drops all cached templates
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Gets the number of cached templates
+     *
+     * @return the approximate number of entries
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Gets the hit, miss and eviction statistics of this cache
+     *
+     * @return a snapshot of the statistics
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    private Template getTemplate(final String flowName, final String step, String type, final String content) {
+        try {
+            return cache.get(new Key(flowName, step, type, content), new Callable<Template>() {
+                @Override
+                public Template call() throws ParseException {
+                    return parse(String.format("%s.%s", flowName, step), content);
+                }
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof ParseException) {
+                throw new ParseErrorException((ParseException) e.getCause());
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private Template parse(String name, String content) throws ParseException {
+        RuntimeServices runtimeServices = RuntimeSingleton.getRuntimeServices();
+        Template template = new Template();
+        template.setName(name);
+        template.setRuntimeServices(runtimeServices);
+        template.setData(runtimeServices.parse(new StringReader(content), name));
+        template.initDocument();
+        return template;
+    }
+
+    /**
+     * Cache key: the flow name, step and template type plus the template content
+     */
+    private static final class Key {
+
+        private final String flowName;
+
+        private final String step;
+
+        private final String type;
+
+        private final String content;
+
+        private final int hash;
+
+        private Key(String flowName, String step, String type, String content) {
+            this.flowName = flowName;
+            this.step = step;
+            this.type = type;
+            this.content = content;
+            this.hash = Objects.hash(flowName, step, type, content);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return hash == other.hash && Objects.equals(flowName, other.flowName) && Objects.equals(step, other.step)
+                    && Objects.equals(type, other.type) && Objects.equals(content, other.content);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
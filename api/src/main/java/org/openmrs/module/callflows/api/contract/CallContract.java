@@ -0,0 +1,227 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.contract;
+
+import java.util.Date;
+
+/**
+ * The Call contract, a summary of a call without its context
+ */
+public class CallContract {
+
+    /**
+     * The database ID of the call
+     */
+    private Integer id;
+
+    /**
+     * The unique ID of the call
+     */
+    private String callId;
+
+    /**
+     * The ID of the call assigned by the IVR provider
+     */
+    private String providerCallId;
+
+    /**
+     * The name of the IVR configuration of the call
+     */
+    private String config;
+
+    /**
+     * The direction of the call
+     */
+    private String direction;
+
+    /**
+     * The status of the call
+     */
+    private String status;
+
+    /**
+     * The description of the status of the call
+     */
+    private String statusText;
+
+    /**
+     * The ID of the actor of the call
+     */
+    private String actorId;
+
+    /**
+     * The type of the actor of the call
+     */
+    private String actorType;
+
+    /**
+     * The external reference of the call
+     */
+    private String refKey;
+
+    /**
+     * The ID of the external entity of the call
+     */
+    private String externalId;
+
+    /**
+     * The type of the external entity of the call
+     */
+    private String externalType;
+
+    /**
+     * The number of steps the call went through
+     */
+    private Long steps;
+
+    /**
+     * The creation date of the call
+     */
+    private Date creationDate;
+
+    /**
+     * The start time of the call
+     */
+    private Date startTime;
+
+    /**
+     * The end time of the call
+     */
+    private Date endTime;
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getCallId() {
+        return callId;
+    }
+
+    public void setCallId(String callId) {
+        this.callId = callId;
+    }
+
+    public String getProviderCallId() {
+        return providerCallId;
+    }
+
+    public void setProviderCallId(String providerCallId) {
+        this.providerCallId = providerCallId;
+    }
+
+    public String getConfig() {
+        return config;
+    }
+
+    public void setConfig(String config) {
+        this.config = config;
+    }
+
+    public String getDirection() {
+        return direction;
+    }
+
+    public void setDirection(String direction) {
+        this.direction = direction;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getStatusText() {
+        return statusText;
+    }
+
+    public void setStatusText(String statusText) {
+        this.statusText = statusText;
+    }
+
+    public String getActorId() {
+        return actorId;
+    }
+
+    public void setActorId(String actorId) {
+        this.actorId = actorId;
+    }
+
+    public String getActorType() {
+        return actorType;
+    }
+
+    public void setActorType(String actorType) {
+        this.actorType = actorType;
+    }
+
+    public String getRefKey() {
+        return refKey;
+    }
+
+    public void setRefKey(String refKey) {
+        this.refKey = refKey;
+    }
+
+    public String getExternalId() {
+        return externalId;
+    }
+
+    public void setExternalId(String externalId) {
+        this.externalId = externalId;
+    }
+
+    public String getExternalType() {
+        return externalType;
+    }
+
+    public void setExternalType(String externalType) {
+        this.externalType = externalType;
+    }
+
+    public Long getSteps() {
+        return steps;
+    }
+
+    public void setSteps(Long steps) {
+        this.steps = steps;
+    }
+
+    public Date getCreationDate() {
+        return creationDate;
+    }
+
+    public void setCreationDate(Date creationDate) {
+        this.creationDate = creationDate;
+    }
+
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(Date startTime) {
+        this.startTime = startTime;
+    }
+
+    public Date getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(Date endTime) {
+        this.endTime = endTime;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.contract;
+
+import java.util.List;
+
+/**
+ * A page of found calls
+ */
+public class CallSearchResponse extends SearchResponse<CallContract> {
+
+    /**
+     * The value of the before parameter which requests the next page, null if there are no more calls
+     */
+    private Integer nextCursor;
+
+    public CallSearchResponse(List<CallContract> results) {
+        super(results);
+    }
+
+    public Integer getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(Integer nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
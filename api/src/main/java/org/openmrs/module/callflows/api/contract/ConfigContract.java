@@ -88,6 +88,28 @@ public class ConfigContract {
      */
     private Boolean callAllowed;
 
+    /**
+     * The maximum number of pooled HTTP connections kept open to the IVR provider, defaults to 20
+     */
+    private Integer outgoingCallMaxConnections;
+
+    /**
+     * The timeout in milliseconds for connecting to the IVR provider and for waiting for a pooled connection,
+     * defaults to 10 seconds
+     */
+    private Integer outgoingCallConnectTimeout;
+
+    /**
+     * The timeout in milliseconds for waiting for data from the IVR provider, defaults to 30 seconds
+     */
+    private Integer outgoingCallReadTimeout;
+
+    /**
+     * The number of seconds an idle connection to the IVR provider is kept open for re-use, unless the provider
+     * asks for less, defaults to 60 seconds
+     */
+    private Integer outgoingCallKeepAliveSeconds;
+
     /**
      * A map of test users
      * The key is a phone number and the value is a URL that can respond to a specific call request
@@ -193,6 +215,38 @@ public class ConfigContract {
         this.hasAuthRequired = hasAuthRequired;
     }
 
+    public Integer getOutgoingCallMaxConnections() {
+        return outgoingCallMaxConnections;
+    }
+
+    public void setOutgoingCallMaxConnections(Integer outgoingCallMaxConnections) {
+        this.outgoingCallMaxConnections = outgoingCallMaxConnections;
+    }
+
+    public Integer getOutgoingCallConnectTimeout() {
+        return outgoingCallConnectTimeout;
+    }
+
+    public void setOutgoingCallConnectTimeout(Integer outgoingCallConnectTimeout) {
+        this.outgoingCallConnectTimeout = outgoingCallConnectTimeout;
+    }
+
+    public Integer getOutgoingCallReadTimeout() {
+        return outgoingCallReadTimeout;
+    }
+
+    public void setOutgoingCallReadTimeout(Integer outgoingCallReadTimeout) {
+        this.outgoingCallReadTimeout = outgoingCallReadTimeout;
+    }
+
+    public Integer getOutgoingCallKeepAliveSeconds() {
+        return outgoingCallKeepAliveSeconds;
+    }
+
+    public void setOutgoingCallKeepAliveSeconds(Integer outgoingCallKeepAliveSeconds) {
+        this.outgoingCallKeepAliveSeconds = outgoingCallKeepAliveSeconds;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
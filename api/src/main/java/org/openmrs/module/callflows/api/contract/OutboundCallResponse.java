@@ -13,7 +13,8 @@ package org.openmrs.module.callflows.api.contract;
 import org.openmrs.module.callflows.api.domain.Call;
 
 /**
- * Used only for testing outbound calls
+ * The result of a outbound call request, used for testing outbound calls and as the per recipient result of bulk
+ * outbound calls
  *
  * @author bramak09
  */
@@ -31,6 +32,12 @@ public class OutboundCallResponse {
         reason = call.getStatusText();
     }
 
+    public OutboundCallResponse(String callId, String status, String reason) {
+        this.callId = callId;
+        this.status = status;
+        this.reason = reason;
+    }
+
     public String getCallId() {
         return callId;
     }
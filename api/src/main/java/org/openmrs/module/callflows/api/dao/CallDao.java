@@ -11,9 +11,11 @@
 package org.openmrs.module.callflows.api.dao;
 
 import org.openmrs.module.callflows.api.domain.Call;
+import org.openmrs.module.callflows.api.domain.CallFilter;
 import org.openmrs.module.callflows.api.domain.types.CallDirection;
 import org.openmrs.module.callflows.api.domain.types.CallStatus;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Set;
 
@@ -50,8 +52,75 @@ public interface CallDao {
      */
     long countFindCallsByDirectionAndStatus(CallDirection direction, Set<CallStatus> statusSet);
 
+    /**
+     * Passes the calls matching the filter, ordered by id, one by one to the visitor. The calls are read with a
+     * forward-only cursor and only the properties of the call report are loaded, so any number of calls can be
+     * visited without holding them in memory.
+     *
+     * @param filter  the conditions the calls are selected by, not null
+     * @param visitor the visitor of the calls, not null
+     * @throws IOException if the visitor failed
+     */
+    void visitReportCalls(CallFilter filter, CallVisitor visitor) throws IOException;
+
+    /**
+     * Finds a page of the calls matching the filter, newest first. Pages are read by the id of the last call of the
+     * previous page instead of an offset, so reading a page takes the same time regardless of its position.
+     *
+     * @param filter     the conditions the calls are selected by, not null
+     * @param beforeId   the id of the last call of the previous page, null for the first page
+     * @param maxResults the maximum number of calls to return
+     * @return the calls ordered by id descending
+     */
+    List<Call> findCalls(CallFilter filter, Integer beforeId, int maxResults);
+
+    /**
+     * Find a page of the calls matching the filter as summaries, which load only the plain columns of the calls:
+     * neither the flows nor the context and provider data
+     *
+     * @param filter     the conditions the calls are selected by, not null
+     * @param beforeId   the id of the last call of the previous page, null for the first page
+     * @param maxResults the maximum number of calls to return
+     * @return the detached call summaries ordered by id descending
+     */
+    List<Call> findCallSummaries(CallFilter filter, Integer beforeId, int maxResults);
+
     Call saveCall(Call call);
 
+    /**
+     * Saves new calls, flushing and clearing the session every few calls to keep it small
+     *
+     * @param calls the calls to save
+     * @return the saved calls, in the same order
+     */
+    List<Call> saveCalls(List<Call> calls);
+
+    /**
+     * Updates a call from a detached copy without reading it first. If the current session already holds the call,
+     * the state of the copy is merged into it instead.
+     *
+     * @param call the detached copy of an existing call
+     */
+    void updateDetached(Call call);
+
+    /**
+     * Updates a call from a detached copy, writing only the columns which changed since its persisted state. The
+     * whole call is written if its persisted state is not known. The persisted state of the copy is updated.
+     *
+     * @param call the detached copy of an existing call
+     */
+    void updateChanges(Call call);
+
+    /**
+     * Reads an existing call to be written with {@link #updateChanges(Call)}. The call is read from the database with
+     * its persisted state and is not kept in the session, so the session does not flush it whole. The given copy is
+     * removed from the session as well, as it may be the same call read and changed before.
+     *
+     * @param call the copy of the call to update
+     * @return the call as it is stored, null if there is no such call
+     */
+    Call findForUpdate(Call call);
+
     Call findById(Integer id);
 
     List<Call> retrieveAll(int startingRecord, int recordsAmount);
@@ -59,4 +128,26 @@ public interface CallDao {
     void deleteAll();
 
     long count();
+
+    /**
+     * Find the raw context and provider data of calls which are still stored in the legacy Java serialization format
+     *
+     * @param afterId    the id after which to start looking, the results are ordered by id
+     * @param maxResults the maximum number of calls to return
+     * @return list of rows, each holding the call id, the raw context and the raw provider data
+     */
+    List<Object[]> findLegacyEncodedData(Integer afterId, int maxResults);
+
+    /**
+     * Overwrite the raw context and provider data of a call, unless the call was updated since they were read
+     *
+     * @param id              of the call
+     * @param oldContext      the encoded context as it was read
+     * @param oldProviderData the encoded provider data as it was read
+     * @param context         the encoded context
+     * @param providerData    the encoded provider data
+     * @return true if the call was updated, false if its context or provider data changed in the meantime
+     */
+    boolean updateEncodedData(Integer id, byte[] oldContext, byte[] oldProviderData, byte[] context,
+            byte[] providerData);
 }
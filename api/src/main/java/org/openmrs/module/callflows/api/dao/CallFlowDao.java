@@ -11,6 +11,7 @@
 package org.openmrs.module.callflows.api.dao;
 
 import org.openmrs.module.callflows.api.domain.CallFlow;
+import org.openmrs.module.callflows.api.domain.CallFlowSummary;
 
 import java.util.List;
 
@@ -29,6 +30,38 @@ public interface CallFlowDao {
      */
     CallFlow findByName(String name);
 
+    /**
+     * Finds the id and version of a call flow by name using an exact match, without reading the call flow
+     *
+     * @param name of the call flow
+     * @return a row holding the call flow id and version, null if there is no call flow with the name
+     */
+    Object[] findVersionByName(String name);
+
+    /**
+     * Finds the compiled call flow of a call flow
+     *
+     * @param id of the call flow
+     * @return the compiled call flow, null if the call flow was not compiled
+     */
+    byte[] findCompiledById(Integer id);
+
+    /**
+     * Gets a reference to a call flow, which is read only once a property other than the id is used
+     *
+     * @param id of the call flow
+     * @return the reference to the call flow
+     */
+    CallFlow getReferenceById(Integer id);
+
+    /**
+     * Finds the raw call flow of a call flow
+     *
+     * @param id of the call flow
+     * @return the raw call flow
+     */
+    String findRawById(Integer id);
+
     /**
      * Finds all call flows that start with the given name
      *
@@ -37,6 +70,35 @@ public interface CallFlowDao {
      */
     List<CallFlow> findAllByName(String prefix);
 
+    /**
+     * Finds the summaries of the call flows which are not retired and start with the given name, ordered by name.
+     * The raw call flows are not read.
+     *
+     * @param prefix      the start of the names
+     * @param firstResult the index of the first summary to return
+     * @param maxResults  the maximum number of summaries to return
+     * @return a page of the summaries
+     */
+    List<CallFlowSummary> findSummariesByName(String prefix, int firstResult, int maxResults);
+
+    /**
+     * Finds the raw call flows saved before the node counts were kept
+     *
+     * @param afterId    the id after which to start looking, the results are ordered by id
+     * @param maxResults the maximum number of call flows to return
+     * @return list of rows, each holding the call flow id and the raw call flow
+     */
+    List<Object[]> findRawWithoutNodeCount(Integer afterId, int maxResults);
+
+    /**
+     * Sets the node count of a call flow which has none yet, a node count written meanwhile is kept
+     *
+     * @param id        of the call flow
+     * @param nodeCount the number of nodes of the raw call flow
+     * @return true if the node count was set
+     */
+    boolean updateNodeCount(Integer id, Integer nodeCount);
+
     CallFlow create(CallFlow callFlow);
 
     CallFlow update(CallFlow callFlow);
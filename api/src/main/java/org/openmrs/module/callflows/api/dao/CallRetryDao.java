@@ -0,0 +1,54 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.dao;
+
+import org.openmrs.module.callflows.api.domain.CallRetry;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Repository of the pending retries of outbound calls
+ */
+public interface CallRetryDao {
+
+    /**
+     * Saves a pending retry
+     *
+     * @param retry to save
+     * @return the saved retry
+     */
+    CallRetry save(CallRetry retry);
+
+    /**
+     * Finds all pending retries, the earliest first
+     *
+     * @return a list of the pending retries
+     */
+    List<CallRetry> findAll();
+
+    /**
+     * Finds the pending retries which were due before the given time, the earliest first
+     *
+     * @param fireTime the time the retries were due before
+     * @return a list of the overdue retries
+     */
+    List<CallRetry> findDueBefore(Date fireTime);
+
+    /**
+     * Deletes retries in a single statement
+     *
+     * @param ids of the retries to delete
+     * @return the number of deleted retries
+     */
+    int deleteByIds(Collection<Integer> ids);
+}
@@ -0,0 +1,98 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.dao;
+
+import org.openmrs.module.callflows.api.domain.CallSlot;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Repository of the outbound call slots shared by all the nodes of a cluster
+ */
+public interface CallSlotDao {
+
+    /**
+     * Finds the numbers of the existing slots of a configuration
+     *
+     * @param config the name of the IVR configuration
+     * @return a list of slot numbers
+     */
+    List<Integer> findSlotNumbers(String config);
+
+    /**
+     * Saves new slots
+     *
+     * @param slots the slots to save
+     */
+    void saveSlots(List<CallSlot> slots);
+
+    /**
+     * Deletes the free slots of a configuration from a slot number on, used when its outbound call limit is lowered
+     *
+     * @param config         the name of the IVR configuration
+     * @param fromSlotNumber the first slot number to delete
+     * @param now            the current time, leases expired before it are free
+     * @return the number of deleted slots
+     */
+    int deleteFreeSlots(String config, int fromSlotNumber, Date now);
+
+    /**
+     * Finds the IDs of free slots of a configuration, without locking them
+     *
+     * @param config      the name of the IVR configuration
+     * @param slotLimit   the number of slots in use, slots above it are ignored
+     * @param now         the current time, leases expired before it are free
+     * @param maxResults  the maximum number of IDs to return
+     * @return a list of slot IDs
+     */
+    List<Integer> findFreeSlotIds(String config, int slotLimit, Date now, int maxResults);
+
+    /**
+     * Leases a slot to a call, only if the slot is still free. The check and the lease are one statement, so a slot
+     * is never leased by two nodes at once.
+     *
+     * @param id          of the slot
+     * @param callId      the call ID of the call leasing the slot
+     * @param leasedBy    the node leasing the slot
+     * @param now         the current time, leases expired before it are free
+     * @param leasedUntil the time the lease expires at
+     * @return true if the slot was leased
+     */
+    boolean lease(Integer id, String callId, String leasedBy, Date now, Date leasedUntil);
+
+    /**
+     * Extends the lease of the slot held by a call
+     *
+     * @param callId      the call ID
+     * @param leasedUntil the new expiry time
+     * @return the number of renewed slots
+     */
+    int renew(String callId, Date leasedUntil);
+
+    /**
+     * Frees the slot held by a call
+     *
+     * @param callId the call ID
+     * @return the number of freed slots
+     */
+    int release(String callId);
+
+    /**
+     * Counts the leased slots of a configuration
+     *
+     * @param config    the name of the IVR configuration
+     * @param slotLimit the number of slots in use, slots above it are ignored
+     * @param now       the current time, leases expired before it are not counted
+     * @return the number of leased slots
+     */
+    long countLeased(String config, int slotLimit, Date now);
+}
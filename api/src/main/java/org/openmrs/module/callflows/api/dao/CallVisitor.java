@@ -0,0 +1,29 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.dao;
+
+import org.openmrs.module.callflows.api.domain.Call;
+
+import java.io.IOException;
+
+/**
+ * Receives the calls read by {@link CallDao#visitReportCalls} one at a time
+ */
+public interface CallVisitor {
+
+    /**
+     * Handles one call
+     *
+     * @param call the call, not attached to the session
+     * @throws IOException if the call could not be handled
+     */
+    void visit(Call call) throws IOException;
+}
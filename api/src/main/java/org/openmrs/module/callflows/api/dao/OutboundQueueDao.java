@@ -0,0 +1,85 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.dao;
+
+import org.openmrs.module.callflows.api.domain.OutboundQueueEntry;
+import org.openmrs.module.callflows.api.domain.types.OutboundQueueStatus;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Repository of the outbound call queue shared by all the nodes of a cluster
+ */
+public interface OutboundQueueDao {
+
+    /**
+     * Saves new entries, flushing the session in batches
+     *
+     * @param entries the entries to save
+     * @return the saved entries, in the same order
+     */
+    List<OutboundQueueEntry> saveEntries(List<OutboundQueueEntry> entries);
+
+    /**
+     * Claims the oldest pending entries of a configuration for a node. Pending rows locked by other nodes are
+     * skipped where the database supports it, an entry is never claimed by two nodes.
+     *
+     * @param config     the name of the IVR configuration
+     * @param nodeId     the node claiming the entries
+     * @param claimedAt  the time of the claim
+     * @param maxResults the maximum number of entries to claim
+     * @return the claimed entries, the oldest first
+     */
+    List<OutboundQueueEntry> claimPending(String config, String nodeId, Date claimedAt, int maxResults);
+
+    /**
+     * Writes the outcome of a claimed entry
+     *
+     * @param id         of the entry
+     * @param status     the final status of the entry
+     * @param callId     the call ID of the placed call, may be null
+     * @param outcome    the status of the call or the reason it could not be placed
+     * @param finishedAt the time the entry was finished
+     */
+    void finish(Integer id, OutboundQueueStatus status, String callId, String outcome, Date finishedAt);
+
+    /**
+     * Puts a claimed entry back to the pending ones
+     *
+     * @param id of the entry
+     */
+    void release(Integer id);
+
+    /**
+     * Puts entries which were claimed before the given time and never finished back to the pending ones
+     *
+     * @param claimedBefore the claim time limit
+     * @return the number of released entries
+     */
+    int releaseClaimedBefore(Date claimedBefore);
+
+    /**
+     * Deletes the entries finished before the given time
+     *
+     * @param finishedBefore the finish time limit
+     * @return the number of deleted entries
+     */
+    int deleteFinishedBefore(Date finishedBefore);
+
+    /**
+     * Counts the pending entries of every configuration
+     *
+     * @return a map of the numbers of pending entries by configuration name
+     */
+    Map<String, Long> countPendingByConfig();
+}
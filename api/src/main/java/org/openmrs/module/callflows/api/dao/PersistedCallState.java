@@ -0,0 +1,153 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.dao;
+
+import com.google.common.hash.Hashing;
+import org.hibernate.proxy.HibernateProxy;
+import org.openmrs.module.callflows.api.dao.converter.MapConverter;
+import org.openmrs.module.callflows.api.domain.Call;
+import org.openmrs.module.callflows.api.domain.CallFlow;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The columns of a call as they were last written to the database, used to write only the columns changed since.
+ * <p>
+ * The encoded context and provider data are kept as hashes, so the state stays small and comparing them does not
+ * depend on the maps being modified in place.
+ * </p>
+ */
+public final class PersistedCallState implements Serializable {
+
+    public static final String CONTEXT_COLUMN = "context";
+
+    public static final String PROVIDER_DATA_COLUMN = "provider_data";
+
+    private static final long serialVersionUID = 4118405562273950713L;
+
+    private static final MapConverter MAP_CONVERTER = new MapConverter();
+
+    private final Map<String, Object> columns;
+
+    private PersistedCallState(Map<String, Object> columns) {
+        this.columns = Collections.unmodifiableMap(columns);
+    }
+
+    /**
+     * Captures the state of a call which is the same as the one stored in the database
+     *
+     * @param call just read or written
+     * @return the state of the call
+     */
+    public static PersistedCallState of(Call call) {
+        Map<String, Object> values = columnsOf(call);
+        Map<String, Object> comparable = new LinkedHashMap<>(values.size());
+        for (Map.Entry<String, Object> column : values.entrySet()) {
+            comparable.put(column.getKey(), comparable(column.getValue()));
+        }
+        return new PersistedCallState(comparable);
+    }
+
+    /**
+     * Gets the values of the updatable columns of a call as they are written, the maps are encoded
+     *
+     * @param call the call
+     * @return the values by column name, the flows are given by id
+     */
+    public static Map<String, Object> columnsOf(Call call) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("providerCallId", call.getProviderCallId());
+        values.put("direction", call.getDirection() == null ? null : call.getDirection().name());
+        values.put("status", call.getStatus() == null ? null : call.getStatus().name());
+        values.put("startFlow", idOf(call.getStartFlow()));
+        values.put("startFlowName", call.getStartFlowName());
+        values.put("startNode", call.getStartNode());
+        values.put("startTime", call.getStartTime());
+        values.put("endFlow", idOf(call.getEndFlow()));
+        values.put("endFlowName", call.getEndFlowName());
+        values.put("endNode", call.getEndNode());
+        values.put("endTime", call.getEndTime());
+        values.put("providerTime", call.getProviderTime());
+        values.put("steps", call.getSteps());
+        values.put("config", call.getConfig());
+        values.put("actorId", call.getActorId());
+        values.put("actorType", call.getActorType());
+        values.put("statusText", call.getStatusText());
+        values.put("externalId", call.getExternalId());
+        values.put("externalType", call.getExternalType());
+        values.put("playedMessages", call.getPlayedMessages());
+        values.put("refKey", call.getRefKey());
+        values.put(CONTEXT_COLUMN, call.getContext() == null ? null : MAP_CONVERTER.convertToDatabaseColumn(
+                call.getContext()));
+        values.put(PROVIDER_DATA_COLUMN, call.getProviderData() == null ? null
+                : MAP_CONVERTER.convertToDatabaseColumn(call.getProviderData()));
+        values.put("creationDate", call.getCreationDate());
+        return values;
+    }
+
+    /**
+     * Selects the columns which differ from this state
+     *
+     * @param values the current values of the columns, as given by {@link #columnsOf(Call)}
+     * @return the changed columns with their current values, in the column order
+     */
+    public Map<String, Object> changedColumns(Map<String, Object> values) {
+        Map<String, Object> changed = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> column : values.entrySet()) {
+            if (!columns.containsKey(column.getKey())
+                    || !Objects.equals(columns.get(column.getKey()), comparable(column.getValue()))) {
+                changed.put(column.getKey(), column.getValue());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Gets the state after the changed columns are written
+     *
+     * @param changed the written columns with their values
+     * @return the new state, this one if nothing was written
+     */
+    public PersistedCallState with(Map<String, Object> changed) {
+        if (changed.isEmpty()) {
+            return this;
+        }
+        Map<String, Object> updated = new LinkedHashMap<>(columns);
+        for (Map.Entry<String, Object> column : changed.entrySet()) {
+            updated.put(column.getKey(), comparable(column.getValue()));
+        }
+        return new PersistedCallState(updated);
+    }
+
+    private static Integer idOf(CallFlow flow) {
+        if (flow instanceof HibernateProxy) {
+            // the id of a flow not loaded yet is known without loading it
+            return (Integer) ((HibernateProxy) flow).getHibernateLazyInitializer().getIdentifier();
+        }
+        return flow == null ? null : flow.getId();
+    }
+
+    private static Object comparable(Object value) {
+        if (value instanceof byte[]) {
+            return Hashing.murmur3_128().hashBytes((byte[]) value).toString();
+        }
+        if (value instanceof Date) {
+            // a timestamp read from the database is not equal to the date it was written from
+            return ((Date) value).getTime();
+        }
+        return value;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.dao.converter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Map;
+
+/**
+ * The legacy codec storing maps with Java serialization.
+ * <p>
+ * Data in this format has no version header of its own and is recognized by the magic number of Java serialization
+ * streams. It is still written for maps holding values that the other codecs are not able to represent.
+ * </p>
+ */
+public class JavaSerializationMapCodec implements MapCodec {
+
+    private static final byte STREAM_MAGIC_HIGH = (byte) 0xAC;
+
+    private static final byte STREAM_MAGIC_LOW = (byte) 0xED;
+
+    @Override
+    public boolean canEncode(Map<?, ?> map) {
+        return true;
+    }
+
+    @Override
+    public boolean canDecode(byte[] data) {
+        return data.length > 1 && data[0] == STREAM_MAGIC_HIGH && data[1] == STREAM_MAGIC_LOW;
+    }
+
+    @Override
+    public byte[] encode(Map<?, ?> map) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+            out.writeObject(map);
+        }
+        return bos.toByteArray();
+    }
+
+    @Override
+    public Map<String, Object> decode(byte[] data) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return (Map<String, Object>) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Gets the header identifying data in this format
+     *
+     * @return the first two bytes of any Java serialization stream
+     */
+    public static byte[] getHeader() {
+        return new byte[]{STREAM_MAGIC_HIGH, STREAM_MAGIC_LOW};
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.dao.converter;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Codec storing maps as UTF-8 JSON, deflated when the JSON is larger than a threshold.
+ * <p>
+ * The data starts with a version byte: {@link #VERSION_JSON} for plain JSON, readable in SQL after skipping the first
+ * byte, and {@link #VERSION_DEFLATED_JSON} for deflated JSON. Only maps made of strings, booleans, integers, doubles,
+ * lists and nested maps with string keys are accepted, as those are read back with the same types.
+ * </p>
+ */
+public class JsonMapCodec implements MapCodec {
+
+    public static final byte VERSION_JSON = 0x01;
+
+    public static final byte VERSION_DEFLATED_JSON = 0x02;
+
+    private static final int DEFAULT_COMPRESSION_THRESHOLD = 512;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final int compressionThreshold;
+
+    /**
+     * Creates a codec deflating JSON larger than the default threshold
+     */
+    public JsonMapCodec() {
+        this(DEFAULT_COMPRESSION_THRESHOLD);
+    }
+
+    /**
+     * Creates a codec deflating JSON larger than the given threshold
+     *
+     * @param compressionThreshold the size in bytes above which the JSON is deflated, a negative value disables it
+     */
+    public JsonMapCodec(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    @Override
+    public boolean canEncode(Map<?, ?> map) {
+        return map == null || isJsonMap(map);
+    }
+
+    @Override
+    public boolean canDecode(byte[] data) {
+        return data[0] == VERSION_JSON || data[0] == VERSION_DEFLATED_JSON;
+    }
+
+    @Override
+    public byte[] encode(Map<?, ?> map) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(map);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(json.length + 1);
+        if (compressionThreshold >= 0 && json.length > compressionThreshold) {
+            bos.write(VERSION_DEFLATED_JSON);
+            try (DeflaterOutputStream out = new DeflaterOutputStream(bos)) {
+                out.write(json);
+            }
+        } else {
+            bos.write(VERSION_JSON);
+            bos.write(json);
+        }
+        return bos.toByteArray();
+    }
+
+    @Override
+    public Map<String, Object> decode(byte[] data) throws IOException {
+        InputStream in = new ByteArrayInputStream(data, 1, data.length - 1);
+        if (data[0] == VERSION_DEFLATED_JSON) {
+            in = new InflaterInputStream(in);
+        }
+        try {
+            return objectMapper.readValue(in, Map.class);
+        } finally {
+            in.close();
+        }
+    }
+
+    private boolean isJsonMap(Map<?, ?> map) {
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!(entry.getKey() instanceof String) || !isJsonValue(entry.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isJsonValue(Object value) {
+        if (value == null || value instanceof String || value instanceof Boolean || value instanceof Integer) {
+            return true;
+        }
+        if (value instanceof Double) {
+            return !((Double) value).isNaN() && !((Double) value).isInfinite();
+        }
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                if (!isJsonValue(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return value instanceof Map && isJsonMap((Map<?, ?>) value);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.dao.converter;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Encodes the maps of a call, like its context, into the bytes stored in the database and back.
+ * <p>
+ * The first byte of the encoded data identifies the format, so that the {@link MapConverter} can pick the codec that
+ * is able to decode a stored value.
+ * </p>
+ */
+public interface MapCodec {
+
+    /**
+     * Checks if this codec is able to encode the given map without losing information
+     *
+     * @param map to check, may be null
+     * @return true if the map can be encoded
+     */
+    boolean canEncode(Map<?, ?> map);
+
+    /**
+     * Checks if this codec is able to decode the given data, based on its header
+     *
+     * @param data to check, not empty
+     * @return true if the data is in a format of this codec
+     */
+    boolean canDecode(byte[] data);
+
+    /**
+     * Encodes the given map
+     *
+     * @param map to encode, may be null
+     * @return the encoded data including its header
+     * @throws IOException if the map could not be encoded
+     */
+    byte[] encode(Map<?, ?> map) throws IOException;
+
+    /**
+     * Decodes the given data
+     *
+     * @param data to decode including its header
+     * @return the decoded map, may be null
+     * @throws IOException if the data could not be decoded
+     */
+    Map<String, Object> decode(byte[] data) throws IOException;
+}
@@ -15,38 +15,110 @@ import org.apache.commons.logging.LogFactory;
 
 import javax.persistence.AttributeConverter;
 import javax.persistence.Converter;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * Converts the maps of a call into the bytes stored in the database and back.
+ * <p>
+ * Maps are written with the first registered codec that is able to represent them, compact JSON by default, and
+ * with the legacy Java serialization otherwise. Stored data is read with the codec recognizing its header, so rows
+ * written in the legacy format stay readable.
+ * </p>
+ */
 @Converter()
 public class MapConverter implements AttributeConverter<Map, byte[]> {
 
     private static final Log LOGGER = LogFactory.getLog(MapConverter.class);
 
+    private static final MapCodec LEGACY_CODEC = new JavaSerializationMapCodec();
+
+    private static final List<MapCodec> CODECS = new CopyOnWriteArrayList<MapCodec>(
+            Collections.<MapCodec>singletonList(new JsonMapCodec()));
+
+    /**
+     * Registers a codec, which is preferred over the already registered ones when writing
+     *
+     * @param codec to register, not null
+     */
+    public static void registerCodec(MapCodec codec) {
+        CODECS.add(0, codec);
+    }
+
+    /**
+     * Checks if the stored data is in the legacy Java serialization format
+     *
+     * @param dbData stored data, may be null
+     * @return true if the data has to be migrated
+     */
+    public static boolean isLegacyEncoded(byte[] dbData) {
+        return dbData != null && LEGACY_CODEC.canDecode(dbData);
+    }
+
     @Override
     public byte[] convertToDatabaseColumn(Map attribute) {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
-            out.writeObject(attribute);
+        try {
+            return getEncoder(attribute).encode(attribute);
         } catch (IOException e) {
             LOGGER.error("The error occurred during conversion Map into byte[].", e);
         }
-        return bos.toByteArray();
+        return new byte[0];
     }
 
     @Override
     public Map convertToEntityAttribute(byte[] dbData) {
-        Map<String, Object> result = null;
-        ByteArrayInputStream bis = new ByteArrayInputStream(dbData);
-        try (ObjectInputStream out = new ObjectInputStream(bis)) {
-            result = (Map<String, Object>) out.readObject();
-        } catch (IOException | ClassNotFoundException e) {
+        if (dbData == null || dbData.length == 0) {
+            return null;
+        }
+        try {
+            return getDecoder(dbData).decode(dbData);
+        } catch (IOException e) {
             LOGGER.error("The error occurred during conversion byte[] into Map.", e);
         }
-        return result;
+        return null;
+    }
+
+    /**
+     * Re-encodes data stored in the legacy Java serialization format with the preferred codec
+     *
+     * @param dbData stored data, may be null
+     * @return the re-encoded data, or the given data if it is not in the legacy format or can not be re-encoded
+     */
+    public byte[] migrate(byte[] dbData) {
+        if (!isLegacyEncoded(dbData)) {
+            return dbData;
+        }
+        try {
+            Map<String, Object> map = LEGACY_CODEC.decode(dbData);
+            MapCodec encoder = getEncoder(map);
+            return encoder == LEGACY_CODEC ? dbData : encoder.encode(map);
+        } catch (IOException e) {
+            LOGGER.warn("Legacy call data could not be migrated and is kept as it is.", e);
+        }
+        return dbData;
+    }
+
+    private MapCodec getEncoder(Map<?, ?> attribute) {
+        for (MapCodec codec : CODECS) {
+            if (codec.canEncode(attribute)) {
+                return codec;
+            }
+        }
+        return LEGACY_CODEC;
+    }
+
+    private MapCodec getDecoder(byte[] dbData) throws IOException {
+        if (LEGACY_CODEC.canDecode(dbData)) {
+            return LEGACY_CODEC;
+        }
+        for (MapCodec codec : CODECS) {
+            if (codec.canDecode(dbData)) {
+                return codec;
+            }
+        }
+        throw new IOException(String.format("Unknown map format with header %d", dbData[0]));
     }
 }
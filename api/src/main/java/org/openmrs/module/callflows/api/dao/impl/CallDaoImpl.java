@@ -11,22 +11,96 @@
 package org.openmrs.module.callflows.api.dao.impl;
 
 import org.hibernate.Criteria;
+import org.hibernate.NonUniqueObjectException;
+import org.hibernate.SQLQuery;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.criterion.Disjunction;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.ProjectionList;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.type.BinaryType;
+import org.hibernate.type.IntegerType;
+import org.hibernate.type.LongType;
+import org.hibernate.type.StringType;
+import org.hibernate.type.TextType;
+import org.hibernate.type.TimestampType;
+import org.hibernate.type.Type;
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
 import org.openmrs.api.db.hibernate.DbSession;
 import org.openmrs.api.db.hibernate.HibernateOpenmrsObjectDAO;
 import org.openmrs.module.callflows.api.dao.CallDao;
+import org.openmrs.module.callflows.api.dao.CallVisitor;
+import org.openmrs.module.callflows.api.dao.PersistedCallState;
+import org.openmrs.module.callflows.api.dao.converter.JavaSerializationMapCodec;
 import org.openmrs.module.callflows.api.domain.Call;
+import org.openmrs.module.callflows.api.domain.CallFilter;
 import org.openmrs.module.callflows.api.domain.types.CallDirection;
 import org.openmrs.module.callflows.api.domain.types.CallStatus;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class CallDaoImpl extends HibernateOpenmrsObjectDAO<Call> implements CallDao {
 
+  private static final String LEGACY_HEADER = "legacyHeader";
+
+  private static final String CREATION_DATE = "creationDate";
+
+  private static final String ID = "id";
+
+  private static final int REPORT_FETCH_SIZE = 1000;
+
+  private static final int SAVE_BATCH_SIZE = 100;
+
+  /** The properties loaded for the call report, in the order of the projected columns */
+  private static final String[] REPORT_PROPERTIES = {
+    ID,
+    "callId",
+    "direction",
+    "status",
+    "statusText",
+    "actorId",
+    "actorType",
+    CREATION_DATE,
+    "startTime",
+    "endTime",
+    "context"
+  };
+
+  /** The properties loaded for the call summaries, in the order of the projected columns */
+  private static final String[] SUMMARY_PROPERTIES = {
+    ID,
+    "callId",
+    "providerCallId",
+    "config",
+    "direction",
+    "status",
+    "statusText",
+    "actorId",
+    "actorType",
+    "refKey",
+    "externalId",
+    "externalType",
+    "steps",
+    CREATION_DATE,
+    "startTime",
+    "endTime"
+  };
+
+  /** The types of the columns written by a partial update, by column name */
+  private static final Map<String, Type> COLUMN_TYPES = createColumnTypes();
+
   public CallDaoImpl() {
     this.mappedClass = Call.class;
   }
@@ -65,11 +139,151 @@ public class CallDaoImpl extends HibernateOpenmrsObjectDAO<Call> implements Call
     return count.longValue();
   }
 
+  @Override
+  @SuppressWarnings("unchecked")
+  public void visitReportCalls(CallFilter filter, CallVisitor visitor) throws IOException {
+    ProjectionList projections = Projections.projectionList();
+    for (String property : REPORT_PROPERTIES) {
+      projections.add(Projections.property(property));
+    }
+    Criteria criteria =
+        createCriteriaForFilter(filter)
+            .setProjection(projections)
+            .addOrder(Order.asc(ID))
+            .setReadOnly(true)
+            .setFetchSize(getStreamingFetchSize());
+
+    ScrollableResults results = criteria.scroll(ScrollMode.FORWARD_ONLY);
+    try {
+      while (results.next()) {
+        Object[] row = results.get();
+        Call call = new Call();
+        call.setId((Integer) row[0]);
+        call.setCallId((String) row[1]);
+        call.setDirection((CallDirection) row[2]);
+        call.setStatus((CallStatus) row[3]);
+        call.setStatusText((String) row[4]);
+        call.setActorId((String) row[5]);
+        call.setActorType((String) row[6]);
+        call.setCreationDate((Date) row[7]);
+        call.setStartTime((Date) row[8]);
+        call.setEndTime((Date) row[9]);
+        call.setContext((Map<String, Object>) row[10]);
+        visitor.visit(call);
+      }
+    } finally {
+      results.close();
+    }
+  }
+
+  @Override
+  public List<Call> findCalls(CallFilter filter, Integer beforeId, int maxResults) {
+    return createCriteriaForPage(filter, beforeId, maxResults).list();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<Call> findCallSummaries(CallFilter filter, Integer beforeId, int maxResults) {
+    ProjectionList projections = Projections.projectionList();
+    for (String property : SUMMARY_PROPERTIES) {
+      projections.add(Projections.property(property));
+    }
+    List<Object[]> rows =
+        createCriteriaForPage(filter, beforeId, maxResults)
+            .setProjection(projections)
+            .setReadOnly(true)
+            .list();
+
+    List<Call> calls = new ArrayList<>(rows.size());
+    for (Object[] row : rows) {
+      Call call = new Call();
+      call.setId((Integer) row[0]);
+      call.setCallId((String) row[1]);
+      call.setProviderCallId((String) row[2]);
+      call.setConfig((String) row[3]);
+      call.setDirection((CallDirection) row[4]);
+      call.setStatus((CallStatus) row[5]);
+      call.setStatusText((String) row[6]);
+      call.setActorId((String) row[7]);
+      call.setActorType((String) row[8]);
+      call.setRefKey((String) row[9]);
+      call.setExternalId((String) row[10]);
+      call.setExternalType((String) row[11]);
+      call.setSteps((Long) row[12]);
+      call.setCreationDate((Date) row[13]);
+      call.setStartTime((Date) row[14]);
+      call.setEndTime((Date) row[15]);
+      // the summaries carry neither the context nor the provider data
+      call.setContext(null);
+      call.setProviderData(null);
+      calls.add(call);
+    }
+    return calls;
+  }
+
   @Override
   public Call saveCall(Call call) {
     return saveOrUpdate(call);
   }
 
+  @Override
+  public void updateDetached(Call call) {
+    Session session = getSession();
+    try {
+      session.update(call);
+    } catch (NonUniqueObjectException e) {
+      // the session loaded the call already, merging does not read it again
+      session.merge(call);
+    }
+  }
+
+  @Override
+  public void updateChanges(Call call) {
+    PersistedCallState persistedState = call.getPersistedState();
+    if (persistedState == null) {
+      updateDetached(call);
+      call.setPersistedState(PersistedCallState.of(call));
+      return;
+    }
+    Map<String, Object> changed =
+        persistedState.changedColumns(PersistedCallState.columnsOf(call));
+    if (!changed.isEmpty()) {
+      updateColumns(call.getId(), changed);
+    }
+    call.setPersistedState(persistedState.with(changed));
+  }
+
+  @Override
+  public Call findForUpdate(Call call) {
+    Session session = getSession();
+    if (session.contains(call)) {
+      // the changes of the copy are written by updateChanges, not flushed
+      session.evict(call);
+    }
+    Call storedCall = (Call) session.get(this.mappedClass, call.getId());
+    if (storedCall != null) {
+      session.evict(storedCall);
+      storedCall.setPersistedState(PersistedCallState.of(storedCall));
+    }
+    return storedCall;
+  }
+
+  @Override
+  public List<Call> saveCalls(List<Call> calls) {
+    Session session = getSession();
+    List<Call> saved = new ArrayList<>(calls.size());
+    for (Call call : calls) {
+      session.save(call);
+      saved.add(call);
+      if (saved.size() % SAVE_BATCH_SIZE == 0) {
+        session.flush();
+        session.clear();
+      }
+    }
+    session.flush();
+    return saved;
+  }
+
   @Override
   public Call findById(Integer id) {
     Object result = getSession().get(this.mappedClass, id);
@@ -97,10 +311,147 @@ public class CallDaoImpl extends HibernateOpenmrsObjectDAO<Call> implements Call
     return (long) criteria.uniqueResult();
   }
 
+  @Override
+  public List<Object[]> findLegacyEncodedData(Integer afterId, int maxResults) {
+    return getSession()
+        .createSQLQuery(
+            "SELECT cfl_calls_id, context, provider_data FROM cfl_calls WHERE cfl_calls_id > :afterId "
+                + "AND (LEFT(context, 2) = :legacyHeader OR LEFT(provider_data, 2) = :legacyHeader) "
+                + "ORDER BY cfl_calls_id")
+        .setInteger("afterId", afterId)
+        .setBinary(LEGACY_HEADER, JavaSerializationMapCodec.getHeader())
+        .setMaxResults(maxResults)
+        .list();
+  }
+
+  @Override
+  public boolean updateEncodedData(
+      Integer id, byte[] oldContext, byte[] oldProviderData, byte[] context, byte[] providerData) {
+    // the columns are compared with their values as read, so an update of the call made since is not overwritten
+    SQLQuery query =
+        getSession()
+            .createSQLQuery(
+                "UPDATE cfl_calls SET context = :context, provider_data = :providerData "
+                    + "WHERE cfl_calls_id = :id AND "
+                    + (oldContext == null ? "context IS NULL" : "context = :oldContext")
+                    + " AND "
+                    + (oldProviderData == null
+                        ? "provider_data IS NULL"
+                        : "provider_data = :oldProviderData"));
+    query.setBinary("context", context);
+    query.setBinary("providerData", providerData);
+    query.setInteger("id", id);
+    if (oldContext != null) {
+      query.setBinary("oldContext", oldContext);
+    }
+    if (oldProviderData != null) {
+      query.setBinary("oldProviderData", oldProviderData);
+    }
+    return query.executeUpdate() > 0;
+  }
+
   private Session getSession() {
     return sessionFactory.getCurrentSession();
   }
 
+  private void updateColumns(Integer id, Map<String, Object> changed) {
+    StringBuilder sql = new StringBuilder("UPDATE cfl_calls SET ");
+    for (String column : changed.keySet()) {
+      sql.append(column).append(" = :").append(column).append(", ");
+    }
+    sql.append("changed_by = :changedBy, date_changed = :dateChanged WHERE cfl_calls_id = :id");
+
+    SQLQuery query = getSession().createSQLQuery(sql.toString());
+    for (Map.Entry<String, Object> column : changed.entrySet()) {
+      query.setParameter(column.getKey(), column.getValue(), COLUMN_TYPES.get(column.getKey()));
+    }
+    User user = Context.getAuthenticatedUser();
+    query.setParameter("changedBy", user == null ? null : user.getUserId(), IntegerType.INSTANCE);
+    query.setTimestamp("dateChanged", new Date());
+    query.setInteger(ID, id);
+    query.executeUpdate();
+  }
+
+  private static Map<String, Type> createColumnTypes() {
+    Map<String, Type> types = new HashMap<>();
+    for (String column :
+        new String[] {
+          "providerCallId",
+          "direction",
+          "startFlowName",
+          "endFlowName",
+          "status",
+          "startNode",
+          "endNode",
+          "providerTime",
+          "config",
+          "actorId",
+          "actorType",
+          "statusText",
+          "externalId",
+          "externalType",
+          "refKey"
+        }) {
+      types.put(column, StringType.INSTANCE);
+    }
+    types.put("startFlow", IntegerType.INSTANCE);
+    types.put("endFlow", IntegerType.INSTANCE);
+    types.put("startTime", TimestampType.INSTANCE);
+    types.put("endTime", TimestampType.INSTANCE);
+    types.put(CREATION_DATE, TimestampType.INSTANCE);
+    types.put("steps", LongType.INSTANCE);
+    types.put("playedMessages", TextType.INSTANCE);
+    types.put(PersistedCallState.CONTEXT_COLUMN, BinaryType.INSTANCE);
+    types.put(PersistedCallState.PROVIDER_DATA_COLUMN, BinaryType.INSTANCE);
+    return types;
+  }
+
+  private Criteria createCriteriaForPage(CallFilter filter, Integer beforeId, int maxResults) {
+    Criteria criteria = createCriteriaForFilter(filter);
+    if (beforeId != null) {
+      criteria.add(Restrictions.lt(ID, beforeId));
+    }
+    criteria.addOrder(Order.desc(ID));
+    criteria.setMaxResults(maxResults);
+    return criteria;
+  }
+
+  private Criteria createCriteriaForFilter(CallFilter filter) {
+    Criteria criteria = getSession().createCriteria(this.mappedClass);
+    if (filter.getStatuses() != null && !filter.getStatuses().isEmpty()) {
+      criteria.add(Restrictions.in("status", filter.getStatuses()));
+    }
+    if (filter.getDirection() != null) {
+      criteria.add(Restrictions.eq("direction", filter.getDirection()));
+    }
+    if (filter.getConfig() != null) {
+      criteria.add(Restrictions.eq("config", filter.getConfig()));
+    }
+    if (filter.getDateFrom() != null) {
+      criteria.add(Restrictions.ge(CREATION_DATE, filter.getDateFrom()));
+    }
+    if (filter.getDateTo() != null) {
+      criteria.add(Restrictions.le(CREATION_DATE, filter.getDateTo()));
+    }
+    if (filter.getActorId() != null) {
+      criteria.add(Restrictions.eq("actorId", filter.getActorId()));
+    }
+    if (filter.getRefKey() != null) {
+      criteria.add(Restrictions.eq("refKey", filter.getRefKey()));
+    }
+    return criteria;
+  }
+
+  /**
+   * The MySQL driver reads the whole result into memory unless the fetch size is Integer.MIN_VALUE,
+   * which makes it stream the rows one by one
+   */
+  private int getStreamingFetchSize() {
+    return ((SessionFactoryImplementor) sessionFactory).getDialect() instanceof MySQLDialect
+        ? Integer.MIN_VALUE
+        : REPORT_FETCH_SIZE;
+  }
+
   private Criteria createCriteriaForFinding(CallDirection direction, Set<CallStatus> statusSet) {
     Criteria criteria = getSession().createCriteria(this.mappedClass);
     criteria.add(Restrictions.eq("direction", direction));
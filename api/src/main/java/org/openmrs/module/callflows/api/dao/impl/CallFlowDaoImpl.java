@@ -12,16 +12,26 @@ package org.openmrs.module.callflows.api.dao.impl;
 
 import org.hibernate.Criteria;
 import org.hibernate.criterion.MatchMode;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.openmrs.api.db.hibernate.DbSession;
 import org.openmrs.api.db.hibernate.DbSessionFactory;
 import org.openmrs.module.callflows.api.dao.CallFlowDao;
 import org.openmrs.module.callflows.api.domain.CallFlow;
+import org.openmrs.module.callflows.api.domain.CallFlowSummary;
+import org.openmrs.module.callflows.api.domain.types.CallFlowStatus;
 
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 public class CallFlowDaoImpl implements CallFlowDao {
 
+    private static final String NAME = "name";
+
+    private static final String RETIRED = "retired";
+
     private DbSessionFactory dbSessionFactory;
     private Class mappedClass;
 
@@ -32,20 +42,109 @@ public class CallFlowDaoImpl implements CallFlowDao {
     @Override
     public CallFlow findByName(String name) {
         Criteria crit = getSession().createCriteria(this.mappedClass);
-        crit.add(Restrictions.eq("name", name));
+        crit.add(Restrictions.eq(NAME, name));
 
         return (CallFlow) crit.uniqueResult();
     }
 
+    @Override
+    public Object[] findVersionByName(String name) {
+        Criteria crit = getSession().createCriteria(this.mappedClass);
+        crit.add(Restrictions.eq(NAME, name));
+        crit.setProjection(Projections.projectionList()
+                .add(Projections.id())
+                .add(Projections.property("version")));
+        return (Object[]) crit.uniqueResult();
+    }
+
+    @Override
+    public byte[] findCompiledById(Integer id) {
+        return (byte[]) findPropertyById(id, "compiled");
+    }
+
+    @Override
+    public CallFlow getReferenceById(Integer id) {
+        return (CallFlow) getSession().load(this.mappedClass, id);
+    }
+
+    @Override
+    public String findRawById(Integer id) {
+        return (String) findPropertyById(id, "raw");
+    }
+
     @Override
     public List<CallFlow> findAllByName(String prefix) {
         Criteria crit = getSession().createCriteria(this.mappedClass);
-        crit.add(Restrictions.like("name", prefix, MatchMode.START));
-        crit.add(Restrictions.eq("retired", Boolean.FALSE));
+        crit.add(Restrictions.like(NAME, prefix, MatchMode.START));
+        crit.add(Restrictions.eq(RETIRED, Boolean.FALSE));
 
         return crit.list();
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<CallFlowSummary> findSummariesByName(String prefix, int firstResult, int maxResults) {
+        // all the projected columns are in the summary index, so the raw call flows are not read
+        Criteria crit = getSession().createCriteria(this.mappedClass);
+        crit.add(Restrictions.like(NAME, prefix, MatchMode.START));
+        crit.add(Restrictions.eq(RETIRED, Boolean.FALSE));
+        crit.setProjection(Projections.projectionList()
+                .add(Projections.id())
+                .add(Projections.property(NAME))
+                .add(Projections.property("description"))
+                .add(Projections.property("status"))
+                .add(Projections.property("nodeCount"))
+                .add(Projections.property("dateChanged"))
+                .add(Projections.property("dateCreated")));
+        crit.addOrder(Order.asc(NAME));
+        crit.setFirstResult(firstResult);
+        crit.setMaxResults(maxResults);
+
+        List<Object[]> rows = crit.list();
+        List<CallFlowSummary> summaries = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            CallFlowSummary summary = new CallFlowSummary();
+            summary.setId((Integer) row[0]);
+            summary.setName((String) row[1]);
+            summary.setDescription((String) row[2]);
+            summary.setStatus((CallFlowStatus) row[3]);
+            summary.setNodeCount((Integer) row[4]);
+            summary.setLastModified(row[5] != null ? (Date) row[5] : (Date) row[6]);
+            summaries.add(summary);
+        }
+        return summaries;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Object[]> findRawWithoutNodeCount(Integer afterId, int maxResults) {
+        Criteria crit = getSession().createCriteria(this.mappedClass);
+        crit.add(Restrictions.gt("id", afterId));
+        crit.add(Restrictions.isNull("nodeCount"));
+        crit.setProjection(Projections.projectionList()
+                .add(Projections.id())
+                .add(Projections.property("raw")));
+        crit.addOrder(Order.asc("id"));
+        crit.setMaxResults(maxResults);
+        return crit.list();
+    }
+
+    @Override
+    public boolean updateNodeCount(Integer id, Integer nodeCount) {
+        return getSession()
+                .createQuery("update callFlow.CallFlow set nodeCount = :nodeCount where id = :id and nodeCount is null")
+                .setParameter("nodeCount", nodeCount)
+                .setParameter("id", id)
+                .executeUpdate() > 0;
+    }
+
+    private Object findPropertyById(Integer id, String property) {
+        Criteria crit = getSession().createCriteria(this.mappedClass);
+        crit.add(Restrictions.idEq(id));
+        crit.setProjection(Projections.property(property));
+        return crit.uniqueResult();
+    }
+
     @Override
     public CallFlow create(CallFlow callFlow) {
         getSession().saveOrUpdate(callFlow);
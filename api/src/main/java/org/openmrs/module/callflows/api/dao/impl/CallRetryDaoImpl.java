@@ -0,0 +1,70 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.dao.impl;
+
+import org.hibernate.Criteria;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Restrictions;
+import org.openmrs.module.callflows.api.dao.CallRetryDao;
+import org.openmrs.module.callflows.api.domain.CallRetry;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+public class CallRetryDaoImpl implements CallRetryDao {
+
+  private SessionFactory sessionFactory;
+
+  @Override
+  public CallRetry save(CallRetry retry) {
+    getSession().saveOrUpdate(retry);
+    return retry;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<CallRetry> findAll() {
+    Criteria criteria = getSession().createCriteria(CallRetry.class);
+    criteria.addOrder(Order.asc("fireTime"));
+    return criteria.list();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<CallRetry> findDueBefore(Date fireTime) {
+    Criteria criteria = getSession().createCriteria(CallRetry.class);
+    criteria.add(Restrictions.lt("fireTime", fireTime));
+    criteria.addOrder(Order.asc("fireTime"));
+    return criteria.list();
+  }
+
+  @Override
+  public int deleteByIds(Collection<Integer> ids) {
+    if (ids.isEmpty()) {
+      return 0;
+    }
+    return getSession()
+        .createQuery("delete from callFlow.CallRetry where id in (:ids)")
+        .setParameterList("ids", ids)
+        .executeUpdate();
+  }
+
+  public void setSessionFactory(SessionFactory sessionFactory) {
+    this.sessionFactory = sessionFactory;
+  }
+
+  private Session getSession() {
+    return sessionFactory.getCurrentSession();
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.dao.impl;
+
+import org.hibernate.Criteria;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.openmrs.module.callflows.api.dao.CallSlotDao;
+import org.openmrs.module.callflows.api.domain.CallSlot;
+
+import java.util.Date;
+import java.util.List;
+
+public class CallSlotDaoImpl implements CallSlotDao {
+
+  private static final String CONFIG = "config";
+
+  private static final String SLOT_NUMBER = "slotNumber";
+
+  private static final String CALL_ID = "callId";
+
+  private static final String LEASED_UNTIL = "leasedUntil";
+
+  private SessionFactory sessionFactory;
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<Integer> findSlotNumbers(String config) {
+    Criteria criteria = getSession().createCriteria(CallSlot.class);
+    criteria.add(Restrictions.eq(CONFIG, config));
+    criteria.setProjection(Projections.property(SLOT_NUMBER));
+    return criteria.list();
+  }
+
+  @Override
+  public void saveSlots(List<CallSlot> slots) {
+    Session session = getSession();
+    for (CallSlot slot : slots) {
+      session.save(slot);
+    }
+    session.flush();
+  }
+
+  @Override
+  public int deleteFreeSlots(String config, int fromSlotNumber, Date now) {
+    return getSession()
+        .createQuery(
+            "delete from callFlow.CallSlot where config = :config and slotNumber >= :fromSlotNumber"
+                + " and (callId is null or leasedUntil < :now)")
+        .setParameter(CONFIG, config)
+        .setParameter("fromSlotNumber", fromSlotNumber)
+        .setParameter("now", now)
+        .executeUpdate();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<Integer> findFreeSlotIds(String config, int slotLimit, Date now, int maxResults) {
+    Criteria criteria = getSession().createCriteria(CallSlot.class);
+    criteria.add(Restrictions.eq(CONFIG, config));
+    criteria.add(Restrictions.lt(SLOT_NUMBER, slotLimit));
+    criteria.add(Restrictions.or(Restrictions.isNull(CALL_ID), Restrictions.lt(LEASED_UNTIL, now)));
+    criteria.setProjection(Projections.property("id"));
+    criteria.addOrder(Order.asc(SLOT_NUMBER));
+    criteria.setMaxResults(maxResults);
+    return criteria.list();
+  }
+
+  @Override
+  public boolean lease(Integer id, String callId, String leasedBy, Date now, Date leasedUntil) {
+    // the free condition is checked again by the update, which waits for any other node leasing the same row
+    int leased =
+        getSession()
+            .createQuery(
+                "update callFlow.CallSlot set callId = :callId, leasedBy = :leasedBy,"
+                    + " leasedUntil = :leasedUntil where id = :id"
+                    + " and (callId is null or leasedUntil < :now)")
+            .setParameter(CALL_ID, callId)
+            .setParameter("leasedBy", leasedBy)
+            .setParameter(LEASED_UNTIL, leasedUntil)
+            .setParameter("id", id)
+            .setParameter("now", now)
+            .executeUpdate();
+    return leased > 0;
+  }
+
+  @Override
+  public int renew(String callId, Date leasedUntil) {
+    return getSession()
+        .createQuery(
+            "update callFlow.CallSlot set leasedUntil = :leasedUntil where callId = :callId")
+        .setParameter(LEASED_UNTIL, leasedUntil)
+        .setParameter(CALL_ID, callId)
+        .executeUpdate();
+  }
+
+  @Override
+  public int release(String callId) {
+    return getSession()
+        .createQuery(
+            "update callFlow.CallSlot set callId = null, leasedBy = null, leasedUntil = null"
+                + " where callId = :callId")
+        .setParameter(CALL_ID, callId)
+        .executeUpdate();
+  }
+
+  @Override
+  public long countLeased(String config, int slotLimit, Date now) {
+    Criteria criteria = getSession().createCriteria(CallSlot.class);
+    criteria.add(Restrictions.eq(CONFIG, config));
+    criteria.add(Restrictions.lt(SLOT_NUMBER, slotLimit));
+    criteria.add(Restrictions.isNotNull(CALL_ID));
+    criteria.add(Restrictions.ge(LEASED_UNTIL, now));
+    criteria.setProjection(Projections.rowCount());
+    return ((Number) criteria.uniqueResult()).longValue();
+  }
+
+  public void setSessionFactory(SessionFactory sessionFactory) {
+    this.sessionFactory = sessionFactory;
+  }
+
+  private Session getSession() {
+    return sessionFactory.getCurrentSession();
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.dao.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.Criteria;
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.jdbc.ReturningWork;
+import org.openmrs.module.callflows.api.dao.OutboundQueueDao;
+import org.openmrs.module.callflows.api.domain.OutboundQueueEntry;
+import org.openmrs.module.callflows.api.domain.types.OutboundQueueStatus;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class OutboundQueueDaoImpl implements OutboundQueueDao {
+
+  private static final Log LOGGER = LogFactory.getLog(OutboundQueueDaoImpl.class);
+
+  private static final int SAVE_BATCH_SIZE = 100;
+
+  private static final String STATUS = "status";
+
+  private static final String CONFIG = "config";
+
+  private static final String LOCK_PENDING_IDS_SQL =
+      "select cfl_outbound_queue_id from cfl_outbound_queue where status = :status and config = :config"
+          + " order by cfl_outbound_queue_id limit :maxResults for update skip locked";
+
+  private SessionFactory sessionFactory;
+
+  private volatile Boolean skipLockedSupported;
+
+  @Override
+  public List<OutboundQueueEntry> saveEntries(List<OutboundQueueEntry> entries) {
+    Session session = getSession();
+    List<OutboundQueueEntry> saved = new ArrayList<>(entries.size());
+    for (OutboundQueueEntry entry : entries) {
+      session.save(entry);
+      saved.add(entry);
+      if (saved.size() % SAVE_BATCH_SIZE == 0) {
+        session.flush();
+        session.clear();
+      }
+    }
+    session.flush();
+    return saved;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<OutboundQueueEntry> claimPending(
+      String config, String nodeId, Date claimedAt, int maxResults) {
+    List<Integer> ids =
+        isSkipLockedSupported()
+            ? lockPendingIds(config, maxResults)
+            : findPendingIds(config, maxResults);
+    if (ids.isEmpty()) {
+      return Collections.emptyList();
+    }
+    // the status condition makes the claim safe also where the rows are not locked by the select
+    getSession()
+        .createQuery(
+            "update callFlow.OutboundQueueEntry set status = :claimed, claimedBy = :nodeId,"
+                + " claimedAt = :claimedAt where id in (:ids) and status = :pending")
+        .setParameter("claimed", OutboundQueueStatus.CLAIMED)
+        .setParameter("nodeId", nodeId)
+        .setParameter("claimedAt", claimedAt)
+        .setParameterList("ids", ids)
+        .setParameter("pending", OutboundQueueStatus.PENDING)
+        .executeUpdate();
+
+    Criteria criteria = getSession().createCriteria(OutboundQueueEntry.class);
+    criteria.add(Restrictions.in("id", ids));
+    criteria.add(Restrictions.eq(STATUS, OutboundQueueStatus.CLAIMED));
+    criteria.add(Restrictions.eq("claimedBy", nodeId));
+    criteria.addOrder(Order.asc("id"));
+    return criteria.list();
+  }
+
+  @Override
+  public void finish(
+      Integer id, OutboundQueueStatus status, String callId, String outcome, Date finishedAt) {
+    Query query =
+        getSession()
+            .createQuery(
+                "update callFlow.OutboundQueueEntry set status = :status, outcome = :outcome,"
+                    + " finishedAt = :finishedAt"
+                    + (callId != null ? ", callId = :callId" : "")
+                    + " where id = :id")
+            .setParameter(STATUS, status)
+            .setParameter("outcome", outcome)
+            .setParameter("finishedAt", finishedAt)
+            .setParameter("id", id);
+    if (callId != null) {
+      query.setParameter("callId", callId);
+    }
+    query.executeUpdate();
+  }
+
+  @Override
+  public void release(Integer id) {
+    getSession()
+        .createQuery(
+            "update callFlow.OutboundQueueEntry set status = :pending, claimedBy = null,"
+                + " claimedAt = null where id = :id and status = :claimed")
+        .setParameter("pending", OutboundQueueStatus.PENDING)
+        .setParameter("id", id)
+        .setParameter("claimed", OutboundQueueStatus.CLAIMED)
+        .executeUpdate();
+  }
+
+  @Override
+  public int releaseClaimedBefore(Date claimedBefore) {
+    return getSession()
+        .createQuery(
+            "update callFlow.OutboundQueueEntry set status = :pending, claimedBy = null,"
+                + " claimedAt = null where status = :claimed and claimedAt < :claimedBefore")
+        .setParameter("pending", OutboundQueueStatus.PENDING)
+        .setParameter("claimed", OutboundQueueStatus.CLAIMED)
+        .setParameter("claimedBefore", claimedBefore)
+        .executeUpdate();
+  }
+
+  @Override
+  public int deleteFinishedBefore(Date finishedBefore) {
+    return getSession()
+        .createQuery(
+            "delete from callFlow.OutboundQueueEntry where finishedAt < :finishedBefore")
+        .setParameter("finishedBefore", finishedBefore)
+        .executeUpdate();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public Map<String, Long> countPendingByConfig() {
+    Criteria criteria = getSession().createCriteria(OutboundQueueEntry.class);
+    criteria.add(Restrictions.eq(STATUS, OutboundQueueStatus.PENDING));
+    criteria.setProjection(
+        Projections.projectionList()
+            .add(Projections.groupProperty(CONFIG))
+            .add(Projections.rowCount()));
+    Map<String, Long> counts = new LinkedHashMap<>();
+    for (Object[] row : (List<Object[]>) criteria.list()) {
+      counts.put((String) row[0], ((Number) row[1]).longValue());
+    }
+    return counts;
+  }
+
+  public void setSessionFactory(SessionFactory sessionFactory) {
+    this.sessionFactory = sessionFactory;
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Integer> lockPendingIds(String config, int maxResults) {
+    List<Number> rows =
+        getSession()
+            .createSQLQuery(LOCK_PENDING_IDS_SQL)
+            .setParameter(STATUS, OutboundQueueStatus.PENDING.name())
+            .setParameter(CONFIG, config)
+            .setParameter("maxResults", maxResults)
+            .list();
+    List<Integer> ids = new ArrayList<>(rows.size());
+    for (Number row : rows) {
+      ids.add(row.intValue());
+    }
+    return ids;
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Integer> findPendingIds(String config, int maxResults) {
+    Criteria criteria = getSession().createCriteria(OutboundQueueEntry.class);
+    criteria.add(Restrictions.eq(STATUS, OutboundQueueStatus.PENDING));
+    criteria.add(Restrictions.eq(CONFIG, config));
+    criteria.setProjection(Projections.property("id"));
+    criteria.addOrder(Order.asc("id"));
+    criteria.setMaxResults(maxResults);
+    return criteria.list();
+  }
+
+  private boolean isSkipLockedSupported() {
+    if (skipLockedSupported == null) {
+      skipLockedSupported =
+          getSession()
+              .doReturningWork(
+                  new ReturningWork<Boolean>() {
+                    @Override
+                    public Boolean execute(Connection connection) throws SQLException {
+                      return supportsSkipLocked(connection.getMetaData());
+                    }
+                  });
+      LOGGER.info(
+          String.format(
+              "Outbound call queue claims %s SKIP LOCKED",
+              skipLockedSupported ? "with" : "without"));
+    }
+    return skipLockedSupported;
+  }
+
+  private static boolean supportsSkipLocked(DatabaseMetaData metaData) throws SQLException {
+    String product = metaData.getDatabaseProductName();
+    int major = metaData.getDatabaseMajorVersion();
+    int minor = metaData.getDatabaseMinorVersion();
+    if ("MySQL".equalsIgnoreCase(product)) {
+      return major >= 8;
+    }
+    if ("PostgreSQL".equalsIgnoreCase(product)) {
+      return major > 9 || (major == 9 && minor >= 5);
+    }
+    return false;
+  }
+
+  private Session getSession() {
+    return sessionFactory.getCurrentSession();
+  }
+}
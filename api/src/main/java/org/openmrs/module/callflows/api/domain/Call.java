@@ -10,6 +10,7 @@
 
 package org.openmrs.module.callflows.api.domain;
 
+import org.openmrs.module.callflows.api.dao.PersistedCallState;
 import org.openmrs.module.callflows.api.dao.converter.MapConverter;
 import org.openmrs.module.callflows.api.domain.types.CallDirection;
 import org.openmrs.module.callflows.api.domain.types.CallStatus;
@@ -19,11 +20,13 @@ import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 import javax.persistence.UniqueConstraint;
 import java.util.Date;
 import java.util.HashMap;
@@ -84,11 +87,18 @@ public class Call extends AbstractBaseOpenmrsData {
 
     /**
      * The call flow we started this call from. Doesn't change once set
+     * Loaded only when used, as the flow holds the whole raw flow definition
      */
-    @OneToOne
+    @OneToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "startFlow", nullable = false)
     private CallFlow startFlow;
 
+    /**
+     * The name of the call flow we started this call from, so that the flow itself does not need to be loaded
+     */
+    @Column
+    private String startFlowName;
+
     /**
      * The node we started at. Doesn't change once set
      */
@@ -103,11 +113,18 @@ public class Call extends AbstractBaseOpenmrsData {
 
     /**
      * The flow we ended at for now. This can change as the call continues
+     * Loaded only when used, as the flow holds the whole raw flow definition
      */
-    @OneToOne
+    @OneToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "endFlow", nullable = false)
     private CallFlow endFlow;
 
+    /**
+     * The name of the flow we ended at for now, changed together with the end flow
+     */
+    @Column
+    private String endFlowName;
+
     /**
      * The end node subject to change as the call continues.
      */
@@ -213,6 +230,12 @@ public class Call extends AbstractBaseOpenmrsData {
     @Column
     private Date creationDate;
 
+    /**
+     * The columns as they were last written, known for the calls kept in memory so that only their changes are written
+     */
+    @Transient
+    private transient PersistedCallState persistedState;
+
     public Date getCreationDate() {
         return creationDate;
     }
@@ -269,6 +292,22 @@ public class Call extends AbstractBaseOpenmrsData {
         this.startFlow = startFlow;
     }
 
+    /**
+     * Gets the name of the start flow, from the flow itself for the calls stored before the name was
+     *
+     * @return the name of the start flow
+     */
+    public String getStartFlowName() {
+        if (startFlowName == null && startFlow != null) {
+            return startFlow.getName();
+        }
+        return startFlowName;
+    }
+
+    public void setStartFlowName(String startFlowName) {
+        this.startFlowName = startFlowName;
+    }
+
     public String getStartNode() {
         return startNode;
     }
@@ -293,6 +332,22 @@ public class Call extends AbstractBaseOpenmrsData {
         this.endFlow = endFlow;
     }
 
+    /**
+     * Gets the name of the end flow, from the flow itself for the calls stored before the name was
+     *
+     * @return the name of the end flow
+     */
+    public String getEndFlowName() {
+        if (endFlowName == null && endFlow != null) {
+            return endFlow.getName();
+        }
+        return endFlowName;
+    }
+
+    public void setEndFlowName(String endFlowName) {
+        this.endFlowName = endFlowName;
+    }
+
     public String getEndNode() {
         return endNode;
     }
@@ -405,6 +460,14 @@ public class Call extends AbstractBaseOpenmrsData {
         this.providerData = providerData;
     }
 
+    public PersistedCallState getPersistedState() {
+        return persistedState;
+    }
+
+    public void setPersistedState(PersistedCallState persistedState) {
+        this.persistedState = persistedState;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -425,7 +488,7 @@ public class Call extends AbstractBaseOpenmrsData {
     @Override
     public String toString() {
         return "Call{" + "id=" + id + ", callId='" + callId + '\'' + ", direction=" + direction + ", status=" + status +
-                ", start='" + startFlow + '.' + startNode + '\'' + ", startTime=" + startTime + ", end='" + endFlow +
+                ", start='" + startFlowName + '.' + startNode + '\'' + ", startTime=" + startTime + ", end='" + endFlowName +
                 '.' + endNode + '\'' + ", endTime='" + endTime + '\'' + ", config='" + config + '\'' + ", actorId='" +
                 actorId + '\'' + ", actorType='" + actorType + '\'' + ", steps=" + steps + '}';
     }
@@ -0,0 +1,114 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.domain;
+
+import org.openmrs.module.callflows.api.domain.types.CallDirection;
+import org.openmrs.module.callflows.api.domain.types.CallStatus;
+
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * The conditions calls are selected by. Conditions which are not set do not restrict the selected calls.
+ */
+public class CallFilter {
+
+    /**
+     * The statuses of the selected calls
+     */
+    private Set<CallStatus> statuses;
+
+    /**
+     * The direction of the selected calls
+     */
+    private CallDirection direction;
+
+    /**
+     * The name of the IVR configuration of the selected calls
+     */
+    private String config;
+
+    /**
+     * The earliest creation date of the selected calls, inclusive
+     */
+    private Date dateFrom;
+
+    /**
+     * The latest creation date of the selected calls, inclusive
+     */
+    private Date dateTo;
+
+    /**
+     * The actor of the selected calls
+     */
+    private String actorId;
+
+    /**
+     * The external reference of the selected calls
+     */
+    private String refKey;
+
+    public Set<CallStatus> getStatuses() {
+        return statuses;
+    }
+
+    public void setStatuses(Set<CallStatus> statuses) {
+        this.statuses = statuses;
+    }
+
+    public CallDirection getDirection() {
+        return direction;
+    }
+
+    public void setDirection(CallDirection direction) {
+        this.direction = direction;
+    }
+
+    public String getConfig() {
+        return config;
+    }
+
+    public void setConfig(String config) {
+        this.config = config;
+    }
+
+    public Date getDateFrom() {
+        return dateFrom;
+    }
+
+    public void setDateFrom(Date dateFrom) {
+        this.dateFrom = dateFrom;
+    }
+
+    public Date getDateTo() {
+        return dateTo;
+    }
+
+    public void setDateTo(Date dateTo) {
+        this.dateTo = dateTo;
+    }
+
+    public String getActorId() {
+        return actorId;
+    }
+
+    public void setActorId(String actorId) {
+        this.actorId = actorId;
+    }
+
+    public String getRefKey() {
+        return refKey;
+    }
+
+    public void setRefKey(String refKey) {
+        this.refKey = refKey;
+    }
+}
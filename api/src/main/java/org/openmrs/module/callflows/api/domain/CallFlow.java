@@ -22,6 +22,7 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
 import java.util.Objects;
 
 /**
@@ -46,7 +47,7 @@ public class CallFlow extends BaseOpenmrsMetadata {
      * The call flow status
      * Used to determine whether a call flow is active in the system or being currently worked on (DRAFT) mode
      */
-    @Column
+    @Column(length = 32)
     @Enumerated(EnumType.STRING)
     private CallFlowStatus status;
 
@@ -65,6 +66,30 @@ public class CallFlow extends BaseOpenmrsMetadata {
     @Column(columnDefinition = TEXT, length = Integer.MAX_VALUE)
     private String raw;
 
+    /**
+     * The number of nodes of the raw call flow, kept along with it so that listing the call flows does not need to
+     * read the raw call flows
+     */
+    @Column
+    private Integer nodeCount;
+
+    /**
+     * The compiled call flow, generated from the raw call flow whenever it is saved and loaded instead of it to run the
+     * call flow
+     *
+     * @see org.openmrs.module.callflows.api.util.FlowCompiler
+     */
+    @Column(columnDefinition = "mediumblob")
+    private byte[] compiled;
+
+    /**
+     * The version of the call flow, raised on every update. It identifies the content of the call flow, for the
+     * flows cached on every node.
+     */
+    @Version
+    @Column(nullable = false)
+    private Integer version;
+
     public CallFlow() {
     }
 
@@ -107,6 +132,30 @@ public class CallFlow extends BaseOpenmrsMetadata {
         this.raw = raw;
     }
 
+    public Integer getNodeCount() {
+        return nodeCount;
+    }
+
+    public void setNodeCount(Integer nodeCount) {
+        this.nodeCount = nodeCount;
+    }
+
+    public byte[] getCompiled() {
+        return compiled;
+    }
+
+    public void setCompiled(byte[] compiled) {
+        this.compiled = compiled;
+    }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -0,0 +1,99 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.domain;
+
+import org.openmrs.module.callflows.api.domain.types.CallFlowStatus;
+
+import java.util.Date;
+
+/**
+ * The summary of a call flow used to list the call flows, read without the raw call flow
+ */
+public class CallFlowSummary {
+
+    /**
+     * Call flow ID
+     */
+    private Integer id;
+
+    /**
+     * Call flow name
+     */
+    private String name;
+
+    /**
+     * Call flow description
+     */
+    private String description;
+
+    /**
+     * Call flow status
+     */
+    private CallFlowStatus status;
+
+    /**
+     * The number of nodes of the call flow
+     */
+    private Integer nodeCount;
+
+    /**
+     * The time the call flow was last changed, or created if it was never changed
+     */
+    private Date lastModified;
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public CallFlowStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(CallFlowStatus status) {
+        this.status = status;
+    }
+
+    public Integer getNodeCount() {
+        return nodeCount;
+    }
+
+    public void setNodeCount(Integer nodeCount) {
+        this.nodeCount = nodeCount;
+    }
+
+    public Date getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(Date lastModified) {
+        this.lastModified = lastModified;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.domain;
+
+import org.openmrs.module.callflows.api.dao.converter.MapConverter;
+
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A pending retry of an outbound call which was not placed because the outbound call limit of its configuration
+ * was reached. The row only lives until the retry is fired, it is kept so that retries survive a restart.
+ */
+@Entity(name = "callFlow.CallRetry")
+@Table(name = "cfl_call_retries")
+public class CallRetry {
+
+    @Id
+    @GeneratedValue
+    @Column(name = "cfl_call_retries_id")
+    private Integer id;
+
+    /**
+     * The call ID of the call which could not be placed
+     */
+    @Column(nullable = false)
+    private String callId;
+
+    /**
+     * The name of the IVR configuration to place the call with
+     */
+    @Column(nullable = false)
+    private String config;
+
+    /**
+     * The name of the flow to start the call with
+     */
+    @Column(nullable = false)
+    private String flowName;
+
+    /**
+     * The parameters the call is placed with, including the number of retries made so far
+     */
+    @Column(name = "params")
+    @Convert(converter = MapConverter.class)
+    private Map<String, Object> params = new HashMap<>();
+
+    /**
+     * The time the call should be placed again at
+     */
+    @Column(nullable = false)
+    private Date fireTime;
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getCallId() {
+        return callId;
+    }
+
+    public void setCallId(String callId) {
+        this.callId = callId;
+    }
+
+    public String getConfig() {
+        return config;
+    }
+
+    public void setConfig(String config) {
+        this.config = config;
+    }
+
+    public String getFlowName() {
+        return flowName;
+    }
+
+    public void setFlowName(String flowName) {
+        this.flowName = flowName;
+    }
+
+    public Map<String, Object> getParams() {
+        return params;
+    }
+
+    public void setParams(Map<String, Object> params) {
+        this.params = params;
+    }
+
+    public Date getFireTime() {
+        return fireTime;
+    }
+
+    public void setFireTime(Date fireTime) {
+        this.fireTime = fireTime;
+    }
+
+    @Override
+    public String toString() {
+        return "CallRetry{"
+                + "id=" + id
+                + ", callId='" + callId + '\''
+                + ", config='" + config + '\''
+                + ", flowName='" + flowName + '\''
+                + ", fireTime=" + fireTime
+                + '}';
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.domain;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import java.util.Date;
+
+/**
+ * One outbound channel of an IVR configuration, shared by all the nodes of a cluster. A configuration has as many
+ * slots as its outbound call limit, an outbound call is placed only once it leased a free slot.
+ * <p>
+ * A slot is free when it has no call or when the lease of its call expired, so the slots of calls left behind by a
+ * crashed node become free again on their own.
+ * </p>
+ */
+@Entity(name = "callFlow.CallSlot")
+@Table(name = "cfl_call_slots", uniqueConstraints = @UniqueConstraint(columnNames = {"config", "slotNumber"}))
+public class CallSlot {
+
+    @Id
+    @GeneratedValue
+    @Column(name = "cfl_call_slots_id")
+    private Integer id;
+
+    /**
+     * The name of the IVR configuration the slot belongs to
+     */
+    @Column(nullable = false)
+    private String config;
+
+    /**
+     * The number of the slot within its configuration, from 0 to the outbound call limit excluded
+     */
+    @Column(nullable = false)
+    private Integer slotNumber;
+
+    /**
+     * The call ID of the call holding the slot, null if the slot is free
+     */
+    @Column
+    private String callId;
+
+    /**
+     * The node which leased the slot
+     */
+    @Column
+    private String leasedBy;
+
+    /**
+     * The time the lease expires at unless the call renews it
+     */
+    @Column
+    private Date leasedUntil;
+
+    public CallSlot() {
+    }
+
+    public CallSlot(String config, Integer slotNumber) {
+        this.config = config;
+        this.slotNumber = slotNumber;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getConfig() {
+        return config;
+    }
+
+    public void setConfig(String config) {
+        this.config = config;
+    }
+
+    public Integer getSlotNumber() {
+        return slotNumber;
+    }
+
+    public void setSlotNumber(Integer slotNumber) {
+        this.slotNumber = slotNumber;
+    }
+
+    public String getCallId() {
+        return callId;
+    }
+
+    public void setCallId(String callId) {
+        this.callId = callId;
+    }
+
+    public String getLeasedBy() {
+        return leasedBy;
+    }
+
+    public void setLeasedBy(String leasedBy) {
+        this.leasedBy = leasedBy;
+    }
+
+    public Date getLeasedUntil() {
+        return leasedUntil;
+    }
+
+    public void setLeasedUntil(Date leasedUntil) {
+        this.leasedUntil = leasedUntil;
+    }
+
+    @Override
+    public String toString() {
+        return "CallSlot{"
+                + "id=" + id
+                + ", config='" + config + '\''
+                + ", slotNumber=" + slotNumber
+                + ", callId='" + callId + '\''
+                + ", leasedBy='" + leasedBy + '\''
+                + ", leasedUntil=" + leasedUntil
+                + '}';
+    }
+}
@@ -57,6 +57,28 @@ public class Config {
 
     private boolean hasAuthRequired;
 
+    /**
+     * The maximum number of pooled HTTP connections kept open to the IVR provider, defaults to 20
+     */
+    private Integer outgoingCallMaxConnections;
+
+    /**
+     * The timeout in milliseconds for connecting to the IVR provider and for waiting for a pooled connection,
+     * defaults to 10 seconds
+     */
+    private Integer outgoingCallConnectTimeout;
+
+    /**
+     * The timeout in milliseconds for waiting for data from the IVR provider, defaults to 30 seconds
+     */
+    private Integer outgoingCallReadTimeout;
+
+    /**
+     * The number of seconds an idle connection to the IVR provider is kept open for re-use, unless the provider
+     * asks for less, defaults to 60 seconds
+     */
+    private Integer outgoingCallKeepAliveSeconds;
+
     /**
      * A map of OSGI services that can be used in the callflows
      * The key is the friendly name to use in the templates and the value is the fully qualified name of the OSGI interface
@@ -176,6 +198,38 @@ public class Config {
         this.hasAuthRequired = hasAuthRequired;
     }
 
+    public Integer getOutgoingCallMaxConnections() {
+        return outgoingCallMaxConnections;
+    }
+
+    public void setOutgoingCallMaxConnections(Integer outgoingCallMaxConnections) {
+        this.outgoingCallMaxConnections = outgoingCallMaxConnections;
+    }
+
+    public Integer getOutgoingCallConnectTimeout() {
+        return outgoingCallConnectTimeout;
+    }
+
+    public void setOutgoingCallConnectTimeout(Integer outgoingCallConnectTimeout) {
+        this.outgoingCallConnectTimeout = outgoingCallConnectTimeout;
+    }
+
+    public Integer getOutgoingCallReadTimeout() {
+        return outgoingCallReadTimeout;
+    }
+
+    public void setOutgoingCallReadTimeout(Integer outgoingCallReadTimeout) {
+        this.outgoingCallReadTimeout = outgoingCallReadTimeout;
+    }
+
+    public Integer getOutgoingCallKeepAliveSeconds() {
+        return outgoingCallKeepAliveSeconds;
+    }
+
+    public void setOutgoingCallKeepAliveSeconds(Integer outgoingCallKeepAliveSeconds) {
+        this.outgoingCallKeepAliveSeconds = outgoingCallKeepAliveSeconds;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -59,6 +59,8 @@ public final class Constants {
 
   public static final String CALLFLOW_ENDED_STATUSES_GP_KEY = "messages.statusesEndingCallflow";
 
+  public static final String CALL_SESSION_STORE_ENABLED_GP_KEY = "callflows.callSessionStore.enabled";
+
   public static final String CALLFLOW_ENDED_STATUSES =
       "UNANSWERED,MACHINE,BUSY,CANCELLED,FAILED,REJECTED,NO_ANSWER,TIMEOUT,COMPLETED,UNKNOWN";
 
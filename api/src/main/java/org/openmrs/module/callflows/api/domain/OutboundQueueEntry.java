@@ -0,0 +1,204 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.domain;
+
+import org.openmrs.module.callflows.api.dao.converter.MapConverter;
+import org.openmrs.module.callflows.api.domain.types.OutboundQueueStatus;
+
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An outbound call waiting in the queue shared by all the nodes of a cluster.
+ * <p>
+ * An entry is claimed by exactly one node, which places the call and writes the outcome back. Entries of calls
+ * already created in the QUEUED status carry their call ID, the other ones create their call when they are placed.
+ * </p>
+ */
+@Entity(name = "callFlow.OutboundQueueEntry")
+@Table(name = "cfl_outbound_queue")
+public class OutboundQueueEntry {
+
+    @Id
+    @GeneratedValue
+    @Column(name = "cfl_outbound_queue_id")
+    private Integer id;
+
+    /**
+     * The name of the IVR configuration to place the call with
+     */
+    @Column(nullable = false)
+    private String config;
+
+    /**
+     * The name of the flow to start the call with
+     */
+    @Column(nullable = false)
+    private String flowName;
+
+    /**
+     * The call ID of the queued call, null until the call is created for entries without a queued call
+     */
+    @Column
+    private String callId;
+
+    /**
+     * The parameters the call is placed with
+     */
+    @Column(name = "params")
+    @Convert(converter = MapConverter.class)
+    private Map<String, Object> params = new HashMap<>();
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private OutboundQueueStatus status;
+
+    /**
+     * The node which claimed the entry
+     */
+    @Column
+    private String claimedBy;
+
+    @Column
+    private Date claimedAt;
+
+    @Column(nullable = false)
+    private Date enqueuedAt;
+
+    @Column
+    private Date finishedAt;
+
+    /**
+     * The status of the placed call or the reason the call could not be placed
+     */
+    @Column
+    private String outcome;
+
+    public OutboundQueueEntry() {
+    }
+
+    public OutboundQueueEntry(String config, String flowName, String callId, Map<String, Object> params) {
+        this.config = config;
+        this.flowName = flowName;
+        this.callId = callId;
+        this.params = params;
+        this.status = OutboundQueueStatus.PENDING;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getConfig() {
+        return config;
+    }
+
+    public void setConfig(String config) {
+        this.config = config;
+    }
+
+    public String getFlowName() {
+        return flowName;
+    }
+
+    public void setFlowName(String flowName) {
+        this.flowName = flowName;
+    }
+
+    public String getCallId() {
+        return callId;
+    }
+
+    public void setCallId(String callId) {
+        this.callId = callId;
+    }
+
+    public Map<String, Object> getParams() {
+        return params;
+    }
+
+    public void setParams(Map<String, Object> params) {
+        this.params = params;
+    }
+
+    public OutboundQueueStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(OutboundQueueStatus status) {
+        this.status = status;
+    }
+
+    public String getClaimedBy() {
+        return claimedBy;
+    }
+
+    public void setClaimedBy(String claimedBy) {
+        this.claimedBy = claimedBy;
+    }
+
+    public Date getClaimedAt() {
+        return claimedAt;
+    }
+
+    public void setClaimedAt(Date claimedAt) {
+        this.claimedAt = claimedAt;
+    }
+
+    public Date getEnqueuedAt() {
+        return enqueuedAt;
+    }
+
+    public void setEnqueuedAt(Date enqueuedAt) {
+        this.enqueuedAt = enqueuedAt;
+    }
+
+    public Date getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(Date finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public String getOutcome() {
+        return outcome;
+    }
+
+    public void setOutcome(String outcome) {
+        this.outcome = outcome;
+    }
+
+    @Override
+    public String toString() {
+        return "OutboundQueueEntry{"
+                + "id=" + id
+                + ", config='" + config + '\''
+                + ", flowName='" + flowName + '\''
+                + ", callId='" + callId + '\''
+                + ", status=" + status
+                + ", claimedBy='" + claimedBy + '\''
+                + '}';
+    }
+}
@@ -10,6 +10,8 @@
 
 package org.openmrs.module.callflows.api.domain.flow;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -53,6 +55,13 @@ public class Flow {
      */
     private String meta;
 
+    /**
+     * Index of the position of each node in the list of nodes by its step
+     * This is built on the first lookup and dropped whenever the nodes are replaced, so it must not be relied on
+     * after the list of nodes was modified in place
+     */
+    private transient volatile Map<String, Integer> stepIndex;
+
     public String getName() {
         return name;
     }
@@ -75,6 +84,42 @@ public class Flow {
 
     public void setNodes(List<Node> nodes) {
         this.nodes = nodes;
+        this.stepIndex = null;
+    }
+
+    /**
+     * Gets the position of the node with the given step in the list of nodes
+     * If several nodes share the step, the position of the first one is returned
+     *
+     * @param step to look up
+     * @return the position of the node, -1 if there is no such node
+     */
+    public int getPositionOfStep(String step) {
+        Integer position = getStepIndex().get(step);
+        return position == null ? -1 : position;
+    }
+
+    private Map<String, Integer> getStepIndex() {
+        Map<String, Integer> index = stepIndex;
+        if (index == null) {
+            index = buildStepIndex(nodes);
+            stepIndex = index;
+        }
+        return index;
+    }
+
+    private static Map<String, Integer> buildStepIndex(List<Node> nodes) {
+        if (nodes == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            String step = nodes.get(i).getStep();
+            if (!index.containsKey(step)) {
+                index.put(step, i);
+            }
+        }
+        return Collections.unmodifiableMap(index);
     }
 
     public Map<String, List<AudioMapping>> getAudio() {
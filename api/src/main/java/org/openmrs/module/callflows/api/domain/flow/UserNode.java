@@ -10,6 +10,8 @@
 
 package org.openmrs.module.callflows.api.domain.flow;
 
+import org.codehaus.jackson.annotate.JsonProperty;
+
 import java.util.List;
 
 /**
@@ -40,6 +42,7 @@ public class UserNode extends Node {
         this.blocks = blocks;
     }
 
+    @JsonProperty("continueNode")
     public Boolean isContinueNode() {
         return continueNode;
     }
@@ -18,6 +18,11 @@ package org.openmrs.module.callflows.api.domain.types;
  */
 public enum CallStatus {
 
+    /**
+     * OpenMRS accepted an outbound call which waits for a free channel of its configuration
+     */
+    QUEUED,
+
     /**
      * OpenMRS received an request to initiate an outbound call
      */
@@ -0,0 +1,37 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.domain.types;
+
+/**
+ * Status of an entry of the outbound call queue
+ */
+public enum OutboundQueueStatus {
+
+    /**
+     * Waiting to be claimed by a node
+     */
+    PENDING,
+
+    /**
+     * Claimed by a node which is placing the call
+     */
+    CLAIMED,
+
+    /**
+     * The call was handed over to the IVR provider, the outcome holds the status of the call
+     */
+    DONE,
+
+    /**
+     * The call could not be placed, the outcome holds the reason
+     */
+    FAILED
+}
@@ -12,10 +12,10 @@ package org.openmrs.module.callflows.api.evaluation.impl;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.velocity.VelocityContext;
-import org.apache.velocity.app.Velocity;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.DaemonToken;
+import org.openmrs.module.callflows.api.cache.TemplateCache;
 import org.openmrs.module.callflows.api.domain.flow.Block;
 import org.openmrs.module.callflows.api.domain.flow.Element;
 import org.openmrs.module.callflows.api.domain.flow.FieldElement;
@@ -27,6 +27,7 @@ import org.openmrs.module.callflows.api.domain.flow.TextElement;
 import org.openmrs.module.callflows.api.domain.flow.UserNode;
 import org.openmrs.module.callflows.api.evaluation.EvaluationCommand;
 import org.openmrs.module.callflows.api.evaluation.EvaluationContext;
+import org.openmrs.module.callflows.api.metrics.CallFlowMetrics;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -72,6 +73,10 @@ public class BaseEvaluationCommand extends BaseOpenmrsService implements Evaluat
 
     private ObjectMapper objectMapper = new ObjectMapper();
 
+    private TemplateCache templateCache = new TemplateCache();
+
+    private CallFlowMetrics metrics = new CallFlowMetrics();
+
     /**
      * Sets the Daemon token
      *
@@ -92,6 +97,24 @@ public class BaseEvaluationCommand extends BaseOpenmrsService implements Evaluat
         return daemonToken;
     }
 
+    /**
+     * Sets the Template cache used to parse templates once and render them from the parsed form
+     *
+     * @param templateCache Template cache
+     */
+    public void setTemplateCache(TemplateCache templateCache) {
+        this.templateCache = templateCache;
+    }
+
+    /**
+     * Sets the metrics registry the render times are recorded to
+     *
+     * @param metrics the metrics registry
+     */
+    public void setMetrics(CallFlowMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Executes the Evaluation
      *
@@ -102,6 +125,16 @@ public class BaseEvaluationCommand extends BaseOpenmrsService implements Evaluat
     @Override
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public String execute(EvaluationContext evalContext) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return evaluate(evalContext);
+        } finally {
+            metrics.recordTime(CallFlowMetrics.TEMPLATE_RENDER_SECONDS, System.nanoTime() - start,
+                    "type", evalContext.getTemplate());
+        }
+    }
+
+    private String evaluate(EvaluationContext evalContext) throws IOException {
         Flow flow = evalContext.getFlow();
         Node node = evalContext.getNode();
         VelocityContext context = evalContext.getContext();
@@ -120,7 +153,7 @@ public class BaseEvaluationCommand extends BaseOpenmrsService implements Evaluat
 
         Template tpl = node.getTemplates().get(template);
 
-        return evalTemplate(flow, node, context, tpl.getContent());
+        return evalTemplate(flow, node, context, template, tpl.getContent());
     }
 
     private String evalJsonNode(Flow flow, UserNode node, VelocityContext context) throws IOException {
@@ -154,10 +187,11 @@ public class BaseEvaluationCommand extends BaseOpenmrsService implements Evaluat
         return objectMapper.writeValueAsString(output);
     }
 
-    private String evalTemplate(Flow flow, Node node, VelocityContext context, String content) throws IOException {
+    private String evalTemplate(Flow flow, Node node, VelocityContext context, String type, String content)
+            throws IOException {
         if (!StringUtils.isEmpty(content)) {
             StringWriter writer = new StringWriter();
-            Velocity.evaluate(context, writer, String.format("%s.%s", flow.getName(), node.getStep()), content);
+            templateCache.render(flow.getName(), node.getStep(), type, content, context, writer);
             return writer.toString();
         }
         return StringUtils.EMPTY;
@@ -169,7 +203,7 @@ public class BaseEvaluationCommand extends BaseOpenmrsService implements Evaluat
                                      Node node,
                                      VelocityContext context) throws IOException {
         String template = textElement.getTxt();
-        part.put(VAR_SPEAK, evalTemplate(flow, node, context, template));
+        part.put(VAR_SPEAK, evalTemplate(flow, node, context, VAR_SPEAK, template));
     }
 
     private void mergeFieldProperties(FieldElement fieldElement,
@@ -178,7 +212,7 @@ public class BaseEvaluationCommand extends BaseOpenmrsService implements Evaluat
                                       Node node,
                                       VelocityContext context) throws IOException {
         String template = fieldElement.getTxt();
-        part.put(VAR_SPEAK, evalTemplate(flow, node, context, template));
+        part.put(VAR_SPEAK, evalTemplate(flow, node, context, VAR_SPEAK, template));
         part.put(VAR_ASK, fieldElement.getName());
         part.put(VAR_ASK_TYPE, fieldElement.getFieldType());
         part.put(VAR_ASK_BARGE_IN, fieldElement.isBargeIn());
@@ -188,16 +222,16 @@ public class BaseEvaluationCommand extends BaseOpenmrsService implements Evaluat
 
         // The noInput Prompt
         if (fieldElement.getNoInput() != null) {
-            part.put(VAR_ASK_NO_INPUT, evalTemplate(flow, node, context, fieldElement.getNoInput()));
+            part.put(VAR_ASK_NO_INPUT, evalTemplate(flow, node, context, VAR_ASK_NO_INPUT, fieldElement.getNoInput()));
         }
 
         // The noMatch Prompt
         if (fieldElement.getNoMatch() != null) {
-            part.put(VAR_ASK_NO_MATCH, evalTemplate(flow, node, context, fieldElement.getNoMatch()));
+            part.put(VAR_ASK_NO_MATCH, evalTemplate(flow, node, context, VAR_ASK_NO_MATCH, fieldElement.getNoMatch()));
         }
 
         if (fieldElement.getGoodBye() != null) {
-            part.put(VAR_ASK_GOODBYE, evalTemplate(flow, node, context, fieldElement.getGoodBye()));
+            part.put(VAR_ASK_GOODBYE, evalTemplate(flow, node, context, VAR_ASK_GOODBYE, fieldElement.getGoodBye()));
         }
         // reprompt
         part.put(VAR_ASK_REPROMPT, fieldElement.getReprompt());
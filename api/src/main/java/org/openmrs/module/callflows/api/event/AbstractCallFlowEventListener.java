@@ -30,8 +30,10 @@ public abstract class AbstractCallFlowEventListener implements EventListener {
 
     private DaemonToken daemonToken;
 
+    private CallFlowEventExecutor eventExecutor;
+
     /**
-     * Runs the event
+     * Runs the event, on the bounded pool of the event executor if one is set
      *
      * @param message to get from properties
      * @throws CallFlowRuntimeException while handling the flow event.
@@ -40,12 +42,17 @@ public abstract class AbstractCallFlowEventListener implements EventListener {
     public void onMessage(Message message) {
         try {
             Map<String, Object> properties = getProperties(message);
-            Daemon.runInDaemonThread(new Runnable() {
+            Runnable event = new Runnable() {
                 @Override
                 public void run() {
                     handleEvent(properties);
                 }
-            }, daemonToken);
+            };
+            if (eventExecutor == null) {
+                Daemon.runInDaemonThread(event, daemonToken);
+            } else {
+                eventExecutor.execute(getSubject(), event);
+            }
         } catch (JMSException ex) {
             throw new CallFlowRuntimeException("Error during handling Call Flow event", ex);
         }
@@ -67,6 +74,15 @@ public abstract class AbstractCallFlowEventListener implements EventListener {
         this.daemonToken = daemonToken;
     }
 
+    /**
+     * Set the executor running the events
+     *
+     * @param eventExecutor the bounded event executor
+     */
+    public void setEventExecutor(CallFlowEventExecutor eventExecutor) {
+        this.eventExecutor = eventExecutor;
+    }
+
     /**
      * Handle the event
      *
@@ -0,0 +1,343 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.event;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.callflows.api.exception.CallFlowRuntimeException;
+import org.openmrs.module.callflows.api.metrics.CallFlowMetrics;
+import org.openmrs.module.callflows.api.metrics.MetricSource;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the callflow events received by the event listeners on a bounded pool of workers, instead of starting a thread
+ * for every message.
+ * <p>
+ * Events wait in a bounded queue for a free worker. Every worker runs in an OpenMRS daemon thread started once with
+ * the worker, so the events run with the privileges of the module without a thread being started for each of them.
+ * The worker closes the Hibernate session after every event and opens a new one for the next. When the queue is full
+ * the event is either run by the thread which received the message, in a daemon thread of its own, which slows down
+ * the consumption of the JMS messages, or rejected.
+ * </p>
+ */
+public class CallFlowEventExecutor implements Closeable, MetricSource {
+
+    private static final Log LOGGER = LogFactory.getLog(CallFlowEventExecutor.class);
+
+    private static final int DEFAULT_WORKERS = 8;
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 10L;
+
+    /**
+     * Tells whether the current thread is the daemon thread of a worker
+     */
+    private static final ThreadLocal<Boolean> WORKER_THREAD = new ThreadLocal<>();
+
+    private final ConcurrentMap<String, SubjectStats> stats = new ConcurrentHashMap<>();
+
+    private int workers = DEFAULT_WORKERS;
+
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    private boolean callerRunsWhenFull = true;
+
+    private DaemonToken daemonToken;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * Runs an event on a worker
+     *
+     * @param subject the subject of the event
+     * @param event   the handling of the event
+     * @throws CallFlowRuntimeException if the queue is full and full queues reject events
+     */
+    public void execute(String subject, final Runnable event) {
+        final SubjectStats subjectStats = statsOf(subject);
+        subjectStats.received.incrementAndGet();
+        subjectStats.queued.incrementAndGet();
+        try {
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    subjectStats.queued.decrementAndGet();
+                    if (Boolean.TRUE.equals(WORKER_THREAD.get())) {
+                        runOnWorker(subjectStats, event);
+                    } else {
+                        // the queue is full and the event is run by the thread which received it
+                        runInDaemonThread(subjectStats, event);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            subjectStats.queued.decrementAndGet();
+            subjectStats.rejected.incrementAndGet();
+            throw new CallFlowRuntimeException(String.format("Event %s rejected, %d events are queued", subject,
+                    getQueueDepth()), e);
+        }
+    }
+
+    /**
+     * Gets the number of events waiting for a worker
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        ThreadPoolExecutor current = executor;
+        return current == null ? 0 : current.getQueue().size();
+    }
+
+    /**
+     * Gets the number of workers running an event
+     *
+     * @return the number of busy workers
+     */
+    public int getActiveCount() {
+        ThreadPoolExecutor current = executor;
+        return current == null ? 0 : current.getActiveCount();
+    }
+
+    /**
+     * Gets the counts of the events of each subject since the start
+     *
+     * @return a map of the counts by subject, sorted by subject
+     */
+    public Map<String, SubjectStats> getSubjectStats() {
+        return Collections.unmodifiableMap(new TreeMap<>(stats));
+    }
+
+    @Override
+    public void sample(CallFlowMetrics.Samples samples) {
+        samples.gauge(CallFlowMetrics.EVENTS_QUEUE_DEPTH, getQueueDepth());
+        samples.gauge(CallFlowMetrics.EVENTS_ACTIVE_WORKERS, getActiveCount());
+        for (Map.Entry<String, SubjectStats> entry : getSubjectStats().entrySet()) {
+            String subject = entry.getKey();
+            SubjectStats subjectStats = entry.getValue();
+            samples.gauge(CallFlowMetrics.EVENTS_QUEUED, subjectStats.getQueued(), "subject", subject);
+            samples.counter(CallFlowMetrics.EVENTS_RECEIVED_TOTAL, subjectStats.getReceived(), "subject", subject);
+            samples.counter(CallFlowMetrics.EVENTS_COMPLETED_TOTAL, subjectStats.getCompleted(), "subject", subject);
+            samples.counter(CallFlowMetrics.EVENTS_FAILED_TOTAL, subjectStats.getFailed(), "subject", subject);
+            samples.counter(CallFlowMetrics.EVENTS_REJECTED_TOTAL, subjectStats.getRejected(), "subject", subject);
+        }
+    }
+
+    /**
+     * Stops taking events and waits for the queued ones to finish
+     */
+    @Override
+    public synchronized void close() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warn(String.format("%d callflow events were not handled before shutdown", getQueueDepth()));
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sets the token used to run the events with the privileges of the module
+     *
+     * @param daemonToken the daemon token of the module
+     */
+    public void setDaemonToken(DaemonToken daemonToken) {
+        this.daemonToken = daemonToken;
+    }
+
+    /**
+     * Sets the number of events run at once
+     *
+     * @param workers the number of worker threads
+     */
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * Sets the number of events which can wait for a worker
+     *
+     * @param queueCapacity the queue capacity
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Sets what happens to an event when the queue is full: run by the thread which received it if true, rejected
+     * otherwise
+     *
+     * @param callerRunsWhenFull the rejection policy
+     */
+    public void setCallerRunsWhenFull(boolean callerRunsWhenFull) {
+        this.callerRunsWhenFull = callerRunsWhenFull;
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            final ThreadFactory threadFactory =
+                    new ThreadFactoryBuilder().setNameFormat("callflows-event-%d").setDaemon(true).build();
+            executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueCapacity),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable worker) {
+                            return threadFactory.newThread(new Runnable() {
+                                @Override
+                                public void run() {
+                                    runWorkerInDaemonThread(worker);
+                                }
+                            });
+                        }
+                    },
+                    callerRunsWhenFull ? new ThreadPoolExecutor.CallerRunsPolicy()
+                            : new ThreadPoolExecutor.AbortPolicy());
+        }
+        return executor;
+    }
+
+    private SubjectStats statsOf(String subject) {
+        SubjectStats subjectStats = stats.get(subject);
+        if (subjectStats == null) {
+            SubjectStats created = new SubjectStats();
+            subjectStats = stats.putIfAbsent(subject, created);
+            if (subjectStats == null) {
+                subjectStats = created;
+            }
+        }
+        return subjectStats;
+    }
+
+    private void runWorkerInDaemonThread(final Runnable worker) {
+        Thread daemonThread = Daemon.runInDaemonThread(new Runnable() {
+            @Override
+            public void run() {
+                WORKER_THREAD.set(Boolean.TRUE);
+                worker.run();
+            }
+        }, daemonToken);
+        // the pool interrupts this thread to stop an idle worker, the interrupt is passed on to the daemon thread
+        while (daemonThread.isAlive()) {
+            try {
+                daemonThread.join();
+            } catch (InterruptedException e) {
+                daemonThread.interrupt();
+            }
+        }
+    }
+
+    private void runOnWorker(SubjectStats subjectStats, Runnable event) {
+        try {
+            runEvent(subjectStats, event);
+        } finally {
+            // the worker keeps its daemon thread, but not the entities read by the event
+            Context.closeSession();
+            Context.openSession();
+        }
+    }
+
+    private void runInDaemonThread(final SubjectStats subjectStats, final Runnable event) {
+        try {
+            Daemon.runInDaemonThread(new Runnable() {
+                @Override
+                public void run() {
+                    runEvent(subjectStats, event);
+                }
+            }, daemonToken).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runEvent(SubjectStats subjectStats, Runnable event) {
+        try {
+            event.run();
+            subjectStats.completed.incrementAndGet();
+        } catch (RuntimeException e) {
+            // the failure is not thrown, so it does not stop the worker
+            subjectStats.failed.incrementAndGet();
+            LOGGER.error("Failed to handle a callflow event", e);
+        }
+    }
+
+    /**
+     * The counts of the events of one subject
+     */
+    public static class SubjectStats {
+
+        private final AtomicLong received = new AtomicLong();
+
+        private final AtomicLong queued = new AtomicLong();
+
+        private final AtomicLong completed = new AtomicLong();
+
+        private final AtomicLong failed = new AtomicLong();
+
+        private final AtomicLong rejected = new AtomicLong();
+
+        /**
+         * @return the number of events received
+         */
+        public long getReceived() {
+            return received.get();
+        }
+
+        /**
+         * @return the number of events waiting for a worker
+         */
+        public long getQueued() {
+            return queued.get();
+        }
+
+        /**
+         * @return the number of events handled successfully
+         */
+        public long getCompleted() {
+            return completed.get();
+        }
+
+        /**
+         * @return the number of events whose handling threw an exception
+         */
+        public long getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * @return the number of events rejected because the queue was full
+         */
+        public long getRejected() {
+            return rejected.get();
+        }
+    }
+}
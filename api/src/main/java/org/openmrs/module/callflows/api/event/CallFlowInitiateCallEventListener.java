@@ -13,8 +13,8 @@ package org.openmrs.module.callflows.api.event;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.module.callflows.api.domain.Constants;
-import org.openmrs.module.callflows.api.service.CallService;
 import org.openmrs.module.callflows.api.util.CallFlowEventSubjectConstants;
+import org.openmrs.module.callflows.api.util.OutboundCallDispatcher;
 
 import java.util.Map;
 
@@ -48,6 +48,8 @@ public class CallFlowInitiateCallEventListener extends AbstractCallFlowEventList
         String config = properties.get(Constants.PARAM_CONFIG).toString();
         String flowName = properties.get(Constants.PARAM_FLOW_NAME).toString();
         Map<String, Object> params = (Map<String, Object>) properties.get(Constants.PARAM_PARAMS);
-        getComponent("callflows.callService", CallService.class).makeCall(config, flowName, params);
+        // queued, so the call is placed by whichever node of the cluster has a free worker
+        getComponent("callflows.outboundCallDispatcher", OutboundCallDispatcher.class)
+                .enqueue(config, flowName, params);
     }
 }
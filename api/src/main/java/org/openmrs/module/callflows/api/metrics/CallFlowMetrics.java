@@ -0,0 +1,442 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry of the timers and counters of the hot paths of the module: the IVR requests, the flow evaluations, the
+ * template rendering, the outbound requests to the IVR providers and the DAO calls.
+ * <p>
+ * A metric is identified by its name and its labels, given as name and value pairs. The metrics can be read as a
+ * snapshot, which is rendered as JSON, or in the Prometheus text exposition format.
+ * </p>
+ * <p>
+ * The components keeping their own statistics, such as the pools and queues, are registered as metric sources and
+ * sampled into gauges and counters whenever the metrics are read.
+ * </p>
+ */
+public class CallFlowMetrics {
+
+    /**
+     * Time spent handling the IVR requests, labelled by endpoint, extension and HTTP status
+     */
+    public static final String HTTP_REQUEST_SECONDS = "callflows_http_request_seconds";
+
+    /**
+     * Time spent evaluating a node of a flow, labelled by flow and node
+     */
+    public static final String FLOW_NODE_SECONDS = "callflows_flow_node_seconds";
+
+    /**
+     * Number of evaluations of flow positions, labelled by flow
+     */
+    public static final String FLOW_EVALUATIONS_TOTAL = "callflows_flow_evaluations_total";
+
+    /**
+     * Number of system nodes jumped through by the evaluations of flow positions, labelled by flow
+     */
+    public static final String FLOW_JUMPS_TOTAL = "callflows_flow_jumps_total";
+
+    /**
+     * Time spent rendering a template, labelled by template type
+     */
+    public static final String TEMPLATE_RENDER_SECONDS = "callflows_template_render_seconds";
+
+    /**
+     * Time spent waiting for the IVR provider to accept an outbound call, labelled by configuration and HTTP status
+     */
+    public static final String OUTBOUND_REQUEST_SECONDS = "callflows_outbound_request_seconds";
+
+    /**
+     * Time spent in the DAO calls, labelled by DAO and method
+     */
+    public static final String DAO_SECONDS = "callflows_dao_seconds";
+
+    /**
+     * Number of connections to the IVR providers in use, labelled by configuration
+     */
+    public static final String OUTBOUND_POOL_LEASED = "callflows_outbound_pool_leased_connections";
+
+    /**
+     * Number of idle connections to the IVR providers kept alive, labelled by configuration
+     */
+    public static final String OUTBOUND_POOL_AVAILABLE = "callflows_outbound_pool_available_connections";
+
+    /**
+     * Number of outbound requests waiting for a connection, labelled by configuration
+     */
+    public static final String OUTBOUND_POOL_PENDING = "callflows_outbound_pool_pending_requests";
+
+    /**
+     * Largest number of connections to the IVR providers, labelled by configuration
+     */
+    public static final String OUTBOUND_POOL_MAX = "callflows_outbound_pool_max_connections";
+
+    /**
+     * 1 if all connections of a configuration are in use or requests are waiting, 0 otherwise
+     */
+    public static final String OUTBOUND_POOL_SATURATED = "callflows_outbound_pool_saturated";
+
+    /**
+     * Number of replaced clients still finishing their requests before being closed
+     */
+    public static final String OUTBOUND_POOL_RETIRED_CLIENTS = "callflows_outbound_pool_retired_clients";
+
+    /**
+     * Number of call status events waiting to be published
+     */
+    public static final String STATUS_EVENTS_PENDING = "callflows_status_events_pending";
+
+    /**
+     * Time the oldest pending call status event has been waiting
+     */
+    public static final String STATUS_EVENTS_LAG_SECONDS = "callflows_status_events_lag_seconds";
+
+    /**
+     * Number of call status events published
+     */
+    public static final String STATUS_EVENTS_PUBLISHED_TOTAL = "callflows_status_events_published_total";
+
+    /**
+     * Number of call status events replaced by a newer event of the same call before they were published
+     */
+    public static final String STATUS_EVENTS_COALESCED_TOTAL = "callflows_status_events_coalesced_total";
+
+    /**
+     * Number of call status events dropped because the buffer was full or which could not be published
+     */
+    public static final String STATUS_EVENTS_DROPPED_TOTAL = "callflows_status_events_dropped_total";
+
+    /**
+     * Number of callflow events waiting for a worker
+     */
+    public static final String EVENTS_QUEUE_DEPTH = "callflows_events_queue_depth";
+
+    /**
+     * Number of workers running a callflow event
+     */
+    public static final String EVENTS_ACTIVE_WORKERS = "callflows_events_active_workers";
+
+    /**
+     * Number of callflow events queued and not yet taken by a worker, labelled by subject
+     */
+    public static final String EVENTS_QUEUED = "callflows_events_queued";
+
+    /**
+     * Number of callflow events received, labelled by subject
+     */
+    public static final String EVENTS_RECEIVED_TOTAL = "callflows_events_received_total";
+
+    /**
+     * Number of callflow events run successfully, labelled by subject
+     */
+    public static final String EVENTS_COMPLETED_TOTAL = "callflows_events_completed_total";
+
+    /**
+     * Number of callflow events which failed, labelled by subject
+     */
+    public static final String EVENTS_FAILED_TOTAL = "callflows_events_failed_total";
+
+    /**
+     * Number of callflow events rejected because the queue was full, labelled by subject
+     */
+    public static final String EVENTS_REJECTED_TOTAL = "callflows_events_rejected_total";
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    private final ConcurrentMap<String, Series<LatencyHistogram>> timers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Series<LongAdder>> counters = new ConcurrentHashMap<>();
+
+    private final List<MetricSource> sources = new CopyOnWriteArrayList<>();
+
+    /**
+     * Records a duration
+     *
+     * @param name   the name of the timer
+     * @param nanos  the duration in nanoseconds
+     * @param labels the labels of the timer, as name and value pairs
+     */
+    public void recordTime(String name, long nanos, String... labels) {
+        String key = seriesKey(name, labels);
+        Series<LatencyHistogram> series = timers.get(key);
+        if (series == null) {
+            series = timers.computeIfAbsent(key, k -> new Series<>(name, labels, new LatencyHistogram()));
+        }
+        series.value.record(nanos);
+    }
+
+    /**
+     * Increments a counter
+     *
+     * @param name   the name of the counter
+     * @param amount the amount to add
+     * @param labels the labels of the counter, as name and value pairs
+     */
+    public void increment(String name, long amount, String... labels) {
+        String key = seriesKey(name, labels);
+        Series<LongAdder> series = counters.get(key);
+        if (series == null) {
+            series = counters.computeIfAbsent(key, k -> new Series<>(name, labels, new LongAdder()));
+        }
+        series.value.add(amount);
+    }
+
+    /**
+     * Gets a timer
+     *
+     * @param name   the name of the timer
+     * @param labels the labels of the timer, as name and value pairs
+     * @return the timer or null if nothing was recorded yet
+     */
+    public LatencyHistogram getTimer(String name, String... labels) {
+        Series<LatencyHistogram> series = timers.get(seriesKey(name, labels));
+        return series == null ? null : series.value;
+    }
+
+    /**
+     * Gets the value of a counter
+     *
+     * @param name   the name of the counter
+     * @param labels the labels of the counter, as name and value pairs
+     * @return the value of the counter, 0 if it was never incremented
+     */
+    public long getCount(String name, String... labels) {
+        Series<LongAdder> series = counters.get(seriesKey(name, labels));
+        return series == null ? 0L : series.value.sum();
+    }
+
+    /**
+     * Gets a snapshot of all the metrics, with the count, the total, the longest and the percentiles of every timer
+     * in milliseconds and the value of every counter and gauge
+     *
+     * @return a map with the timers, the counters and the gauges, sorted by name and labels
+     */
+    public Map<String, Object> getSnapshot() {
+        List<Map<String, Object>> timerSnapshots = new ArrayList<>();
+        for (Series<LatencyHistogram> series : new TreeMap<>(timers).values()) {
+            LatencyHistogram histogram = series.value;
+            Map<String, Object> snapshot = newSnapshot(series);
+            snapshot.put("count", histogram.getCount());
+            snapshot.put("sumMillis", histogram.getSumNanos() / NANOS_PER_MILLI);
+            snapshot.put("maxMillis", histogram.getMaxNanos() / NANOS_PER_MILLI);
+            for (double percentile : PERCENTILES) {
+                snapshot.put(String.format("p%dMillis", (int) percentile), histogram.getPercentileMillis(percentile));
+            }
+            timerSnapshots.add(snapshot);
+        }
+        Samples samples = sample();
+        List<Map<String, Object>> counterSnapshots = new ArrayList<>();
+        for (Series<? extends Number> series : allCounters(samples).values()) {
+            Map<String, Object> snapshot = newSnapshot(series);
+            snapshot.put("value", series.value.longValue());
+            counterSnapshots.add(snapshot);
+        }
+        List<Map<String, Object>> gaugeSnapshots = new ArrayList<>();
+        for (Series<Number> series : samples.gauges.values()) {
+            Map<String, Object> snapshot = newSnapshot(series);
+            snapshot.put("value", series.value);
+            gaugeSnapshots.add(snapshot);
+        }
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("timers", timerSnapshots);
+        snapshot.put("counters", counterSnapshots);
+        snapshot.put("gauges", gaugeSnapshots);
+        return snapshot;
+    }
+
+    /**
+     * Renders all the metrics in the Prometheus text exposition format, timers are rendered as histograms in seconds
+     *
+     * @return the metrics text
+     */
+    public String toPrometheusText() {
+        StringBuilder text = new StringBuilder();
+        long[] bucketMillis = LatencyHistogram.getBucketMillis();
+        String lastName = null;
+        for (Series<LatencyHistogram> series : new TreeMap<>(timers).values()) {
+            if (!series.name.equals(lastName)) {
+                text.append("# TYPE ").append(series.name).append(" histogram\n");
+                lastName = series.name;
+            }
+            long[] counts = series.value.getCumulativeCounts();
+            for (int i = 0; i < counts.length; i++) {
+                String bound = i < bucketMillis.length ? String.valueOf(bucketMillis[i] / 1000.0) : "+Inf";
+                appendSample(text, series.name + "_bucket", series.labelText, "le=\"" + bound + "\"", counts[i]);
+            }
+            appendSample(text, series.name + "_sum", series.labelText, null,
+                    series.value.getSumNanos() / NANOS_PER_SECOND);
+            appendSample(text, series.name + "_count", series.labelText, null, counts[counts.length - 1]);
+        }
+        Samples samples = sample();
+        lastName = null;
+        for (Series<? extends Number> series : allCounters(samples).values()) {
+            if (!series.name.equals(lastName)) {
+                text.append("# TYPE ").append(series.name).append(" counter\n");
+                lastName = series.name;
+            }
+            appendSample(text, series.name, series.labelText, null, series.value.longValue());
+        }
+        lastName = null;
+        for (Series<Number> series : samples.gauges.values()) {
+            if (!series.name.equals(lastName)) {
+                text.append("# TYPE ").append(series.name).append(" gauge\n");
+                lastName = series.name;
+            }
+            appendSample(text, series.name, series.labelText, null, series.value);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Sets the components sampled whenever the metrics are read
+     *
+     * @param sources the metric sources
+     */
+    public void setSources(List<MetricSource> sources) {
+        this.sources.clear();
+        this.sources.addAll(sources);
+    }
+
+    private Samples sample() {
+        Samples samples = new Samples();
+        for (MetricSource source : sources) {
+            source.sample(samples);
+        }
+        return samples;
+    }
+
+    private Map<String, Series<? extends Number>> allCounters(Samples samples) {
+        Map<String, Series<? extends Number>> all = new TreeMap<>(counters);
+        all.putAll(samples.counters);
+        return all;
+    }
+
+    private static void appendSample(StringBuilder text, String name, String labelText, String extraLabel,
+                                     Number value) {
+        text.append(name);
+        if (!labelText.isEmpty() || extraLabel != null) {
+            text.append('{').append(labelText);
+            if (extraLabel != null) {
+                text.append(labelText.isEmpty() ? "" : ",").append(extraLabel);
+            }
+            text.append('}');
+        }
+        text.append(' ').append(value).append('\n');
+    }
+
+    private static Map<String, Object> newSnapshot(Series<?> series) {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("name", series.name);
+        snapshot.put("labels", series.labels);
+        return snapshot;
+    }
+
+    private static String seriesKey(String name, String... labels) {
+        return name + '{' + labelText(labels) + '}';
+    }
+
+    private static String labelText(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Metric labels must be given as name and value pairs");
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return text.toString();
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * The gauges and counters sampled from the metric sources
+     */
+    public static final class Samples {
+
+        private final Map<String, Series<Number>> gauges = new TreeMap<>();
+
+        private final Map<String, Series<Number>> counters = new TreeMap<>();
+
+        private Samples() {
+        }
+
+        /**
+         * Adds the current value of a gauge
+         *
+         * @param name   the name of the gauge
+         * @param value  the current value
+         * @param labels the labels of the gauge, as name and value pairs
+         */
+        public void gauge(String name, Number value, String... labels) {
+            gauges.put(seriesKey(name, labels), new Series<>(name, labels, value));
+        }
+
+        /**
+         * Adds the current value of a counter kept by the source
+         *
+         * @param name   the name of the counter
+         * @param value  the current value
+         * @param labels the labels of the counter, as name and value pairs
+         */
+        public void counter(String name, long value, String... labels) {
+            counters.put(seriesKey(name, labels), new Series<Number>(name, labels, value));
+        }
+    }
+
+    /**
+     * A metric with its name and labels
+     */
+    private static final class Series<T> {
+
+        private final String name;
+
+        private final Map<String, String> labels;
+
+        private final String labelText;
+
+        private final T value;
+
+        private Series(String name, String[] labels, T value) {
+            Map<String, String> labelMap = new LinkedHashMap<>();
+            for (int i = 0; i < labels.length; i += 2) {
+                labelMap.put(labels[i], labels[i + 1]);
+            }
+            this.name = name;
+            this.labels = Collections.unmodifiableMap(labelMap);
+            this.labelText = labelText(labels);
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.metrics;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import java.lang.reflect.Method;
+
+/**
+ * Times the calls to the DAOs of the module, it is applied to the DAO beans by an auto proxy creator
+ */
+public class DaoMetricsInterceptor implements MethodInterceptor {
+
+    private CallFlowMetrics metrics;
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            Method method = invocation.getMethod();
+            metrics.recordTime(CallFlowMetrics.DAO_SECONDS, System.nanoTime() - start,
+                    "dao", method.getDeclaringClass().getSimpleName(), "method", method.getName());
+        }
+    }
+
+    /**
+     * Sets the registry the DAO timings are recorded to
+     *
+     * @param metrics the metrics registry
+     */
+    public void setMetrics(CallFlowMetrics metrics) {
+        this.metrics = metrics;
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.metrics;
+
+/**
+ * A component keeping its own statistics, which are sampled into gauges and counters whenever the metrics are read
+ */
+public interface MetricSource {
+
+    /**
+     * Samples the current statistics of the component
+     *
+     * @param samples the samples to add the gauges and counters to
+     */
+    void sample(CallFlowMetrics.Samples samples);
+}
@@ -13,6 +13,8 @@ package org.openmrs.module.callflows.api.service;
 import org.openmrs.api.OpenmrsService;
 import org.openmrs.module.callflows.api.event.CallFlowEvent;
 
+import java.util.List;
+
 /**
  * Service to send Event Message
  */
@@ -24,4 +26,11 @@ public interface CallFlowEventService extends OpenmrsService {
      * @param event CallFlow Even
      */
     void sendEventMessage(CallFlowEvent event);
+
+    /**
+     * Send several Event messages in one transaction
+     *
+     * @param events CallFlow Events, sent in the given order
+     */
+    void sendEventMessages(List<CallFlowEvent> events);
 }
@@ -13,6 +13,7 @@ package org.openmrs.module.callflows.api.service;
 import org.openmrs.annotation.Authorized;
 import org.openmrs.api.OpenmrsService;
 import org.openmrs.module.callflows.api.domain.CallFlow;
+import org.openmrs.module.callflows.api.domain.CallFlowSummary;
 import org.openmrs.module.callflows.api.exception.CallFlowAlreadyExistsException;
 import org.openmrs.module.callflows.api.util.PrivilegeConstants;
 
@@ -72,6 +73,18 @@ public interface CallFlowService extends OpenmrsService {
     @Authorized(PrivilegeConstants.CALLFLOWS_PRIVILEGE)
     List<CallFlow> findAllByNamePrefix(String prefix);
 
+    /**
+     * Find the summaries of the callflows that start with a specific name, without reading the raw callflows.
+     * Used to list the callflows, the raw callflow is read only when a single callflow is opened.
+     *
+     * @param prefix     a search term that is used to search for callflows
+     * @param startIndex the index of the first summary to return
+     * @param limit      the maximum number of summaries to return
+     * @return a page of the summaries of the found callflows, ordered by name
+     */
+    @Authorized(PrivilegeConstants.CALLFLOWS_PRIVILEGE)
+    List<CallFlowSummary> findSummariesByNamePrefix(String prefix, int startIndex, int limit);
+
     /**
      * Get CallFlow by ID.
      *
@@ -89,6 +102,15 @@ public interface CallFlowService extends OpenmrsService {
      */
     CallFlow findByName(String name);
 
+    /**
+     * Find a reference to a callflow by the given name, only the id of the callflow is read
+     *
+     * @param name to search by
+     * @return the reference to the callflow corresponding to the passed name, to be set on the calls
+     * @throws IllegalArgumentException if the callflow cannot be found with the given name
+     */
+    CallFlow findReferenceByName(String name);
+
     /**
      * Deletes a callflow
      *
@@ -97,4 +119,15 @@ public interface CallFlowService extends OpenmrsService {
      */
     @Authorized(PrivilegeConstants.CALLFLOWS_PRIVILEGE)
     void delete(Integer id);
+
+    /**
+     * Counts the nodes of the callflows saved before the node counts were kept, so the callflows can be listed
+     * without reading their raw callflows. The callflows are migrated in batches ordered by id, each in its own
+     * transaction.
+     *
+     * @param afterId   the id of the last callflow of the previous batch, 0 for the first batch
+     * @param batchSize the maximum number of callflows to migrate
+     * @return the id of the last callflow of this batch, null if there are no callflows left to migrate
+     */
+    Integer migrateLegacyCallFlows(Integer afterId, int batchSize);
 }
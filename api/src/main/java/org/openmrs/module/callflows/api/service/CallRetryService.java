@@ -0,0 +1,57 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.service;
+
+import org.openmrs.api.OpenmrsService;
+import org.openmrs.module.callflows.api.domain.CallRetry;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Service storing the pending retries of outbound calls, so they survive a restart
+ */
+public interface CallRetryService extends OpenmrsService {
+
+    /**
+     * Saves a pending retry in its own transaction, so it is stored even if the transaction of the failed call
+     * is still running
+     *
+     * @param retry to save
+     * @return the saved retry
+     */
+    CallRetry saveRetry(CallRetry retry);
+
+    /**
+     * Finds all pending retries, the earliest first
+     *
+     * @return a list of the pending retries
+     */
+    List<CallRetry> findAllRetries();
+
+    /**
+     * Finds the pending retries which were due before the given time, the earliest first
+     *
+     * @param fireTime the time the retries were due before
+     * @return a list of the overdue retries
+     */
+    List<CallRetry> findRetriesDueBefore(Date fireTime);
+
+    /**
+     * Deletes the retries which are about to be fired. Every node of a cluster loads all the pending retries, only
+     * the node which deleted a retry fires it.
+     *
+     * @param ids of the retries to delete
+     * @return the IDs of the retries deleted by this call, without the ones already deleted by other nodes
+     */
+    List<Integer> deleteRetries(Collection<Integer> ids);
+}
@@ -12,10 +12,13 @@ package org.openmrs.module.callflows.api.service;
 
 import org.openmrs.api.APIException;
 import org.openmrs.module.callflows.api.domain.Call;
+import org.openmrs.module.callflows.api.domain.CallFilter;
 import org.openmrs.module.callflows.api.domain.CallFlow;
 import org.openmrs.module.callflows.api.domain.types.CallDirection;
 import org.openmrs.module.callflows.api.domain.types.CallStatus;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -143,6 +146,54 @@ public interface CallService {
      */
     Call makeCall(String configName, String flowName, Map<String, Object> params);
 
+    /**
+     * Makes outbound calls to many recipients using the same IVR configuration and flow, eg: for a reminder campaign.
+     * <p></p>
+     * The flow and the configuration are resolved once, the calls of all the recipients are saved together in their own
+     * transaction with the QUEUED status and then added to the outbound call queue, from which any node of the cluster
+     * places them in the background as soon as the outbound call limit of the configuration allows.
+     * <p></p>
+     * Event: Sends a failed call event for every recipient whose call could not be queued
+     *
+     * @param configName indicating the IVR configuration to use to connect to the callers
+     * @param flowName   indicating the flow to execute first for the callees
+     * @param paramsList the parameters of every recipient, the same as the params of {@link #makeCall}
+     * @return the queued or failed call of every recipient in the order of the given params, null for recipients
+     * without a phone number
+     * @throws IllegalArgumentException if the configuration or the flow does not exist
+     */
+    List<Call> makeCalls(String configName, String flowName, List<Map<String, Object>> paramsList);
+
+    /**
+     * Saves new calls in a separate transaction ensuring they are saved in DB regardless of a result of caller's
+     * transaction.
+     *
+     * @param calls the calls to save
+     * @return the saved calls, in the same order
+     */
+    List<Call> saveCallsInOwnTransaction(List<Call> calls);
+
+    /**
+     * Moves a queued call to the OPENMRS_INITIATED status once it leased an outbound call slot of its configuration,
+     * so it counts against the outbound call limit from now on.
+     *
+     * @param callId the call ID of the call
+     * @return the activated call, the call still in the QUEUED status if no slot is free, or null if there is no
+     * queued call with the given call ID
+     */
+    Call activateQueuedCall(String callId);
+
+    /**
+     * Sends the outbound request of a created call to the IVR provider of its configuration.
+     * <p></p>
+     * Event: Sends a failed call event in case the call could not be placed for any reason
+     *
+     * @param call   the created call
+     * @param params a map of parameters containing information needed for the call to be placed
+     * @return the call placed
+     */
+    Call placeOutboundCall(Call call, Map<String, Object> params);
+
 
     /**
      * Fetch calls based on startingRecord and recordsAmount params utilizing 'retrieveAll' function
@@ -162,6 +213,39 @@ public interface CallService {
      */
     long retrieveCount();
 
+    /**
+     * Writes the CSV report of the calls matching the filter as a zip archive with up to 10,000 calls per CSV file.
+     * The calls are streamed from the database into the archive, so the report is never held in memory.
+     *
+     * @param filter       the conditions the reported calls are selected by, not null
+     * @param outputStream the stream to write the archive into, it is closed once the report is written
+     * @throws IOException if the report could not be written
+     */
+    void exportCalls(CallFilter filter, OutputStream outputStream) throws IOException;
+
+    /**
+     * Finds a page of the calls matching the filter, newest first. The next page is requested with the id of the
+     * last call of the current page, which keeps deep pages as fast as the first one.
+     *
+     * @param filter     the conditions the calls are selected by, not null
+     * @param beforeId   the id of the last call of the previous page, null for the first page
+     * @param maxResults the maximum number of calls to return
+     * @return the calls ordered by id descending
+     */
+    List<Call> findCalls(CallFilter filter, Integer beforeId, int maxResults);
+
+    /**
+     * Finds a page of the calls matching the filter like {@link #findCalls(CallFilter, Integer, int)}, loading only
+     * the plain columns of the calls. The summaries have neither flows nor context nor provider data, so the memory
+     * used by a page does not depend on the size of the flows and contexts.
+     *
+     * @param filter     the conditions the calls are selected by, not null
+     * @param beforeId   the id of the last call of the previous page, null for the first page
+     * @param maxResults the maximum number of calls to return
+     * @return the call summaries ordered by id descending
+     */
+    List<Call> findCallSummaries(CallFilter filter, Integer beforeId, int maxResults);
+
     /**
      * Persists Call entity.
      *
@@ -171,6 +255,15 @@ public interface CallService {
      */
     Call saveCall(Call call) throws APIException;
 
+    /**
+     * Writes the live state of calls kept in memory by the call session store. The calls are detached copies and are
+     * written without reading them first, only the columns changed since their
+     * persisted state are written.
+     *
+     * @param calls to write, not null
+     */
+    void saveCallSessions(List<Call> calls);
+
     /**
      * Find the call count based on the call direction and call status
      *
@@ -179,4 +272,14 @@ public interface CallService {
      * @return call count for the specified Call direction and Call status
      */
     long countFindCallsByDirectionAndStatus(CallDirection direction, Set<CallStatus> statusSet);
+
+    /**
+     * Migrates the context and provider data of calls, which are still stored in the legacy Java serialization format,
+     * to the current storage format. The calls are migrated in batches ordered by id, each in its own transaction.
+     *
+     * @param afterId   the id of the last call of the previous batch, 0 for the first batch
+     * @param batchSize the maximum number of calls to migrate
+     * @return the id of the last call of this batch, null if there are no calls left to migrate
+     */
+    Integer migrateLegacyCallData(Integer afterId, int batchSize);
 }
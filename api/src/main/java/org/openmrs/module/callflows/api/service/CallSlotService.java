@@ -0,0 +1,62 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.service;
+
+import org.openmrs.api.OpenmrsService;
+import org.openmrs.module.callflows.api.domain.Config;
+
+/**
+ * Service enforcing the outbound call limit of IVR configurations across all the nodes of a cluster. Every active
+ * outbound call holds one of the slots of its configuration, a call is placed only once it leased a free slot.
+ */
+public interface CallSlotService extends OpenmrsService {
+
+    /**
+     * Leases a free slot of a configuration to a call, in its own transaction so the slot is taken for the other
+     * nodes right away. Configurations without an outbound call limit have no slots, their calls are always let
+     * through.
+     *
+     * @param config the IVR configuration of the call
+     * @param callId the call ID of the call about to be placed
+     * @return true if the call can be placed, false if all the slots are leased
+     */
+    boolean acquireSlot(Config config, String callId);
+
+    /**
+     * Creates or deletes the slots of a configuration so that their number matches its outbound call limit. Leased
+     * slots are never deleted, they go away once they are free.
+     *
+     * @param config the IVR configuration
+     */
+    void syncSlots(Config config);
+
+    /**
+     * Extends the lease of the slot held by a call which is still active
+     *
+     * @param callId the call ID
+     */
+    void renewSlot(String callId);
+
+    /**
+     * Frees the slot held by a call which is no longer active, does nothing if the call holds no slot
+     *
+     * @param callId the call ID
+     */
+    void releaseSlot(String callId);
+
+    /**
+     * Counts the leased slots of a configuration, on all nodes
+     *
+     * @param config the IVR configuration
+     * @return the number of active outbound calls holding a slot
+     */
+    long countLeasedSlots(Config config);
+}
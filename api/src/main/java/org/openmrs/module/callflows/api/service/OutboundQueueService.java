@@ -0,0 +1,83 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.service;
+
+import org.openmrs.api.OpenmrsService;
+import org.openmrs.module.callflows.api.domain.OutboundQueueEntry;
+import org.openmrs.module.callflows.api.domain.types.OutboundQueueStatus;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service of the outbound call queue shared by all the nodes of a cluster
+ */
+public interface OutboundQueueService extends OpenmrsService {
+
+    /**
+     * Adds entries to the queue in their own transaction, so they can be claimed by other nodes right away
+     *
+     * @param entries the pending entries to add
+     * @return the saved entries, in the same order
+     */
+    List<OutboundQueueEntry> enqueue(List<OutboundQueueEntry> entries);
+
+    /**
+     * Claims the oldest pending entries of a configuration, every entry is claimed by one node only
+     *
+     * @param configName the name of the IVR configuration
+     * @param nodeId     the node claiming the entries
+     * @param maxResults the maximum number of entries to claim
+     * @return the claimed entries
+     */
+    List<OutboundQueueEntry> claim(String configName, String nodeId, int maxResults);
+
+    /**
+     * Writes back the outcome of a claimed entry
+     *
+     * @param id      of the entry
+     * @param status  either DONE or FAILED
+     * @param callId  the call ID of the placed call, may be null
+     * @param outcome the status of the call or the reason it could not be placed
+     */
+    void finish(Integer id, OutboundQueueStatus status, String callId, String outcome);
+
+    /**
+     * Puts a claimed entry back to the queue, so it is claimed again by the next poll of any node
+     *
+     * @param id of the entry
+     */
+    void release(Integer id);
+
+    /**
+     * Puts the entries claimed before the given time, by nodes which never finished them, back to the queue
+     *
+     * @param claimedBefore the claim time limit
+     * @return the number of released entries
+     */
+    int releaseExpiredClaims(Date claimedBefore);
+
+    /**
+     * Deletes the entries finished before the given time
+     *
+     * @param finishedBefore the finish time limit
+     * @return the number of deleted entries
+     */
+    int purgeFinished(Date finishedBefore);
+
+    /**
+     * Counts the pending entries of every configuration
+     *
+     * @return a map of the numbers of pending entries by configuration name
+     */
+    Map<String, Long> countPending();
+}
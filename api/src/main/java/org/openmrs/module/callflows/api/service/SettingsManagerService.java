@@ -44,4 +44,12 @@ public interface SettingsManagerService extends OpenmrsService {
      */
     boolean configurationExist(String configurationFileName);
 
+    /**
+     * Gets the time the configuration was last modified.
+     *
+     * @param configurationFileName Configuration file name
+     * @return the modification time in milliseconds since the epoch, 0 if the configuration does not exist
+     */
+    long getLastModified(String configurationFileName);
+
 }
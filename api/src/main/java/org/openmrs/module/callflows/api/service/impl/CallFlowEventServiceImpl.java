@@ -19,6 +19,7 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.Serializable;
+import java.util.List;
 import java.util.Map;
 
 /** Service to manage CallFlow Events. */
@@ -36,6 +37,15 @@ public class CallFlowEventServiceImpl extends BaseOpenmrsService implements Call
   public void sendEventMessage(CallFlowEvent event) {
     Event.fireEvent(event.getSubject(), convertParamsToEventMessage(event.getParameters()));
   }
+
+  @Override
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  public void sendEventMessages(List<CallFlowEvent> events) {
+    for (CallFlowEvent event : events) {
+      Event.fireEvent(event.getSubject(), convertParamsToEventMessage(event.getParameters()));
+    }
+  }
+
   /**
    * Coverts the Params to Event Message
    *
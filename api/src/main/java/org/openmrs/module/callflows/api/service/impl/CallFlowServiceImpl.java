@@ -10,15 +10,23 @@
 
 package org.openmrs.module.callflows.api.service.impl;
 
+import org.apache.commons.lang3.StringUtils;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.UserDAO;
 import org.openmrs.api.impl.BaseOpenmrsService;
+import org.openmrs.module.callflows.api.cache.FlowCache;
+import org.openmrs.module.callflows.api.cache.TemplateCache;
 import org.openmrs.module.callflows.api.dao.CallFlowDao;
 import org.openmrs.module.callflows.api.domain.CallFlow;
+import org.openmrs.module.callflows.api.domain.CallFlowSummary;
 import org.openmrs.module.callflows.api.service.CallFlowService;
+import org.openmrs.module.callflows.api.util.FlowCompiler;
 import org.openmrs.module.callflows.api.util.ValidationComponent;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -30,8 +38,14 @@ public class CallFlowServiceImpl extends BaseOpenmrsService implements CallFlowS
 
     private static final String ADMIN_USER = "admin";
 
+    private static final String NODES = "nodes";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
     private CallFlowDao callFlowDao;
     private ValidationComponent validationComponent;
+    private FlowCache flowCache;
+    private TemplateCache templateCache;
 
     private static final String USER_DAO_BEAN_NAME = "userDAO";
 
@@ -51,10 +65,13 @@ public class CallFlowServiceImpl extends BaseOpenmrsService implements CallFlowS
     @Transactional
     public CallFlow create(CallFlow callflow) {
         validationComponent.validate(callflow);
+        callflow.setNodeCount(countNodes(callflow.getRaw()));
+        callflow.setCompiled(FlowCompiler.compile(callflow.getRaw()));
         if (Context.isSessionOpen() && !Context.isAuthenticated()) {
             callflow.setCreator(Context.getRegisteredComponent(USER_DAO_BEAN_NAME, UserDAO.class)
                     .getUserByUsername(ADMIN_USER));
         }
+        invalidateCaches(callflow.getName());
         return callFlowDao.create(callflow);
     }
 
@@ -93,10 +110,15 @@ public class CallFlowServiceImpl extends BaseOpenmrsService implements CallFlowS
                 throw new IllegalArgumentException("Callflow not retrievable for invalid id : " + callflow.getId());
             }
         }
+        // drop the parsed flow and templates cached under the old and the new name
+        invalidateCaches(existingFlow.getName());
+        invalidateCaches(callflow.getName());
         // update the fields on the retrieved object, so that JDO correctly recognizes the object's state
         existingFlow.setName(callflow.getName());
         existingFlow.setDescription(callflow.getDescription());
         existingFlow.setRaw(callflow.getRaw());
+        existingFlow.setNodeCount(countNodes(callflow.getRaw()));
+        existingFlow.setCompiled(FlowCompiler.compile(callflow.getRaw()));
         existingFlow.setStatus(callflow.getStatus());
         return callFlowDao.update(existingFlow);
     }
@@ -113,6 +135,21 @@ public class CallFlowServiceImpl extends BaseOpenmrsService implements CallFlowS
         return callFlowDao.findAllByName(prefix);
     }
 
+    /**
+     * Finds the summaries of the CallFlows by prefix string, without reading the raw CallFlows. The CallFlows saved
+     * before the node counts were kept have no node count until they are migrated.
+     *
+     * @param prefix     String Prefix
+     * @param startIndex index of the first summary
+     * @param limit      maximum number of summaries
+     * @return Return page of CallFlow summaries
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<CallFlowSummary> findSummariesByNamePrefix(String prefix, int startIndex, int limit) {
+        return callFlowDao.findSummariesByName(prefix, startIndex, limit);
+    }
+
     /**
      * Finds the CallFlow by name string
      *
@@ -130,6 +167,16 @@ public class CallFlowServiceImpl extends BaseOpenmrsService implements CallFlowS
         }
     }
 
+    @Override
+    @Transactional(readOnly = true, noRollbackFor = IllegalArgumentException.class)
+    public CallFlow findReferenceByName(String name) {
+        Object[] version = callFlowDao.findVersionByName(name);
+        if (null == version) {
+            throw new IllegalArgumentException("Callflow cannot be found for name : " + name);
+        }
+        return callFlowDao.getReferenceById((Integer) version[0]);
+    }
+
     /**
      * Deletes the CallFlow
      *
@@ -142,6 +189,7 @@ public class CallFlowServiceImpl extends BaseOpenmrsService implements CallFlowS
         if (callflow == null) {
             throw new IllegalArgumentException("Callflow cannot be found for id : " + id);
         } else {
+            invalidateCaches(callflow.getName());
             callFlowDao.delete(callflow);
         }
     }
@@ -163,4 +211,52 @@ public class CallFlowServiceImpl extends BaseOpenmrsService implements CallFlowS
     public void setValidationComponent(ValidationComponent validationComponent) {
         this.validationComponent = validationComponent;
     }
+
+    /**
+     * Sets the Flow cache
+     *
+     * @param flowCache Flow cache
+     */
+    public void setFlowCache(FlowCache flowCache) {
+        this.flowCache = flowCache;
+    }
+
+    /**
+     * Sets the Template cache
+     *
+     * @param templateCache Template cache
+     */
+    public void setTemplateCache(TemplateCache templateCache) {
+        this.templateCache = templateCache;
+    }
+
+    @Override
+    @Transactional
+    public Integer migrateLegacyCallFlows(Integer afterId, int batchSize) {
+        Integer lastId = null;
+        for (Object[] row : callFlowDao.findRawWithoutNodeCount(afterId, batchSize)) {
+            lastId = (Integer) row[0];
+            // a callflow saved meanwhile already got its node count
+            callFlowDao.updateNodeCount(lastId, countNodes((String) row[1]));
+        }
+        return lastId;
+    }
+
+    private void invalidateCaches(String name) {
+        flowCache.invalidate(name);
+        templateCache.invalidate(name);
+    }
+
+    private static Integer countNodes(String raw) {
+        if (StringUtils.isBlank(raw)) {
+            return 0;
+        }
+        try {
+            JsonNode nodes = OBJECT_MAPPER.readTree(raw).path(NODES);
+            return nodes.isArray() ? nodes.size() : 0;
+        } catch (IOException e) {
+            // a raw call flow which can not be parsed has no nodes to run either
+            return 0;
+        }
+    }
 }
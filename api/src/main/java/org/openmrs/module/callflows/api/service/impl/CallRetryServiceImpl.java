@@ -0,0 +1,65 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.service.impl;
+
+import org.openmrs.api.impl.BaseOpenmrsService;
+import org.openmrs.module.callflows.api.dao.CallRetryDao;
+import org.openmrs.module.callflows.api.domain.CallRetry;
+import org.openmrs.module.callflows.api.service.CallRetryService;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/** Stores the pending retries of outbound calls */
+public class CallRetryServiceImpl extends BaseOpenmrsService implements CallRetryService {
+
+  private CallRetryDao callRetryDao;
+
+  @Override
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  public CallRetry saveRetry(CallRetry retry) {
+    return callRetryDao.save(retry);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public List<CallRetry> findAllRetries() {
+    return callRetryDao.findAll();
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public List<CallRetry> findRetriesDueBefore(Date fireTime) {
+    return callRetryDao.findDueBefore(fireTime);
+  }
+
+  @Override
+  @Transactional
+  public List<Integer> deleteRetries(Collection<Integer> ids) {
+    // one statement per row, so the retries deleted by other nodes in the meantime are known
+    List<Integer> deleted = new ArrayList<>(ids.size());
+    for (Integer id : ids) {
+      if (callRetryDao.deleteByIds(Collections.singleton(id)) > 0) {
+        deleted.add(id);
+      }
+    }
+    return deleted;
+  }
+
+  public void setCallRetryDao(CallRetryDao callRetryDao) {
+    this.callRetryDao = callRetryDao;
+  }
+}
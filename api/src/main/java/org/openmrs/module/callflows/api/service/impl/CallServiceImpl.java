@@ -15,35 +15,47 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.openmrs.User;
 import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.UserDAO;
+import org.openmrs.module.callflows.api.cache.CallSessionCache;
 import org.openmrs.module.callflows.api.dao.CallDao;
+import org.openmrs.module.callflows.api.dao.converter.MapConverter;
 import org.openmrs.module.callflows.api.domain.Call;
+import org.openmrs.module.callflows.api.domain.CallFilter;
 import org.openmrs.module.callflows.api.domain.CallFlow;
 import org.openmrs.module.callflows.api.domain.Config;
 import org.openmrs.module.callflows.api.domain.Constants;
+import org.openmrs.module.callflows.api.domain.OutboundQueueEntry;
 import org.openmrs.module.callflows.api.domain.flow.Flow;
 import org.openmrs.module.callflows.api.domain.types.CallDirection;
 import org.openmrs.module.callflows.api.domain.types.CallStatus;
+import org.openmrs.module.callflows.api.metrics.CallFlowMetrics;
 import org.openmrs.module.callflows.api.service.CallFlowService;
 import org.openmrs.module.callflows.api.service.CallService;
+import org.openmrs.module.callflows.api.service.CallSlotService;
 import org.openmrs.module.callflows.api.service.ConfigService;
 import org.openmrs.module.callflows.api.service.FlowService;
+import org.openmrs.module.callflows.api.util.CallReportWriter;
 import org.openmrs.module.callflows.api.util.CallUtil;
 import org.openmrs.module.callflows.api.util.DateUtil;
+import org.openmrs.module.callflows.api.util.OutboundCallDispatcher;
+import org.openmrs.module.callflows.api.util.OutboundHttpClientPool;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.naming.OperationNotSupportedException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -72,11 +84,25 @@ public class CallServiceImpl implements CallService {
 
   private static final String ADMIN_USER = "admin";
 
+  private static final MapConverter MAP_CONVERTER = new MapConverter();
+
+  private static final int CALLS_PER_REPORT_FILE = 10000;
+
+  /** The statuses of an outbound call in which it holds a slot of its configuration */
+  private static final Set<CallStatus> ACTIVE_OUTBOUND_CALL_STATUSES =
+      Collections.unmodifiableSet(
+          EnumSet.of(CallStatus.INITIATED, CallStatus.IN_PROGRESS, CallStatus.OPENMRS_INITIATED));
+
   private CallDao callDao;
   private CallFlowService callFlowService;
   private FlowService flowService;
   private ConfigService configService;
   private CallUtil callUtil;
+  private OutboundHttpClientPool httpClientPool;
+  private OutboundCallDispatcher outboundCallDispatcher;
+  private CallSlotService callSlotService;
+  private CallFlowMetrics metrics;
+  private CallSessionCache callSessionCache = new CallSessionCache();
 
   private static final String USER_DAO_BEAN_NAME = "userDAO";
 
@@ -111,6 +137,41 @@ public class CallServiceImpl implements CallService {
       String playedMessages,
       String refKey,
       Map<String, Object> params) {
+    Call call =
+        newCall(
+            config,
+            callFlowService.getCallFlow(start.getId()),
+            startNode,
+            direction,
+            actorId,
+            actorType,
+            externalId,
+            externalType,
+            playedMessages,
+            refKey,
+            params);
+
+    User creator = findCreator();
+    if (creator != null) {
+      call.setCreator(creator);
+    }
+
+    return callDao.saveCall(call);
+  }
+
+  @SuppressWarnings("PMD.ExcessiveParameterList")
+  private Call newCall(
+      String config,
+      CallFlow startFlow,
+      String startNode,
+      CallDirection direction,
+      String actorId,
+      String actorType,
+      String externalId,
+      String externalType,
+      String playedMessages,
+      String refKey,
+      Map<String, Object> params) {
 
     // Create a new call
     Call call = new Call();
@@ -119,11 +180,13 @@ public class CallServiceImpl implements CallService {
     call.setConfig(config);
 
     // with these start properties
-    call.setStartFlow(callFlowService.getCallFlow(start.getId()));
+    call.setStartFlow(startFlow);
+    call.setStartFlowName(startFlow.getName());
     call.setStartNode(startNode);
 
     // and since we are creating a new call, our start and end properties are very similar
     call.setEndFlow(call.getStartFlow());
+    call.setEndFlowName(call.getStartFlowName());
     call.setEndNode(startNode);
 
     // The call direction
@@ -153,13 +216,15 @@ public class CallServiceImpl implements CallService {
     // and finally the call status
     call.setStatus(determineStatus(direction));
 
+    return call;
+  }
+
+  private User findCreator() {
     if (Context.isSessionOpen() && !Context.isAuthenticated()) {
-      call.setCreator(
-          Context.getRegisteredComponent(USER_DAO_BEAN_NAME, UserDAO.class)
-              .getUserByUsername(ADMIN_USER));
+      return Context.getRegisteredComponent(USER_DAO_BEAN_NAME, UserDAO.class)
+          .getUserByUsername(ADMIN_USER);
     }
-
-    return callDao.saveCall(call);
+    return null;
   }
 
   @Override
@@ -227,16 +292,34 @@ public class CallServiceImpl implements CallService {
   @Override
   @Transactional
   public Call update(Call call) {
-    Call currentCall = callDao.findById(call.getId());
+    // the live state of the call is updated in memory and written behind, if it has a session
+    Call cachedCall =
+        callSessionCache.update(call.getCallId(), currentCall -> applyUpdate(currentCall, call));
+    if (cachedCall != null) {
+      return cachedCall;
+    }
+
+    Call currentCall = callDao.findForUpdate(call);
 
     if (null == currentCall) {
       throw new IllegalArgumentException("Invalid call {} " + call);
     }
+    applyUpdate(currentCall, call);
+
+    // update in the database, only the columns which changed are written
+    callDao.updateChanges(currentCall);
+    updateSlot(currentCall);
+    callSessionCache.open(currentCall);
+    return currentCall;
+  }
+
+  private void applyUpdate(Call currentCall, Call call) {
     // We can't allow updation of the start properties AND the callID AND the config
     // as those are write-once
 
     // We can update the end properties
     currentCall.setEndFlow(call.getEndFlow());
+    currentCall.setEndFlowName(call.getEndFlowName());
     currentCall.setEndNode(call.getEndNode());
 
     // AND parameters we were passed
@@ -284,9 +367,6 @@ public class CallServiceImpl implements CallService {
 
     // update played messages
     currentCall.setPlayedMessages(call.getPlayedMessages());
-
-    // update in the database
-    return callDao.saveCall(currentCall);
   }
 
   /**
@@ -298,7 +378,12 @@ public class CallServiceImpl implements CallService {
   @Override
   @Transactional(readOnly = true)
   public Call findByCallId(String callId) {
-    return callDao.findByCallId(callId);
+    Call call = callSessionCache.get(callId);
+    if (call == null) {
+      call = callDao.findByCallId(callId);
+      callSessionCache.open(call);
+    }
+    return call;
   }
 
   /**
@@ -360,10 +445,10 @@ public class CallServiceImpl implements CallService {
 
       // Pre Request Hook, will throw OperationNotAllowed which will pass through to the exception
       // handler
-      callUtil.checkCallCanBePlaced(this, call, config, params);
+      callUtil.checkCallCanBePlaced(call, config, params);
 
       HttpUriRequest request = callUtil.buildOutboundRequest(phone, call, config, params);
-      call = makeOutboundRequest(request, call, params);
+      call = makeOutboundRequest(request, call, config, params);
     } catch (OperationNotSupportedException ose) {
       LOGGER.error(
           String.format(
@@ -388,6 +473,117 @@ public class CallServiceImpl implements CallService {
     return call;
   }
 
+  @Override
+  @Transactional
+  public List<Call> makeCalls(
+      String configName, String flowName, List<Map<String, Object>> paramsList) {
+    CallFlow callFlow = callFlowService.findByName(flowName);
+    Config config = configService.getConfig(configName);
+    Flow flow = flowService.load(flowName);
+    User creator = findCreator();
+
+    List<Call> calls = new ArrayList<>(paramsList.size());
+    List<Call> queuedCalls = new ArrayList<>(paramsList.size());
+    List<Map<String, Object>> queuedParams = new ArrayList<>(paramsList.size());
+    for (Map<String, Object> params : paramsList) {
+      String phone = (String) params.get(Constants.PARAM_PHONE);
+      if (StringUtils.isEmpty(phone)) {
+        handleError(
+            null, "Empty Phone no while initiating a outbound call for flow " + flowName, params);
+        calls.add(null);
+        continue;
+      }
+      Call call = newOutboundCall(phone, callFlow, flow, config, params);
+      call.setStatus(CallStatus.QUEUED);
+      if (creator != null) {
+        call.setCreator(creator);
+      }
+      calls.add(call);
+      queuedCalls.add(call);
+      queuedParams.add(params);
+    }
+
+    // the calls must be committed before they are placed, as the IVR provider calls back right away
+    List<Call> savedCalls =
+        Context.getService(CallService.class).saveCallsInOwnTransaction(queuedCalls);
+
+    List<OutboundQueueEntry> entries = new ArrayList<>(savedCalls.size());
+    for (int i = 0; i < savedCalls.size(); i++) {
+      entries.add(
+          new OutboundQueueEntry(
+              config.getName(), flowName, savedCalls.get(i).getCallId(), queuedParams.get(i)));
+    }
+    RuntimeException queueError = null;
+    try {
+      outboundCallDispatcher.enqueue(entries);
+    } catch (RuntimeException e) {
+      LOGGER.error(
+          String.format(
+              "Outbound calls not queued for flow: %s, config: %s", flowName, configName),
+          e);
+      queueError = e;
+    }
+
+    int queued = 0;
+    for (int i = 0; i < calls.size(); i++) {
+      if (calls.get(i) == null) {
+        continue;
+      }
+      Call call = savedCalls.get(queued);
+      Map<String, Object> params = queuedParams.get(queued);
+      queued++;
+      if (queueError != null) {
+        call =
+            handleError(
+                call, "Outbound call could not be queued: " + queueError.getMessage(), params);
+      }
+      calls.set(i, call);
+    }
+    LOGGER.debug(
+        String.format(
+            "Queued %d of %d outbound calls for flow: %s, config: %s",
+            queueError == null ? queued : 0, paramsList.size(), flowName, configName));
+    return calls;
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  public List<Call> saveCallsInOwnTransaction(List<Call> calls) {
+    return callDao.saveCalls(calls);
+  }
+
+  @Override
+  @Transactional
+  public Call activateQueuedCall(String callId) {
+    Call call = callDao.findByCallId(callId);
+    if (call == null || call.getStatus() != CallStatus.QUEUED) {
+      return null;
+    }
+    if (!callSlotService.acquireSlot(configService.getConfig(call.getConfig()), callId)) {
+      return call;
+    }
+    call.setStatus(CallStatus.OPENMRS_INITIATED);
+    return saveCall(call);
+  }
+
+  @Override
+  @Transactional
+  public Call placeOutboundCall(Call call, Map<String, Object> params) {
+    String phone = (String) params.get(Constants.PARAM_PHONE);
+    try {
+      Config config = configService.getConfig(call.getConfig());
+      HttpUriRequest request = callUtil.buildOutboundRequest(phone, call, config, params);
+      return makeOutboundRequest(request, call, config, params);
+    } catch (Exception e) {
+      LOGGER.error(
+          String.format(
+              "Outbound call %s not made for config: %s, phone: %s",
+              call.getCallId(), call.getConfig(), phone),
+          e);
+      return handleError(call, e.getMessage(), params);
+    }
+  }
+
   /**
    * Fetch calls based on startingRecord and recordsAmount params utilizing 'retrieveAll' function
    * Hibernate uses number of record from which we want to start fetching data (first record has
@@ -414,10 +610,44 @@ public class CallServiceImpl implements CallService {
     return callDao.count();
   }
 
+  @Override
+  @Transactional(readOnly = true)
+  public void exportCalls(CallFilter filter, OutputStream outputStream) throws IOException {
+    try (CallReportWriter reportWriter =
+        new CallReportWriter(outputStream, CALLS_PER_REPORT_FILE)) {
+      callDao.visitReportCalls(filter, reportWriter::write);
+    }
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public List<Call> findCalls(CallFilter filter, Integer beforeId, int maxResults) {
+    return callDao.findCalls(filter, beforeId, maxResults);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public List<Call> findCallSummaries(CallFilter filter, Integer beforeId, int maxResults) {
+    return callDao.findCallSummaries(filter, beforeId, maxResults);
+  }
+
   @Override
   @Transactional
   public Call saveCall(Call call) throws APIException {
-    return callDao.saveCall(call);
+    Call savedCall = callDao.saveCall(call);
+    updateSlot(savedCall);
+    callSessionCache.replace(savedCall);
+    return savedCall;
+  }
+
+  @Override
+  @Transactional
+  public void saveCallSessions(List<Call> calls) {
+    for (Call call : calls) {
+      callDao.updateChanges(call);
+      // the sessions are written periodically and once their calls end, which renews or frees their slots
+      updateSlot(call);
+    }
   }
 
   @Override
@@ -427,6 +657,42 @@ public class CallServiceImpl implements CallService {
     return callDao.countFindCallsByDirectionAndStatus(direction, statusSet);
   }
 
+  @Override
+  @Transactional
+  public Integer migrateLegacyCallData(Integer afterId, int batchSize) {
+    Integer lastId = null;
+    for (Object[] row : callDao.findLegacyEncodedData(afterId, batchSize)) {
+      lastId = ((Number) row[0]).intValue();
+      byte[] context = (byte[]) row[1];
+      byte[] providerData = (byte[]) row[2];
+      byte[] migratedContext = MAP_CONVERTER.migrate(context);
+      byte[] migratedProviderData = MAP_CONVERTER.migrate(providerData);
+      if ((migratedContext != context || migratedProviderData != providerData)
+          && !callDao.updateEncodedData(
+              lastId, context, providerData, migratedContext, migratedProviderData)) {
+        // the call was updated since it was read, which already wrote its data in the current format
+        LOGGER.debug(String.format("Skipped the migration of the data of the updated call %d", lastId));
+      }
+    }
+    return lastId;
+  }
+
+  private void updateSlot(Call call) {
+    if (call == null
+        || call.getDirection() != CallDirection.OUTGOING
+        || call.getStatus() == CallStatus.QUEUED
+        || !configService.hasConfig(call.getConfig())
+        || configService.getConfig(call.getConfig()).getOutboundCallLimit() <= 0) {
+      return;
+    }
+    // the slot follows the status of the call and is written in the same transaction
+    if (ACTIVE_OUTBOUND_CALL_STATUSES.contains(call.getStatus())) {
+      callSlotService.renewSlot(call.getCallId());
+    } else {
+      callSlotService.releaseSlot(call.getCallId());
+    }
+  }
+
   private Call handleError(Call callUnsafe, String reason, Map<String, Object> params) {
     LOGGER.error(String.format("call %s failed with reason %s", callUnsafe, reason));
     // update call failed status
@@ -491,10 +757,35 @@ public class CallServiceImpl implements CallService {
             context);
   }
 
-  private Call makeOutboundRequest(HttpUriRequest request, Call call, Map<String, Object> params)
+  private Call newOutboundCall(
+      String phone, CallFlow callFlow, Flow flow, Config config, Map<String, Object> params) {
+    Map<String, Object> context = new HashMap<>(params);
+
+    // Maintain a internal context
+    Map<String, String> internalContext = new HashMap<>();
+    internalContext.put(Constants.PARAM_PHONE, phone);
+    internalContext.put(Constants.PARAM_JUMP_TO, flow.getName());
+    context.put(Constants.PARAM_INTERNAL, internalContext);
+
+    return newCall(
+        config.getName(),
+        callFlow,
+        flow.getNodes().get(0).getStep(),
+        CallDirection.OUTGOING,
+        (String) params.get(Constants.PARAM_ACTOR_ID),
+        (String) params.get(Constants.PARAM_ACTOR_TYPE),
+        (String) params.get(Constants.PARAM_EXTERNAL_ID),
+        (String) params.get(Constants.PARAM_EXTERNAL_TYPE),
+        (String) params.get(Constants.PARAM_PLAYED_MESSAGES),
+        (String) params.get(Constants.PARAM_REF_KEY),
+        context);
+  }
+
+  private Call makeOutboundRequest(
+      HttpUriRequest request, Call call, Config config, Map<String, Object> params)
       throws IOException {
-    try (CloseableHttpClient httpClient = HttpClientBuilder.create().build()) {
-      HttpResponse response = httpClient.execute(request);
+    // the client is shared, closing the response returns its connection to the pool
+    try (CloseableHttpResponse response = executeOutboundRequest(request, config)) {
 
       LOGGER.debug(
           String.format(
@@ -527,6 +818,25 @@ public class CallServiceImpl implements CallService {
     }
   }
 
+  private CloseableHttpResponse executeOutboundRequest(HttpUriRequest request, Config config)
+      throws IOException {
+    long start = System.nanoTime();
+    String status = "error";
+    try {
+      CloseableHttpResponse response = httpClientPool.getClient(config).execute(request);
+      status = String.valueOf(response.getStatusLine().getStatusCode());
+      return response;
+    } finally {
+      metrics.recordTime(
+          CallFlowMetrics.OUTBOUND_REQUEST_SECONDS,
+          System.nanoTime() - start,
+          "config",
+          config.getName(),
+          "status",
+          status);
+    }
+  }
+
   private boolean isFailedContent(String content) {
     return content != null
         && (content.toLowerCase().contains(FAILURE) || content.toLowerCase().contains(FAILED));
@@ -584,4 +894,49 @@ public class CallServiceImpl implements CallService {
   public void setCallUtil(CallUtil callUtil) {
     this.callUtil = callUtil;
   }
+
+  /**
+   * Sets the pool of HTTP clients used to place outbound calls
+   *
+   * @param httpClientPool HTTP client pool
+   */
+  public void setHttpClientPool(OutboundHttpClientPool httpClientPool) {
+    this.httpClientPool = httpClientPool;
+  }
+
+  /**
+   * Sets the dispatcher of the outbound call queue
+   *
+   * @param outboundCallDispatcher outbound call dispatcher
+   */
+  public void setOutboundCallDispatcher(OutboundCallDispatcher outboundCallDispatcher) {
+    this.outboundCallDispatcher = outboundCallDispatcher;
+  }
+
+  /**
+   * Sets the service of the outbound call slots shared by the cluster
+   *
+   * @param callSlotService call slot service
+   */
+  public void setCallSlotService(CallSlotService callSlotService) {
+    this.callSlotService = callSlotService;
+  }
+
+  /**
+   * Sets the metrics registry the outbound requests are recorded to
+   *
+   * @param metrics metrics registry
+   */
+  public void setMetrics(CallFlowMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Sets the in-memory store of the live state of the calls in progress
+   *
+   * @param callSessionCache call session store
+   */
+  public void setCallSessionCache(CallSessionCache callSessionCache) {
+    this.callSessionCache = callSessionCache;
+  }
 }
@@ -0,0 +1,146 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.service.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.impl.BaseOpenmrsService;
+import org.openmrs.module.callflows.api.dao.CallSlotDao;
+import org.openmrs.module.callflows.api.domain.CallSlot;
+import org.openmrs.module.callflows.api.domain.Config;
+import org.openmrs.module.callflows.api.service.CallSlotService;
+import org.openmrs.module.callflows.api.util.DateUtil;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/** Leases the outbound call slots shared by all the nodes of a cluster */
+public class CallSlotServiceImpl extends BaseOpenmrsService implements CallSlotService {
+
+  private static final Log LOGGER = LogFactory.getLog(CallSlotServiceImpl.class);
+
+  private static final int DEFAULT_LEASE_SECONDS = 60 * 60;
+
+  private static final int MAX_CANDIDATES = 10;
+
+  private final ConcurrentMap<String, Integer> syncedLimits = new ConcurrentHashMap<>();
+
+  private CallSlotDao callSlotDao;
+
+  private int leaseSeconds = DEFAULT_LEASE_SECONDS;
+
+  private String nodeId = ManagementFactory.getRuntimeMXBean().getName();
+
+  @Override
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  public boolean acquireSlot(Config config, String callId) {
+    int limit = config.getOutboundCallLimit();
+    if (limit <= 0) {
+      return true;
+    }
+    if (!Integer.valueOf(limit).equals(syncedLimits.get(config.getName()))) {
+      try {
+        Context.getService(CallSlotService.class).syncSlots(config);
+        syncedLimits.put(config.getName(), limit);
+      } catch (RuntimeException e) {
+        // most likely another node created the same slots at the same time, synced again by the next call
+        LOGGER.warn(String.format("Slots of config %s could not be synced", config.getName()), e);
+      }
+    }
+
+    Date now = DateUtil.now();
+    Date leasedUntil = DateUtil.plusSeconds(now, leaseSeconds);
+    List<Integer> candidates =
+        new ArrayList<>(callSlotDao.findFreeSlotIds(config.getName(), limit, now, MAX_CANDIDATES));
+    // nodes acquiring at the same time mostly try different rows instead of waiting for each other
+    Collections.shuffle(candidates);
+    for (Integer id : candidates) {
+      if (callSlotDao.lease(id, callId, nodeId, now, leasedUntil)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  public void syncSlots(Config config) {
+    int limit = Math.max(config.getOutboundCallLimit(), 0);
+    Set<Integer> existing = new HashSet<>(callSlotDao.findSlotNumbers(config.getName()));
+    List<CallSlot> missing = new ArrayList<>();
+    for (int slotNumber = 0; slotNumber < limit; slotNumber++) {
+      if (!existing.contains(slotNumber)) {
+        missing.add(new CallSlot(config.getName(), slotNumber));
+      }
+    }
+    if (!missing.isEmpty()) {
+      callSlotDao.saveSlots(missing);
+    }
+    int deleted = callSlotDao.deleteFreeSlots(config.getName(), limit, DateUtil.now());
+    LOGGER.info(
+        String.format(
+            "Synced slots of config %s to %d: %d created, %d deleted",
+            config.getName(), limit, missing.size(), deleted));
+  }
+
+  @Override
+  @Transactional
+  public void renewSlot(String callId) {
+    callSlotDao.renew(callId, DateUtil.plusSeconds(DateUtil.now(), leaseSeconds));
+  }
+
+  @Override
+  @Transactional
+  public void releaseSlot(String callId) {
+    callSlotDao.release(callId);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public long countLeasedSlots(Config config) {
+    if (config.getOutboundCallLimit() <= 0) {
+      return 0L;
+    }
+    return callSlotDao.countLeased(config.getName(), config.getOutboundCallLimit(), DateUtil.now());
+  }
+
+  public void setCallSlotDao(CallSlotDao callSlotDao) {
+    this.callSlotDao = callSlotDao;
+  }
+
+  /**
+   * Sets how long a slot stays leased to a call which is not saved anymore, e.g. because its node crashed
+   *
+   * @param leaseSeconds the lease duration in seconds
+   */
+  public void setLeaseSeconds(int leaseSeconds) {
+    this.leaseSeconds = leaseSeconds;
+  }
+
+  /**
+   * Sets the name of this node, stored with the slots it leases
+   *
+   * @param nodeId the node name
+   */
+  public void setNodeId(String nodeId) {
+    this.nodeId = nodeId;
+  }
+}
@@ -10,6 +10,7 @@
 
 package org.openmrs.module.callflows.api.service.impl;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonIOException;
@@ -29,16 +30,25 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Configuration Service Implementation
  *
+ * <p>The settings are held in an immutable snapshot which is replaced as a whole on every change, so
+ * the lookups done on every IVR request never lock and never see a half loaded settings file. The
+ * settings file is watched for changes made outside of this service and reloaded in the background.
+ *
  * @author bramak09
  */
 @Transactional(propagation = Propagation.NOT_SUPPORTED)
@@ -46,18 +56,65 @@ public class ConfigServiceImpl extends BaseOpenmrsService implements ConfigServi
 
   private static final Log LOGGER = LogFactory.getLog(ConfigServiceImpl.class);
 
+  private static final long DEFAULT_WATCH_INTERVAL_SECONDS = 10L;
+
   private SettingsManagerService settingsManagerService;
 
-  private Settings settings = new Settings();
+  private volatile SettingsSnapshot snapshot = new SettingsSnapshot(new Settings());
+
+  /** The modification time of the settings file seen by the last check, loaded or not */
+  private volatile long lastSeenModified;
 
-  private Map<String, Config> configs = new LinkedHashMap<>();
+  private long watchIntervalSeconds = DEFAULT_WATCH_INTERVAL_SECONDS;
 
-  private Map<String, Renderer> renderers = new LinkedHashMap<>();
+  private ScheduledExecutorService watcher;
 
-  /** Initializes and loads the Settings. */
+  /** Initializes and loads the Settings, then starts watching the settings file for changes. */
   @PostConstruct
   public void initialize() {
     loadSettings();
+    if (watchIntervalSeconds > 0) {
+      watcher =
+          Executors.newSingleThreadScheduledExecutor(
+              new ThreadFactoryBuilder()
+                  .setNameFormat("callflows-settings-watcher")
+                  .setDaemon(true)
+                  .build());
+      watcher.scheduleWithFixedDelay(
+          this::reloadIfModified, watchIntervalSeconds, watchIntervalSeconds, TimeUnit.SECONDS);
+    }
+  }
+
+  /** Stops watching the settings file. */
+  @PreDestroy
+  public void shutdown() {
+    if (watcher != null) {
+      watcher.shutdownNow();
+      watcher = null;
+    }
+  }
+
+  /**
+   * Reloads the settings if the settings file was changed since it was last seen. A file which can
+   * not be parsed is reported once and the current settings are kept until the file is fixed.
+   */
+  public void reloadIfModified() {
+    long modified = settingsManagerService.getLastModified(CallFlowConstants.CONFIG_FILE_NAME);
+    if (modified == lastSeenModified) {
+      return;
+    }
+    try {
+      LOGGER.info(
+          String.format("%s changed, reloading settings", CallFlowConstants.CONFIG_FILE_NAME));
+      loadSettings();
+    } catch (RuntimeException e) {
+      lastSeenModified = modified;
+      LOGGER.error(
+          String.format(
+              "Could not reload %s, keeping the current settings",
+              CallFlowConstants.CONFIG_FILE_NAME),
+          e);
+    }
   }
 
   /**
@@ -69,8 +126,9 @@ public class ConfigServiceImpl extends BaseOpenmrsService implements ConfigServi
    */
   @Override
   public Config getConfig(String name) {
-    if (configs.containsKey(name)) {
-      return configs.get(name);
+    Config config = snapshot.configs.get(name);
+    if (config != null) {
+      return config;
     }
     String message = String.format("Unknown config: '%s'.", name);
     throw new IllegalArgumentException(message);
@@ -83,7 +141,7 @@ public class ConfigServiceImpl extends BaseOpenmrsService implements ConfigServi
    */
   @Override
   public List<Config> allConfigs() {
-    return new ArrayList<>(configs.values());
+    return new ArrayList<>(snapshot.configs.values());
   }
 
   /**
@@ -94,7 +152,7 @@ public class ConfigServiceImpl extends BaseOpenmrsService implements ConfigServi
    */
   @Override
   public boolean hasConfig(String name) {
-    return configs.containsKey(name);
+    return snapshot.configs.containsKey(name);
   }
 
   /**
@@ -103,8 +161,10 @@ public class ConfigServiceImpl extends BaseOpenmrsService implements ConfigServi
    * @param configs a list of configurations
    */
   @Override
-  public void updateConfigs(List<Config> configs) {
-    settings.setConfigs(configs);
+  public synchronized void updateConfigs(List<Config> configs) {
+    Settings settings = new Settings();
+    settings.setConfigs(new ArrayList<>(configs));
+    settings.setRenderers(snapshot.settings.getRenderers());
     updateSettings(settings);
   }
 
@@ -116,7 +176,7 @@ public class ConfigServiceImpl extends BaseOpenmrsService implements ConfigServi
    */
   @Override
   public boolean hasRenderer(String name) {
-    return renderers.containsKey(name);
+    return snapshot.renderers.containsKey(name);
   }
 
   /**
@@ -128,8 +188,9 @@ public class ConfigServiceImpl extends BaseOpenmrsService implements ConfigServi
    */
   @Override
   public Renderer getRenderer(String name) {
-    if (renderers.containsKey(name)) {
-      return renderers.get(name);
+    Renderer renderer = snapshot.renderers.get(name);
+    if (renderer != null) {
+      return renderer;
     }
     String message = String.format("Unknown config: '%s'.", name);
     throw new IllegalArgumentException(message);
@@ -142,7 +203,7 @@ public class ConfigServiceImpl extends BaseOpenmrsService implements ConfigServi
    */
   @Override
   public List<Renderer> allRenderers() {
-    return new ArrayList<Renderer>(renderers.values());
+    return new ArrayList<Renderer>(snapshot.renderers.values());
   }
 
   /**
@@ -151,8 +212,10 @@ public class ConfigServiceImpl extends BaseOpenmrsService implements ConfigServi
    * @param renderers a list of renderers
    */
   @Override
-  public void updateRenderers(List<Renderer> renderers) {
-    settings.setRenderers(renderers);
+  public synchronized void updateRenderers(List<Renderer> renderers) {
+    Settings settings = new Settings();
+    settings.setConfigs(snapshot.settings.getConfigs());
+    settings.setRenderers(new ArrayList<>(renderers));
     updateSettings(settings);
   }
 
@@ -161,20 +224,20 @@ public class ConfigServiceImpl extends BaseOpenmrsService implements ConfigServi
     String jsonText = gson.toJson(settings);
     ByteArrayResource resource = new ByteArrayResource(jsonText.getBytes());
     settingsManagerService.saveRawConfig(CallFlowConstants.CONFIG_FILE_NAME, resource);
-    loadSettings();
+    // the written settings are published as they are, there is no need to read them back
+    publish(settings, settingsManagerService.getLastModified(CallFlowConstants.CONFIG_FILE_NAME));
   }
 
   private synchronized void loadSettings() {
-    List<Config> configList;
-    List<Renderer> rendererList;
+    Settings settings;
     loadDefaultConfigurationIfNotExists(CallFlowConstants.CONFIG_FILE_NAME);
+    // read before the content, so a change made while reading is picked up by the next check
+    long modified = settingsManagerService.getLastModified(CallFlowConstants.CONFIG_FILE_NAME);
     try (InputStream is = settingsManagerService.getRawConfig(CallFlowConstants.CONFIG_FILE_NAME)) {
       String jsonText = IOUtils.toString(is);
       LOGGER.debug(String.format("Loading %s", CallFlowConstants.CONFIG_FILE_NAME));
       Gson gson = new Gson();
       settings = gson.fromJson(jsonText, Settings.class);
-      configList = settings.getConfigs();
-      rendererList = settings.getRenderers();
     } catch (Exception e) {
       String message =
           String.format(
@@ -182,16 +245,12 @@ public class ConfigServiceImpl extends BaseOpenmrsService implements ConfigServi
               CallFlowConstants.CONFIG_FILE_NAME, e.getMessage());
       throw new JsonIOException(message, e);
     }
+    publish(settings, modified);
+  }
 
-    configs = new LinkedHashMap<>();
-    for (Config config : configList) {
-      configs.put(config.getName(), config);
-    }
-
-    renderers = new LinkedHashMap<>();
-    for (Renderer renderer : rendererList) {
-      renderers.put(renderer.getName(), renderer);
-    }
+  private void publish(Settings settings, long modified) {
+    snapshot = new SettingsSnapshot(settings);
+    lastSeenModified = modified;
   }
 
   private void loadDefaultConfigurationIfNotExists(String filename) {
@@ -221,4 +280,46 @@ public class ConfigServiceImpl extends BaseOpenmrsService implements ConfigServi
   public void setSettingsManagerService(SettingsManagerService settingsManagerService) {
     this.settingsManagerService = settingsManagerService;
   }
+
+  /**
+   * Sets how often the settings file is checked for changes
+   *
+   * @param watchIntervalSeconds the interval in seconds, 0 to not watch the file
+   */
+  public void setWatchIntervalSeconds(long watchIntervalSeconds) {
+    this.watchIntervalSeconds = watchIntervalSeconds;
+  }
+
+  /** Immutable view of the loaded settings, indexed by name */
+  private static final class SettingsSnapshot {
+
+    private final Settings settings;
+
+    private final Map<String, Config> configs;
+
+    private final Map<String, Renderer> renderers;
+
+    private SettingsSnapshot(Settings settings) {
+      List<Config> configList =
+          settings.getConfigs() == null ? new ArrayList<Config>() : settings.getConfigs();
+      List<Renderer> rendererList =
+          settings.getRenderers() == null ? new ArrayList<Renderer>() : settings.getRenderers();
+
+      Map<String, Config> configMap = new LinkedHashMap<>();
+      for (Config config : configList) {
+        configMap.put(config.getName(), config);
+      }
+      Map<String, Renderer> rendererMap = new LinkedHashMap<>();
+      for (Renderer renderer : rendererList) {
+        rendererMap.put(renderer.getName(), renderer);
+      }
+
+      Settings copy = new Settings();
+      copy.setConfigs(Collections.unmodifiableList(new ArrayList<>(configList)));
+      copy.setRenderers(Collections.unmodifiableList(new ArrayList<>(rendererList)));
+      this.settings = copy;
+      this.configs = Collections.unmodifiableMap(configMap);
+      this.renderers = Collections.unmodifiableMap(rendererMap);
+    }
+  }
 }
@@ -15,14 +15,16 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.velocity.VelocityContext;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.openmrs.api.impl.BaseOpenmrsService;
-import org.openmrs.module.callflows.api.domain.CallFlow;
+import org.openmrs.module.callflows.api.cache.FlowCache;
+import org.openmrs.module.callflows.api.dao.CallFlowDao;
 import org.openmrs.module.callflows.api.domain.FlowPosition;
 import org.openmrs.module.callflows.api.domain.FlowStep;
 import org.openmrs.module.callflows.api.domain.flow.Flow;
 import org.openmrs.module.callflows.api.domain.flow.Node;
 import org.openmrs.module.callflows.api.domain.flow.SystemNode;
-import org.openmrs.module.callflows.api.service.CallFlowService;
+import org.openmrs.module.callflows.api.metrics.CallFlowMetrics;
 import org.openmrs.module.callflows.api.service.FlowService;
+import org.openmrs.module.callflows.api.util.FlowCompiler;
 import org.openmrs.module.callflows.api.util.FlowUtil;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -52,8 +54,10 @@ public class FlowServiceImpl extends BaseOpenmrsService implements FlowService {
 
   private static final String VELOCITY = "velocity";
 
-  private CallFlowService callFlowService;
+  private CallFlowDao callFlowDao;
   private FlowUtil flowUtil;
+  private FlowCache flowCache;
+  private CallFlowMetrics metrics;
 
   private ObjectMapper objectMapper = new ObjectMapper();
 
@@ -100,7 +104,9 @@ public class FlowServiceImpl extends BaseOpenmrsService implements FlowService {
   }
 
   /**
-   * Loads a flow by a given name
+   * Loads a flow by a given name. Only the id and version of the call flow are read to serve the
+   * parsed flow from the flow cache, otherwise the compiled flow is read, loaded and cached. The raw
+   * JSON is read and parsed only if the call flow was not compiled.
    *
    * @param name to search
    * @return the flow
@@ -109,9 +115,18 @@ public class FlowServiceImpl extends BaseOpenmrsService implements FlowService {
   @Override
   @Transactional(readOnly = true, noRollbackFor = IllegalArgumentException.class)
   public Flow load(String name) {
-    CallFlow callFlow = callFlowService.findByName(name);
-    if (callFlow != null) {
-      return loadByJson(callFlow.getRaw());
+    Object[] version = callFlowDao.findVersionByName(name);
+    if (version != null) {
+      Integer id = (Integer) version[0];
+      Flow flow = flowCache.get(name, id, (Integer) version[1]);
+      if (flow == null) {
+        flow = FlowCompiler.load(callFlowDao.findCompiledById(id));
+        if (flow == null) {
+          flow = loadByJson(callFlowDao.findRawById(id));
+        }
+        flowCache.put(name, id, (Integer) version[1], flow);
+      }
+      return flow;
     } else {
       throw new IllegalArgumentException("Unable to load Flow : " + name);
     }
@@ -179,7 +194,15 @@ public class FlowServiceImpl extends BaseOpenmrsService implements FlowService {
         }
         visited.add(currentNode);
         LOGGER.debug(String.format("evalNode:[LOOP] %s of flow %s ", currentNode, currentFlow));
+        long nodeStart = System.nanoTime();
         output = flowUtil.evalNode(currentFlow, currentNode, context, VELOCITY);
+        metrics.recordTime(
+            CallFlowMetrics.FLOW_NODE_SECONDS,
+            System.nanoTime() - nodeStart,
+            "flow",
+            currentFlow.getName(),
+            "node",
+            currentNode.getStep());
         LOGGER.debug(String.format("evalNode:[LOOP] %s --> %s ", currentNode, output));
         FlowStep flowStep = parse(output, currentFlow);
 
@@ -190,6 +213,10 @@ public class FlowServiceImpl extends BaseOpenmrsService implements FlowService {
       LOGGER.error(e.getMessage(), e);
       return buildFlowPosition(
           startFlow, currentFlow, startNode, currentNode, visited, output, true);
+    } finally {
+      metrics.increment(CallFlowMetrics.FLOW_EVALUATIONS_TOTAL, 1, "flow", startFlow.getName());
+      metrics.increment(
+          CallFlowMetrics.FLOW_JUMPS_TOTAL, visited.size(), "flow", startFlow.getName());
     }
     LOGGER.debug(String.format("evalNode:[END] %s of flow %s ", currentNode, currentFlow));
     return buildFlowPosition(
@@ -223,12 +250,12 @@ public class FlowServiceImpl extends BaseOpenmrsService implements FlowService {
   }
 
   /**
-   * Sets the CallFlow service
+   * Sets the CallFlow DAO
    *
-   * @param callFlowService to set
+   * @param callFlowDao to set
    */
-  public void setCallFlowService(CallFlowService callFlowService) {
-    this.callFlowService = callFlowService;
+  public void setCallFlowDao(CallFlowDao callFlowDao) {
+    this.callFlowDao = callFlowDao;
   }
 
   /**
@@ -239,4 +266,22 @@ public class FlowServiceImpl extends BaseOpenmrsService implements FlowService {
   public void setFlowUtil(FlowUtil flowUtil) {
     this.flowUtil = flowUtil;
   }
+
+  /**
+   * Sets the Flow Cache
+   *
+   * @param flowCache to set
+   */
+  public void setFlowCache(FlowCache flowCache) {
+    this.flowCache = flowCache;
+  }
+
+  /**
+   * Sets the metrics registry the node evaluations are recorded to
+   *
+   * @param metrics to set
+   */
+  public void setMetrics(CallFlowMetrics metrics) {
+    this.metrics = metrics;
+  }
 }
@@ -0,0 +1,86 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.service.impl;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openmrs.api.impl.BaseOpenmrsService;
+import org.openmrs.module.callflows.api.dao.OutboundQueueDao;
+import org.openmrs.module.callflows.api.domain.OutboundQueueEntry;
+import org.openmrs.module.callflows.api.domain.types.OutboundQueueStatus;
+import org.openmrs.module.callflows.api.service.OutboundQueueService;
+import org.openmrs.module.callflows.api.util.DateUtil;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/** Stores the outbound call queue shared by all the nodes of a cluster */
+public class OutboundQueueServiceImpl extends BaseOpenmrsService implements OutboundQueueService {
+
+  private static final int OUTCOME_MAX_LENGTH = 255;
+
+  private OutboundQueueDao outboundQueueDao;
+
+  @Override
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  public List<OutboundQueueEntry> enqueue(List<OutboundQueueEntry> entries) {
+    Date now = DateUtil.now();
+    for (OutboundQueueEntry entry : entries) {
+      entry.setStatus(OutboundQueueStatus.PENDING);
+      entry.setEnqueuedAt(now);
+    }
+    return outboundQueueDao.saveEntries(entries);
+  }
+
+  @Override
+  @Transactional
+  public List<OutboundQueueEntry> claim(String configName, String nodeId, int maxResults) {
+    // the row locks taken by the claim are held only until this transaction commits
+    return outboundQueueDao.claimPending(configName, nodeId, DateUtil.now(), maxResults);
+  }
+
+  @Override
+  @Transactional
+  public void finish(Integer id, OutboundQueueStatus status, String callId, String outcome) {
+    outboundQueueDao.finish(
+        id, status, callId, StringUtils.abbreviate(outcome, OUTCOME_MAX_LENGTH), DateUtil.now());
+  }
+
+  @Override
+  @Transactional
+  public void release(Integer id) {
+    outboundQueueDao.release(id);
+  }
+
+  @Override
+  @Transactional
+  public int releaseExpiredClaims(Date claimedBefore) {
+    return outboundQueueDao.releaseClaimedBefore(claimedBefore);
+  }
+
+  @Override
+  @Transactional
+  public int purgeFinished(Date finishedBefore) {
+    return outboundQueueDao.deleteFinishedBefore(finishedBefore);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public Map<String, Long> countPending() {
+    return outboundQueueDao.countPendingByConfig();
+  }
+
+  public void setOutboundQueueDao(OutboundQueueDao outboundQueueDao) {
+    this.outboundQueueDao = outboundQueueDao;
+  }
+}
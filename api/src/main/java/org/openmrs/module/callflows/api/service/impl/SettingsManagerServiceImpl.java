@@ -80,6 +80,19 @@ public class SettingsManagerServiceImpl extends BaseOpenmrsService
     return getDestinationFile(configurationFileName).exists();
   }
 
+  /**
+   * Gets the time the configuration was last modified.
+   *
+   * @param configurationFileName Configuration file name
+   * @return the modification time in milliseconds since the epoch, 0 if the configuration does not
+   *     exist
+   */
+  @Override
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public long getLastModified(String configurationFileName) {
+    return getDestinationFile(configurationFileName).lastModified();
+  }
+
   private File getDestinationFile(String filename) {
     File configFileFolder =
         OpenmrsUtil.getDirectoryInApplicationDataDirectory(CallFlowConstants.CONFIG_DIR);
@@ -0,0 +1,46 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.task;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.callflows.api.service.CallService;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+/**
+ * Background task rewriting the context and provider data of calls stored in the legacy Java serialization format
+ * into the current storage format. It is run on startup and stops once no legacy data is left.
+ */
+public class CallDataMigrationTask extends AbstractTask {
+
+    private static final Log LOGGER = LogFactory.getLog(CallDataMigrationTask.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * Method to Execute the task.
+     */
+    @Override
+    public void execute() {
+        CallService callService = Context.getRegisteredComponent("callflows.callService", CallService.class);
+        Integer lastId = 0;
+        int batches = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            lastId = callService.migrateLegacyCallData(lastId, BATCH_SIZE);
+            if (lastId == null) {
+                break;
+            }
+            batches++;
+        }
+        LOGGER.info(String.format("Migrated legacy call data in %d batches", batches));
+    }
+}
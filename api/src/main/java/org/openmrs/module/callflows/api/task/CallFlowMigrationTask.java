@@ -0,0 +1,47 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.task;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.callflows.api.service.CallFlowService;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+/**
+ * Background task counting the nodes of the callflows saved before the node counts were kept, so the callflows can
+ * be listed without reading their raw callflows. It is run on startup and stops once no callflow is left.
+ */
+public class CallFlowMigrationTask extends AbstractTask {
+
+    private static final Log LOGGER = LogFactory.getLog(CallFlowMigrationTask.class);
+
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * Method to Execute the task.
+     */
+    @Override
+    public void execute() {
+        CallFlowService callFlowService = Context.getRegisteredComponent("callflows.callFlowService",
+                CallFlowService.class);
+        Integer lastId = 0;
+        int batches = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            lastId = callFlowService.migrateLegacyCallFlows(lastId, BATCH_SIZE);
+            if (lastId == null) {
+                break;
+            }
+            batches++;
+        }
+        LOGGER.info(String.format("Migrated legacy callflows in %d batches", batches));
+    }
+}
@@ -13,7 +13,7 @@ package org.openmrs.module.callflows.api.task;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.callflows.api.domain.Constants;
 import org.openmrs.module.callflows.api.event.CallFlowEvent;
-import org.openmrs.module.callflows.api.service.CallService;
+import org.openmrs.module.callflows.api.util.OutboundCallDispatcher;
 import org.openmrs.scheduler.tasks.AbstractTask;
 
 import java.util.Map;
@@ -32,6 +32,7 @@ public class CallFlowScheduledTask extends AbstractTask {
         String config = properties.get(Constants.PARAM_CONFIG).toString();
         String flowName = properties.get(Constants.PARAM_FLOW_NAME).toString();
         Map<String, Object> params = (Map<String, Object>) properties.get(Constants.PARAM_PARAMS);
-        Context.getRegisteredComponent("callflows.callService", CallService.class).makeCall(config, flowName, params);
+        Context.getRegisteredComponent("callflows.outboundCallDispatcher", OutboundCallDispatcher.class)
+                .enqueue(config, flowName, params);
     }
 }
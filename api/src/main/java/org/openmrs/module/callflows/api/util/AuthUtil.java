@@ -10,6 +10,9 @@
 
 package org.openmrs.module.callflows.api.util;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.InvalidClaimException;
@@ -31,6 +34,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
@@ -38,9 +42,15 @@ import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Collection of utility methods to authenticate IVR provider
+ * <p>
+ * The IVR properties and the parsed private key are kept in memory and loaded again only when the private key is
+ * replaced or either file was modified. Tokens which passed the validation are remembered for a short time, so the
+ * signature of a token re-sent with every request of a call is verified once.
+ * </p>
  *
  * @author nanakapa
  */
@@ -56,8 +66,19 @@ public class AuthUtil {
 
     private static final Log LOGGER = LogFactory.getLog(CallUtil.class);
 
+    private static final long VERIFIED_TOKENS_MAXIMUM_SIZE = 1000L;
+
+    private static final long VERIFIED_TOKENS_EXPIRY_MINUTES = 5L;
+
     private SettingsManagerService settingsManagerService;
 
+    private volatile KeyMaterial keyMaterial;
+
+    private final Cache<String, Date> verifiedTokens = CacheBuilder.newBuilder()
+            .maximumSize(VERIFIED_TOKENS_MAXIMUM_SIZE)
+            .expireAfterWrite(VERIFIED_TOKENS_EXPIRY_MINUTES, TimeUnit.MINUTES)
+            .build();
+
     private static String constructJTI() {
         return UUID.randomUUID().toString();
     }
@@ -71,23 +92,60 @@ public class AuthUtil {
     public String generateToken() throws IOException, NoSuchAlgorithmException, InvalidKeySpecException {
         LOGGER.info("Generating JWT");
 
+        final KeyMaterial material = getKeyMaterial();
+        final IVRProperties ivrProperties = material.ivrProperties;
+        final Date issuedAt = DateUtil.now();
+
+        return Jwts
+                .builder()
+                .setHeaderParam(TYPE_HEADER_NAME, TYPE_HEADER_VALUE)
+                .setIssuedAt(issuedAt)
+                .setExpiration(DateUtils.addHours(issuedAt, ivrProperties.getExpirationTimeInHours()))
+                .claim(APPLICATION_ID_CLAIM_NAME, ivrProperties.getApplicationId())
+                .claim(JTI_CLAIM_NAME, constructJTI())
+                .signWith(SignatureAlgorithm.RS256, material.privateKey)
+                .compact();
+    }
+
+    /**
+     * Gets the IVR properties and the private key, loading them again if either file was modified since the last load
+     */
+    private KeyMaterial getKeyMaterial() throws IOException, NoSuchAlgorithmException, InvalidKeySpecException {
+        final long ivrPropertiesModified = settingsManagerService.getLastModified(IVR_PROPERTIES_FILE_NAME);
+        final long privateKeyModified = settingsManagerService.getLastModified(PRIVATE_KEY_FILE_NAME);
+
+        KeyMaterial material = keyMaterial;
+        if (material == null || !material.isCurrent(ivrPropertiesModified, privateKeyModified)) {
+            material = loadKeyMaterial(ivrPropertiesModified, privateKeyModified);
+        }
+        return material;
+    }
+
+    private synchronized KeyMaterial loadKeyMaterial(long ivrPropertiesModified, long privateKeyModified)
+            throws IOException, NoSuchAlgorithmException, InvalidKeySpecException {
+        KeyMaterial material = keyMaterial;
+        if (material != null && material.isCurrent(ivrPropertiesModified, privateKeyModified)) {
+            // loaded by another thread meanwhile
+            return material;
+        }
+
         try (InputStream ivrPropertiesFileStream = settingsManagerService.getRawConfig(IVR_PROPERTIES_FILE_NAME);
              InputStream privateKeyFileStream = settingsManagerService.getRawConfig(PRIVATE_KEY_FILE_NAME)) {
 
             final IVRProperties ivrProperties = new IVRProperties(ivrPropertiesFileStream);
             final PrivateKey key = loadPrivateKey(privateKeyFileStream, ivrProperties);
-            final Date issuedAt = DateUtil.now();
-
-            return Jwts
-                    .builder()
-                    .setHeaderParam(TYPE_HEADER_NAME, TYPE_HEADER_VALUE)
-                    .setIssuedAt(issuedAt)
-                    .setExpiration(DateUtils.addHours(issuedAt, ivrProperties.getExpirationTimeInHours()))
-                    .claim(APPLICATION_ID_CLAIM_NAME, ivrProperties.getApplicationId())
-                    .claim(JTI_CLAIM_NAME, constructJTI())
-                    .signWith(SignatureAlgorithm.RS256, key)
-                    .compact();
+            material = new KeyMaterial(ivrProperties, key, ivrPropertiesModified, privateKeyModified);
         }
+
+        verifiedTokens.invalidateAll();
+        keyMaterial = material;
+        LOGGER.debug("Loaded IVR properties and private key");
+        return material;
+    }
+
+    private synchronized void resetKeyMaterial() {
+        keyMaterial = null;
+        verifiedTokens.invalidateAll();
     }
 
     private PrivateKey loadPrivateKey(final InputStream pemFileStream, final IVRProperties ivrProperties)
@@ -126,6 +184,7 @@ public class AuthUtil {
 
         settingsManagerService.saveRawConfig(PRIVATE_KEY_FILE_NAME,
                 new ByteArrayResource(newPrivateKeyFileBytesStream.toByteArray()));
+        resetKeyMaterial();
     }
 
     /**
@@ -141,22 +200,28 @@ public class AuthUtil {
 
         boolean isTokenValid = false;
 
-        try (InputStream ivrPropertiesFileStream = settingsManagerService.getRawConfig(IVR_PROPERTIES_FILE_NAME);
-             InputStream privateKeyFileStream = settingsManagerService.getRawConfig(PRIVATE_KEY_FILE_NAME)) {
+        try {
+            final KeyMaterial material = getKeyMaterial();
+            final String tokenHash = Hashing.sha256().hashString(jwt, StandardCharsets.UTF_8).toString();
+            final Date cachedExpiration = verifiedTokens.getIfPresent(tokenHash);
 
-            final IVRProperties ivrProperties = new IVRProperties(ivrPropertiesFileStream);
-            final PrivateKey key = loadPrivateKey(privateKeyFileStream, ivrProperties);
+            if (cachedExpiration != null && !cachedExpiration.before(DateUtil.now())) {
+                return true;
+            }
 
             final Jws<Claims> claimsJws = Jwts
                     .parser()
-                    .setSigningKey(key)
-                    .require(APPLICATION_ID_CLAIM_NAME, ivrProperties.getApplicationId())
+                    .setSigningKey(material.privateKey)
+                    .require(APPLICATION_ID_CLAIM_NAME, material.ivrProperties.getApplicationId())
                     .parseClaimsJws(jwt);
 
-            if (claimsJws.getBody().getExpiration().before(DateUtil.now())) {
+            final Date expiration = claimsJws.getBody().getExpiration();
+            if (expiration.before(DateUtil.now())) {
                 LOGGER.warn("Token has expired");
+                verifiedTokens.invalidate(tokenHash);
                 isTokenValid = false;
             } else {
+                verifiedTokens.put(tokenHash, expiration);
                 isTokenValid = true;
             }
         } catch (InvalidClaimException ice) {
@@ -173,4 +238,31 @@ public class AuthUtil {
     public void setSettingsManagerService(SettingsManagerService settingsManagerService) {
         this.settingsManagerService = settingsManagerService;
     }
+
+    /**
+     * The loaded IVR properties and private key together with the modification times of their files
+     */
+    private static final class KeyMaterial {
+
+        private final IVRProperties ivrProperties;
+
+        private final PrivateKey privateKey;
+
+        private final long ivrPropertiesModified;
+
+        private final long privateKeyModified;
+
+        private KeyMaterial(IVRProperties ivrProperties, PrivateKey privateKey, long ivrPropertiesModified,
+                            long privateKeyModified) {
+            this.ivrProperties = ivrProperties;
+            this.privateKey = privateKey;
+            this.ivrPropertiesModified = ivrPropertiesModified;
+            this.privateKeyModified = privateKeyModified;
+        }
+
+        private boolean isCurrent(long ivrPropertiesModified, long privateKeyModified) {
+            return this.ivrPropertiesModified == ivrPropertiesModified
+                    && this.privateKeyModified == privateKeyModified;
+        }
+    }
 }
@@ -0,0 +1,165 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.util;
+
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.module.callflows.api.domain.Call;
+import org.supercsv.io.CsvMapWriter;
+import org.supercsv.prefs.CsvPreference;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams the CSV report of calls into a zip archive, starting a new CSV file in the archive every
+ * {@code callsPerFile} calls. Nothing is buffered besides the current row, so any number of calls can be written.
+ */
+public class CallReportWriter implements Closeable {
+
+    static final String[] HEADERS = {"id", "actorId", "phone", "actorType", "callId", "direction", "creationDate",
+            "callReference", "status", "statusText", "startTime", "endTime"};
+
+    private static final Log LOGGER = LogFactory.getLog(CallReportWriter.class);
+
+    private static final String FILE_NAME_INITIALS = "cfl_calls_";
+    private static final String CSV = ".csv";
+    private static final String MESSAGE_KEY = "messageKey";
+    private static final String PHONE = "phone";
+    private static final String DATE_TIME_PATTERN_1 = "MM/dd/yyyy HH:mm:ss";
+    private static final String DATE_TIME_PATTERN_2 = "yyMMddHHmm";
+
+    private final ZipOutputStream zipOutputStream;
+
+    private final int callsPerFile;
+
+    private final Map<String, Object> callMap = new LinkedHashMap<>(HEADERS.length);
+
+    private CsvMapWriter csvMapWriter;
+
+    private int fileNumber;
+
+    private int callsInFile;
+
+    /**
+     * Creates a writer of the zipped report
+     *
+     * @param outputStream the stream to write the zip archive into, it is closed with this writer
+     * @param callsPerFile the maximum number of calls in one CSV file
+     */
+    public CallReportWriter(OutputStream outputStream, int callsPerFile) {
+        this.zipOutputStream = new ZipOutputStream(outputStream);
+        this.callsPerFile = callsPerFile;
+    }
+
+    /**
+     * Writes the report row of a call
+     *
+     * @param call the call to write, only the reported properties have to be set
+     * @throws IOException if the row could not be written
+     */
+    public void write(Call call) throws IOException {
+        if (csvMapWriter == null || callsInFile >= callsPerFile) {
+            nextFile();
+        }
+        try {
+            callMap.clear();
+            initializeCallMap(callMap, call);
+            csvMapWriter.write(callMap, HEADERS);
+            callsInFile++;
+        } catch (RuntimeException e) {
+            LOGGER.error(String.format("Exception occurred for call record having id:%s with exception message: %s",
+                    call.getId(), e.getMessage()));
+        }
+    }
+
+    /**
+     * Gets the number of CSV files started so far
+     *
+     * @return the number of files
+     */
+    public int getFileCount() {
+        return fileNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (fileNumber == 0) {
+                // an archive needs at least one entry, report no calls with an empty file
+                nextFile();
+            }
+            closeFile();
+        } finally {
+            zipOutputStream.close();
+        }
+    }
+
+    static void initializeCallMap(Map<String, Object> callMap, Call call) {
+        callMap.put(HEADERS[0], call.getId());
+        callMap.put(HEADERS[1], call.getActorId());
+        callMap.put(HEADERS[2], (null != call.getContext()) ? call.getContext().get(PHONE) : null);
+        callMap.put(HEADERS[3], call.getActorType());
+        callMap.put(HEADERS[4], call.getCallId());
+        callMap.put(HEADERS[5], call.getDirection());
+        callMap.put(HEADERS[6],
+                null != call.getCreationDate() ? DateUtil.dateToString(call.getCreationDate(), DATE_TIME_PATTERN_2) : null);
+
+        if (null != call.getContext() && null != call.getContext().get(MESSAGE_KEY) &&
+                StringUtils.isNotEmpty(call.getContext().get(MESSAGE_KEY).toString())) {
+            try {
+                Date dateTimeMessageKey = DateUtil.parse(call.getContext().get(MESSAGE_KEY).toString(), DATE_TIME_PATTERN_1);
+                callMap.put(HEADERS[7], DateUtil.dateToString(dateTimeMessageKey, DATE_TIME_PATTERN_2));
+            } catch (IllegalArgumentException e) {
+                LOGGER.error(String.format(
+                        "Invalid input format to parse messageKey to dateTime for calls record having id: %s with " +
+                                "messageKey value: %s", call.getId(), call.getContext().get(MESSAGE_KEY)));
+                callMap.put(HEADERS[7], null);
+            }
+        } else {
+            callMap.put(HEADERS[7], null);
+        }
+        callMap.put(HEADERS[8], call.getStatus());
+        callMap.put(HEADERS[9], call.getStatusText());
+        callMap.put(HEADERS[10], call.getStartTime());
+        callMap.put(HEADERS[11], call.getEndTime());
+    }
+
+    private void nextFile() throws IOException {
+        closeFile();
+        fileNumber++;
+        zipOutputStream.putNextEntry(new ZipEntry(FILE_NAME_INITIALS + fileNumber + CSV));
+        // closing the CSV writer must only end the entry, not the whole archive
+        csvMapWriter = new CsvMapWriter(new BufferedWriter(new OutputStreamWriter(
+                new CloseShieldOutputStream(zipOutputStream), StandardCharsets.UTF_8)), CsvPreference.STANDARD_PREFERENCE);
+        csvMapWriter.writeHeader(HEADERS);
+        callsInFile = 0;
+    }
+
+    private void closeFile() throws IOException {
+        if (csvMapWriter != null) {
+            csvMapWriter.close();
+            csvMapWriter = null;
+            zipOutputStream.closeEntry();
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.callflows.api.domain.CallRetry;
+import org.openmrs.module.callflows.api.service.CallRetryService;
+import org.openmrs.module.callflows.api.service.CallService;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fires the delayed retries of outbound calls which were not placed because the outbound call limit was reached.
+ * <p>
+ * Pending retries are kept in memory in slots of one tick each, sorted by time. A single thread wakes up every tick,
+ * takes all the slots which are due and fires their retries as one batch: the batch is deleted from the retry table
+ * in one transaction and the calls are then placed again. Every node loads all the stored retries, a retry is fired
+ * only by the node which deleted its row. Retries are stored in the retry table so that they can be loaded back when
+ * the module starts, the OpenMRS scheduler is not involved.
+ * </p>
+ * <p>
+ * A retry scheduled within a transaction is added to the pending retries once the transaction completes, so the call
+ * is not placed again while the transaction which failed it is still running. The retry table is also polled for the
+ * retries which are overdue, e.g. because the node which scheduled them stopped, and these are fired by this node.
+ * </p>
+ */
+public class CallRetryScheduler implements Closeable {
+
+    private static final Log LOGGER = LogFactory.getLog(CallRetryScheduler.class);
+
+    private static final long DEFAULT_TICK_MILLIS = 1000L;
+
+    private static final long DEFAULT_POLL_MILLIS = 60000L;
+
+    private final NavigableMap<Long, List<CallRetry>> slots = new TreeMap<>();
+
+    private final Map<Integer, CallRetry> pending = new HashMap<>();
+
+    private long tickMillis = DEFAULT_TICK_MILLIS;
+
+    private long pollMillis = DEFAULT_POLL_MILLIS;
+
+    private DaemonToken daemonToken;
+
+    private ScheduledExecutorService ticker;
+
+    private volatile boolean closed;
+
+    /**
+     * Stores a retry and schedules it to be fired at its fire time
+     *
+     * @param retry the retry to schedule
+     * @return the stored retry
+     */
+    public CallRetry schedule(CallRetry retry) {
+        final CallRetry saved = Context.getService(CallRetryService.class).saveRetry(retry);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    // the retry was stored in its own transaction, so it is fired even if the caller rolled back
+                    add(saved);
+                }
+            });
+        } else {
+            add(saved);
+        }
+        LOGGER.debug(String.format("Scheduled %s", saved));
+        return saved;
+    }
+
+    /**
+     * Loads the retries left in the retry table by the previous run and starts firing the due retries
+     */
+    public synchronized void start() {
+        if (ticker != null || closed) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("callflows-retry-scheduler").setDaemon(true).build());
+        ticker.execute(new Runnable() {
+            @Override
+            public void run() {
+                runInDaemonThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        recover();
+                    }
+                });
+            }
+        });
+        ticker.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    fireDueRetries();
+                } catch (RuntimeException e) {
+                    // an exception would cancel the following ticks
+                    LOGGER.error("Outbound call retries could not be fired", e);
+                }
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        ticker.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runInDaemonThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            pollOverdueRetries();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    LOGGER.error("Overdue outbound call retries could not be loaded", e);
+                }
+            }
+        }, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds the retries of the retry table which should have been fired a tick ago, called on every poll. The
+     * retries already pending on this node are kept as they are.
+     */
+    public void pollOverdueRetries() {
+        Date overdue = new Date(DateUtil.now().getTime() - tickMillis);
+        int count = 0;
+        for (CallRetry retry : Context.getService(CallRetryService.class).findRetriesDueBefore(overdue)) {
+            if (add(retry)) {
+                count++;
+            }
+        }
+        if (count > 0) {
+            LOGGER.info(String.format("Loaded %d overdue outbound call retries", count));
+        }
+    }
+
+    /**
+     * Fires all the retries which are due by now, called on every tick
+     */
+    public void fireDueRetries() {
+        final List<CallRetry> due = takeDueRetries(DateUtil.now().getTime());
+        if (due.isEmpty()) {
+            return;
+        }
+        runInDaemonThread(new Runnable() {
+            @Override
+            public void run() {
+                fire(due);
+            }
+        });
+    }
+
+    /**
+     * Gets the number of retries waiting to be fired
+     *
+     * @return the number of pending retries
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Stops firing retries, the pending ones stay in the retry table and are loaded again on the next start
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    /**
+     * Sets the token used to fire the retries with the privileges of the module
+     *
+     * @param daemonToken the daemon token of the module
+     */
+    public void setDaemonToken(DaemonToken daemonToken) {
+        this.daemonToken = daemonToken;
+    }
+
+    /**
+     * Sets the length of a tick, retries due within the same tick are fired together
+     *
+     * @param tickMillis the tick length in milliseconds
+     */
+    public void setTickMillis(long tickMillis) {
+        this.tickMillis = tickMillis;
+    }
+
+    /**
+     * Sets how often the retry table is polled for overdue retries
+     *
+     * @param pollMillis the poll interval in milliseconds
+     */
+    public void setPollMillis(long pollMillis) {
+        this.pollMillis = pollMillis;
+    }
+
+    private void recover() {
+        List<CallRetry> retries = Context.getService(CallRetryService.class).findAllRetries();
+        for (CallRetry retry : retries) {
+            add(retry);
+        }
+        LOGGER.info(String.format("Loaded %d pending outbound call retries", retries.size()));
+    }
+
+    private void fire(List<CallRetry> due) {
+        List<Integer> ids = new ArrayList<>(due.size());
+        for (CallRetry retry : due) {
+            ids.add(retry.getId());
+        }
+        List<Integer> deleted;
+        try {
+            // deleted before the calls are placed, so a crash in the middle of a batch never calls anybody twice
+            deleted = Context.getService(CallRetryService.class).deleteRetries(ids);
+        } catch (RuntimeException e) {
+            LOGGER.error(String.format("Outbound call retries %s could not be deleted, firing them later", ids), e);
+            for (CallRetry retry : due) {
+                add(retry);
+            }
+            return;
+        }
+
+        CallService callService = Context.getService(CallService.class);
+        for (CallRetry retry : due) {
+            if (!deleted.contains(retry.getId())) {
+                // fired by another node
+                continue;
+            }
+            try {
+                callService.makeCall(retry.getConfig(), retry.getFlowName(), retry.getParams());
+            } catch (RuntimeException e) {
+                LOGGER.error(String.format("%s could not be fired", retry), e);
+            }
+        }
+        LOGGER.debug(String.format("Fired %d outbound call retries", deleted.size()));
+    }
+
+    private synchronized boolean add(CallRetry retry) {
+        // the retries stored while the retry table was being loaded are already pending
+        if (pending.put(retry.getId(), retry) != null) {
+            return false;
+        }
+        Long slot = slotOf(retry.getFireTime().getTime());
+        List<CallRetry> retries = slots.get(slot);
+        if (retries == null) {
+            retries = new ArrayList<>();
+            slots.put(slot, retries);
+        }
+        retries.add(retry);
+        return true;
+    }
+
+    private synchronized List<CallRetry> takeDueRetries(long now) {
+        List<CallRetry> due = new ArrayList<>();
+        Iterator<List<CallRetry>> dueSlots = slots.headMap(now / tickMillis, true).values().iterator();
+        while (dueSlots.hasNext()) {
+            for (CallRetry retry : dueSlots.next()) {
+                pending.remove(retry.getId());
+                due.add(retry);
+            }
+            dueSlots.remove();
+        }
+        return due;
+    }
+
+    private long slotOf(long fireTime) {
+        // rounded up, so a retry is never fired before its fire time
+        return (fireTime + tickMillis - 1) / tickMillis;
+    }
+
+    private void runInDaemonThread(Runnable runnable) {
+        try {
+            Daemon.runInDaemonThread(runnable, daemonToken).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -10,7 +10,6 @@
 
 package org.openmrs.module.callflows.api.util;
 
-import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.client.methods.HttpGet;
@@ -25,56 +24,36 @@ import org.codehaus.jackson.map.ObjectMapper;
 import org.openmrs.module.callflows.api.contract.JsonExecutionResponse;
 import org.openmrs.module.callflows.api.domain.Call;
 import org.openmrs.module.callflows.api.domain.CallFlow;
+import org.openmrs.module.callflows.api.domain.CallRetry;
 import org.openmrs.module.callflows.api.domain.Config;
 import org.openmrs.module.callflows.api.domain.Constants;
 import org.openmrs.module.callflows.api.domain.Renderer;
 import org.openmrs.module.callflows.api.domain.flow.Node;
 import org.openmrs.module.callflows.api.domain.flow.UserNode;
-import org.openmrs.module.callflows.api.domain.types.CallDirection;
 import org.openmrs.module.callflows.api.domain.types.CallStatus;
 import org.openmrs.module.callflows.api.event.CallFlowEvent;
-import org.openmrs.module.callflows.api.service.CallFlowEventService;
-import org.openmrs.module.callflows.api.service.CallFlowSchedulerService;
-import org.openmrs.module.callflows.api.service.CallService;
-import org.openmrs.module.callflows.api.task.CallFlowScheduledTask;
+import org.openmrs.module.callflows.api.service.CallSlotService;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.util.ClassUtils;
-import org.supercsv.io.CsvMapWriter;
-import org.supercsv.prefs.CsvPreference;
 
 import javax.naming.OperationNotSupportedException;
 import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
-import java.io.Writer;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.Objects;
 
 /**
  * Collection of utility methods in managing and handling calls
@@ -118,26 +97,16 @@ public class CallUtil {
 
     private static final String INTERNAL = "internal";
 
-    private static final int BYTE_SIZE = 1024;
-    private static final Collection<CallStatus> ACTIVE_OUTBOUND_CALL_STATUSES =
-            Arrays.asList(CallStatus.INITIATED, CallStatus.IN_PROGRESS, CallStatus.OPENMRS_INITIATED);
-    private static final String MESSAGE_KEY = "messageKey";
-    private static final String CSV = ".csv";
-    private static final String FILE_NAME_INITIALS = "cfl_calls_";
-    private static final String DATE_TIME_PATTERN_1 = "MM/dd/yyyy HH:mm:ss";
-    private static final String DATE_TIME_PATTERN_2 = "yyMMddHHmm";
     /**
      * The maximum number of parameters to merge into URI. This is safety measure from DoS attacks.
      * The value has been selected based on a default max size of HTTP request line in Apache HTTP Server 8190.
      * The value is the 8190 divided by 4 (smallest param &a=b).
      */
     private static final int MAX_URI_MERGE_PARAM_SIZE = 2047;
-    private final String[] headers =
-            {"id", ACTOR_ID, "phone", ACTOR_TYPE, "callId", "direction", "creationDate", "callReference", "status",
-                    "statusText", "startTime", "endTime"};
     private ObjectMapper objectMapper = new ObjectMapper();
-    private CallFlowSchedulerService schedulerService;
-    private CallFlowEventService callFlowEventService;
+    private CallRetryScheduler callRetryScheduler;
+    private CallSlotService callSlotService;
+    private StatusEventPublisher statusEventPublisher;
     private AuthUtil authUtil;
 
     /**
@@ -255,8 +224,19 @@ public class CallUtil {
      * @return a string containing the full node path in the format flow.nodeStep
      */
     public String buildFullNodePath(CallFlow flow, Node node) {
+        return buildFullNodePath(flow.getName(), node);
+    }
+
+    /**
+     * Builds a full node path
+     *
+     * @param flowName of the flow to use in the path
+     * @param node     or step to use in the path
+     * @return a string containing the full node path in the format flow.nodeStep
+     */
+    public String buildFullNodePath(String flowName, Node node) {
         StringBuilder path = new StringBuilder();
-        path.append(flow.getName());
+        path.append(flowName);
         path.append(DOT);
         path.append(node.getStep());
         return path.toString();
@@ -358,26 +338,23 @@ public class CallUtil {
     }
 
     /**
-     * Hook before a call can be made. Checks outbound call limit and number of retries before placing the call
+     * Hook before a call can be made. Checks outbound call limit and number of retries before placing the call.
+     * The call is let through only once it leased one of the outbound call slots of its configuration, which are
+     * shared by all the nodes of a cluster.
      *
-     * @param callService callService
      * @param call   object
      * @param config to use
      * @param params that were passed during call initiation
      * @throws OperationNotSupportedException when the call can not be placed
      */
-    public void checkCallCanBePlaced(CallService callService, Call call, Config config, Map<String, Object> params)
+    public void checkCallCanBePlaced(Call call, Config config, Map<String, Object> params)
             throws OperationNotSupportedException {
         LOGGER.debug(String.format("pre-call-hook => call : %s, config: %s, params: %s", call, config, params));
 
         // Only if outbound call limit is set, we have to worry about no of active calls, retries, etc
         if (config.getOutboundCallLimit() > 0) {
-            // Check how many current active calls are there
-            Set<CallStatus> callStatusSet = new HashSet<>(ACTIVE_OUTBOUND_CALL_STATUSES);
-            long currentOutboundCallCount =
-                    callService.countFindCallsByDirectionAndStatus(CallDirection.OUTGOING, callStatusSet);
-            // Do we have enough bandwidth to make this call?
-            if (currentOutboundCallCount > config.getOutboundCallLimit()) {
+            // Do we have enough bandwidth to make this call? Taking a slot and checking are one atomic step
+            if (!callSlotService.acquireSlot(config, call.getCallId())) {
                 // No we don't!
                 // So let's retry after some time and check again
                 // but before that how many retries have we made?
@@ -429,7 +406,7 @@ public class CallUtil {
 
         completeParams.putAll(params);
         completeParams.put("internal.callId", call.getCallId());
-        completeParams.put("internal.jumpTo", call.getStartFlow().getName());
+        completeParams.put("internal.jumpTo", call.getStartFlowName());
 
         // The uri can be a test user's URI that can connect to a individual simulator
         // or the IVR provider's actual outbound Uri set globally in the configuration
@@ -527,7 +504,8 @@ public class CallUtil {
     }
 
     /**
-     * Responsible for sending the call status of a call via the OpenMRS event system
+     * Responsible for sending the call status of a call via the OpenMRS event system. The event is sent in the
+     * background, a newer status of the same call replaces it if it was not sent yet.
      *
      * @param call that is the current call
      */
@@ -542,9 +520,10 @@ public class CallUtil {
             // We are sending status to clients, to whom we shouldn't expose our domain objects
             data.put(Constants.PARAM_STATUS, call.getStatus().name());
             data.put(Constants.PARAM_REASON, call.getStatusText());
-            data.put(Constants.PARAM_PARAMS, call.getContext());
+            // copied, as the event is sent after the call may have changed again
+            data.put(Constants.PARAM_PARAMS, call.getContext() == null ? null : new HashMap<>(call.getContext()));
             CallFlowEvent statusChangedEvent = new CallFlowEvent(CallFlowEventSubjectConstants.CALLFLOWS_CALL_STATUS, data);
-            callFlowEventService.sendEventMessage(statusChangedEvent);
+            statusEventPublisher.publish(call.getCallId(), statusChangedEvent);
         }
     }
 
@@ -564,117 +543,17 @@ public class CallUtil {
         data.put(Constants.PARAM_REASON, reason);
         data.put(Constants.PARAM_PARAMS, params);
         CallFlowEvent statusChangedEvent = new CallFlowEvent(CallFlowEventSubjectConstants.CALLFLOWS_CALL_STATUS, data);
-        callFlowEventService.sendEventMessage(statusChangedEvent);
-    }
-
-    /**
-     * Generate csv report out of the list of calls with pre-configured headers
-     *
-     * @param currentFilePath absolute path of the file where file will be generated
-     * @param calls           list of call to traverse for report generation
-     * @throws IOException
-     */
-    public void generateReports(String currentFilePath, List<Call> calls) throws IOException {
-
-        try (Writer writer = new BufferedWriter(
-                new OutputStreamWriter(new FileOutputStream(currentFilePath), StandardCharsets.UTF_8))) {
-            try (CsvMapWriter csvMapWriter = new CsvMapWriter(writer, CsvPreference.STANDARD_PREFERENCE)) {
-                csvMapWriter.writeHeader(headers);
-                final LinkedHashMap<String, Object> callMap = new LinkedHashMap<>(headers.length);
-
-                for (Call call : calls) {
-                    try {
-                        callMap.clear();
-                        initializeCallMap(callMap, call);
-                        if (null != callMap) {
-                            csvMapWriter.write(callMap, headers);
-                        }
-                    } catch (Exception e) {
-                        LOGGER.error(
-                                String.format("Exception occurred for call record having id:%s with exception message: %s",
-                                        call.getId(), e.getMessage()));
-                    }
-                }
-            }
-        }
-    }
-
-    public void deleteTempFile(String tempDir, Map<String, String> fileNames) throws IOException {
-
-        for (String fileName : fileNames.keySet()) {
-            Files.delete(Paths.get(fileNames.get(fileName)));
-        }
-        Files.delete(Paths.get(tempDir));
-    }
-
-    public String generateFileName(String tempDir, int fileNumber) {
-
-        return new StringBuilder(tempDir)
-                .append(File.separator)
-                .append(FILE_NAME_INITIALS)
-                .append(fileNumber)
-                .append(CSV)
-                .toString();
-    }
-
-    public void createZip(HttpServletResponse response, Map<String, String> fileNames) throws IOException {
-        int length = 0;
-        try (ZipOutputStream zipOutputStream = new ZipOutputStream(response.getOutputStream())) {
-            for (String currentFileName : fileNames.keySet()) {
-                try (FileInputStream is = new FileInputStream(fileNames.get(currentFileName))) {
-                    ZipEntry zipEntry = new ZipEntry(currentFileName + CSV);
-                    zipOutputStream.putNextEntry(zipEntry);
-                    byte[] b = new byte[BYTE_SIZE];
-                    while ((length = is.read(b)) != -1) {
-                        zipOutputStream.write(b, 0, length);
-                    }
-                } catch (Exception e) {
-                    LOGGER.error(String.format("Error in creating zip entry for file: %s with error message: %s",
-                            currentFileName + CSV, e.getMessage()));
-                }
-            }
-        }
-    }
-
-    private void initializeCallMap(Map<String, Object> callMap, Call call) {
-
-        callMap.put(headers[0], call.getId());
-        callMap.put(headers[1], call.getActorId());
-        callMap.put(headers[2], (null != call.getContext()) ? call.getContext().get("phone") : null);
-        callMap.put(headers[3], call.getActorType());
-        callMap.put(headers[4], call.getCallId());
-        callMap.put(headers[5], call.getDirection());
-        callMap.put(headers[6],
-                null != call.getCreationDate() ? DateUtil.dateToString(call.getCreationDate(), DATE_TIME_PATTERN_2) : null);
-
-        if (null != call.getContext() && null != call.getContext().get(MESSAGE_KEY) &&
-                StringUtils.isNotEmpty(call.getContext().get(MESSAGE_KEY).toString())) {
-            try {
-                Date dateTimeMessageKey = DateUtil.parse(call.getContext().get(MESSAGE_KEY).toString(), DATE_TIME_PATTERN_1);
-                callMap.put(headers[7], DateUtil.dateToString(dateTimeMessageKey, DATE_TIME_PATTERN_2));
-            } catch (IllegalArgumentException e) {
-                LOGGER.error(String.format(
-                        "Invalid input format to parse messageKey to dateTime for calls record having id: %s with " +
-                                "messageKey value: %s", call.getId(), call.getContext().get(MESSAGE_KEY)));
-                callMap.put(headers[7], null);
-            }
-        } else {
-            callMap.put(headers[7], null);
-        }
-        callMap.put(headers[8], call.getStatus());
-        callMap.put(headers[9], call.getStatusText());
-        callMap.put(headers[10], call.getStartTime());
-        callMap.put(headers[11], call.getEndTime());
+        statusEventPublisher.publish(null, statusChangedEvent);
     }
 
     private String buildJsonResponse(Exception error, String content, Node node, Call call) throws IOException {
         // JSON response required for runner
         JsonExecutionResponse response = new JsonExecutionResponse();
         if (node != null) {
-            if (call.getStartFlow().equals(call.getEndFlow())) {
+            if (Objects.equals(call.getStartFlowName(), call.getEndFlowName())) {
                 response.setNode(node.getStep());
             } else {
-                response.setNode(buildFullNodePath(call.getEndFlow(), node));
+                response.setNode(buildFullNodePath(call.getEndFlowName(), node));
             }
             if (node instanceof UserNode) {
                 response.setContinueNode(((UserNode) node).isContinueNode());
@@ -701,19 +580,15 @@ public class CallUtil {
     }
 
     private void scheduleOutboundCall(Call call, Config config, Map<String, Object> params) {
-        Map<String, Object> eventParams = new HashMap<>();
-        // set the flow name to be invoked
-        eventParams.put(Constants.PARAM_FLOW_NAME, params.getOrDefault(Constants.PARAM_FLOW_NAME,
-            call.getStartFlow().getName()));
+        CallRetry retry = new CallRetry();
+        retry.setCallId(call.getCallId());
         // set the config name to place the call
-        eventParams.put(Constants.PARAM_CONFIG, config.getName());
-        //set the params
-        eventParams.put(Constants.PARAM_PARAMS, params);
-        eventParams.put(Constants.PARAM_HEADERS, config.getOutgoingCallPostHeadersMap());
-        eventParams.put(Constants.PARAM_JOB_ID, call.getCallId());
-        CallFlowEvent event = new CallFlowEvent(CallFlowEventSubjectConstants.CALLFLOWS_INITIATE_CALL, eventParams);
-        schedulerService.scheduleRunOnceJob(event,
-                DateUtil.plusSeconds(DateUtil.now(), config.getOutboundCallRetrySeconds()), new CallFlowScheduledTask());
+        retry.setConfig(config.getName());
+        // set the flow name to be invoked
+        retry.setFlowName(params.getOrDefault(Constants.PARAM_FLOW_NAME, call.getStartFlowName()).toString());
+        retry.setParams(params);
+        retry.setFireTime(DateUtil.plusSeconds(DateUtil.now(), config.getOutboundCallRetrySeconds()));
+        callRetryScheduler.schedule(retry);
     }
 
     private boolean isTokenNotValid(Config config) {
@@ -733,12 +608,16 @@ public class CallUtil {
         return uri;
     }
 
-    public void setSchedulerService(CallFlowSchedulerService schedulerService) {
-        this.schedulerService = schedulerService;
+    public void setCallRetryScheduler(CallRetryScheduler callRetryScheduler) {
+        this.callRetryScheduler = callRetryScheduler;
+    }
+
+    public void setCallSlotService(CallSlotService callSlotService) {
+        this.callSlotService = callSlotService;
     }
 
-    public void setCallFlowEventService(CallFlowEventService callFlowEventService) {
-        this.callFlowEventService = callFlowEventService;
+    public void setStatusEventPublisher(StatusEventPublisher statusEventPublisher) {
+        this.statusEventPublisher = statusEventPublisher;
     }
 
     public void setAuthUtil(AuthUtil authUtil) {
@@ -0,0 +1,460 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.util;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openmrs.module.callflows.api.domain.flow.AudioMapping;
+import org.openmrs.module.callflows.api.domain.flow.Block;
+import org.openmrs.module.callflows.api.domain.flow.Element;
+import org.openmrs.module.callflows.api.domain.flow.FieldElement;
+import org.openmrs.module.callflows.api.domain.flow.Flow;
+import org.openmrs.module.callflows.api.domain.flow.FormBlock;
+import org.openmrs.module.callflows.api.domain.flow.MenuBlock;
+import org.openmrs.module.callflows.api.domain.flow.MenuElement;
+import org.openmrs.module.callflows.api.domain.flow.Node;
+import org.openmrs.module.callflows.api.domain.flow.SystemNode;
+import org.openmrs.module.callflows.api.domain.flow.Template;
+import org.openmrs.module.callflows.api.domain.flow.TextElement;
+import org.openmrs.module.callflows.api.domain.flow.UserNode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles the raw call flows, as saved by the designer, into the runtime form the flows are
+ * loaded from to be run.
+ * <p>
+ * The runtime form is a plain binary encoding of the fields read while a call is run, written
+ * behind a format version. Loading it reads the fields in order into the flow classes, without
+ * parsing JSON or resolving the polymorphic node, block and element types. The data used
+ * only by the designer is left out: the meta data of the flow, the positions of the nodes, the
+ * block and element being edited and the dirty flags of the templates. A flow compiled in a
+ * format which is no longer read is loaded from its raw flow.
+ * </p>
+ */
+public final class FlowCompiler {
+
+    private static final Log LOGGER = LogFactory.getLog(FlowCompiler.class);
+
+    /**
+     * The version of the compiled format, to be raised whenever the compiled flows are no longer
+     * read the same way
+     */
+    private static final byte FORMAT_VERSION = 2;
+
+    private static final int NULL_LENGTH = -1;
+
+    private static final byte NODE = 0;
+
+    private static final byte USER_NODE = 1;
+
+    private static final byte SYSTEM_NODE = 2;
+
+    private static final byte BLOCK = 0;
+
+    private static final byte FORM_BLOCK = 1;
+
+    private static final byte MENU_BLOCK = 2;
+
+    private static final byte ELEMENT = 0;
+
+    private static final byte TEXT_ELEMENT = 1;
+
+    private static final byte FIELD_ELEMENT = 2;
+
+    private static final byte MENU_ELEMENT = 3;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * Compiles a raw call flow
+     *
+     * @param raw the raw call flow, as saved by the designer
+     * @return the compiled flow, null if the raw call flow can not be parsed
+     */
+    public static byte[] compile(String raw) {
+        if (StringUtils.isBlank(raw)) {
+            return null;
+        }
+        try {
+            Flow flow = OBJECT_MAPPER.readValue(raw, Flow.class);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(raw.length() / 2);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT_VERSION);
+            writeFlow(out, flow);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            LOGGER.debug("Unable to compile the call flow, it will be loaded from the raw call "
+                    + "flow", e);
+            return null;
+        }
+    }
+
+    /**
+     * Loads a compiled flow
+     *
+     * @param compiled the compiled flow, may be null
+     * @return the flow, null if there is no compiled flow or it was compiled in another format
+     */
+    public static Flow load(byte[] compiled) {
+        if (compiled == null || compiled.length == 0 || compiled[0] != FORMAT_VERSION) {
+            return null;
+        }
+        DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(compiled, 1, compiled.length - 1));
+        try {
+            return readFlow(in);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to load the compiled call flow, it will be loaded from the raw "
+                    + "call flow", e);
+            return null;
+        }
+    }
+
+    private static void writeFlow(DataOutputStream out, Flow flow) throws IOException {
+        writeString(out, flow.getName());
+        writeString(out, flow.getStatus());
+        writeAudio(out, flow.getAudio());
+        List<Node> nodes = flow.getNodes();
+        writeLength(out, nodes == null ? null : nodes.size());
+        if (nodes != null) {
+            for (Node node : nodes) {
+                writeNode(out, node);
+            }
+        }
+    }
+
+    private static Flow readFlow(DataInputStream in) throws IOException {
+        Flow flow = new Flow();
+        flow.setName(readString(in));
+        flow.setStatus(readString(in));
+        flow.setAudio(readAudio(in));
+        int count = readLength(in);
+        if (count != NULL_LENGTH) {
+            List<Node> nodes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                nodes.add(readNode(in));
+            }
+            flow.setNodes(nodes);
+            // the step index is built once, before the flow is cached and shared by the calls
+            flow.getPositionOfStep(StringUtils.EMPTY);
+        }
+        return flow;
+    }
+
+    private static void writeAudio(DataOutputStream out, Map<String, List<AudioMapping>> audio)
+            throws IOException {
+        writeLength(out, audio == null ? null : audio.size());
+        if (audio == null) {
+            return;
+        }
+        for (Map.Entry<String, List<AudioMapping>> entry : audio.entrySet()) {
+            writeString(out, entry.getKey());
+            List<AudioMapping> mappings = entry.getValue();
+            writeLength(out, mappings == null ? null : mappings.size());
+            if (mappings != null) {
+                for (AudioMapping mapping : mappings) {
+                    writeString(out, mapping.getMapping());
+                    writeString(out, mapping.getTarget());
+                }
+            }
+        }
+    }
+
+    private static Map<String, List<AudioMapping>> readAudio(DataInputStream in)
+            throws IOException {
+        int count = readLength(in);
+        if (count == NULL_LENGTH) {
+            return null;
+        }
+        Map<String, List<AudioMapping>> audio = new LinkedHashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String key = readString(in);
+            int mappingCount = readLength(in);
+            List<AudioMapping> mappings = null;
+            if (mappingCount != NULL_LENGTH) {
+                mappings = new ArrayList<>(mappingCount);
+                for (int j = 0; j < mappingCount; j++) {
+                    AudioMapping mapping = new AudioMapping();
+                    mapping.setMapping(readString(in));
+                    mapping.setTarget(readString(in));
+                    mappings.add(mapping);
+                }
+            }
+            audio.put(key, mappings);
+        }
+        return audio;
+    }
+
+    private static void writeNode(DataOutputStream out, Node node) throws IOException {
+        if (node instanceof UserNode) {
+            out.writeByte(USER_NODE);
+        } else if (node instanceof SystemNode) {
+            out.writeByte(SYSTEM_NODE);
+        } else {
+            out.writeByte(NODE);
+        }
+        writeString(out, node.getStep());
+        writeString(out, node.getNodeType());
+        writeTemplates(out, node.getTemplates());
+        if (node instanceof UserNode) {
+            UserNode userNode = (UserNode) node;
+            writeBoolean(out, userNode.isContinueNode());
+            List<Block> blocks = userNode.getBlocks();
+            writeLength(out, blocks == null ? null : blocks.size());
+            if (blocks != null) {
+                for (Block block : blocks) {
+                    writeBlock(out, block);
+                }
+            }
+        }
+    }
+
+    private static Node readNode(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        Node node;
+        if (kind == USER_NODE) {
+            node = new UserNode();
+        } else if (kind == SYSTEM_NODE) {
+            node = new SystemNode();
+        } else {
+            node = new Node();
+        }
+        node.setStep(readString(in));
+        node.setNodeType(readString(in));
+        node.setTemplates(readTemplates(in));
+        if (kind == USER_NODE) {
+            UserNode userNode = (UserNode) node;
+            userNode.setContinueNode(readBoolean(in));
+            int count = readLength(in);
+            if (count != NULL_LENGTH) {
+                List<Block> blocks = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    blocks.add(readBlock(in));
+                }
+                userNode.setBlocks(blocks);
+            }
+        }
+        return node;
+    }
+
+    private static void writeTemplates(DataOutputStream out, Map<String, Template> templates)
+            throws IOException {
+        writeLength(out, templates == null ? null : templates.size());
+        if (templates == null) {
+            return;
+        }
+        for (Map.Entry<String, Template> entry : templates.entrySet()) {
+            writeString(out, entry.getKey());
+            Template template = entry.getValue();
+            out.writeBoolean(template != null);
+            if (template != null) {
+                writeString(out, template.getContent());
+            }
+        }
+    }
+
+    private static Map<String, Template> readTemplates(DataInputStream in) throws IOException {
+        int count = readLength(in);
+        if (count == NULL_LENGTH) {
+            return null;
+        }
+        Map<String, Template> templates = new LinkedHashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String key = readString(in);
+            Template template = null;
+            if (in.readBoolean()) {
+                template = new Template();
+                template.setContent(readString(in));
+            }
+            templates.put(key, template);
+        }
+        return templates;
+    }
+
+    private static void writeBlock(DataOutputStream out, Block block) throws IOException {
+        if (block instanceof FormBlock) {
+            out.writeByte(FORM_BLOCK);
+        } else if (block instanceof MenuBlock) {
+            out.writeByte(MENU_BLOCK);
+        } else {
+            out.writeByte(BLOCK);
+        }
+        writeString(out, block.getName());
+        writeString(out, block.getType());
+        List<Element> elements = block.getElements();
+        writeLength(out, elements == null ? null : elements.size());
+        if (elements != null) {
+            for (Element element : elements) {
+                writeElement(out, element);
+            }
+        }
+    }
+
+    private static Block readBlock(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        Block block;
+        if (kind == FORM_BLOCK) {
+            block = new FormBlock();
+        } else if (kind == MENU_BLOCK) {
+            block = new MenuBlock();
+        } else {
+            block = new Block();
+        }
+        block.setName(readString(in));
+        block.setType(readString(in));
+        int count = readLength(in);
+        if (count != NULL_LENGTH) {
+            List<Element> elements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                elements.add(readElement(in));
+            }
+            block.setElements(elements);
+        }
+        return block;
+    }
+
+    private static void writeElement(DataOutputStream out, Element element) throws IOException {
+        if (element instanceof TextElement) {
+            out.writeByte(TEXT_ELEMENT);
+        } else if (element instanceof FieldElement) {
+            out.writeByte(FIELD_ELEMENT);
+        } else if (element instanceof MenuElement) {
+            out.writeByte(MENU_ELEMENT);
+        } else {
+            out.writeByte(ELEMENT);
+        }
+        writeString(out, element.getName());
+        writeString(out, element.getType());
+        if (element instanceof TextElement) {
+            writeString(out, ((TextElement) element).getTxt());
+        } else if (element instanceof FieldElement) {
+            writeField(out, (FieldElement) element);
+        } else if (element instanceof MenuElement) {
+            writeString(out, ((MenuElement) element).getInput());
+            writeString(out, ((MenuElement) element).getNext());
+        }
+    }
+
+    private static Element readElement(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        Element element;
+        if (kind == TEXT_ELEMENT) {
+            element = new TextElement();
+        } else if (kind == FIELD_ELEMENT) {
+            element = new FieldElement();
+        } else if (kind == MENU_ELEMENT) {
+            element = new MenuElement();
+        } else {
+            element = new Element();
+        }
+        element.setName(readString(in));
+        element.setType(readString(in));
+        if (kind == TEXT_ELEMENT) {
+            ((TextElement) element).setTxt(readString(in));
+        } else if (kind == FIELD_ELEMENT) {
+            readField(in, (FieldElement) element);
+        } else if (kind == MENU_ELEMENT) {
+            ((MenuElement) element).setInput(readString(in));
+            ((MenuElement) element).setNext(readString(in));
+        }
+        return element;
+    }
+
+    private static void writeField(DataOutputStream out, FieldElement field) throws IOException {
+        writeString(out, field.getFieldType());
+        writeString(out, field.getFieldMeta());
+        writeString(out, field.getTxt());
+        out.writeBoolean(field.isBargeIn());
+        out.writeBoolean(field.isDtmf());
+        out.writeBoolean(field.isVoice());
+        writeString(out, field.getNoInput());
+        writeString(out, field.getNoMatch());
+        writeString(out, field.getGoodBye());
+        out.writeInt(field.getReprompt());
+        writeString(out, field.getDtmfGrammar());
+        writeString(out, field.getVoiceGrammar());
+    }
+
+    private static void readField(DataInputStream in, FieldElement field) throws IOException {
+        field.setFieldType(readString(in));
+        field.setFieldMeta(readString(in));
+        field.setTxt(readString(in));
+        field.setBargeIn(in.readBoolean());
+        field.setDtmf(in.readBoolean());
+        field.setVoice(in.readBoolean());
+        field.setNoInput(readString(in));
+        field.setNoMatch(readString(in));
+        field.setGoodBye(readString(in));
+        field.setReprompt(in.readInt());
+        field.setDtmfGrammar(readString(in));
+        field.setVoiceGrammar(readString(in));
+    }
+
+    private static void writeLength(DataOutputStream out, Integer length) throws IOException {
+        out.writeInt(length == null ? NULL_LENGTH : length);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+            return;
+        }
+        // the templates may be longer than the 64 KB written by writeUTF
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static int readLength(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        // every item takes a byte at least, so a longer length is not read from a valid flow
+        if (length != NULL_LENGTH && (length < 0 || length > in.available())) {
+            throw new IOException("Invalid length " + length + " in the compiled call flow");
+        }
+        return length;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readLength(in);
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBoolean(DataOutputStream out, Boolean value) throws IOException {
+        out.writeByte(value == null ? NULL_LENGTH : (value ? 1 : 0));
+    }
+
+    private static Boolean readBoolean(DataInputStream in) throws IOException {
+        byte value = in.readByte();
+        return value == NULL_LENGTH ? null : value == 1;
+    }
+
+    private FlowCompiler() {
+    }
+}
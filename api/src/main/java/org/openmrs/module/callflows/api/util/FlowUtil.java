@@ -19,7 +19,6 @@ import org.openmrs.module.callflows.api.evaluation.EvaluationCommand;
 import org.openmrs.module.callflows.api.evaluation.EvaluationContext;
 
 import java.io.IOException;
-import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -44,16 +43,8 @@ public class FlowUtil {
      * @return a node if found, returns null if not found
      */
     public Node getNextNodeByStep(Flow flow, String step) {
-        List<Node> nodes = flow.getNodes();
-        Node out = null;
-        for (int i = 0; i < nodes.size(); i++) {
-            Node node = nodes.get(i);
-            if (step.equals(node.getStep())) {
-                out = nodes.get(i + 1);
-                break;
-            }
-        }
-        return out;
+        int position = flow.getPositionOfStep(step);
+        return position < 0 ? null : flow.getNodes().get(position + 1);
     }
 
     /**
@@ -64,17 +55,8 @@ public class FlowUtil {
      * @return the node found, null if not found
      */
     public Node getNodeByStep(Flow flow, String step) {
-
-        List<Node> nodes = flow.getNodes();
-        Node out = null;
-        for (int i = 0; i < nodes.size(); i++) {
-            Node node = nodes.get(i);
-            if (step.equals(node.getStep())) {
-                out = node;
-                break;
-            }
-        }
-        return out;
+        int position = flow.getPositionOfStep(step);
+        return position < 0 ? null : flow.getNodes().get(position);
     }
 
     /**
@@ -0,0 +1,357 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.callflows.api.domain.Call;
+import org.openmrs.module.callflows.api.domain.Config;
+import org.openmrs.module.callflows.api.domain.OutboundQueueEntry;
+import org.openmrs.module.callflows.api.domain.types.CallStatus;
+import org.openmrs.module.callflows.api.domain.types.OutboundQueueStatus;
+import org.openmrs.module.callflows.api.service.CallService;
+import org.openmrs.module.callflows.api.service.CallSlotService;
+import org.openmrs.module.callflows.api.service.ConfigService;
+import org.openmrs.module.callflows.api.service.OutboundQueueService;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Places outbound calls from the queue shared by all the nodes of a cluster, without exceeding the outbound call
+ * limit of their configuration.
+ * <p>
+ * Calls are added to the cfl_outbound_queue table. Every node polls the table and claims batches of pending entries
+ * for its idle workers, a row is claimed by one node only. A worker places the call through the call service and
+ * writes the outcome back to its entry. Entries of calls already created in the QUEUED status are activated first,
+ * which leases an outbound call slot, the other ones create their call when they are placed. Entries whose call
+ * found no free slot are put back to the queue, as are the entries claimed by a node which stopped before finishing
+ * them once their claim expires.
+ * </p>
+ */
+public class OutboundCallDispatcher implements Closeable {
+
+    private static final Log LOGGER = LogFactory.getLog(OutboundCallDispatcher.class);
+
+    private static final int DEFAULT_WORKERS = 8;
+
+    private static final long DEFAULT_POLL_MILLIS = 1000L;
+
+    private static final int DEFAULT_CLAIM_TIMEOUT_SECONDS = 15 * 60;
+
+    private static final int DEFAULT_RETENTION_SECONDS = 7 * 24 * 60 * 60;
+
+    private static final long MAINTENANCE_INTERVAL_SECONDS = 60L;
+
+    private static final String CALL_NOT_QUEUED = "Call is no longer queued";
+
+    private static final String CALL_NOT_CREATED = "Call could not be created";
+
+    private final ConcurrentMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    private String nodeId = ManagementFactory.getRuntimeMXBean().getName() + "-"
+            + UUID.randomUUID().toString().substring(0, 8);
+
+    private int workers = DEFAULT_WORKERS;
+
+    private long pollMillis = DEFAULT_POLL_MILLIS;
+
+    private int claimTimeoutSeconds = DEFAULT_CLAIM_TIMEOUT_SECONDS;
+
+    private int retentionSeconds = DEFAULT_RETENTION_SECONDS;
+
+    private DaemonToken daemonToken;
+
+    private Semaphore idleWorkers;
+
+    private ExecutorService workerPool;
+
+    private ScheduledExecutorService poller;
+
+    private volatile boolean closed;
+
+    /**
+     * Adds a call, which is created when it is placed, to the queue
+     *
+     * @param configName the name of the configuration to place the call with
+     * @param flowName   the name of the flow to start the call with
+     * @param params     the parameters needed for the call to be placed
+     */
+    public void enqueue(String configName, String flowName, Map<String, Object> params) {
+        enqueue(Collections.singletonList(new OutboundQueueEntry(configName, flowName, null, params)));
+    }
+
+    /**
+     * Adds calls to the queue in one transaction
+     *
+     * @param entries the entries of the calls
+     * @return the saved entries, in the same order
+     */
+    public List<OutboundQueueEntry> enqueue(List<OutboundQueueEntry> entries) {
+        return Context.getService(OutboundQueueService.class).enqueue(entries);
+    }
+
+    /**
+     * Starts claiming and placing the queued calls on this node
+     */
+    public synchronized void start() {
+        if (poller != null || closed) {
+            return;
+        }
+        idleWorkers = new Semaphore(workers);
+        workerPool = Executors.newFixedThreadPool(workers,
+                new ThreadFactoryBuilder().setNameFormat("callflows-dispatch-%d").setDaemon(true).build());
+        poller = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("callflows-dispatch-poller").setDaemon(true).build());
+        poller.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                runSafely(new Runnable() {
+                    @Override
+                    public void run() {
+                        claimAndDispatch();
+                    }
+                });
+            }
+        }, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+        poller.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                runSafely(new Runnable() {
+                    @Override
+                    public void run() {
+                        maintain();
+                    }
+                });
+            }
+        }, MAINTENANCE_INTERVAL_SECONDS, MAINTENANCE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        LOGGER.info(String.format("Outbound call dispatcher started on node %s with %d workers", nodeId, workers));
+    }
+
+    /**
+     * Claims pending entries for the idle workers of this node, only as many per configuration as its outbound call
+     * limit allows, and hands them to the workers. Called on every poll.
+     */
+    public void claimAndDispatch() {
+        OutboundQueueService queueService = Context.getService(OutboundQueueService.class);
+        CallSlotService callSlotService = Context.getService(CallSlotService.class);
+        for (Config config : Context.getService(ConfigService.class).allConfigs()) {
+            int idle = idleWorkers.availablePermits();
+            if (closed || idle == 0) {
+                return;
+            }
+            int capacity = Math.min(idle, freeChannels(callSlotService, config));
+            if (capacity > 0) {
+                for (OutboundQueueEntry entry : queueService.claim(config.getName(), nodeId, capacity)) {
+                    submit(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of pending entries of each configuration, on all nodes
+     *
+     * @return a map of the queue sizes by configuration name
+     */
+    public Map<String, Long> getQueueSizes() {
+        return Context.getService(OutboundQueueService.class).countPending();
+    }
+
+    /**
+     * Stops claiming calls on this node. The calls being placed are interrupted, their entries are put back to the
+     * queue once their claim expires.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (poller != null) {
+            poller.shutdownNow();
+            workerPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Sets the token used to run the workers with the privileges of the module
+     *
+     * @param daemonToken the daemon token of the module
+     */
+    public void setDaemonToken(DaemonToken daemonToken) {
+        this.daemonToken = daemonToken;
+    }
+
+    /**
+     * Sets the name this node claims entries with, unique in the cluster
+     *
+     * @param nodeId the node name
+     */
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * Sets the number of calls this node places in parallel
+     *
+     * @param workers the number of worker threads
+     */
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * Sets how often this node looks for pending entries
+     *
+     * @param pollMillis the interval in milliseconds
+     */
+    public void setPollMillis(long pollMillis) {
+        this.pollMillis = pollMillis;
+    }
+
+    /**
+     * Sets after how long an unfinished claim is considered abandoned by its node
+     *
+     * @param claimTimeoutSeconds the claim timeout in seconds
+     */
+    public void setClaimTimeoutSeconds(int claimTimeoutSeconds) {
+        this.claimTimeoutSeconds = claimTimeoutSeconds;
+    }
+
+    /**
+     * Sets how long finished entries are kept
+     *
+     * @param retentionSeconds the retention in seconds
+     */
+    public void setRetentionSeconds(int retentionSeconds) {
+        this.retentionSeconds = retentionSeconds;
+    }
+
+    private int freeChannels(CallSlotService callSlotService, Config config) {
+        if (config.getOutboundCallLimit() <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        // claimed calls lease their slot only once they are activated, so the ones in flight are subtracted as well
+        return config.getOutboundCallLimit() - (int) callSlotService.countLeasedSlots(config)
+                - inFlightOf(config.getName()).get();
+    }
+
+    private void submit(final OutboundQueueEntry entry) {
+        idleWorkers.acquireUninterruptibly();
+        inFlightOf(entry.getConfig()).incrementAndGet();
+        workerPool.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runInDaemonThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            place(entry);
+                        }
+                    });
+                } finally {
+                    inFlightOf(entry.getConfig()).decrementAndGet();
+                    idleWorkers.release();
+                }
+            }
+        });
+    }
+
+    private void place(OutboundQueueEntry entry) {
+        OutboundQueueService queueService = Context.getService(OutboundQueueService.class);
+        try {
+            CallService callService = Context.getService(CallService.class);
+            Call call;
+            if (entry.getCallId() != null) {
+                call = callService.activateQueuedCall(entry.getCallId());
+                if (call == null) {
+                    queueService.finish(entry.getId(), OutboundQueueStatus.DONE, null, CALL_NOT_QUEUED);
+                    return;
+                }
+                if (call.getStatus() == CallStatus.QUEUED) {
+                    // another node took the last free slot in the meantime
+                    queueService.release(entry.getId());
+                    return;
+                }
+                call = callService.placeOutboundCall(call, entry.getParams());
+            } else {
+                call = callService.makeCall(entry.getConfig(), entry.getFlowName(), entry.getParams());
+            }
+            finish(queueService, entry, call);
+        } catch (RuntimeException e) {
+            LOGGER.error(String.format("%s could not be placed", entry), e);
+            queueService.finish(entry.getId(), OutboundQueueStatus.FAILED, null, e.getMessage());
+        }
+    }
+
+    private void finish(OutboundQueueService queueService, OutboundQueueEntry entry, Call call) {
+        if (call == null) {
+            queueService.finish(entry.getId(), OutboundQueueStatus.FAILED, null, CALL_NOT_CREATED);
+        } else if (call.getStatus() == CallStatus.FAILED) {
+            queueService.finish(entry.getId(), OutboundQueueStatus.FAILED, call.getCallId(), call.getStatusText());
+        } else {
+            queueService.finish(entry.getId(), OutboundQueueStatus.DONE, call.getCallId(), call.getStatus().name());
+        }
+    }
+
+    private void maintain() {
+        OutboundQueueService queueService = Context.getService(OutboundQueueService.class);
+        int released = queueService.releaseExpiredClaims(DateUtil.plusSeconds(DateUtil.now(), -claimTimeoutSeconds));
+        if (released > 0) {
+            LOGGER.warn(String.format("Released %d abandoned outbound queue entries", released));
+        }
+        queueService.purgeFinished(DateUtil.plusSeconds(DateUtil.now(), -retentionSeconds));
+    }
+
+    private AtomicInteger inFlightOf(String configName) {
+        AtomicInteger count = inFlight.get(configName);
+        if (count == null) {
+            AtomicInteger created = new AtomicInteger();
+            count = inFlight.putIfAbsent(configName, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        return count;
+    }
+
+    private void runSafely(Runnable runnable) {
+        try {
+            runInDaemonThread(runnable);
+        } catch (RuntimeException e) {
+            // an exception would cancel the following runs
+            LOGGER.error("Outbound call queue could not be processed", e);
+        }
+    }
+
+    private void runInDaemonThread(Runnable runnable) {
+        try {
+            // the caller waits for the daemon thread, so the worker threads bound the calls placed in parallel
+            Daemon.runInDaemonThread(runnable, daemonToken).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
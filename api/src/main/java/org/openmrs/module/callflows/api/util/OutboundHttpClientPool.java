@@ -0,0 +1,290 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.openmrs.module.callflows.api.domain.Config;
+import org.openmrs.module.callflows.api.metrics.CallFlowMetrics;
+import org.openmrs.module.callflows.api.metrics.MetricSource;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared, pooled HTTP clients used to place outbound calls with the IVR providers.
+ * <p>
+ * One client is kept per IVR configuration, so connections and TLS sessions to a provider are re-used across calls
+ * instead of being opened for every call. The pool size, timeouts and keep-alive are taken from the configuration,
+ * and a client is replaced when these settings change.
+ * </p>
+ * <p>
+ * A replaced client is retired rather than closed, as calls may still be waiting for its responses. It is closed
+ * once its requests are done, or at the latest after the longest time a request can take with its settings, the
+ * retired clients being checked whenever a client is got.
+ * </p>
+ */
+public class OutboundHttpClientPool implements MetricSource {
+
+    private static final Log LOGGER = LogFactory.getLog(OutboundHttpClientPool.class);
+
+    private static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+    private static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+    private static final int DEFAULT_READ_TIMEOUT = 30000;
+
+    private static final int DEFAULT_KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * Time a retired client is kept open even when idle, for the requests of the callers which got the client just
+     * before it was replaced
+     */
+    private static final long RETIRED_MIN_MILLIS = 1000L;
+
+    private final ConcurrentMap<String, PooledClient> clients = new ConcurrentHashMap<>();
+
+    private final Queue<PooledClient> retired = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Gets the shared client for the given configuration. The client must not be closed by the caller, but every
+     * response must be closed, so that its connection is returned to the pool.
+     *
+     * @param config the IVR configuration to connect with
+     * @return the pooled client
+     */
+    public CloseableHttpClient getClient(Config config) {
+        Settings settings = new Settings(config);
+        PooledClient client = clients.get(config.getName());
+        if (client == null || !client.settings.equals(settings)) {
+            client = replaceClient(config.getName(), client, settings);
+        }
+        if (!retired.isEmpty()) {
+            closeRetiredClients(false);
+        }
+        return client.httpClient;
+    }
+
+    /**
+     * Gets the statistics of the connection pool of each configuration in use
+     *
+     * @return a map of the pool statistics by configuration name
+     */
+    public Map<String, PoolStats> getPoolStats() {
+        Map<String, PoolStats> stats = new LinkedHashMap<>();
+        for (Map.Entry<String, PooledClient> entry : clients.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().connectionManager.getTotalStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Checks if all connections of a configuration are in use or requests are waiting for a connection
+     *
+     * @param configName the name of the configuration
+     * @return true if the pool of the configuration is saturated
+     */
+    public boolean isSaturated(String configName) {
+        PooledClient client = clients.get(configName);
+        if (client == null) {
+            return false;
+        }
+        PoolStats stats = client.connectionManager.getTotalStats();
+        return stats.getPending() > 0 || stats.getLeased() >= stats.getMax();
+    }
+
+    /**
+     * Gets the number of replaced clients which are not closed yet
+     *
+     * @return the number of retired clients
+     */
+    public int getRetiredCount() {
+        return retired.size();
+    }
+
+    @Override
+    public void sample(CallFlowMetrics.Samples samples) {
+        for (Map.Entry<String, PoolStats> entry : getPoolStats().entrySet()) {
+            String configName = entry.getKey();
+            PoolStats stats = entry.getValue();
+            samples.gauge(CallFlowMetrics.OUTBOUND_POOL_LEASED, stats.getLeased(), "config", configName);
+            samples.gauge(CallFlowMetrics.OUTBOUND_POOL_AVAILABLE, stats.getAvailable(), "config", configName);
+            samples.gauge(CallFlowMetrics.OUTBOUND_POOL_PENDING, stats.getPending(), "config", configName);
+            samples.gauge(CallFlowMetrics.OUTBOUND_POOL_MAX, stats.getMax(), "config", configName);
+            samples.gauge(CallFlowMetrics.OUTBOUND_POOL_SATURATED, isSaturated(configName) ? 1 : 0,
+                    "config", configName);
+        }
+        samples.gauge(CallFlowMetrics.OUTBOUND_POOL_RETIRED_CLIENTS, getRetiredCount());
+    }
+
+    /**
+     * Closes all clients and their connections, including the retired clients
+     */
+    public void close() {
+        for (String configName : clients.keySet()) {
+            closeQuietly(clients.remove(configName));
+        }
+        closeRetiredClients(true);
+    }
+
+    private synchronized PooledClient replaceClient(String configName, PooledClient current, Settings settings) {
+        PooledClient existing = clients.get(configName);
+        if (existing != null && existing != current) {
+            // replaced by another thread meanwhile
+            return existing;
+        }
+        PooledClient created = new PooledClient(settings);
+        clients.put(configName, created);
+        if (existing != null) {
+            existing.retiredAt = System.currentTimeMillis();
+            retired.add(existing);
+        }
+        LOGGER.debug(String.format("Created pooled HTTP client for config %s with %d connections",
+                configName, settings.maxConnections));
+        return created;
+    }
+
+    private void closeRetiredClients(boolean all) {
+        long now = System.currentTimeMillis();
+        for (PooledClient client : retired) {
+            if (all || client.canBeClosed(now)) {
+                if (retired.remove(client)) {
+                    closeQuietly(client);
+                }
+            }
+        }
+    }
+
+    private void closeQuietly(PooledClient client) {
+        if (client == null) {
+            return;
+        }
+        try {
+            client.httpClient.close();
+        } catch (IOException e) {
+            LOGGER.warn("Error closing pooled HTTP client", e);
+        }
+    }
+
+    private static int valueOrDefault(Integer value, int defaultValue) {
+        return value == null || value <= 0 ? defaultValue : value;
+    }
+
+    /**
+     * The connection settings of a configuration
+     */
+    private static final class Settings {
+
+        private final int maxConnections;
+
+        private final int connectTimeout;
+
+        private final int readTimeout;
+
+        private final int keepAliveSeconds;
+
+        private Settings(Config config) {
+            maxConnections = valueOrDefault(config.getOutgoingCallMaxConnections(), DEFAULT_MAX_CONNECTIONS);
+            connectTimeout = valueOrDefault(config.getOutgoingCallConnectTimeout(), DEFAULT_CONNECT_TIMEOUT);
+            readTimeout = valueOrDefault(config.getOutgoingCallReadTimeout(), DEFAULT_READ_TIMEOUT);
+            keepAliveSeconds = valueOrDefault(config.getOutgoingCallKeepAliveSeconds(), DEFAULT_KEEP_ALIVE_SECONDS);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Settings)) {
+                return false;
+            }
+            final Settings other = (Settings) o;
+            return maxConnections == other.maxConnections && connectTimeout == other.connectTimeout
+                    && readTimeout == other.readTimeout && keepAliveSeconds == other.keepAliveSeconds;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(maxConnections, connectTimeout, readTimeout, keepAliveSeconds);
+        }
+    }
+
+    /**
+     * A client together with its connection pool
+     */
+    private static final class PooledClient {
+
+        private final Settings settings;
+
+        private final PoolingHttpClientConnectionManager connectionManager;
+
+        private final CloseableHttpClient httpClient;
+
+        private volatile long retiredAt;
+
+        private PooledClient(Settings settings) {
+            this.settings = settings;
+            this.connectionManager = new PoolingHttpClientConnectionManager();
+            // the calls of a configuration usually all go to the one host of the provider
+            connectionManager.setMaxTotal(settings.maxConnections);
+            connectionManager.setDefaultMaxPerRoute(settings.maxConnections);
+
+            RequestConfig requestConfig = RequestConfig.custom()
+                    .setConnectTimeout(settings.connectTimeout)
+                    .setConnectionRequestTimeout(settings.connectTimeout)
+                    .setSocketTimeout(settings.readTimeout)
+                    .build();
+
+            final long keepAliveMillis = TimeUnit.SECONDS.toMillis(settings.keepAliveSeconds);
+            this.httpClient = HttpClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setDefaultRequestConfig(requestConfig)
+                    .setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+                        @Override
+                        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                            long duration = super.getKeepAliveDuration(response, context);
+                            return duration > 0 ? Math.min(duration, keepAliveMillis) : keepAliveMillis;
+                        }
+                    })
+                    .evictExpiredConnections()
+                    .evictIdleConnections(settings.keepAliveSeconds, TimeUnit.SECONDS)
+                    .build();
+        }
+
+        /**
+         * Checks if a retired client is done with its requests, or has been given the longest time a request can
+         * take: waiting for a connection, connecting and reading the response
+         */
+        private boolean canBeClosed(long now) {
+            long retiredMillis = now - retiredAt;
+            if (retiredMillis >= 2L * settings.connectTimeout + settings.readTimeout) {
+                return true;
+            }
+            PoolStats stats = connectionManager.getTotalStats();
+            return retiredMillis >= RETIRED_MIN_MILLIS && stats.getLeased() == 0 && stats.getPending() == 0;
+        }
+    }
+}
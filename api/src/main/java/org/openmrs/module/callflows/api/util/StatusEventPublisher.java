@@ -0,0 +1,324 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.callflows.api.event.CallFlowEvent;
+import org.openmrs.module.callflows.api.metrics.CallFlowMetrics;
+import org.openmrs.module.callflows.api.metrics.MetricSource;
+import org.openmrs.module.callflows.api.service.CallFlowEventService;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the call status events in the background, so the callers, e.g. the status callbacks of the IVR providers,
+ * only have to add the event to a buffer.
+ * <p>
+ * The buffer is bounded and keeps one event per call: a newer status of a call which was not published yet replaces
+ * the older one in place. A single thread takes the pending events in batches and sends every batch in one
+ * transaction. When the buffer is full the event is dropped and counted at once, so the caller never blocks, unless
+ * an offer timeout is set, in which case the caller waits for free space up to that timeout first.
+ * </p>
+ */
+public class StatusEventPublisher implements Closeable, MetricSource {
+
+    private static final Log LOGGER = LogFactory.getLog(StatusEventPublisher.class);
+
+    private static final int DEFAULT_CAPACITY = 10000;
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    private static final long DEFAULT_OFFER_TIMEOUT_MILLIS = 0L;
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 10L;
+
+    private final Map<Object, PendingEvent> pending = new LinkedHashMap<>();
+
+    private int capacity = DEFAULT_CAPACITY;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private long offerTimeoutMillis = DEFAULT_OFFER_TIMEOUT_MILLIS;
+
+    private long publishedCount;
+
+    private long coalescedCount;
+
+    private long droppedCount;
+
+    private CallFlowEventService callFlowEventService;
+
+    private DaemonToken daemonToken;
+
+    private ExecutorService sender;
+
+    private boolean closed;
+
+    /**
+     * Adds an event to the buffer. If the event of the same call is still pending, it is replaced by the new one.
+     *
+     * @param callId the call ID of the call the event is about, null if the event is not about a known call and must
+     *               not be coalesced
+     * @param event  the event to publish
+     * @return true if the event will be published, false if it was dropped because the buffer stayed full
+     */
+    public synchronized boolean publish(String callId, CallFlowEvent event) {
+        if (callId != null) {
+            PendingEvent pendingEvent = pending.get(callId);
+            if (pendingEvent != null) {
+                pendingEvent.event = event;
+                coalescedCount++;
+                return true;
+            }
+        }
+        long deadline = System.currentTimeMillis() + offerTimeoutMillis;
+        while (offerTimeoutMillis > 0 && pending.size() >= capacity && !closed) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (pending.size() >= capacity || closed) {
+            droppedCount++;
+            LOGGER.warn(String.format("Status event of call %s dropped, %d events are pending", callId, pending.size()));
+            return false;
+        }
+        pending.put(callId != null ? callId : new Object(), new PendingEvent(event));
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Starts sending the buffered events
+     */
+    public synchronized void start() {
+        if (sender != null || closed) {
+            return;
+        }
+        sender = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("callflows-status-events").setDaemon(true).build());
+        sender.execute(new Runnable() {
+            @Override
+            public void run() {
+                sendPendingEvents();
+            }
+        });
+    }
+
+    /**
+     * Gets the number of events waiting to be published
+     *
+     * @return the number of pending events
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Gets the number of events sent since the start
+     *
+     * @return the number of published events
+     */
+    public synchronized long getPublishedCount() {
+        return publishedCount;
+    }
+
+    /**
+     * Gets the number of events replaced by a newer event of the same call before they were sent
+     *
+     * @return the number of coalesced events
+     */
+    public synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    /**
+     * Gets the number of events dropped because the buffer was full or which could not be sent
+     *
+     * @return the number of dropped events
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Gets how long the oldest pending event has been waiting
+     *
+     * @return the lag in milliseconds, 0 if no event is pending
+     */
+    public synchronized long getLagMillis() {
+        if (pending.isEmpty()) {
+            return 0L;
+        }
+        return System.currentTimeMillis() - pending.values().iterator().next().bufferedAt;
+    }
+
+    @Override
+    public synchronized void sample(CallFlowMetrics.Samples samples) {
+        samples.gauge(CallFlowMetrics.STATUS_EVENTS_PENDING, getPendingCount());
+        samples.gauge(CallFlowMetrics.STATUS_EVENTS_LAG_SECONDS, getLagMillis() / 1000.0);
+        samples.counter(CallFlowMetrics.STATUS_EVENTS_PUBLISHED_TOTAL, publishedCount);
+        samples.counter(CallFlowMetrics.STATUS_EVENTS_COALESCED_TOTAL, coalescedCount);
+        samples.counter(CallFlowMetrics.STATUS_EVENTS_DROPPED_TOTAL, droppedCount);
+    }
+
+    /**
+     * Stops accepting events and waits for the pending ones to be sent
+     */
+    @Override
+    public void close() {
+        ExecutorService stoppedSender;
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+            stoppedSender = sender;
+        }
+        if (stoppedSender == null) {
+            return;
+        }
+        stoppedSender.shutdown();
+        try {
+            if (!stoppedSender.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warn(String.format("%d status events were not published before shutdown", getPendingCount()));
+                stoppedSender.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void setCallFlowEventService(CallFlowEventService callFlowEventService) {
+        this.callFlowEventService = callFlowEventService;
+    }
+
+    /**
+     * Sets the token used to send the events with the privileges of the module
+     *
+     * @param daemonToken the daemon token of the module
+     */
+    public void setDaemonToken(DaemonToken daemonToken) {
+        this.daemonToken = daemonToken;
+    }
+
+    /**
+     * Sets the maximum number of pending events
+     *
+     * @param capacity the buffer capacity
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Sets the maximum number of events sent in one transaction
+     *
+     * @param batchSize the batch size
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets how long a caller waits for free space in a full buffer before its event is dropped
+     *
+     * @param offerTimeoutMillis the timeout in milliseconds, 0 (the default) to drop the event without waiting
+     */
+    public void setOfferTimeoutMillis(long offerTimeoutMillis) {
+        this.offerTimeoutMillis = offerTimeoutMillis;
+    }
+
+    private void sendPendingEvents() {
+        List<CallFlowEvent> batch = takeBatch();
+        while (batch != null) {
+            send(batch);
+            batch = takeBatch();
+        }
+    }
+
+    private synchronized List<CallFlowEvent> takeBatch() {
+        while (pending.isEmpty()) {
+            if (closed) {
+                return null;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        // the events piling up while the previous batch was sent make up the next one
+        List<CallFlowEvent> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+        Iterator<PendingEvent> events = pending.values().iterator();
+        while (events.hasNext() && batch.size() < batchSize) {
+            batch.add(events.next().event);
+            events.remove();
+        }
+        notifyAll();
+        return batch;
+    }
+
+    private void send(final List<CallFlowEvent> batch) {
+        try {
+            Daemon.runInDaemonThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        callFlowEventService.sendEventMessages(batch);
+                        countSent(batch.size(), true);
+                    } catch (RuntimeException e) {
+                        LOGGER.error(String.format("%d status events could not be published", batch.size()), e);
+                        countSent(batch.size(), false);
+                    }
+                }
+            }, daemonToken).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void countSent(int count, boolean published) {
+        if (published) {
+            publishedCount += count;
+        } else {
+            droppedCount += count;
+        }
+    }
+
+    private static class PendingEvent {
+
+        private final long bufferedAt = System.currentTimeMillis();
+
+        private CallFlowEvent event;
+
+        PendingEvent(CallFlowEvent event) {
+            this.event = event;
+        }
+    }
+}
@@ -60,6 +60,10 @@ public class ConfigHandler extends BaseSettingsItemHandler<Config> {
             currentState.setOutboundCallLimit(provider.getOutboundCallLimit());
             currentState.setOutboundCallRetryAttempts(provider.getOutboundCallRetryAttempts());
             currentState.setOutboundCallRetrySeconds(provider.getOutboundCallRetrySeconds());
+            currentState.setOutgoingCallMaxConnections(provider.getOutgoingCallMaxConnections());
+            currentState.setOutgoingCallConnectTimeout(provider.getOutgoingCallConnectTimeout());
+            currentState.setOutgoingCallReadTimeout(provider.getOutgoingCallReadTimeout());
+            currentState.setOutgoingCallKeepAliveSeconds(provider.getOutgoingCallKeepAliveSeconds());
             currentState.setOutgoingCallMethod(provider.getOutgoingCallMethod());
             currentState.setOutgoingCallPostHeadersMap(provider.getOutgoingCallPostHeadersMap());
             currentState.setOutgoingCallPostParams(provider.getOutgoingCallPostParams());
@@ -0,0 +1,115 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.cache;
+
+import org.apache.velocity.VelocityContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openmrs.api.context.ServiceContext;
+import org.openmrs.module.callflows.BaseTest;
+import org.openmrs.module.callflows.Constants;
+import org.openmrs.module.callflows.api.domain.Config;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.context.ApplicationContext;
+
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Base Context Cache Tests
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ServiceContext.class})
+public class BaseContextCacheTest extends BaseTest {
+
+    private static final String SERVICE_KEY = "callService";
+
+    private static final String SERVICE_BEAN_NAME = "callflows.callService";
+
+    private static final Object SERVICE = new Object();
+
+    private BaseContextCache baseContextCache;
+
+    private ApplicationContext applicationContext;
+
+    private Config config;
+
+    @Before
+    public void setUp() {
+        PowerMockito.mockStatic(ServiceContext.class);
+        ServiceContext serviceContext = mock(ServiceContext.class);
+        applicationContext = mock(ApplicationContext.class);
+        given(ServiceContext.getInstance()).willReturn(serviceContext);
+        given(serviceContext.getApplicationContext()).willReturn(applicationContext);
+        given(applicationContext.getBean(SERVICE_BEAN_NAME)).willReturn(SERVICE);
+
+        baseContextCache = new BaseContextCache();
+        config = createConfig();
+    }
+
+    @Test
+    public void shouldResolveServicesOnlyOnce() {
+        VelocityContext first = baseContextCache.createContext(config);
+        VelocityContext second = baseContextCache.createContext(config);
+
+        assertThat(first.get(SERVICE_KEY), equalTo(SERVICE));
+        assertThat(second.get(SERVICE_KEY), equalTo(SERVICE));
+        assertThat(second.get("Math"), equalTo((Object) Math.class));
+        assertThat(baseContextCache.size(), equalTo(1L));
+        verify(applicationContext, times(1)).getBean(SERVICE_BEAN_NAME);
+    }
+
+    @Test
+    public void shouldNotShareValuesPutByCalls() {
+        VelocityContext first = baseContextCache.createContext(config);
+        first.put("name", "John");
+        first.put("Math", "overridden");
+
+        VelocityContext second = baseContextCache.createContext(config);
+
+        assertThat(second.get("name"), nullValue());
+        assertThat(second.get("Math"), equalTo((Object) Math.class));
+    }
+
+    @Test
+    public void shouldRebuildContextWhenConfigIsReplaced() {
+        baseContextCache.createContext(config);
+
+        baseContextCache.createContext(createConfig());
+
+        assertThat(baseContextCache.size(), equalTo(1L));
+        verify(applicationContext, times(2)).getBean(SERVICE_BEAN_NAME);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldThrowIllegalStateIfServiceIsNotFound() {
+        config.setServicesMap(Collections.singletonMap("missing", "callflows.missing"));
+
+        baseContextCache.createContext(config);
+    }
+
+    private Config createConfig() {
+        Config created = new Config();
+        created.setName(Constants.CONFIG_VOXEO);
+        created.setServicesMap(Collections.singletonMap(SERVICE_KEY, SERVICE_BEAN_NAME));
+        return created;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.openmrs.module.callflows.BaseTest;
+import org.openmrs.module.callflows.api.domain.Call;
+import org.openmrs.module.callflows.api.domain.types.CallStatus;
+import org.openmrs.module.callflows.api.helper.CallHelper;
+import org.openmrs.module.callflows.api.service.CallService;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Call Session Cache Tests
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CallSessionCacheTest extends BaseTest {
+
+    @Mock
+    private CallService callService;
+
+    private CallSessionCache callSessionCache;
+
+    private Call outboundCall;
+
+    @Before
+    public void setUp() {
+        callSessionCache = new CallSessionCache();
+        callSessionCache.setEnabled(true);
+        callSessionCache.setMaxUnflushedSteps(1);
+        callSessionCache.setCallService(callService);
+
+        outboundCall = CallHelper.createOutboundCall();
+        outboundCall.setId(1);
+    }
+
+    @Test
+    public void shouldServeCopiesOfOpenedCalls() {
+        callSessionCache.open(outboundCall);
+
+        Call cached = callSessionCache.get(outboundCall.getCallId());
+
+        assertThat(cached, notNullValue());
+        assertThat(cached, not(sameInstance(outboundCall)));
+        assertThat(cached.getId(), equalTo(outboundCall.getId()));
+        assertThat(cached.getStatus(), equalTo(CallStatus.OPENMRS_INITIATED));
+        assertThat(callSessionCache.size(), equalTo(1));
+    }
+
+    @Test
+    public void shouldNotOpenSessionsOfEndedCalls() {
+        outboundCall.setStatus(CallStatus.COMPLETED);
+
+        callSessionCache.open(outboundCall);
+
+        assertThat(callSessionCache.get(outboundCall.getCallId()), nullValue());
+        assertThat(callSessionCache.size(), equalTo(0));
+    }
+
+    @Test
+    public void shouldCoalesceUpdatesWithoutWritingThem() {
+        callSessionCache.open(outboundCall);
+
+        callSessionCache.update(outboundCall.getCallId(), status(CallStatus.IN_PROGRESS));
+        Call updated = callSessionCache.update(outboundCall.getCallId(), step(1L));
+
+        assertThat(updated.getStatus(), equalTo(CallStatus.IN_PROGRESS));
+        assertThat(updated.getSteps(), equalTo(1L));
+        assertThat(callSessionCache.getCoalescedCount(), equalTo(1L));
+        verify(callService, never()).saveCallSessions(anyListOf(Call.class));
+    }
+
+    @Test
+    public void shouldWriteBeforeReturningIfTooManyStepsWereNotWritten() {
+        callSessionCache.open(outboundCall);
+        callSessionCache.update(outboundCall.getCallId(), step(1L));
+
+        callSessionCache.update(outboundCall.getCallId(), step(2L));
+
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(callService).saveCallSessions(captor.capture());
+        assertThat(((Call) captor.getValue().get(0)).getSteps(), equalTo(2L));
+        assertThat(callSessionCache.getSynchronousWriteCount(), equalTo(1L));
+        assertThat(callSessionCache.size(), equalTo(1));
+    }
+
+    @Test
+    public void shouldWriteAndCloseSessionWhenCallEnds() {
+        callSessionCache.open(outboundCall);
+
+        callSessionCache.update(outboundCall.getCallId(), status(CallStatus.COMPLETED));
+
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(callService).saveCallSessions(captor.capture());
+        assertThat(((Call) captor.getValue().get(0)).getStatus(), equalTo(CallStatus.COMPLETED));
+        assertThat(callSessionCache.get(outboundCall.getCallId()), nullValue());
+        assertThat(callSessionCache.size(), equalTo(0));
+    }
+
+    @Test
+    public void shouldWriteUpdatedSessionsOnFlush() {
+        callSessionCache.open(outboundCall);
+        callSessionCache.update(outboundCall.getCallId(), step(1L));
+
+        callSessionCache.flush();
+        callSessionCache.flush();
+
+        verify(callService, times(1)).saveCallSessions(anyListOf(Call.class));
+        assertThat(callSessionCache.getWrittenCount(), equalTo(1L));
+        assertThat(callSessionCache.size(), equalTo(1));
+    }
+
+    @Test
+    public void shouldWriteSessionAgainIfWriteFailed() {
+        callSessionCache.open(outboundCall);
+        callSessionCache.update(outboundCall.getCallId(), step(1L));
+        doThrow(new IllegalStateException("database down")).when(callService)
+                .saveCallSessions(anyListOf(Call.class));
+
+        try {
+            callSessionCache.flush();
+        } catch (IllegalStateException e) {
+            // the session stays dirty
+        }
+        doNothing().when(callService).saveCallSessions(anyListOf(Call.class));
+        callSessionCache.flush();
+
+        verify(callService, times(2)).saveCallSessions(anyListOf(Call.class));
+        assertThat(callSessionCache.getWrittenCount(), equalTo(1L));
+    }
+
+    @Test
+    public void shouldCloseSessionReplacedByEndedCall() {
+        callSessionCache.open(outboundCall);
+        outboundCall.setStatus(CallStatus.FAILED);
+
+        callSessionCache.replace(outboundCall);
+
+        assertThat(callSessionCache.size(), equalTo(0));
+        verify(callService, never()).saveCallSessions(anyListOf(Call.class));
+    }
+
+    @Test
+    public void shouldIgnoreCallsWhenDisabled() {
+        callSessionCache.setEnabled(false);
+
+        callSessionCache.open(outboundCall);
+
+        assertThat(callSessionCache.get(outboundCall.getCallId()), nullValue());
+        assertThat(callSessionCache.update(outboundCall.getCallId(), step(1L)), nullValue());
+    }
+
+    private static Consumer<Call> status(CallStatus status) {
+        return call -> call.setStatus(status);
+    }
+
+    private static Consumer<Call> step(long steps) {
+        return call -> call.setSteps(steps);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.callflows.BaseTest;
+import org.openmrs.module.callflows.Constants;
+import org.openmrs.module.callflows.api.domain.flow.Flow;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Flow Cache Tests
+ */
+public class FlowCacheTest extends BaseTest {
+
+    private static final Integer MAIN_FLOW_ID = 1;
+
+    private static final Integer MAIN_FLOW_VERSION = 3;
+
+    private FlowCache flowCache;
+
+    private Flow flow;
+
+    @Before
+    public void setUp() {
+        flowCache = new FlowCache(10);
+        flow = new Flow();
+        flow.setName(Constants.CALLFLOW_MAIN);
+    }
+
+    @Test
+    public void shouldReturnCachedFlowForSameVersion() {
+        flowCache.put(Constants.CALLFLOW_MAIN, MAIN_FLOW_ID, MAIN_FLOW_VERSION, flow);
+
+        assertThat(flowCache.get(Constants.CALLFLOW_MAIN, MAIN_FLOW_ID, MAIN_FLOW_VERSION), sameInstance(flow));
+        assertThat(flowCache.getStats().hitCount(), equalTo(1L));
+    }
+
+    @Test
+    public void shouldNotReturnCachedFlowIfVersionChanged() {
+        flowCache.put(Constants.CALLFLOW_MAIN, MAIN_FLOW_ID, MAIN_FLOW_VERSION, flow);
+
+        assertThat(flowCache.get(Constants.CALLFLOW_MAIN, MAIN_FLOW_ID, MAIN_FLOW_VERSION + 1), nullValue());
+        assertThat(flowCache.getStats().missCount(), equalTo(1L));
+    }
+
+    @Test
+    public void shouldNotReturnCachedFlowOfDeletedCallFlowWithSameName() {
+        flowCache.put(Constants.CALLFLOW_MAIN, MAIN_FLOW_ID, MAIN_FLOW_VERSION, flow);
+
+        assertThat(flowCache.get(Constants.CALLFLOW_MAIN, MAIN_FLOW_ID + 1, MAIN_FLOW_VERSION), nullValue());
+    }
+
+    @Test
+    public void shouldInvalidateAllVersionsOfFlow() {
+        flowCache.put(Constants.CALLFLOW_MAIN, MAIN_FLOW_ID, MAIN_FLOW_VERSION, flow);
+        flowCache.put(Constants.CALLFLOW_MAIN, MAIN_FLOW_ID, MAIN_FLOW_VERSION + 1, new Flow());
+
+        flowCache.invalidate(Constants.CALLFLOW_MAIN);
+
+        assertThat(flowCache.size(), equalTo(0L));
+        assertThat(flowCache.get(Constants.CALLFLOW_MAIN, MAIN_FLOW_ID, MAIN_FLOW_VERSION), nullValue());
+    }
+
+    @Test
+    public void shouldEvictWhenMaximumSizeIsReached() {
+        flowCache = new FlowCache(1);
+        flowCache.put(Constants.CALLFLOW_MAIN, MAIN_FLOW_ID, MAIN_FLOW_VERSION, flow);
+        flowCache.put(Constants.CALLFLOW_MAIN2, MAIN_FLOW_ID + 1, 0, new Flow());
+
+        assertThat(flowCache.size(), equalTo(1L));
+        assertThat(flowCache.get(Constants.CALLFLOW_MAIN, MAIN_FLOW_ID, MAIN_FLOW_VERSION), nullValue());
+    }
+}
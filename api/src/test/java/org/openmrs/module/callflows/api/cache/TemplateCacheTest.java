@@ -0,0 +1,90 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.cache;
+
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.exception.ParseErrorException;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.callflows.BaseTest;
+import org.openmrs.module.callflows.Constants;
+
+import java.io.StringWriter;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Template Cache Tests
+ */
+public class TemplateCacheTest extends BaseTest {
+
+    private static final String STEP = "entry";
+
+    private static final String TYPE = "vxml";
+
+    private static final String CONTENT = "Hello $name";
+
+    private TemplateCache templateCache;
+
+    private VelocityContext context;
+
+    @Before
+    public void setUp() {
+        templateCache = new TemplateCache(10);
+        context = new VelocityContext();
+        context.put("name", "John");
+    }
+
+    @Test
+    public void shouldRenderTemplate() {
+        assertThat(render(CONTENT), equalTo("Hello John"));
+    }
+
+    @Test
+    public void shouldParseTemplateOnlyOnce() {
+        render(CONTENT);
+        context.put("name", "Jane");
+
+        assertThat(render(CONTENT), equalTo("Hello Jane"));
+        assertThat(templateCache.size(), equalTo(1L));
+        assertThat(templateCache.getStats().missCount(), equalTo(1L));
+        assertThat(templateCache.getStats().hitCount(), equalTo(1L));
+    }
+
+    @Test
+    public void shouldParseChangedTemplateAgain() {
+        render(CONTENT);
+
+        assertThat(render("Bye $name"), equalTo("Bye John"));
+        assertThat(templateCache.getStats().missCount(), equalTo(2L));
+    }
+
+    @Test
+    public void shouldInvalidateTemplatesOfFlow() {
+        render(CONTENT);
+
+        templateCache.invalidate(Constants.CALLFLOW_MAIN);
+
+        assertThat(templateCache.size(), equalTo(0L));
+    }
+
+    @Test(expected = ParseErrorException.class)
+    public void shouldThrowParseErrorIfTemplateIsInvalid() {
+        render("#if($name");
+    }
+
+    private String render(String content) {
+        StringWriter writer = new StringWriter();
+        templateCache.render(Constants.CALLFLOW_MAIN, STEP, TYPE, content, context, writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.dao;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.callflows.BaseTest;
+import org.openmrs.module.callflows.api.domain.Call;
+import org.openmrs.module.callflows.api.domain.types.CallStatus;
+import org.openmrs.module.callflows.api.helper.CallHelper;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Persisted Call State Tests
+ */
+public class PersistedCallStateTest extends BaseTest {
+
+    private Call call;
+
+    private PersistedCallState persistedState;
+
+    @Before
+    public void setUp() {
+        call = CallHelper.createOutboundCall();
+        call.setStartTime(new Timestamp(1000L));
+        persistedState = PersistedCallState.of(call);
+    }
+
+    @Test
+    public void shouldFindNoChangesInUnchangedCall() {
+        call.setStartTime(new Date(1000L));
+        call.setContext(new HashMap<>(call.getContext()));
+
+        assertTrue(persistedState.changedColumns(PersistedCallState.columnsOf(call)).isEmpty());
+    }
+
+    @Test
+    public void shouldFindOnlyTheChangedStatus() {
+        call.setStatus(CallStatus.COMPLETED);
+
+        Map<String, Object> changed = persistedState.changedColumns(PersistedCallState.columnsOf(call));
+
+        assertThat(changed.size(), equalTo(1));
+        assertThat(changed.get("status"), equalTo((Object) "COMPLETED"));
+    }
+
+    @Test
+    public void shouldFindContextChangedInPlace() {
+        call.getContext().put("language", "en");
+
+        Map<String, Object> changed = persistedState.changedColumns(PersistedCallState.columnsOf(call));
+
+        assertThat(changed.keySet().iterator().next(), equalTo(PersistedCallState.CONTEXT_COLUMN));
+        assertThat(changed.size(), equalTo(1));
+    }
+
+    @Test
+    public void shouldFindNoChangesOnceTheChangesAreWritten() {
+        call.setSteps(3L);
+        call.getProviderData().put("sessionId", "abc");
+        Map<String, Object> changed = persistedState.changedColumns(PersistedCallState.columnsOf(call));
+
+        PersistedCallState writtenState = persistedState.with(changed);
+
+        assertThat(changed.size(), equalTo(2));
+        assertTrue(writtenState.changedColumns(PersistedCallState.columnsOf(call)).isEmpty());
+    }
+
+    @Test
+    public void shouldKeepSameStateIfNothingWasWritten() {
+        assertThat(persistedState.with(new HashMap<String, Object>()), sameInstance(persistedState));
+    }
+}
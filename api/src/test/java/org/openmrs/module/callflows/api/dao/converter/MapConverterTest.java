@@ -0,0 +1,132 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.dao.converter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.callflows.BaseTest;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Map Converter Tests
+ */
+public class MapConverterTest extends BaseTest {
+
+    private MapConverter mapConverter;
+
+    private Map<String, Object> context;
+
+    @Before
+    public void setUp() {
+        mapConverter = new MapConverter();
+        context = createTypicalContext();
+    }
+
+    @Test
+    public void shouldStoreContextAsJson() {
+        byte[] dbData = mapConverter.convertToDatabaseColumn(context);
+
+        assertTrue(dbData[0] == JsonMapCodec.VERSION_JSON || dbData[0] == JsonMapCodec.VERSION_DEFLATED_JSON);
+        assertThat(mapConverter.convertToEntityAttribute(dbData), equalTo((Map) context));
+    }
+
+    @Test
+    public void shouldDeflateLargeContext() {
+        StringBuilder visits = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            visits.append("visit-").append(i).append(',');
+        }
+        context.put("visits", visits.toString());
+
+        byte[] dbData = mapConverter.convertToDatabaseColumn(context);
+
+        assertThat(dbData[0], equalTo(JsonMapCodec.VERSION_DEFLATED_JSON));
+        assertThat(mapConverter.convertToEntityAttribute(dbData), equalTo((Map) context));
+    }
+
+    @Test
+    public void shouldReadLegacyContext() throws IOException {
+        byte[] legacy = new JavaSerializationMapCodec().encode(context);
+
+        assertTrue(MapConverter.isLegacyEncoded(legacy));
+        assertThat(mapConverter.convertToEntityAttribute(legacy), equalTo((Map) context));
+    }
+
+    @Test
+    public void shouldFallBackToLegacyFormatForValuesNotRepresentableInJson() {
+        context.put("lastVisit", new Date(0));
+
+        byte[] dbData = mapConverter.convertToDatabaseColumn(context);
+
+        assertTrue(MapConverter.isLegacyEncoded(dbData));
+        assertThat(mapConverter.convertToEntityAttribute(dbData), equalTo((Map) context));
+    }
+
+    @Test
+    public void shouldStoreNullContext() {
+        assertThat(mapConverter.convertToEntityAttribute(mapConverter.convertToDatabaseColumn(null)), nullValue());
+    }
+
+    @Test
+    public void shouldMigrateLegacyContext() throws IOException {
+        byte[] legacy = new JavaSerializationMapCodec().encode(context);
+
+        byte[] migrated = mapConverter.migrate(legacy);
+
+        assertFalse(MapConverter.isLegacyEncoded(migrated));
+        assertThat(mapConverter.convertToEntityAttribute(migrated), equalTo((Map) context));
+    }
+
+    @Test
+    public void shouldKeepLegacyContextWhichCanNotBeMigrated() throws IOException {
+        context.put("lastVisit", new Date(0));
+        byte[] legacy = new JavaSerializationMapCodec().encode(context);
+
+        assertThat(mapConverter.migrate(legacy), sameInstance(legacy));
+    }
+
+    @Test
+    public void shouldStoreTypicalContextInLessBytesThanLegacyFormat() throws IOException {
+        byte[] legacy = new JavaSerializationMapCodec().encode(context);
+        byte[] json = mapConverter.convertToDatabaseColumn(context);
+
+        assertTrue(String.format("json: %d bytes, legacy: %d bytes", json.length, legacy.length),
+                json.length < legacy.length);
+    }
+
+    private Map<String, Object> createTypicalContext() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("phone", "1234567890");
+        map.put("pin", "1234");
+        map.put("language", "en");
+        map.put("attempts", 2);
+        map.put("confirmed", Boolean.TRUE);
+        map.put("score", 4.5);
+        map.put("messages", Arrays.asList("welcome", "reminder"));
+        Map<String, Object> internal = new HashMap<>();
+        internal.put("callId", "0a0c4d4e-8a4b-4f6a-a8d2-5f6c0f4b9d21");
+        internal.put("jumpTo", "MainFlow");
+        map.put("internal", internal);
+        return map;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.dao.impl;
+
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.callflows.BaseTest;
+import org.openmrs.module.callflows.api.domain.Call;
+import org.openmrs.module.callflows.api.domain.types.CallStatus;
+import org.openmrs.module.callflows.api.helper.CallHelper;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Call Dao Implementation Tests
+ */
+public class CallDaoImplTest extends BaseTest {
+
+    private static final Integer CALL_ID = 1;
+
+    @Mock
+    private SessionFactory sessionFactory;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private SQLQuery query;
+
+    private CallDaoImpl callDao;
+
+    private Call storedCall;
+
+    private Call changedCall;
+
+    @Before
+    public void setUp() {
+        Context.setUserContext(userContext);
+        callDao = new CallDaoImpl();
+        callDao.setSessionFactory(sessionFactory);
+        given(sessionFactory.getCurrentSession()).willReturn(session);
+        given(session.createSQLQuery(anyString())).willReturn(query);
+
+        storedCall = CallHelper.createOutboundCall();
+        storedCall.setId(CALL_ID);
+        storedCall.setStatus(CallStatus.IN_PROGRESS);
+        given(session.get(Call.class, CALL_ID)).willReturn(storedCall);
+
+        changedCall = CallHelper.createOutboundCall();
+        changedCall.setId(CALL_ID);
+    }
+
+    @After
+    public void tearDown() {
+        Context.clearUserContext();
+    }
+
+    @Test
+    public void shouldReadCallForUpdateOutsideOfTheSession() {
+        given(session.contains(changedCall)).willReturn(true);
+
+        Call call = callDao.findForUpdate(changedCall);
+
+        assertThat(call, equalTo(storedCall));
+        assertThat(call.getPersistedState(), notNullValue());
+        verify(session).evict(changedCall);
+        verify(session).evict(storedCall);
+    }
+
+    @Test
+    public void shouldWriteOnlyTheStatusColumnsOfStatusUpdate() {
+        Call call = callDao.findForUpdate(changedCall);
+        call.setStatus(CallStatus.COMPLETED);
+        call.setStatusText("answered");
+
+        callDao.updateChanges(call);
+
+        verify(session).createSQLQuery("UPDATE cfl_calls SET status = :status, statusText = :statusText, "
+                + "changed_by = :changedBy, date_changed = :dateChanged WHERE cfl_calls_id = :id");
+        verify(query).executeUpdate();
+        verify(session, never()).update(any(Call.class));
+        verify(session, never()).merge(any(Call.class));
+        verify(session, never()).saveOrUpdate(any(Call.class));
+    }
+
+    @Test
+    public void shouldWriteNothingIfUpdateChangesNoColumn() {
+        Call call = callDao.findForUpdate(changedCall);
+
+        callDao.updateChanges(call);
+
+        verify(session, never()).createSQLQuery(anyString());
+        verify(session, never()).update(any(Call.class));
+    }
+}
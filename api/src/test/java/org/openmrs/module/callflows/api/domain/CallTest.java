@@ -0,0 +1,56 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.domain;
+
+import org.junit.Test;
+import org.openmrs.module.callflows.BaseTest;
+import org.openmrs.module.callflows.Constants;
+import org.openmrs.module.callflows.api.helper.CallFlowHelper;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Call Tests
+ */
+public class CallTest extends BaseTest {
+
+    @Test
+    public void shouldReturnStoredFlowNames() {
+        Call call = new Call();
+        call.setStartFlow(CallFlowHelper.createMainFlow());
+        call.setStartFlowName("StoredStartFlow");
+        call.setEndFlow(CallFlowHelper.createMainFlow());
+        call.setEndFlowName("StoredEndFlow");
+
+        assertThat(call.getStartFlowName(), equalTo("StoredStartFlow"));
+        assertThat(call.getEndFlowName(), equalTo("StoredEndFlow"));
+    }
+
+    @Test
+    public void shouldReadFlowNamesFromFlowsIfNotStored() {
+        Call call = new Call();
+        call.setStartFlow(CallFlowHelper.createMainFlow());
+        call.setEndFlow(CallFlowHelper.createMainFlow());
+
+        assertThat(call.getStartFlowName(), equalTo(Constants.CALLFLOW_MAIN));
+        assertThat(call.getEndFlowName(), equalTo(Constants.CALLFLOW_MAIN));
+    }
+
+    @Test
+    public void shouldReturnNullFlowNamesWithoutFlows() {
+        Call call = new Call();
+
+        assertThat(call.getStartFlowName(), nullValue());
+        assertThat(call.getEndFlowName(), nullValue());
+    }
+}
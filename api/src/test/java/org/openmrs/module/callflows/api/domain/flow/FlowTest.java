@@ -0,0 +1,115 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.domain.flow;
+
+import org.junit.Test;
+import org.openmrs.module.callflows.api.util.FlowUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Flow Tests, covering the step index used to look up nodes
+ */
+public class FlowTest {
+
+    private static final int LOOKUPS = 100;
+
+    @Test
+    public void shouldFindPositionOfStep() {
+        Flow flow = createFlow(5);
+
+        assertThat(flow.getPositionOfStep("step0"), equalTo(0));
+        assertThat(flow.getPositionOfStep("step4"), equalTo(4));
+        assertThat(flow.getPositionOfStep("invalid"), equalTo(-1));
+    }
+
+    @Test
+    public void shouldFindFirstNodeIfStepIsDuplicated() {
+        Flow flow = new Flow();
+        flow.setNodes(Arrays.asList(createNode("entry"), createNode("active"), createNode("entry")));
+
+        assertThat(flow.getPositionOfStep("entry"), equalTo(0));
+    }
+
+    @Test
+    public void shouldNotFindAnyStepIfFlowHasNoNodes() {
+        assertThat(new Flow().getPositionOfStep("entry"), equalTo(-1));
+    }
+
+    @Test
+    public void shouldRebuildIndexWhenNodesAreReplaced() {
+        Flow flow = createFlow(5);
+        assertThat(flow.getPositionOfStep("step4"), equalTo(4));
+
+        flow.setNodes(Collections.singletonList(createNode("step4")));
+
+        assertThat(flow.getPositionOfStep("step4"), equalTo(0));
+    }
+
+    @Test
+    public void shouldLookUpNodesAtConstantCostRegardlessOfFlowSize() {
+        FlowUtil flowUtil = new FlowUtil();
+        for (int size : new int[]{10, 100, 1000, 10000}) {
+            Flow flow = createFlow(size);
+            String lastStep = "step" + (size - 1);
+            String secondLastStep = "step" + (size - 2);
+            // the first lookup builds the index
+            flowUtil.getNodeByStep(flow, lastStep);
+            CountingList nodes = (CountingList) flow.getNodes();
+
+            nodes.accesses = 0;
+            for (int i = 0; i < LOOKUPS; i++) {
+                assertThat(flowUtil.getNodeByStep(flow, lastStep), sameInstance(nodes.get(size - 1)));
+                assertThat(flowUtil.getNextNodeByStep(flow, secondLastStep), sameInstance(nodes.get(size - 1)));
+            }
+
+            // one access per lookup plus one per assertion, independent of the number of nodes
+            assertThat(nodes.accesses, equalTo(LOOKUPS * 4));
+        }
+    }
+
+    private Flow createFlow(int size) {
+        CountingList nodes = new CountingList();
+        for (int i = 0; i < size; i++) {
+            nodes.add(createNode("step" + i));
+        }
+        Flow flow = new Flow();
+        flow.setName("LargeFlow");
+        flow.setNodes(nodes);
+        return flow;
+    }
+
+    private Node createNode(String step) {
+        Node node = new UserNode();
+        node.setStep(step);
+        return node;
+    }
+
+    /**
+     * A list of nodes counting positional accesses, which is what a linear scan would pay for per node
+     */
+    private static class CountingList extends ArrayList<Node> {
+
+        private int accesses;
+
+        @Override
+        public Node get(int index) {
+            accesses++;
+            return super.get(index);
+        }
+    }
+}
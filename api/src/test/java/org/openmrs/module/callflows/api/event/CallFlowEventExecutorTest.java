@@ -0,0 +1,228 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.event;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.callflows.BaseTest;
+import org.openmrs.module.callflows.api.exception.CallFlowRuntimeException;
+import org.openmrs.module.callflows.api.metrics.CallFlowMetrics;
+import org.openmrs.module.callflows.api.metrics.MetricSource;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+
+/**
+ * Call Flow Event Executor Tests
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Context.class, Daemon.class})
+public class CallFlowEventExecutorTest extends BaseTest {
+
+    private static final String SUBJECT = "callflows-call-initiate";
+
+    private static final String OTHER_SUBJECT = "callflows-other";
+
+    private static final long WAIT_SECONDS = 2L;
+
+    private CallFlowEventExecutor eventExecutor;
+
+    private CountDownLatch release;
+
+    @Before
+    public void setUp() {
+        PowerMockito.mockStatic(Context.class);
+        PowerMockito.mockStatic(Daemon.class);
+        given(Daemon.runInDaemonThread(any(Runnable.class), any(DaemonToken.class))).willAnswer(new Answer<Thread>() {
+            @Override
+            public Thread answer(InvocationOnMock invocation) {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return new Thread();
+            }
+        });
+
+        release = new CountDownLatch(1);
+        eventExecutor = new CallFlowEventExecutor();
+        eventExecutor.setWorkers(1);
+        eventExecutor.setQueueCapacity(1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        eventExecutor.close();
+    }
+
+    @Test
+    public void shouldCountEventsBySubject() throws InterruptedException {
+        // Given
+        eventExecutor.setQueueCapacity(10);
+        final CountDownLatch done = new CountDownLatch(3);
+
+        // When
+        eventExecutor.execute(SUBJECT, countDown(done));
+        eventExecutor.execute(SUBJECT, new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+                throw new IllegalStateException("Failure");
+            }
+        });
+        eventExecutor.execute(OTHER_SUBJECT, countDown(done));
+
+        // Then
+        assertTrue(done.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        eventExecutor.close();
+        CallFlowEventExecutor.SubjectStats stats = eventExecutor.getSubjectStats().get(SUBJECT);
+        assertThat(stats.getReceived(), equalTo(2L));
+        assertThat(stats.getCompleted(), equalTo(1L));
+        assertThat(stats.getFailed(), equalTo(1L));
+        assertThat(stats.getQueued(), equalTo(0L));
+        assertThat(eventExecutor.getSubjectStats().get(OTHER_SUBJECT).getCompleted(), equalTo(1L));
+    }
+
+    @Test
+    public void shouldRunEventsOnDaemonThreadStartedOnceByWorker() throws InterruptedException {
+        // Given
+        eventExecutor.setQueueCapacity(10);
+        final CountDownLatch done = new CountDownLatch(3);
+
+        // When
+        eventExecutor.execute(SUBJECT, countDown(done));
+        eventExecutor.execute(SUBJECT, countDown(done));
+        eventExecutor.execute(SUBJECT, countDown(done));
+
+        // Then a single daemon thread is started, for the single worker
+        assertTrue(done.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        eventExecutor.close();
+        PowerMockito.verifyStatic(times(1));
+        Daemon.runInDaemonThread(any(Runnable.class), any(DaemonToken.class));
+        // And every event gets a new session
+        PowerMockito.verifyStatic(times(3));
+        Context.closeSession();
+    }
+
+    @Test
+    public void shouldReportQueueAndCountsAsMetrics() throws InterruptedException {
+        // Given
+        CallFlowMetrics metrics = new CallFlowMetrics();
+        metrics.setSources(Collections.<MetricSource>singletonList(eventExecutor));
+        fillQueue();
+
+        // When
+        String text = metrics.toPrometheusText();
+
+        // Then
+        assertThat(text, containsString("callflows_events_queue_depth 1\n"));
+        assertThat(text, containsString("callflows_events_active_workers 1\n"));
+        assertThat(text, containsString("callflows_events_queued{subject=\"callflows-call-initiate\"} 1\n"));
+        assertThat(text, containsString("callflows_events_received_total{subject=\"callflows-call-initiate\"} 2\n"));
+    }
+
+    @Test
+    public void shouldRunEventInReceivingThreadIfQueueIsFull() throws InterruptedException {
+        // Given
+        final AtomicReference<Thread> runner = new AtomicReference<>();
+        fillQueue();
+
+        // When
+        eventExecutor.execute(SUBJECT, new Runnable() {
+            @Override
+            public void run() {
+                runner.set(Thread.currentThread());
+            }
+        });
+
+        // Then
+        assertThat(runner.get(), equalTo(Thread.currentThread()));
+        assertThat(eventExecutor.getQueueDepth(), equalTo(1));
+    }
+
+    @Test
+    public void shouldRejectEventIfQueueIsFullAndCallerRunsIsDisabled() throws InterruptedException {
+        // Given
+        eventExecutor.setCallerRunsWhenFull(false);
+        fillQueue();
+
+        // When
+        try {
+            eventExecutor.execute(SUBJECT, new Runnable() {
+                @Override
+                public void run() {
+                    fail("Rejected event should not run");
+                }
+            });
+            fail("Expected CallFlowRuntimeException");
+        } catch (CallFlowRuntimeException e) {
+            // Then
+            CallFlowEventExecutor.SubjectStats stats = eventExecutor.getSubjectStats().get(SUBJECT);
+            assertThat(stats.getReceived(), equalTo(3L));
+            assertThat(stats.getRejected(), equalTo(1L));
+            assertThat(stats.getQueued(), equalTo(1L));
+        }
+    }
+
+    private void fillQueue() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        eventExecutor.execute(SUBJECT, new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                awaitRelease();
+            }
+        });
+        assertTrue(started.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        eventExecutor.execute(SUBJECT, new Runnable() {
+            @Override
+            public void run() {
+                awaitRelease();
+            }
+        });
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Runnable countDown(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.metrics;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.callflows.BaseTest;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Call Flow Metrics Tests
+ */
+public class CallFlowMetricsTest extends BaseTest {
+
+    private static final String TIMER = "callflows_test_seconds";
+
+    private static final String COUNTER = "callflows_test_total";
+
+    private static final String GAUGE = "callflows_test_connections";
+
+    private CallFlowMetrics metrics;
+
+    @Before
+    public void setUp() {
+        metrics = new CallFlowMetrics();
+    }
+
+    @Test
+    public void shouldEstimatePercentilesFromBuckets() {
+        // Given
+        for (int i = 0; i < 98; i++) {
+            metrics.recordTime(TIMER, TimeUnit.MILLISECONDS.toNanos(3), "endpoint", "incoming");
+        }
+        metrics.recordTime(TIMER, TimeUnit.MILLISECONDS.toNanos(40), "endpoint", "incoming");
+        metrics.recordTime(TIMER, TimeUnit.SECONDS.toNanos(20), "endpoint", "incoming");
+
+        // When
+        LatencyHistogram histogram = metrics.getTimer(TIMER, "endpoint", "incoming");
+
+        // Then
+        assertThat(histogram.getCount(), equalTo(100L));
+        assertThat(histogram.getPercentileMillis(50), equalTo(5.0));
+        assertThat(histogram.getPercentileMillis(99), equalTo(50.0));
+        assertThat(histogram.getPercentileMillis(100), equalTo(20000.0));
+    }
+
+    @Test
+    public void shouldKeepSeparateSeriesForEveryLabelValue() {
+        // When
+        metrics.increment(COUNTER, 2, "flow", "MainFlow");
+        metrics.increment(COUNTER, 3, "flow", "MainFlow");
+        metrics.increment(COUNTER, 1, "flow", "OtherFlow");
+
+        // Then
+        assertThat(metrics.getCount(COUNTER, "flow", "MainFlow"), equalTo(5L));
+        assertThat(metrics.getCount(COUNTER, "flow", "OtherFlow"), equalTo(1L));
+        assertThat(metrics.getCount(COUNTER, "flow", "UnknownFlow"), equalTo(0L));
+    }
+
+    @Test
+    public void shouldRenderSnapshotOfTimersAndCounters() {
+        // Given
+        metrics.recordTime(TIMER, TimeUnit.MILLISECONDS.toNanos(3), "endpoint", "incoming");
+        metrics.increment(COUNTER, 1, "flow", "MainFlow");
+
+        // When
+        Map<String, Object> snapshot = metrics.getSnapshot();
+
+        // Then
+        Map<String, Object> timer = ((List<Map<String, Object>>) snapshot.get("timers")).get(0);
+        assertThat(timer.get("name"), equalTo((Object) TIMER));
+        assertThat(timer.get("count"), equalTo((Object) 1L));
+        assertThat(timer.get("p99Millis"), equalTo((Object) 5.0));
+        Map<String, Object> counter = ((List<Map<String, Object>>) snapshot.get("counters")).get(0);
+        assertThat(counter.get("value"), equalTo((Object) 1L));
+    }
+
+    @Test
+    public void shouldRenderPrometheusText() {
+        // Given
+        metrics.recordTime(TIMER, TimeUnit.MILLISECONDS.toNanos(3), "endpoint", "incoming");
+        metrics.increment(COUNTER, 4, "flow", "Main\"Flow");
+
+        // When
+        String text = metrics.toPrometheusText();
+
+        // Then
+        assertThat(text, containsString("# TYPE callflows_test_seconds histogram\n"));
+        assertThat(text, containsString("callflows_test_seconds_bucket{endpoint=\"incoming\",le=\"0.002\"} 0\n"));
+        assertThat(text, containsString("callflows_test_seconds_bucket{endpoint=\"incoming\",le=\"0.005\"} 1\n"));
+        assertThat(text, containsString("callflows_test_seconds_bucket{endpoint=\"incoming\",le=\"+Inf\"} 1\n"));
+        assertThat(text, containsString("callflows_test_seconds_count{endpoint=\"incoming\"} 1\n"));
+        assertThat(text, containsString("# TYPE callflows_test_total counter\n"));
+        assertThat(text, containsString("callflows_test_total{flow=\"Main\\\"Flow\"} 4\n"));
+    }
+
+    @Test
+    public void shouldSampleGaugesAndCountersOfSources() {
+        // Given
+        metrics.setSources(Collections.<MetricSource>singletonList(new MetricSource() {
+            @Override
+            public void sample(CallFlowMetrics.Samples samples) {
+                samples.gauge(GAUGE, 7, "config", "voxeo");
+                samples.counter(COUNTER, 3, "flow", "MainFlow");
+            }
+        }));
+
+        // When
+        Map<String, Object> snapshot = metrics.getSnapshot();
+        String text = metrics.toPrometheusText();
+
+        // Then
+        Map<String, Object> gauge = ((List<Map<String, Object>>) snapshot.get("gauges")).get(0);
+        assertThat(gauge.get("name"), equalTo((Object) GAUGE));
+        assertThat(gauge.get("value"), equalTo((Object) 7));
+        Map<String, Object> counter = ((List<Map<String, Object>>) snapshot.get("counters")).get(0);
+        assertThat(counter.get("value"), equalTo((Object) 3L));
+        assertThat(text, containsString("# TYPE callflows_test_connections gauge\n"));
+        assertThat(text, containsString("callflows_test_connections{config=\"voxeo\"} 7\n"));
+        assertThat(text, containsString("callflows_test_total{flow=\"MainFlow\"} 3\n"));
+    }
+}
@@ -20,8 +20,11 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.openmrs.module.callflows.BaseTest;
 import org.openmrs.module.callflows.Constants;
+import org.openmrs.module.callflows.api.cache.FlowCache;
+import org.openmrs.module.callflows.api.cache.TemplateCache;
 import org.openmrs.module.callflows.api.dao.CallFlowDao;
 import org.openmrs.module.callflows.api.domain.CallFlow;
+import org.openmrs.module.callflows.api.domain.CallFlowSummary;
 import org.openmrs.module.callflows.api.domain.flow.Flow;
 import org.openmrs.module.callflows.api.domain.types.CallFlowStatus;
 import org.openmrs.module.callflows.api.exception.CallFlowAlreadyExistsException;
@@ -30,14 +33,18 @@ import org.openmrs.module.callflows.api.service.impl.CallFlowServiceImpl;
 import org.openmrs.module.callflows.api.util.ValidationComponent;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 import static junit.framework.TestCase.assertNotNull;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
@@ -75,6 +82,12 @@ public class CallFlowServiceTest extends BaseTest {
     @Mock
     private ValidationComponent validationComponent;
 
+    @Mock
+    private FlowCache flowCache;
+
+    @Mock
+    private TemplateCache templateCache;
+
     @Before
     public void setUp() {
         mainFlow = CallFlowHelper.createMainFlow();
@@ -107,6 +120,8 @@ public class CallFlowServiceTest extends BaseTest {
         assertThat(createdCallFlow.getDescription(), equalTo(mainFlow.getDescription()));
         assertThat(createdCallFlow.getStatus(), equalTo(CallFlowStatus.DRAFT));
         assertThat(createdCallFlow.getRaw(), equalTo(mainFlow.getRaw()));
+        assertThat(mainFlow.getNodeCount(), equalTo(0));
+        assertNotNull(mainFlow.getCompiled());
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -195,6 +210,8 @@ public class CallFlowServiceTest extends BaseTest {
 
         // Then
         verify(callFlowDao, times(1)).update(existingMainFlow);
+        verify(flowCache, times(2)).invalidate(Constants.CALLFLOW_MAIN);
+        verify(templateCache, times(2)).invalidate(Constants.CALLFLOW_MAIN);
         assertNotNull(updatedFlow);
         assertThat(updatedFlow.getName(), equalTo(existingMainFlow.getName()));
         assertThat(updatedFlow.getDescription(), equalTo(existingMainFlow.getDescription()));
@@ -343,6 +360,47 @@ public class CallFlowServiceTest extends BaseTest {
         verify(callFlowDao, times(1)).findAllByName(Constants.CALLFLOW_INVALID_PREFIX);
     }
 
+    @Test
+    public void shouldFindCallFlowSummariesWithoutReadingOrWritingCallFlows() {
+        // Given a callflow summary with the nodes counted and one saved before the nodes were counted
+        CallFlowSummary counted = new CallFlowSummary();
+        counted.setId(1);
+        counted.setNodeCount(3);
+        CallFlowSummary notCounted = new CallFlowSummary();
+        notCounted.setId(2);
+        given(callFlowDao.findSummariesByName(Constants.CALLFLOW_MAIN_PREFIX, 0, 10))
+                .willReturn(Arrays.asList(counted, notCounted));
+
+        // When we search for the summaries by a prefix
+        List<CallFlowSummary> summaries = callFlowService.findSummariesByNamePrefix(Constants.CALLFLOW_MAIN_PREFIX,
+                0, 10);
+
+        // Then the summaries are returned as found, the node count is left to the migration
+        assertThat(summaries.get(0).getNodeCount(), equalTo(3));
+        assertNull(summaries.get(1).getNodeCount());
+        verify(callFlowDao, never()).findById(anyInt());
+        verify(callFlowDao, never()).updateNodeCount(anyInt(), anyInt());
+    }
+
+    @Test
+    public void shouldCountNodesOfLegacyCallFlowsInBatches() {
+        // Given two callflows saved before the nodes were counted
+        given(callFlowDao.findRawWithoutNodeCount(0, 10)).willReturn(Arrays.asList(
+                new Object[] {1, "{ \"name\": \"MainFlow\", \"nodes\": [{}, {}]}"},
+                new Object[] {4, "not a callflow"}));
+        given(callFlowDao.findRawWithoutNodeCount(4, 10)).willReturn(Collections.<Object[]>emptyList());
+
+        // When we migrate them
+        Integer lastId = callFlowService.migrateLegacyCallFlows(0, 10);
+        Integer nextLastId = callFlowService.migrateLegacyCallFlows(lastId, 10);
+
+        // Then the nodes of each raw callflow are counted and stored
+        assertThat(lastId, equalTo(4));
+        assertNull(nextLastId);
+        verify(callFlowDao).updateNodeCount(1, 2);
+        verify(callFlowDao).updateNodeCount(4, 0);
+    }
+
     @Test
     public void shouldFindCallFlowByValidName() {
         // Given
@@ -372,6 +430,27 @@ public class CallFlowServiceTest extends BaseTest {
         }
     }
 
+    @Test
+    public void shouldFindReferenceToCallFlowWithoutReadingCallFlow() {
+        // Given
+        given(callFlowDao.findVersionByName(Constants.CALLFLOW_MAIN)).willReturn(new Object[]{1, 0});
+        given(callFlowDao.getReferenceById(1)).willReturn(mainFlow);
+
+        // When we search for a reference to that flow
+        CallFlow returnedFlow = callFlowService.findReferenceByName(Constants.CALLFLOW_MAIN);
+
+        // Then
+        assertThat(returnedFlow, equalTo(mainFlow));
+        verify(callFlowDao, never()).findByName(anyString());
+    }
+
+    @Test
+    public void shouldThrowIllegalArgumentIfAttemptedToFindReferenceToCallFlowByInvalidName() {
+        expectException(IllegalArgumentException.class);
+
+        callFlowService.findReferenceByName(Constants.CALLFLOW_MAIN2);
+    }
+
     @Test
     public void shouldDeleteCallFlow() {
         // Given
@@ -383,6 +462,8 @@ public class CallFlowServiceTest extends BaseTest {
         // Then
         verify(callFlowDao, times(1)).findById(1);
         verify(callFlowDao, times(1)).delete(mainFlow);
+        verify(flowCache, times(1)).invalidate(mainFlow.getName());
+        verify(templateCache, times(1)).invalidate(mainFlow.getName());
     }
 
     @Test
@@ -17,24 +17,30 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.mockito.Mockito;
 import org.mockito.Spy;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.openmrs.module.callflows.BaseTest;
 import org.openmrs.module.callflows.Constants;
 import org.openmrs.module.callflows.api.dao.CallDao;
+import org.openmrs.module.callflows.api.dao.CallVisitor;
+import org.openmrs.module.callflows.api.dao.converter.JavaSerializationMapCodec;
+import org.openmrs.module.callflows.api.dao.converter.MapConverter;
 import org.openmrs.module.callflows.api.domain.Call;
+import org.openmrs.module.callflows.api.domain.CallFilter;
 import org.openmrs.module.callflows.api.domain.CallFlow;
 import org.openmrs.module.callflows.api.domain.Config;
+import org.openmrs.module.callflows.api.domain.OutboundQueueEntry;
 import org.openmrs.module.callflows.api.domain.flow.Flow;
 import org.openmrs.module.callflows.api.domain.types.CallDirection;
 import org.openmrs.module.callflows.api.domain.types.CallStatus;
+import org.openmrs.module.callflows.api.metrics.CallFlowMetrics;
 import org.openmrs.module.callflows.api.event.CallFlowEvent;
 import org.openmrs.module.callflows.api.helper.CallFlowHelper;
 import org.openmrs.module.callflows.api.helper.CallHelper;
@@ -45,28 +51,40 @@ import org.openmrs.module.callflows.api.util.CallAssert;
 import org.openmrs.module.callflows.api.util.CallFlowEventSubjectConstants;
 import org.openmrs.module.callflows.api.util.CallUtil;
 import org.openmrs.module.callflows.api.util.DateUtil;
+import org.openmrs.module.callflows.api.util.OutboundCallDispatcher;
+import org.openmrs.module.callflows.api.util.OutboundHttpClientPool;
+import org.openmrs.module.callflows.api.util.StatusEventPublisher;
 import org.openmrs.module.callflows.api.util.TestUtil;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import javax.naming.OperationNotSupportedException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 import java.util.UUID;
+import java.util.zip.ZipInputStream;
 
 import static junit.framework.Assert.assertNull;
 import static junit.framework.TestCase.assertNotNull;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -80,7 +98,7 @@ import static org.mockito.Mockito.verifyZeroInteractions;
  * @author bramak09
  */
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({CallServiceImpl.class, DateUtil.class, UUID.class, CloseableHttpClient.class, HttpClientBuilder.class})
+@PrepareForTest({CallServiceImpl.class, DateUtil.class, UUID.class})
 public class CallServiceTest extends BaseTest {
 
   private static final String PHONE_NUMBER = "1234567890";
@@ -105,6 +123,9 @@ public class CallServiceTest extends BaseTest {
   @InjectMocks
   private CallUtil callUtil = new CallUtil();
 
+  @Spy
+  private CallFlowMetrics metrics = new CallFlowMetrics();
+
   private Call inboundCall;
 
   private Call outboundCall;
@@ -127,7 +148,7 @@ public class CallServiceTest extends BaseTest {
   private CloseableHttpClient client;
 
   @Mock
-  private HttpClientBuilder httpClientBuilder;
+  private OutboundHttpClientPool httpClientPool;
 
   @Mock
   private CloseableHttpResponse okResponse;
@@ -145,7 +166,13 @@ public class CallServiceTest extends BaseTest {
   private CloseableHttpResponse badResponse;
 
   @Mock
-  private CallFlowEventService callFlowEventService;
+  private StatusEventPublisher statusEventPublisher;
+
+  @Mock
+  private OutboundCallDispatcher outboundCallDispatcher;
+
+  @Mock
+  private CallSlotService callSlotService;
 
   private CallFlowEvent callFailedEvent;
 
@@ -153,8 +180,6 @@ public class CallServiceTest extends BaseTest {
   public void setUp() throws Exception {
     PowerMockito.mockStatic(DateUtil.class);
     PowerMockito.mockStatic(UUID.class);
-    PowerMockito.mockStatic(CloseableHttpClient.class);
-    PowerMockito.mockStatic(HttpClientBuilder.class);
 
     contextMockHelper.setService(CallService.class, callService);
 
@@ -181,9 +206,8 @@ public class CallServiceTest extends BaseTest {
     Date date = DateUtil.parse(Constants.DATE_CURRENT, DATE_FORMAT);
     given(DateUtil.now()).willReturn(date);
 
-    PowerMockito.whenNew(CloseableHttpClient.class).withNoArguments().thenReturn(client);
-    PowerMockito.when(HttpClientBuilder.class, "create", new Object[0]).thenReturn(httpClientBuilder);
-    Mockito.when(httpClientBuilder.build()).thenReturn(client);
+    given(httpClientPool.getClient(any(Config.class))).willReturn(client);
+    given(callSlotService.acquireSlot(any(Config.class), anyString())).willReturn(true);
 
     HttpEntity okEntity = mock(HttpEntity.class);
     given(okEntity.getContent()).willReturn(IOUtils.toInputStream("OK"));
@@ -368,7 +392,7 @@ public class CallServiceTest extends BaseTest {
     Call updatedCall = CallHelper.updateAllPropertiesInOutboundCall(outboundCall);
 
     ArgumentCaptor<Call> callArgumentCaptor = ArgumentCaptor.forClass(Call.class);
-    given(callDao.findById(1)).willReturn(outboundCall);
+    given(callDao.findForUpdate(updatedCall)).willReturn(outboundCall);
 
     // Given for create we returned DATE_CURRENT, And for update we return DATE_NEXT_DAY
     Date date = createDate(2015, Calendar.SEPTEMBER, 17, 9, 05, 30);
@@ -378,7 +402,7 @@ public class CallServiceTest extends BaseTest {
     callService.update(updatedCall);
 
     // Then
-    verify(callDao, times(1)).saveCall(callArgumentCaptor.capture());
+    verify(callDao, times(1)).updateChanges(callArgumentCaptor.capture());
 
     // And let's see what gets sent to the database
     Call returnedCall = callArgumentCaptor.getValue();
@@ -416,7 +440,7 @@ public class CallServiceTest extends BaseTest {
     updatedCall.setPlayedMessages("");
 
     ArgumentCaptor<Call> callArgumentCaptor = ArgumentCaptor.forClass(Call.class);
-    given(callDao.findById(1)).willReturn(outboundCall);
+    given(callDao.findForUpdate(updatedCall)).willReturn(outboundCall);
 
     // Given for create we returned DATE_CURRENT, And for update we return DATE_NEXT_DAY
     Date date = DateUtil.parse(Constants.DATE_NEXT_DAY, DATE_FORMAT);
@@ -426,7 +450,7 @@ public class CallServiceTest extends BaseTest {
     callService.update(updatedCall);
 
     // Then
-    verify(callDao, times(1)).saveCall(callArgumentCaptor.capture());
+    verify(callDao, times(1)).updateChanges(callArgumentCaptor.capture());
 
     // And let's see what gets sent to the database
     Call returnedCall = callArgumentCaptor.getValue();
@@ -446,7 +470,7 @@ public class CallServiceTest extends BaseTest {
     Call updatedCall = CallHelper.updateAllPropertiesInOutboundCall(outboundCall);
 
     ArgumentCaptor<Call> callArgumentCaptor = ArgumentCaptor.forClass(Call.class);
-    given(callDao.findById(1)).willReturn(outboundCall);
+    given(callDao.findForUpdate(updatedCall)).willReturn(outboundCall);
 
     // Given for create we returned DATE_CURRENT, for update we return DATE_NEXT_DAY
     Date date = DateUtil.parse(Constants.DATE_NEXT_DAY, DATE_FORMAT);
@@ -456,7 +480,7 @@ public class CallServiceTest extends BaseTest {
     callService.update(updatedCall);
 
     // Then
-    verify(callDao, times(1)).saveCall(callArgumentCaptor.capture());
+    verify(callDao, times(1)).updateChanges(callArgumentCaptor.capture());
 
     // And let's see what gets sent to the database
     Call returnedCall = callArgumentCaptor.getValue();
@@ -478,7 +502,7 @@ public class CallServiceTest extends BaseTest {
     // Given
     Call updatedCall = CallHelper.updateAllPropertiesInOutboundCall(outboundCall);
     updatedCall.setId(2);
-    given(callDao.findById(1)).willReturn(outboundCall);
+    given(callDao.findForUpdate(updatedCall)).willReturn(null);
     // Given for create we returned DATE_CURRENT, for update we return DATE_NEXT_DAY
     Date date = DateUtil.parse(Constants.DATE_NEXT_DAY, DATE_FORMAT);
     given(DateUtil.now()).willReturn(date);
@@ -487,7 +511,7 @@ public class CallServiceTest extends BaseTest {
     try {
       callService.update(updatedCall);
     } finally {
-      verify(callDao, never()).saveCall(any(Call.class));
+      verify(callDao, never()).updateChanges(any(Call.class));
     }
   }
 
@@ -507,6 +531,10 @@ public class CallServiceTest extends BaseTest {
     // And there should be only one call to saveCall - the creation of a call, no status updates
     verify(callDao, times(1)).saveCall(any(Call.class));
     verify(callUtil, times(1)).buildOutboundRequest("1234567890", outboundCall, voxeo, params);
+    // And the shared client is used and the connection returned to the pool
+    verify(httpClientPool, times(1)).getClient(voxeo);
+    verify(okResponse, times(1)).close();
+    verify(client, never()).close();
     // And no failure , so no OpenMRS event to be sent
     assertNoEventSent();
   }
@@ -618,8 +646,7 @@ public class CallServiceTest extends BaseTest {
       throws IOException, URISyntaxException, OperationNotSupportedException {
     // Given
     given(client.execute(any(HttpGet.class))).willReturn(okResponse);
-    doThrow(new OperationNotSupportedException()).when(callUtil).checkCallCanBePlaced(callService, outboundCall, voxeo,
-        params);
+    doThrow(new OperationNotSupportedException()).when(callUtil).checkCallCanBePlaced(outboundCall, voxeo, params);
     params.put("phone", "1234567890");
 
     // When
@@ -646,6 +673,8 @@ public class CallServiceTest extends BaseTest {
     // Assert call created and updated once
     verify(callDao, times(2)).saveCall(outboundCall);
     verify(callUtil, times(1)).buildOutboundRequest("1234567890", outboundCall, voxeo, params);
+    // And the connection is returned to the pool although the body was not read
+    verify(notFoundResponse, times(1)).close();
     assertEventSent(outboundCall);
   }
 
@@ -682,19 +711,307 @@ public class CallServiceTest extends BaseTest {
     verify(callDao, times(1)).saveCall(outboundCall);
   }
 
+  @Test
+  public void shouldMigrateLegacyCallData() throws IOException {
+    // Given a call with its context stored with Java serialization
+    MapConverter mapConverter = new MapConverter();
+    byte[] legacyContext = new JavaSerializationMapCodec().encode(params);
+    byte[] providerDataColumn = mapConverter.convertToDatabaseColumn(providerData);
+    given(callDao.findLegacyEncodedData(0, 10))
+        .willReturn(
+            Collections.singletonList(new Object[] {1, legacyContext, providerDataColumn}));
+    given(callDao.updateEncodedData(eq(1), eq(legacyContext), eq(providerDataColumn),
+        any(byte[].class), eq(providerDataColumn))).willReturn(true);
+
+    // When
+    Integer lastId = callService.migrateLegacyCallData(0, 10);
+
+    // Then
+    ArgumentCaptor<byte[]> contextCaptor = ArgumentCaptor.forClass(byte[].class);
+    verify(callDao, times(1)).updateEncodedData(eq(1), eq(legacyContext), eq(providerDataColumn),
+        contextCaptor.capture(), eq(providerDataColumn));
+    assertThat(lastId, equalTo(1));
+    assertFalse(MapConverter.isLegacyEncoded(contextCaptor.getValue()));
+    assertThat(
+        mapConverter.convertToEntityAttribute(contextCaptor.getValue()),
+        equalTo((Map) params));
+  }
+
+  @Test
+  public void shouldReturnNullIfNoLegacyCallDataIsLeft() {
+    // Given
+    given(callDao.findLegacyEncodedData(0, 10)).willReturn(Collections.<Object[]>emptyList());
+
+    // When
+    Integer lastId = callService.migrateLegacyCallData(0, 10);
+
+    // Then
+    assertNull(lastId);
+    verify(callDao, never()).updateEncodedData(any(Integer.class), any(byte[].class), any(byte[].class),
+        any(byte[].class), any(byte[].class));
+  }
+
+  @Test
+  public void shouldContinueMigrationIfCallWasUpdatedMeanwhile() throws IOException {
+    // Given a legacy call which is updated before its data is migrated
+    byte[] legacyContext = new JavaSerializationMapCodec().encode(params);
+    given(callDao.findLegacyEncodedData(0, 10))
+        .willReturn(Arrays.asList(new Object[] {1, legacyContext, null}, new Object[] {2, legacyContext, null}));
+    given(callDao.updateEncodedData(eq(1), eq(legacyContext), any(byte[].class), any(byte[].class),
+        any(byte[].class))).willReturn(false);
+
+    // When
+    Integer lastId = callService.migrateLegacyCallData(0, 10);
+
+    // Then the updated call is skipped and the next one is migrated
+    assertThat(lastId, equalTo(2));
+    verify(callDao, times(1)).updateEncodedData(eq(2), eq(legacyContext), any(byte[].class), any(byte[].class),
+        any(byte[].class));
+  }
+
+  @Test
+  public void shouldReleaseSlotOfOutboundCallOnceCompleted() {
+    // Given
+    outboundCall.setStatus(CallStatus.COMPLETED);
+    given(configService.hasConfig(Constants.CONFIG_VOXEO)).willReturn(true);
+    given(callDao.saveCall(outboundCall)).willReturn(outboundCall);
+
+    // When
+    callService.saveCall(outboundCall);
+
+    // Then
+    verify(callSlotService, times(1)).releaseSlot(outboundCall.getCallId());
+    verify(callSlotService, never()).renewSlot(anyString());
+  }
+
+  @Test
+  public void shouldReleaseSlotOfOutboundCallCompletedByUpdate() {
+    // Given an active outbound call
+    outboundCall.setId(1);
+    outboundCall.setStatus(CallStatus.IN_PROGRESS);
+    given(configService.hasConfig(Constants.CONFIG_VOXEO)).willReturn(true);
+
+    Call updatedCall = CallHelper.createOutboundCall();
+    updatedCall.setId(1);
+    updatedCall.setStatus(CallStatus.COMPLETED);
+    given(callDao.findForUpdate(updatedCall)).willReturn(outboundCall);
+
+    // When the provider reports the call completed
+    callService.update(updatedCall);
+
+    // Then
+    verify(callSlotService, times(1)).releaseSlot(outboundCall.getCallId());
+    verify(callSlotService, never()).renewSlot(anyString());
+  }
+
+  @Test
+  public void shouldReleaseSlotOfOutboundCallFailedByUpdate() {
+    // Given an active outbound call
+    outboundCall.setId(1);
+    outboundCall.setStatus(CallStatus.IN_PROGRESS);
+    given(configService.hasConfig(Constants.CONFIG_VOXEO)).willReturn(true);
+
+    Call updatedCall = CallHelper.createOutboundCall();
+    updatedCall.setId(1);
+    updatedCall.setStatus(CallStatus.FAILED);
+    given(callDao.findForUpdate(updatedCall)).willReturn(outboundCall);
+
+    // When the provider reports the call failed
+    callService.update(updatedCall);
+
+    // Then
+    verify(callSlotService, times(1)).releaseSlot(outboundCall.getCallId());
+  }
+
+  @Test
+  public void shouldReleaseSlotOfOutboundCallWhenEndedSessionIsWritten() {
+    // Given a session of an outbound call which has ended
+    outboundCall.setStatus(CallStatus.COMPLETED);
+    given(configService.hasConfig(Constants.CONFIG_VOXEO)).willReturn(true);
+
+    // When
+    callService.saveCallSessions(Collections.singletonList(outboundCall));
+
+    // Then
+    verify(callDao, times(1)).updateChanges(outboundCall);
+    verify(callSlotService, times(1)).releaseSlot(outboundCall.getCallId());
+  }
+
+  @Test
+  public void shouldRenewSlotOfOutboundCallWhenActiveSessionIsWritten() {
+    // Given a session of an outbound call which is still active
+    outboundCall.setStatus(CallStatus.IN_PROGRESS);
+    given(configService.hasConfig(Constants.CONFIG_VOXEO)).willReturn(true);
+
+    // When
+    callService.saveCallSessions(Collections.singletonList(outboundCall));
+
+    // Then
+    verify(callSlotService, times(1)).renewSlot(outboundCall.getCallId());
+    verify(callSlotService, never()).releaseSlot(anyString());
+  }
+
+  @Test
+  public void shouldRenewSlotOfActiveOutboundCall() {
+    // Given
+    outboundCall.setStatus(CallStatus.IN_PROGRESS);
+    given(configService.hasConfig(Constants.CONFIG_VOXEO)).willReturn(true);
+    given(callDao.saveCall(outboundCall)).willReturn(outboundCall);
+
+    // When
+    callService.saveCall(outboundCall);
+
+    // Then
+    verify(callSlotService, times(1)).renewSlot(outboundCall.getCallId());
+    verify(callSlotService, never()).releaseSlot(anyString());
+  }
+
+  @Test
+  public void shouldExportVisitedCallsIntoZipArchive() throws IOException {
+    // Given
+    final CallFilter filter = new CallFilter();
+    doAnswer(
+            new Answer<Void>() {
+              @Override
+              public Void answer(InvocationOnMock invocation) throws IOException {
+                ((CallVisitor) invocation.getArguments()[1]).visit(outboundCall);
+                return null;
+              }
+            })
+        .when(callDao)
+        .visitReportCalls(eq(filter), any(CallVisitor.class));
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+    // When
+    callService.exportCalls(filter, outputStream);
+
+    // Then
+    try (ZipInputStream zip =
+        new ZipInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+      assertThat(zip.getNextEntry().getName(), equalTo("cfl_calls_1.csv"));
+      String content = IOUtils.toString(zip);
+      assertThat(content.contains(outboundCall.getCallId()), equalTo(true));
+    }
+  }
+
+  @Test
+  public void shouldQueueCallsOfAllRecipientsLoadingFlowOnlyOnce() {
+    // Given
+    Map<String, Object> first = new HashMap<>(params);
+    first.put(PHONE_PROP, PHONE_NUMBER);
+    Map<String, Object> second = new HashMap<>(params);
+    second.put(PHONE_PROP, "0987654321");
+    Map<String, Object> withoutPhone = new HashMap<>(params);
+    givenCallsAreSaved();
+    ArgumentCaptor<List> entries = ArgumentCaptor.forClass(List.class);
+
+    // When
+    List<Call> calls =
+        callService.makeCalls(
+            Constants.CONFIG_VOXEO, Constants.CALLFLOW_MAIN, Arrays.asList(first, withoutPhone, second));
+
+    // Then
+    assertAllLoaded();
+    assertThat(calls.size(), equalTo(3));
+    assertThat(calls.get(0).getStatus(), equalTo(CallStatus.QUEUED));
+    assertNull(calls.get(1));
+    assertThat(calls.get(2).getStatus(), equalTo(CallStatus.QUEUED));
+    verify(callDao, times(1)).saveCalls(any(List.class));
+    verify(callDao, never()).saveCall(any(Call.class));
+    verify(outboundCallDispatcher, times(1)).enqueue(entries.capture());
+    List<OutboundQueueEntry> queued = entries.getValue();
+    assertThat(queued.size(), equalTo(2));
+    assertThat(queued.get(0).getConfig(), equalTo(Constants.CONFIG_VOXEO));
+    assertThat(queued.get(0).getFlowName(), equalTo(Constants.CALLFLOW_MAIN));
+    assertThat(queued.get(0).getCallId(), equalTo(Constants.OUTBOUND_CALL_ID.toString()));
+    assertThat(queued.get(0).getParams(), equalTo(first));
+    assertThat(queued.get(1).getParams(), equalTo(second));
+    verify(callUtil, times(1))
+        .sendStatusEvent(
+            CallStatus.FAILED,
+            "Empty Phone no while initiating a outbound call for flow MainFlow",
+            withoutPhone);
+    // And queued calls do not hold a slot yet
+    verify(callSlotService, never()).renewSlot(anyString());
+  }
+
+  @Test
+  public void shouldFailQueuedCallIfItCannotBeAddedToOutboundQueue() {
+    // Given
+    params.put(PHONE_PROP, PHONE_NUMBER);
+    givenCallsAreSaved();
+    given(outboundCallDispatcher.enqueue(any(List.class)))
+        .willThrow(new IllegalStateException("Database is down"));
+
+    // When
+    List<Call> calls =
+        callService.makeCalls(
+            Constants.CONFIG_VOXEO, Constants.CALLFLOW_MAIN, Collections.singletonList(params));
+
+    // Then
+    assertThat(calls.get(0).getStatus(), equalTo(CallStatus.FAILED));
+    assertThat(
+        calls.get(0).getStatusText(),
+        equalTo("Outbound call could not be queued: Database is down"));
+    assertEventSent(calls.get(0));
+  }
+
+  @Test
+  public void shouldActivateOnlyQueuedCall() {
+    // Given
+    outboundCall.setStatus(CallStatus.QUEUED);
+    given(callDao.findByCallId(outboundCall.getCallId())).willReturn(outboundCall);
+
+    // When
+    Call activated = callService.activateQueuedCall(outboundCall.getCallId());
+    Call activatedAgain = callService.activateQueuedCall(outboundCall.getCallId());
+
+    // Then
+    assertThat(activated.getStatus(), equalTo(CallStatus.OPENMRS_INITIATED));
+    assertNull(activatedAgain);
+    verify(callDao, times(1)).saveCall(outboundCall);
+    verify(callSlotService, times(1)).acquireSlot(voxeo, outboundCall.getCallId());
+  }
+
+  @Test
+  public void shouldKeepCallQueuedIfNoSlotIsFree() {
+    // Given
+    outboundCall.setStatus(CallStatus.QUEUED);
+    given(callDao.findByCallId(outboundCall.getCallId())).willReturn(outboundCall);
+    given(callSlotService.acquireSlot(voxeo, outboundCall.getCallId())).willReturn(false);
+
+    // When
+    Call call = callService.activateQueuedCall(outboundCall.getCallId());
+
+    // Then
+    assertThat(call.getStatus(), equalTo(CallStatus.QUEUED));
+    verify(callDao, never()).saveCall(any(Call.class));
+  }
+
+  private void givenCallsAreSaved() {
+    given(callDao.saveCalls(any(List.class)))
+        .willAnswer(
+            new Answer<List<Call>>() {
+              @Override
+              public List<Call> answer(InvocationOnMock invocation) {
+                return (List<Call>) invocation.getArguments()[0];
+              }
+            });
+  }
+
   public void assertCallNotCreated() {
     verify(callDao, never()).saveCall(any(Call.class));
   }
 
   public void assertNoEventSent() {
-    verify(callFlowEventService, never()).sendEventMessage(any(CallFlowEvent.class));
+    verify(statusEventPublisher, never()).publish(anyString(), any(CallFlowEvent.class));
   }
 
   public void assertEventSent(String phone, String reason, String callId) {
     errorParams.put("reason", reason);
     errorParams.put("callId", callId);
     verify(callUtil, times(1)).sendStatusEvent(CallStatus.FAILED, reason, params);
-    verify(callFlowEventService, times(1)).sendEventMessage(callFailedEvent);
+    verify(statusEventPublisher, times(1)).publish(null, callFailedEvent);
   }
 
   public void assertEventSent(Call call) {
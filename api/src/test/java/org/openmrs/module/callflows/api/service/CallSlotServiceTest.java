@@ -0,0 +1,173 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.openmrs.module.callflows.BaseTest;
+import org.openmrs.module.callflows.api.dao.CallSlotDao;
+import org.openmrs.module.callflows.api.domain.CallSlot;
+import org.openmrs.module.callflows.api.domain.Config;
+import org.openmrs.module.callflows.api.helper.ConfigHelper;
+import org.openmrs.module.callflows.api.service.impl.CallSlotServiceImpl;
+import org.openmrs.module.callflows.api.util.DateUtil;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+/**
+ * Call Slot Service Tests
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({DateUtil.class})
+public class CallSlotServiceTest extends BaseTest {
+
+    private static final int LEASE_SECONDS = 60;
+
+    private static final String NODE_ID = "node-1";
+
+    private static final String CALL_ID = "call-1";
+
+    @Mock
+    private CallSlotDao callSlotDao;
+
+    private CallSlotServiceImpl callSlotService;
+
+    private Config config;
+
+    private Date now;
+
+    private Date leasedUntil;
+
+    @Before
+    public void setUp() {
+        PowerMockito.mockStatic(DateUtil.class);
+        now = new Date(100000L);
+        leasedUntil = new Date(now.getTime() + LEASE_SECONDS * 1000L);
+        given(DateUtil.now()).willReturn(now);
+        given(DateUtil.plusSeconds(now, LEASE_SECONDS)).willReturn(leasedUntil);
+
+        config = ConfigHelper.createConfigs().get(0);
+        config.setOutboundCallLimit(3);
+
+        callSlotService = new CallSlotServiceImpl();
+        callSlotService.setCallSlotDao(callSlotDao);
+        callSlotService.setLeaseSeconds(LEASE_SECONDS);
+        callSlotService.setNodeId(NODE_ID);
+        contextMockHelper.setService(CallSlotService.class, callSlotService);
+    }
+
+    @Test
+    public void shouldLetCallThroughWithoutSlotIfConfigHasNoOutboundCallLimit() {
+        // Given
+        config.setOutboundCallLimit(0);
+
+        // When
+        boolean acquired = callSlotService.acquireSlot(config, CALL_ID);
+
+        // Then
+        assertTrue(acquired);
+        verifyZeroInteractions(callSlotDao);
+    }
+
+    @Test
+    public void shouldCreateMissingSlotsOnlyBeforeFirstLease() {
+        // Given
+        given(callSlotDao.findSlotNumbers(config.getName())).willReturn(Collections.singletonList(0));
+        given(callSlotDao.findFreeSlotIds(config.getName(), 3, now, 10)).willReturn(Collections.singletonList(7));
+        given(callSlotDao.lease(7, CALL_ID, NODE_ID, now, leasedUntil)).willReturn(true);
+        ArgumentCaptor<List> slots = ArgumentCaptor.forClass(List.class);
+
+        // When
+        boolean acquired = callSlotService.acquireSlot(config, CALL_ID);
+        callSlotService.acquireSlot(config, CALL_ID);
+
+        // Then
+        assertTrue(acquired);
+        verify(callSlotDao, times(1)).findSlotNumbers(config.getName());
+        verify(callSlotDao, times(1)).saveSlots(slots.capture());
+        assertThat(((CallSlot) slots.getValue().get(0)).getSlotNumber(), equalTo(1));
+        assertThat(((CallSlot) slots.getValue().get(1)).getSlotNumber(), equalTo(2));
+        assertThat(slots.getValue().size(), equalTo(2));
+        verify(callSlotDao, times(1)).deleteFreeSlots(config.getName(), 3, now);
+    }
+
+    @Test
+    public void shouldTryAnotherSlotIfSlotWasLeasedByAnotherNode() {
+        // Given
+        given(callSlotDao.findFreeSlotIds(config.getName(), 3, now, 10)).willReturn(Arrays.asList(1, 2));
+        given(callSlotDao.lease(1, CALL_ID, NODE_ID, now, leasedUntil)).willReturn(false);
+        given(callSlotDao.lease(2, CALL_ID, NODE_ID, now, leasedUntil)).willReturn(true);
+
+        // When
+        boolean acquired = callSlotService.acquireSlot(config, CALL_ID);
+
+        // Then
+        assertTrue(acquired);
+        verify(callSlotDao, times(1)).lease(2, CALL_ID, NODE_ID, now, leasedUntil);
+    }
+
+    @Test
+    public void shouldRefuseCallIfAllSlotsAreLeased() {
+        // Given
+        given(callSlotDao.findFreeSlotIds(config.getName(), 3, now, 10)).willReturn(Collections.<Integer>emptyList());
+
+        // When
+        boolean acquired = callSlotService.acquireSlot(config, CALL_ID);
+
+        // Then
+        assertFalse(acquired);
+        verify(callSlotDao, never()).lease(anyInt(), anyString(), anyString(), any(Date.class), any(Date.class));
+    }
+
+    @Test
+    public void shouldExtendLeaseOfActiveCall() {
+        // When
+        callSlotService.renewSlot(CALL_ID);
+
+        // Then
+        verify(callSlotDao, times(1)).renew(CALL_ID, leasedUntil);
+    }
+
+    @Test
+    public void shouldNotCountSlotsOfConfigWithoutOutboundCallLimit() {
+        // Given
+        config.setOutboundCallLimit(0);
+
+        // When
+        long leased = callSlotService.countLeasedSlots(config);
+
+        // Then
+        assertThat(leased, equalTo(0L));
+        verifyZeroInteractions(callSlotDao);
+    }
+}
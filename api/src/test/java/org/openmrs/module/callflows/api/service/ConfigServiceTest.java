@@ -70,6 +70,7 @@ public class ConfigServiceTest extends BaseTest {
         //Given
         given(settingsManagerService.getRawConfig(GenericHelper.SETTINGS_FILE_NAME)).willReturn(is);
 
+        ((ConfigServiceImpl) configService).setWatchIntervalSeconds(0);
         ((ConfigServiceImpl) configService).initialize();
     }
 
@@ -232,4 +233,44 @@ public class ConfigServiceTest extends BaseTest {
         assertThat(allRenderers.get(1).getName(), equalTo(Constants.CONFIG_RENDERER_TXT));
     }
 
+    @Test
+    public void shouldReloadSettingsWhenFileIsModified() throws IOException {
+        // Given a settings file changed on disk
+        configs.get(0).setName(Constants.CONFIG_VOXEO + Constants.UPDATED);
+        given(settingsManagerService.getLastModified(GenericHelper.SETTINGS_FILE_NAME)).willReturn(1L);
+        given(settingsManagerService.getRawConfig(GenericHelper.SETTINGS_FILE_NAME))
+                .willReturn(new ByteArrayInputStream(json(settings).getBytes()));
+
+        // When
+        ((ConfigServiceImpl) configService).reloadIfModified();
+
+        // Then
+        assertThat(configService.hasConfig(Constants.CONFIG_VOXEO + Constants.UPDATED), equalTo(true));
+        assertThat(configService.hasConfig(Constants.CONFIG_VOXEO), equalTo(false));
+    }
+
+    @Test
+    public void shouldNotReloadSettingsIfFileIsNotModified() {
+        // When
+        ((ConfigServiceImpl) configService).reloadIfModified();
+
+        // Then
+        verify(settingsManagerService, times(1)).getRawConfig(GenericHelper.SETTINGS_FILE_NAME);
+    }
+
+    @Test
+    public void shouldKeepSettingsIfModifiedFileIsInvalid() {
+        // Given a settings file broken on disk
+        given(settingsManagerService.getLastModified(GenericHelper.SETTINGS_FILE_NAME)).willReturn(1L);
+        given(settingsManagerService.getRawConfig(GenericHelper.SETTINGS_FILE_NAME))
+                .willReturn(new ByteArrayInputStream("{invalid".getBytes()));
+
+        // When checked twice
+        ((ConfigServiceImpl) configService).reloadIfModified();
+        ((ConfigServiceImpl) configService).reloadIfModified();
+
+        // Then the current settings are kept and the broken file is read only once
+        assertThat(configService.hasConfig(Constants.CONFIG_VOXEO), equalTo(true));
+        verify(settingsManagerService, times(2)).getRawConfig(GenericHelper.SETTINGS_FILE_NAME);
+    }
 }
@@ -16,9 +16,12 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.openmrs.module.callflows.BaseTest;
 import org.openmrs.module.callflows.Constants;
+import org.openmrs.module.callflows.api.cache.FlowCache;
+import org.openmrs.module.callflows.api.dao.CallFlowDao;
 import org.openmrs.module.callflows.api.domain.CallFlow;
 import org.openmrs.module.callflows.api.domain.FlowPosition;
 import org.openmrs.module.callflows.api.domain.FlowStep;
@@ -26,7 +29,9 @@ import org.openmrs.module.callflows.api.domain.flow.Flow;
 import org.openmrs.module.callflows.api.domain.flow.Node;
 import org.openmrs.module.callflows.api.helper.CallFlowHelper;
 import org.openmrs.module.callflows.api.helper.FlowHelper;
+import org.openmrs.module.callflows.api.metrics.CallFlowMetrics;
 import org.openmrs.module.callflows.api.service.impl.FlowServiceImpl;
+import org.openmrs.module.callflows.api.util.FlowCompiler;
 import org.openmrs.module.callflows.api.util.FlowUtil;
 import org.openmrs.module.callflows.api.util.TestUtil;
 
@@ -39,6 +44,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -52,6 +58,10 @@ import static org.mockito.Mockito.verify;
 @RunWith(MockitoJUnitRunner.class)
 public class FlowServiceTest extends BaseTest {
 
+    private static final Integer MAIN_FLOW_ID = 1;
+
+    private static final Integer MAIN_FLOW_VERSION = 3;
+
     @InjectMocks
     private FlowService flowService = new FlowServiceImpl();
 
@@ -59,7 +69,13 @@ public class FlowServiceTest extends BaseTest {
     private FlowUtil flowUtil;
 
     @Mock
-    private CallFlowService callFlowService;
+    private CallFlowDao callFlowDao;
+
+    @Mock
+    private FlowCache flowCache;
+
+    @Spy
+    private CallFlowMetrics metrics = new CallFlowMetrics();
 
     private CallFlow mainFlow;
 
@@ -82,6 +98,8 @@ public class FlowServiceTest extends BaseTest {
     @Before
     public void setUp() throws IOException {
         mainFlow = CallFlowHelper.createMainFlow();
+        mainFlow.setId(MAIN_FLOW_ID);
+        mainFlow.setVersion(MAIN_FLOW_VERSION);
         String raw = TestUtil.loadFile("main_flow.json");
         expectedFlow = FlowHelper.createFlow(raw);
         mainFlow.setRaw(raw);
@@ -95,7 +113,9 @@ public class FlowServiceTest extends BaseTest {
         inactiveHandlerNode = expectedFlow.getNodes().get(5);
 
         // Given a MainFlow
-        given(callFlowService.findByName(Constants.CALLFLOW_MAIN)).willReturn(mainFlow);
+        given(callFlowDao.findVersionByName(Constants.CALLFLOW_MAIN))
+                .willReturn(new Object[]{MAIN_FLOW_ID, MAIN_FLOW_VERSION});
+        given(callFlowDao.findRawById(MAIN_FLOW_ID)).willReturn(raw);
 
         // And the following parse behavior
         given(flowUtil.parse("|MainFlow.|", null)).willReturn(new String[]{"MainFlow", null});
@@ -134,9 +154,41 @@ public class FlowServiceTest extends BaseTest {
         Flow flow = flowService.load(Constants.CALLFLOW_MAIN);
 
         // Then
-        verify(callFlowService, times(1)).findByName(Constants.CALLFLOW_MAIN);
+        verify(callFlowDao, times(1)).findVersionByName(Constants.CALLFLOW_MAIN);
         assertNotNull(flow);
         assertThat(flow.getName(), equalTo(Constants.CALLFLOW_MAIN));
+        verify(flowCache, times(1)).put(Constants.CALLFLOW_MAIN, MAIN_FLOW_ID, MAIN_FLOW_VERSION, flow);
+    }
+
+    @Test
+    public void shouldLoadFlowFromCompiledFlowIfCompiled() {
+        // Given a compiled MainFlow
+        given(callFlowDao.findCompiledById(MAIN_FLOW_ID)).willReturn(FlowCompiler.compile(mainFlow.getRaw()));
+
+        // When
+        Flow flow = flowService.load(Constants.CALLFLOW_MAIN);
+
+        // Then the raw flow is not read
+        assertThat(flow.getName(), equalTo(Constants.CALLFLOW_MAIN));
+        assertThat(flow.getNodes().size(), equalTo(expectedFlow.getNodes().size()));
+        verify(callFlowDao, never()).findRawById(anyInt());
+        verify(flowCache, times(1)).put(Constants.CALLFLOW_MAIN, MAIN_FLOW_ID, MAIN_FLOW_VERSION, flow);
+    }
+
+    @Test
+    public void shouldLoadFlowFromCacheIfCached() {
+        // Given a parsed MainFlow in the cache
+        given(flowCache.get(Constants.CALLFLOW_MAIN, MAIN_FLOW_ID, MAIN_FLOW_VERSION)).willReturn(expectedFlow);
+
+        // When
+        Flow flow = flowService.load(Constants.CALLFLOW_MAIN);
+
+        // Then neither the compiled nor the raw flow are read
+        verify(callFlowDao, times(1)).findVersionByName(Constants.CALLFLOW_MAIN);
+        verify(callFlowDao, never()).findCompiledById(anyInt());
+        verify(callFlowDao, never()).findRawById(anyInt());
+        verify(flowCache, never()).put(anyString(), anyInt(), anyInt(), any(Flow.class));
+        assertThat(flow, equalTo(expectedFlow));
     }
 
     @Test
@@ -149,7 +201,7 @@ public class FlowServiceTest extends BaseTest {
             Flow flow = flowService.load(Constants.CALLFLOW_MAIN2);
         } finally {
             // Then
-            verify(callFlowService, times(1)).findByName(Constants.CALLFLOW_MAIN2);
+            verify(callFlowDao, times(1)).findVersionByName(Constants.CALLFLOW_MAIN2);
         }
     }
 
@@ -157,15 +209,14 @@ public class FlowServiceTest extends BaseTest {
     public void shouldThrowIllegalArgumentIfFlowIsBadlyFormattedDuringLoadFlow() {
         expectException(IllegalArgumentException.class);
         // Given a incomplete flow
-        mainFlow.setRaw("");
-        given(callFlowService.findByName(Constants.CALLFLOW_MAIN)).willReturn(mainFlow);
+        given(callFlowDao.findRawById(MAIN_FLOW_ID)).willReturn("");
 
         try {
             // When we look for this incomplete flow
             Flow flow = flowService.load(Constants.CALLFLOW_MAIN);
         } finally {
             // Then
-            verify(callFlowService, times(1)).findByName(Constants.CALLFLOW_MAIN);
+            verify(callFlowDao, times(1)).findVersionByName(Constants.CALLFLOW_MAIN);
         }
     }
 
@@ -179,7 +230,7 @@ public class FlowServiceTest extends BaseTest {
 
         // Then
         verify(flowUtil, times(1)).parse("|MainFlow.entry|", null);
-        verify(callFlowService, times(1)).findByName("MainFlow");
+        verify(callFlowDao, times(1)).findVersionByName("MainFlow");
         verify(flowUtil, times(1)).getNodeByStep(expectedFlow, "entry");
         assertNotNull(flowStep);
         assertThat(flowStep.getFlow().getName(), equalTo("MainFlow"));
@@ -196,7 +247,7 @@ public class FlowServiceTest extends BaseTest {
         } finally {
             // Then
             verify(flowUtil, times(1)).parse("|MainFlow2.|", null);
-            verify(callFlowService, times(1)).findByName("MainFlow2");
+            verify(callFlowDao, times(1)).findVersionByName("MainFlow2");
             verify(flowUtil, never()).getNodeByStep(any(Flow.class), anyString());
         }
     }
@@ -211,7 +262,7 @@ public class FlowServiceTest extends BaseTest {
         } finally {
             // Then
             verify(flowUtil, times(1)).parse("|MainFlow.non-existent|", null);
-            verify(callFlowService, times(1)).findByName("MainFlow");
+            verify(callFlowDao, times(1)).findVersionByName("MainFlow");
             verify(flowUtil, times(1)).getNodeByStep(expectedFlow, "non-existent");
         }
 
@@ -224,7 +275,7 @@ public class FlowServiceTest extends BaseTest {
 
         // Then
         verify(flowUtil, times(1)).parse("|MainFlow.|", null);
-        verify(callFlowService, times(1)).findByName("MainFlow");
+        verify(callFlowDao, times(1)).findVersionByName("MainFlow");
         verify(flowUtil, times(1)).getNodeByStep(expectedFlow, "entry");
         assertNotNull(flowStep);
         assertThat(flowStep.getFlow().getName(), equalTo("MainFlow"));
@@ -238,7 +289,7 @@ public class FlowServiceTest extends BaseTest {
 
         // Then
         verify(flowUtil, times(1)).parse("|entry|", "MainFlow");
-        verify(callFlowService, times(1)).findByName("MainFlow");
+        verify(callFlowDao, times(1)).findVersionByName("MainFlow");
         verify(flowUtil, times(1)).getNodeByStep(expectedFlow, "entry");
         assertNotNull(flowStep);
         assertThat(flowStep.getFlow().getName(), equalTo("MainFlow"));
@@ -285,6 +336,25 @@ public class FlowServiceTest extends BaseTest {
         assertThat(position.getOutput(), equalTo("|inactive|"));
     }
 
+    @Test
+    public void shouldRecordJumpsAndNodeTimesOfEvaluation() throws IOException {
+        // Given
+        given(flowUtil.evalNode(expectedFlow, entryHandlerNode, context, "velocity")).willReturn("|active-handler|");
+        given(flowUtil.evalNode(expectedFlow, activeHandlerNode, context, "velocity")).willReturn("|inactive-handler|");
+        given(flowUtil.evalNode(expectedFlow, inactiveHandlerNode, context, "velocity")).willReturn("|inactive|");
+
+        // When
+        flowService.evalNode(expectedFlow, entryHandlerNode, context);
+
+        // Then
+        assertThat(metrics.getCount(CallFlowMetrics.FLOW_EVALUATIONS_TOTAL, "flow", Constants.CALLFLOW_MAIN),
+                equalTo(1L));
+        assertThat(metrics.getCount(CallFlowMetrics.FLOW_JUMPS_TOTAL, "flow", Constants.CALLFLOW_MAIN),
+                equalTo(3L));
+        assertThat(metrics.getTimer(CallFlowMetrics.FLOW_NODE_SECONDS, "flow", Constants.CALLFLOW_MAIN,
+                "node", "active-handler").getCount(), equalTo(1L));
+    }
+
     @Test
     public void shouldThrowIllegalStateWhenLongRunningLoopsAreDetected() throws IOException {
         expectException(IllegalStateException.class);
@@ -47,6 +47,7 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
 import static org.openmrs.module.callflows.api.util.AuthUtil.APPLICATION_ID_CLAIM_NAME;
 import static org.openmrs.module.callflows.api.util.AuthUtil.JTI_CLAIM_NAME;
@@ -74,10 +75,7 @@ public class AuthUtilTest {
 
     @Before
     public void setUp() throws Exception {
-        when(settingsManagerService.getRawConfig(AuthUtil.PRIVATE_KEY_FILE_NAME)).thenReturn(
-                loadConfigFile(TEST_PRIVATE_KEY));
-        when(settingsManagerService.getRawConfig(AuthUtil.IVR_PROPERTIES_FILE_NAME)).thenReturn(
-                loadConfigFile(TEST_IVR_PROPS));
+        stubConfigFiles();
 
         Properties properties = new Properties();
         properties.load(loadConfigFile(TEST_IVR_PROPS));
@@ -180,6 +178,79 @@ public class AuthUtilTest {
         Assert.assertEquals(normalizeKeyFileContent(actualFileContent), normalizeKeyFileContent(expectedFileContent));
     }
 
+    @Test
+    public void shouldLoadPrivateKeyOnceForRepeatedCalls() throws Exception {
+        authUtil.generateToken();
+        authUtil.generateToken();
+        authUtil.isTokenValid(createToken(DateUtils.addDays(new Date(), 1)));
+
+        Mockito.verify(settingsManagerService, times(1)).getRawConfig(AuthUtil.PRIVATE_KEY_FILE_NAME);
+        Mockito.verify(settingsManagerService, times(1)).getRawConfig(AuthUtil.IVR_PROPERTIES_FILE_NAME);
+    }
+
+    @Test
+    public void shouldReloadPrivateKeyAfterNewPrivateKeyIsSaved() throws Exception {
+        authUtil.generateToken();
+
+        try (final InputStream newPrivateKeyFile = loadConfigFile(TEST_PRIVATE_KEY)) {
+            authUtil.saveNewPrivateKey(newPrivateKeyFile);
+        }
+        stubConfigFiles();
+        authUtil.generateToken();
+
+        Mockito.verify(settingsManagerService, times(2)).getRawConfig(AuthUtil.PRIVATE_KEY_FILE_NAME);
+    }
+
+    @Test
+    public void shouldReloadPrivateKeyWhenFileIsModified() throws Exception {
+        when(settingsManagerService.getLastModified(AuthUtil.PRIVATE_KEY_FILE_NAME)).thenReturn(1L, 2L);
+
+        authUtil.generateToken();
+        stubConfigFiles();
+        authUtil.generateToken();
+
+        Mockito.verify(settingsManagerService, times(2)).getRawConfig(AuthUtil.PRIVATE_KEY_FILE_NAME);
+    }
+
+    @Test
+    public void shouldReturnValidTokenStatusForRepeatedValidation() {
+        String token = createToken(DateUtils.addDays(new Date(), 1));
+
+        assertThat(authUtil.isTokenValid(token), equalTo(true));
+        assertThat(authUtil.isTokenValid(token), equalTo(true));
+    }
+
+    @Test
+    public void shouldNotReturnValidTokenStatusAfterTokenExpired() throws Exception {
+        String token = createToken(DateUtils.addSeconds(new Date(), 1));
+        assertThat(authUtil.isTokenValid(token), equalTo(true));
+
+        Thread.sleep(2000L);
+
+        assertThat(authUtil.isTokenValid(token), equalTo(false));
+    }
+
+    private String createToken(Date expiration) {
+        return Jwts
+                .builder()
+                .setHeaderParam(TYPE_HEADER_NAME, TYPE_HEADER_VALUE)
+                .setIssuedAt(new Date())
+                .setExpiration(expiration)
+                .claim(APPLICATION_ID_CLAIM_NAME, testApplicationId)
+                .claim(JTI_CLAIM_NAME, UUID
+                        .randomUUID()
+                        .toString())
+                .signWith(SignatureAlgorithm.RS256, testKey)
+                .compact();
+    }
+
+    private void stubConfigFiles() throws IOException {
+        when(settingsManagerService.getRawConfig(AuthUtil.PRIVATE_KEY_FILE_NAME)).thenReturn(
+                loadConfigFile(TEST_PRIVATE_KEY));
+        when(settingsManagerService.getRawConfig(AuthUtil.IVR_PROPERTIES_FILE_NAME)).thenReturn(
+                loadConfigFile(TEST_IVR_PROPS));
+    }
+
     private InputStream loadConfigFile(String filename) throws IOException {
         return new ByteArrayInputStream(TestUtil
                 .loadFile(filename)
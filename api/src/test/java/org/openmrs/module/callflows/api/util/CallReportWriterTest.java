@@ -0,0 +1,95 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.util;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.openmrs.module.callflows.BaseTest;
+import org.openmrs.module.callflows.api.domain.Call;
+import org.openmrs.module.callflows.api.helper.CallHelper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Call Report Writer Tests
+ */
+public class CallReportWriterTest extends BaseTest {
+
+    private static final String HEADER_LINE = "id,actorId,phone,actorType,callId,direction,creationDate,"
+            + "callReference,status,statusText,startTime,endTime";
+
+    @Test
+    public void shouldStartNewFileWhenFileIsFull() throws IOException {
+        // Given
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // When
+        try (CallReportWriter writer = new CallReportWriter(outputStream, 2)) {
+            for (int id = 1; id <= 3; id++) {
+                writer.write(createCall(id));
+            }
+        }
+
+        // Then
+        Map<String, String> files = unzip(outputStream.toByteArray());
+        assertThat(files.size(), equalTo(2));
+        assertThat(countLines(files.get("cfl_calls_1.csv")), equalTo(3));
+        assertThat(countLines(files.get("cfl_calls_2.csv")), equalTo(2));
+        assertThat(files.get("cfl_calls_1.csv"), containsString(HEADER_LINE));
+        assertThat(files.get("cfl_calls_2.csv"), containsString("3,"));
+    }
+
+    @Test
+    public void shouldWriteEmptyFileIfThereAreNoCalls() throws IOException {
+        // Given
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // When
+        new CallReportWriter(outputStream, 2).close();
+
+        // Then
+        Map<String, String> files = unzip(outputStream.toByteArray());
+        assertThat(files.size(), equalTo(1));
+        assertThat(files.get("cfl_calls_1.csv").trim(), equalTo(HEADER_LINE));
+    }
+
+    private Call createCall(int id) {
+        Call call = CallHelper.createOutboundCall();
+        call.setId(id);
+        return call;
+    }
+
+    private Map<String, String> unzip(byte[] zip) throws IOException {
+        Map<String, String> files = new LinkedHashMap<>();
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                files.put(entry.getName(), IOUtils.toString(zipInputStream, StandardCharsets.UTF_8.name()));
+            }
+        }
+        return files;
+    }
+
+    private int countLines(String content) {
+        return content.trim().split("\r\n|\n").length;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.callflows.BaseTest;
+import org.openmrs.module.callflows.Constants;
+import org.openmrs.module.callflows.api.domain.CallRetry;
+import org.openmrs.module.callflows.api.service.CallRetryService;
+import org.openmrs.module.callflows.api.service.CallService;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Call Retry Scheduler Tests
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Daemon.class, DateUtil.class})
+public class CallRetrySchedulerTest extends BaseTest {
+
+    private static final long TICK_MILLIS = 1000L;
+
+    private static final long VERIFY_TIMEOUT_MILLIS = 2000L;
+
+    @Mock
+    private CallRetryService callRetryService;
+
+    @Mock
+    private CallService callService;
+
+    private CallRetryScheduler callRetryScheduler;
+
+    private Date now;
+
+    @Before
+    public void setUp() {
+        PowerMockito.mockStatic(Daemon.class);
+        PowerMockito.mockStatic(DateUtil.class);
+        given(Daemon.runInDaemonThread(any(Runnable.class), any(DaemonToken.class))).willAnswer(new Answer<Thread>() {
+            @Override
+            public Thread answer(InvocationOnMock invocation) {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return new Thread();
+            }
+        });
+        given(callRetryService.saveRetry(any(CallRetry.class))).willAnswer(new Answer<CallRetry>() {
+            @Override
+            public CallRetry answer(InvocationOnMock invocation) {
+                return (CallRetry) invocation.getArguments()[0];
+            }
+        });
+        given(callRetryService.deleteRetries(any(Collection.class))).willAnswer(new Answer<List<Integer>>() {
+            @Override
+            public List<Integer> answer(InvocationOnMock invocation) {
+                return new ArrayList<>((Collection<Integer>) invocation.getArguments()[0]);
+            }
+        });
+        contextMockHelper.setService(CallRetryService.class, callRetryService);
+        contextMockHelper.setService(CallService.class, callService);
+
+        now = new Date(100 * TICK_MILLIS);
+        given(DateUtil.now()).willAnswer(new Answer<Date>() {
+            @Override
+            public Date answer(InvocationOnMock invocation) {
+                return now;
+            }
+        });
+
+        callRetryScheduler = new CallRetryScheduler();
+        callRetryScheduler.setTickMillis(TICK_MILLIS);
+    }
+
+    @After
+    public void tearDown() {
+        callRetryScheduler.close();
+    }
+
+    @Test
+    public void shouldStoreRetryAndFireItOnlyWhenDue() {
+        // Given
+        CallRetry retry = createRetry(1, now.getTime() + 500L);
+
+        // When
+        callRetryScheduler.schedule(retry);
+        callRetryScheduler.fireDueRetries();
+
+        // Then
+        verify(callRetryService, times(1)).saveRetry(retry);
+        verify(callService, never()).makeCall(anyString(), anyString(), anyMap());
+        assertThat(callRetryScheduler.getPendingCount(), equalTo(1));
+
+        // When
+        now = new Date(now.getTime() + TICK_MILLIS);
+        callRetryScheduler.fireDueRetries();
+
+        // Then
+        verify(callRetryService, times(1)).deleteRetries(Collections.singletonList(1));
+        verify(callService, times(1)).makeCall(Constants.CONFIG_VOXEO, Constants.CALLFLOW_MAIN, retry.getParams());
+        assertThat(callRetryScheduler.getPendingCount(), equalTo(0));
+    }
+
+    @Test
+    public void shouldFireRetriesDueWithinSameTickAsOneBatch() {
+        // Given
+        callRetryScheduler.schedule(createRetry(1, now.getTime() - 300L));
+        callRetryScheduler.schedule(createRetry(2, now.getTime() - 700L));
+
+        // When
+        callRetryScheduler.fireDueRetries();
+
+        // Then
+        verify(callRetryService, times(1)).deleteRetries(any(Collection.class));
+        verify(callRetryService, times(1)).deleteRetries(Arrays.asList(1, 2));
+        verify(callService, times(2)).makeCall(anyString(), anyString(), anyMap());
+    }
+
+    @Test
+    public void shouldNotFireRetriesDeletedByAnotherNode() {
+        // Given
+        CallRetry retry = createRetry(2, now.getTime());
+        callRetryScheduler.schedule(createRetry(1, now.getTime()));
+        callRetryScheduler.schedule(retry);
+        given(callRetryService.deleteRetries(any(Collection.class))).willReturn(Collections.singletonList(2));
+
+        // When
+        callRetryScheduler.fireDueRetries();
+
+        // Then
+        verify(callService, times(1)).makeCall(anyString(), anyString(), anyMap());
+        verify(callService, times(1)).makeCall(Constants.CONFIG_VOXEO, Constants.CALLFLOW_MAIN, retry.getParams());
+        assertThat(callRetryScheduler.getPendingCount(), equalTo(0));
+    }
+
+    @Test
+    public void shouldKeepRetriesWhichCouldNotBeDeleted() {
+        // Given
+        callRetryScheduler.schedule(createRetry(1, now.getTime()));
+        doThrow(new IllegalStateException()).when(callRetryService).deleteRetries(any(Collection.class));
+
+        // When
+        callRetryScheduler.fireDueRetries();
+
+        // Then
+        verify(callService, never()).makeCall(anyString(), anyString(), anyMap());
+        assertThat(callRetryScheduler.getPendingCount(), equalTo(1));
+    }
+
+    @Test
+    public void shouldFireRetriesLeftByPreviousRunOnStart() {
+        // Given
+        CallRetry retry = createRetry(1, now.getTime() - TICK_MILLIS);
+        given(callRetryService.findAllRetries()).willReturn(Collections.singletonList(retry));
+        callRetryScheduler.setTickMillis(10L);
+
+        // When
+        callRetryScheduler.start();
+
+        // Then
+        verify(callService, timeout(VERIFY_TIMEOUT_MILLIS))
+                .makeCall(Constants.CONFIG_VOXEO, Constants.CALLFLOW_MAIN, retry.getParams());
+        verify(callRetryService, times(1)).deleteRetries(Collections.singletonList(1));
+    }
+
+    @Test
+    public void shouldAddRetryScheduledInTransactionOnlyOnceTransactionCompletes() {
+        // Given
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // When
+            callRetryScheduler.schedule(createRetry(1, now.getTime()));
+
+            // Then
+            verify(callRetryService, times(1)).saveRetry(any(CallRetry.class));
+            assertThat(callRetryScheduler.getPendingCount(), equalTo(0));
+
+            // When
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+
+            // Then
+            assertThat(callRetryScheduler.getPendingCount(), equalTo(1));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void shouldFireOverdueRetriesLeftByAnotherNode() {
+        // Given
+        CallRetry pendingRetry = createRetry(1, now.getTime() - 3 * TICK_MILLIS);
+        CallRetry overdueRetry = createRetry(2, now.getTime() - 2 * TICK_MILLIS);
+        callRetryScheduler.schedule(pendingRetry);
+        given(callRetryService.findRetriesDueBefore(new Date(now.getTime() - TICK_MILLIS)))
+                .willReturn(Arrays.asList(pendingRetry, overdueRetry));
+
+        // When
+        callRetryScheduler.pollOverdueRetries();
+        callRetryScheduler.fireDueRetries();
+
+        // Then
+        verify(callRetryService, times(1)).deleteRetries(Arrays.asList(1, 2));
+        verify(callService, times(2)).makeCall(anyString(), anyString(), anyMap());
+        assertThat(callRetryScheduler.getPendingCount(), equalTo(0));
+    }
+
+    private CallRetry createRetry(int id, long fireTime) {
+        Map<String, Object> params = new HashMap<>();
+        params.put(Constants.PARAM_PHONE, "1234567890");
+        params.put(Constants.PARAM_RETRY_ATTEMPTS, id);
+
+        CallRetry retry = new CallRetry();
+        retry.setId(id);
+        retry.setCallId(Constants.OUTBOUND_CALL_ID.toString());
+        retry.setConfig(Constants.CONFIG_VOXEO);
+        retry.setFlowName(Constants.CALLFLOW_MAIN);
+        retry.setParams(params);
+        retry.setFireTime(new Date(fireTime));
+        return retry;
+    }
+}
@@ -16,9 +16,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.Captor;
 import org.mockito.InjectMocks;
-import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
@@ -26,60 +24,46 @@ import org.openmrs.module.callflows.BaseTest;
 import org.openmrs.module.callflows.Constants;
 import org.openmrs.module.callflows.api.domain.Call;
 import org.openmrs.module.callflows.api.domain.CallFlow;
+import org.openmrs.module.callflows.api.domain.CallRetry;
 import org.openmrs.module.callflows.api.domain.Config;
 import org.openmrs.module.callflows.api.domain.flow.Flow;
-import org.openmrs.module.callflows.api.domain.types.CallDirection;
 import org.openmrs.module.callflows.api.domain.types.CallStatus;
 import org.openmrs.module.callflows.api.event.CallFlowEvent;
 import org.openmrs.module.callflows.api.helper.CallFlowHelper;
 import org.openmrs.module.callflows.api.helper.CallHelper;
 import org.openmrs.module.callflows.api.helper.ConfigHelper;
 import org.openmrs.module.callflows.api.helper.FlowHelper;
-import org.openmrs.module.callflows.api.service.CallFlowEventService;
-import org.openmrs.module.callflows.api.service.CallFlowSchedulerService;
-import org.openmrs.module.callflows.api.service.CallService;
+import org.openmrs.module.callflows.api.service.CallSlotService;
 import org.openmrs.module.callflows.api.service.impl.CallServiceImpl;
-import org.openmrs.module.callflows.api.task.CallFlowScheduledTask;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.supercsv.io.CsvMapWriter;
-import org.supercsv.prefs.CsvPreference;
 
 import javax.naming.OperationNotSupportedException;
 import javax.servlet.http.HttpServletRequest;
-import java.io.BufferedWriter;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.charset.Charset;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import static junit.framework.TestCase.assertNotNull;
 import static junit.framework.TestCase.assertTrue;
-import static org.apache.commons.lang.CharEncoding.UTF_8;
 import static org.hamcrest.CoreMatchers.equalTo;
-import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.BDDMockito.given;
-import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.internal.verification.VerificationModeFactory.times;
@@ -90,8 +74,7 @@ import static org.mockito.internal.verification.VerificationModeFactory.times;
  * @author bramak09
  */
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({CallUtil.class, DateUtil.class, BufferedWriter.class, OutputStreamWriter.class,
-        FileOutputStream.class, CsvMapWriter.class})
+@PrepareForTest({CallUtil.class, DateUtil.class})
 public class CallUtilTest extends BaseTest {
 
     private static final String AUTH_TOKEN = "2323232wewewe";
@@ -118,13 +101,6 @@ public class CallUtilTest extends BaseTest {
 
     private Map<String, Object> eventParams = new HashMap<>();
 
-    private Set<CallStatus> callStatusSet = new HashSet<>(Constants.ACTIVE_OUTBOUND_CALL_STATUSES);
-
-    private BufferedWriter bufferedWriter;
-    private FileOutputStream fileOutputStream;
-    private OutputStreamWriter outputStreamWriter;
-    private CsvMapWriter csvMapWriter;
-
     @InjectMocks
     private CallUtil callUtil = new CallUtil();
 
@@ -132,17 +108,13 @@ public class CallUtilTest extends BaseTest {
     private HttpServletRequest request;
 
     @Mock
-    private CallService callService;
+    private CallRetryScheduler callRetryScheduler;
 
     @Mock
-    @Autowired
-    @Qualifier("callflow.schedulerService")
-    private CallFlowSchedulerService schedulerService;
+    private CallSlotService callSlotService;
 
     @Mock
-    @Autowired
-    @Qualifier("callFlow.eventService")
-    private CallFlowEventService callFlowEventService;
+    private StatusEventPublisher statusEventPublisher;
 
     @Mock
     private Config config;
@@ -153,22 +125,15 @@ public class CallUtilTest extends BaseTest {
     @Mock
     private AuthUtil authUtil;
 
-    @Captor
-    private ArgumentCaptor<LinkedHashMap> csvArgumentCaptor;
-
     @Before
     public void setUp() throws IOException {
 
         MockitoAnnotations.initMocks(CallUtilTest.class);
         PowerMockito.mockStatic(DateUtil.class);
-        bufferedWriter = PowerMockito.mock(BufferedWriter.class);
-        fileOutputStream = PowerMockito.mock(FileOutputStream.class);
-        outputStreamWriter = PowerMockito.mock(OutputStreamWriter.class);
-        csvMapWriter = PowerMockito.mock(CsvMapWriter.class);
-
 
         dateTime = new Date();
         given(DateUtil.now()).willReturn(dateTime);
+        given(config.getName()).willReturn(Constants.CONFIG_VOXEO);
 
         mainFlow = CallFlowHelper.createMainFlow();
 
@@ -425,26 +390,27 @@ public class CallUtilTest extends BaseTest {
         given(config.getOutboundCallLimit()).willReturn(0);
 
         //When
-        callUtil.checkCallCanBePlaced(callService, outboundCall, config, eventParams);
+        callUtil.checkCallCanBePlaced(outboundCall, config, eventParams);
 
         //Then
         verify(config, times(1)).getOutboundCallLimit();
-        verifyZeroInteractions(callService);
-        verifyZeroInteractions(schedulerService);
+        verifyZeroInteractions(callSlotService);
+        verifyZeroInteractions(callRetryScheduler);
     }
 
     @Test
     public void shouldCheckActiveCallsAndRetriesIfOutboundCallLimitIsSet() throws OperationNotSupportedException {
         //Given
         given(config.getOutboundCallLimit()).willReturn(5);
+        given(callSlotService.acquireSlot(config, outboundCall.getCallId())).willReturn(true);
 
         //When
-        callUtil.checkCallCanBePlaced(callService, outboundCall, config, eventParams);
+        callUtil.checkCallCanBePlaced(outboundCall, config, eventParams);
 
         //Then
-        verify(config, times(2)).getOutboundCallLimit();
-        verify(callService, times(1)).countFindCallsByDirectionAndStatus(CallDirection.OUTGOING, callStatusSet);
-        verifyZeroInteractions(schedulerService);
+        verify(config, times(1)).getOutboundCallLimit();
+        verify(callSlotService, times(1)).acquireSlot(config, outboundCall.getCallId());
+        verifyZeroInteractions(callRetryScheduler);
     }
 
     @Test(expected = OperationNotSupportedException.class)
@@ -452,22 +418,50 @@ public class CallUtilTest extends BaseTest {
             throws OperationNotSupportedException {
         //Given
         given(config.getOutboundCallLimit()).willReturn(5);
-        given(callService.countFindCallsByDirectionAndStatus(CallDirection.OUTGOING, callStatusSet))
-                .willReturn(10L);
+        given(callSlotService.acquireSlot(config, outboundCall.getCallId())).willReturn(false);
         eventParams.put(Constants.PARAM_JOB_ID, outboundCall.getCallId());
         eventParams.put(Constants.PARAM_RETRY_ATTEMPTS, 1);
         given(config.getOutboundCallRetryAttempts()).willReturn(5);
         callFlowEvent = new CallFlowEvent(CallFlowEventSubjectConstants.CALLFLOWS_INITIATE_CALL, eventParams);
 
         //When
-        callUtil.checkCallCanBePlaced(callService, outboundCall, config, eventParams);
+        callUtil.checkCallCanBePlaced(outboundCall, config, eventParams);
 
         //Then
-        verify(config, times(2)).getOutboundCallLimit();
-        verify(callService, times(1)).countFindCallsByDirectionAndStatus(CallDirection.OUTGOING, callStatusSet);
+        verify(config, times(1)).getOutboundCallLimit();
+        verify(callSlotService, times(1)).acquireSlot(config, outboundCall.getCallId());
         assertThat(eventParams.get(Constants.PARAM_RETRY_ATTEMPTS).toString(), equalTo("2"));
-        verify(schedulerService, times(1)).scheduleRunOnceJob(callFlowEvent,
-                DateUtil.plusSeconds(DateUtil.now(), Constants.CONFIG_VOXEO_OUTBOUND_CALL_RETRY_SECONDS), new CallFlowScheduledTask());
+        verify(callRetryScheduler, times(1)).schedule(any(CallRetry.class));
+    }
+
+    @Test
+    public void shouldStoreRetryOfCallToFireAfterRetrySeconds() {
+        //Given
+        Date fireTime = new Date(dateTime.getTime() + Constants.CONFIG_VOXEO_OUTBOUND_CALL_RETRY_SECONDS * 1000L);
+        given(config.getOutboundCallLimit()).willReturn(5);
+        given(config.getOutboundCallRetryAttempts()).willReturn(5);
+        given(config.getOutboundCallRetrySeconds()).willReturn(Constants.CONFIG_VOXEO_OUTBOUND_CALL_RETRY_SECONDS);
+        given(callSlotService.acquireSlot(config, outboundCall.getCallId())).willReturn(false);
+        given(DateUtil.plusSeconds(dateTime, Constants.CONFIG_VOXEO_OUTBOUND_CALL_RETRY_SECONDS)).willReturn(fireTime);
+        ArgumentCaptor<CallRetry> retryCaptor = ArgumentCaptor.forClass(CallRetry.class);
+
+        //When
+        try {
+            callUtil.checkCallCanBePlaced(outboundCall, config, callParams);
+            fail("The call should not be placed while the outbound call limit is exceeded");
+        } catch (OperationNotSupportedException e) {
+            assertThat(e.getMessage(), equalTo("Outbound call limit is exceeded"));
+        }
+
+        //Then
+        verify(callRetryScheduler, times(1)).schedule(retryCaptor.capture());
+        CallRetry retry = retryCaptor.getValue();
+        assertThat(retry.getCallId(), equalTo(outboundCall.getCallId()));
+        assertThat(retry.getConfig(), equalTo(Constants.CONFIG_VOXEO));
+        assertThat(retry.getFlowName(), equalTo(outboundCall.getStartFlow().getName()));
+        assertThat(retry.getFireTime(), equalTo(fireTime));
+        assertThat(retry.getParams().get(Constants.TEST_PARAM), equalTo((Object) Constants.TEST_VALUE));
+        assertThat(retry.getParams().get(Constants.PARAM_RETRY_ATTEMPTS), equalTo((Object) 1));
     }
 
     @Test(expected = OperationNotSupportedException.class)
@@ -475,20 +469,19 @@ public class CallUtilTest extends BaseTest {
             throws OperationNotSupportedException {
         //Given
         given(config.getOutboundCallLimit()).willReturn(5);
-        given(callService.countFindCallsByDirectionAndStatus(CallDirection.OUTGOING, callStatusSet))
-                .willReturn(10L);
+        given(callSlotService.acquireSlot(config, outboundCall.getCallId())).willReturn(false);
         eventParams.put(Constants.PARAM_JOB_ID, outboundCall.getCallId());
         eventParams.put(Constants.PARAM_RETRY_ATTEMPTS, 6);
         given(config.getOutboundCallRetryAttempts()).willReturn(5);
         given(config.getCallAllowed()).willReturn(false);
 
         //When
-        callUtil.checkCallCanBePlaced(callService, outboundCall, config, eventParams);
+        callUtil.checkCallCanBePlaced(outboundCall, config, eventParams);
 
         //Then
-        verify(config, times(2)).getOutboundCallLimit();
-        verify(callService, times(1)).countFindCallsByDirectionAndStatus(CallDirection.OUTGOING, callStatusSet);
-        verifyZeroInteractions(schedulerService);
+        verify(config, times(1)).getOutboundCallLimit();
+        verify(callSlotService, times(1)).acquireSlot(config, outboundCall.getCallId());
+        verifyZeroInteractions(callRetryScheduler);
     }
 
     @Test
@@ -496,8 +489,7 @@ public class CallUtilTest extends BaseTest {
             throws OperationNotSupportedException {
         //Given
         given(config.getOutboundCallLimit()).willReturn(5);
-        given(callService.countFindCallsByDirectionAndStatus(CallDirection.OUTGOING, callStatusSet))
-                .willReturn(10L);
+        given(callSlotService.acquireSlot(config, outboundCall.getCallId())).willReturn(false);
         eventParams.put(Constants.PARAM_JOB_ID, outboundCall.getCallId());
         eventParams.put(Constants.PARAM_RETRY_ATTEMPTS, 6);
         given(config.getOutboundCallRetryAttempts()).willReturn(5);
@@ -505,12 +497,12 @@ public class CallUtilTest extends BaseTest {
         given(config.getCallAllowed()).willReturn(true);
 
         //When
-        callUtil.checkCallCanBePlaced(callService, outboundCall, config, eventParams);
+        callUtil.checkCallCanBePlaced(outboundCall, config, eventParams);
 
         //Then
-        verify(config, times(2)).getOutboundCallLimit();
-        verify(callService, times(1)).countFindCallsByDirectionAndStatus(CallDirection.OUTGOING, callStatusSet);
-        verifyZeroInteractions(schedulerService);
+        verify(config, times(1)).getOutboundCallLimit();
+        verify(callSlotService, times(1)).acquireSlot(config, outboundCall.getCallId());
+        verifyZeroInteractions(callRetryScheduler);
     }
 
     @Test
@@ -590,7 +582,8 @@ public class CallUtilTest extends BaseTest {
         callUtil.sendStatusEvent(outboundCall);
 
         // Then
-        verify(callFlowEventService, times(1)).sendEventMessage(callFlowEventArgumentCaptor.capture());
+        verify(statusEventPublisher, times(1)).publish(eq(outboundCall.getCallId()),
+                callFlowEventArgumentCaptor.capture());
         CallFlowEvent capturedEvent = callFlowEventArgumentCaptor.getValue();
         assertThat((String) capturedEvent.getParameters().get(Constants.PARAM_CALL_ID),
                 equalTo(outboundCall.getCallId()));
@@ -606,7 +599,7 @@ public class CallUtilTest extends BaseTest {
         callUtil.sendStatusEvent(badCall);
 
         // Then
-        verifyZeroInteractions(callFlowEventService);
+        verifyZeroInteractions(statusEventPublisher);
     }
 
     @Test
@@ -616,7 +609,7 @@ public class CallUtilTest extends BaseTest {
         ArgumentCaptor<CallFlowEvent> callFlowEventArgumentCaptor = ArgumentCaptor.forClass(CallFlowEvent.class);
 
         // Then
-        verify(callFlowEventService, times(1)).sendEventMessage(callFlowEventArgumentCaptor.capture());
+        verify(statusEventPublisher, times(1)).publish(isNull(String.class), callFlowEventArgumentCaptor.capture());
         CallFlowEvent capturedEvent = callFlowEventArgumentCaptor.getValue();
         // Since we are sending this event without a call object being created, the call ID should be unknown
         assertThat((String) capturedEvent.getParameters().get(Constants.PARAM_CALL_ID), equalTo("unknown"));
@@ -627,58 +620,20 @@ public class CallUtilTest extends BaseTest {
     public void shouldSetCallRetryLimitToOneIfRetryAttemptIsNull() throws OperationNotSupportedException {
         //Given
         given(config.getOutboundCallLimit()).willReturn(5);
-        given(callService.countFindCallsByDirectionAndStatus(CallDirection.OUTGOING, callStatusSet))
-                .willReturn(10L);
+        given(callSlotService.acquireSlot(config, outboundCall.getCallId())).willReturn(false);
         eventParams.put(Constants.PARAM_JOB_ID, outboundCall.getCallId());
         eventParams.put(Constants.PARAM_RETRY_ATTEMPTS, null);
         given(config.getOutboundCallRetryAttempts()).willReturn(5);
         callFlowEvent = new CallFlowEvent(CallFlowEventSubjectConstants.CALLFLOWS_INITIATE_CALL, eventParams);
 
         //When
-        callUtil.checkCallCanBePlaced(callService, outboundCall, config, eventParams);
+        callUtil.checkCallCanBePlaced(outboundCall, config, eventParams);
 
         //Then
-        verify(config, times(2)).getOutboundCallLimit();
-        verify(callService, times(1)).countFindCallsByDirectionAndStatus(CallDirection.OUTGOING, callStatusSet);
+        verify(config, times(1)).getOutboundCallLimit();
+        verify(callSlotService, times(1)).acquireSlot(config, outboundCall.getCallId());
         assertThat(eventParams.get(Constants.PARAM_RETRY_ATTEMPTS).toString(), equalTo("1"));
-        verify(schedulerService, times(1)).scheduleRunOnceJob(callFlowEvent,
-                DateUtil.plusSeconds(DateUtil.now(), Constants.CONFIG_VOXEO_OUTBOUND_CALL_RETRY_SECONDS), new CallFlowScheduledTask());
-    }
-
-    @Test
-    public void shouldNotThrowAnyExceptionWhileGeneratingCallReports() throws Exception {
-        //Given
-        List<Call> calls = new ArrayList<>(1);
-        calls.add(setupCallData());
-        final String[] headers = {"id", "actorId", "phone", "actorType", "callId", "direction", "creationDate",
-                "callReference", "status", "statusText", "startTime", "endTime"};
-
-        LinkedHashMap<String, Object> linkedHashMap = new LinkedHashMap<>();
-
-        PowerMockito.whenNew(FileOutputStream.class).withArguments(anyString()).thenReturn(fileOutputStream);
-        PowerMockito.whenNew(OutputStreamWriter.class).withArguments(fileOutputStream, Charset.forName(UTF_8))
-                .thenReturn(outputStreamWriter);
-        PowerMockito.whenNew(BufferedWriter.class).withArguments(outputStreamWriter).thenReturn(bufferedWriter);
-        PowerMockito.whenNew(CsvMapWriter.class).withArguments(bufferedWriter, CsvPreference.STANDARD_PREFERENCE)
-                .thenReturn(csvMapWriter);
-        PowerMockito.whenNew(LinkedHashMap.class).withArguments(anyInt()).thenReturn(linkedHashMap);
-
-        //When
-        callUtil.generateReports("", calls);
-
-        //verify
-        verify(csvMapWriter, times(1)).write(csvArgumentCaptor.capture(), Matchers.<String>anyVararg());
-        assertEquals(calls.get(0).getId(), csvArgumentCaptor.getValue().get("id"));
-        assertEquals(calls.get(0).getCallId(), csvArgumentCaptor.getValue().get("callId"));
-    }
-
-    private Call setupCallData() {
-        Call callData = new Call();
-        callData.setId(1);
-        callData.setActorId("10L");
-        callData.setCallId("91882-92882-1882-9383ss-28292");
-        callData.setDirection(CallDirection.OUTGOING);
-        return callData;
+        verify(callRetryScheduler, times(1)).schedule(any(CallRetry.class));
     }
 
     private void assertCallStatusEvent(CallFlowEvent event) {
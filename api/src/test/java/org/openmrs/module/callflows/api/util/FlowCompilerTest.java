@@ -0,0 +1,135 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.util;
+
+import org.junit.Test;
+import org.openmrs.module.callflows.BaseTest;
+import org.openmrs.module.callflows.api.domain.flow.Block;
+import org.openmrs.module.callflows.api.domain.flow.Element;
+import org.openmrs.module.callflows.api.domain.flow.FieldElement;
+import org.openmrs.module.callflows.api.domain.flow.Flow;
+import org.openmrs.module.callflows.api.domain.flow.Node;
+import org.openmrs.module.callflows.api.domain.flow.TextElement;
+import org.openmrs.module.callflows.api.domain.flow.UserNode;
+import org.openmrs.module.callflows.api.helper.FlowHelper;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Flow Compiler Tests
+ */
+public class FlowCompilerTest extends BaseTest {
+
+    private static final String DESIGNER_RAW = "{ \"name\": \"MainFlow\", \"meta\": \"{\\\"zoom\\\": 2}\", "
+            + "\"nodes\": [{ \"nodeType\": \"user\", \"step\": \"entry\", \"xpos\": 120, \"ypos\": 80, "
+            + "\"continueNode\": true, \"currentBlockId\": 1, "
+            + "\"templates\": { \"vxml\": { \"content\": \"<vxml/>\", \"dirty\": true } } }, "
+            + "{ \"nodeType\": \"system\", \"step\": \"entry-handler\", "
+            + "\"templates\": { \"velocity\": { \"content\": \"|MainFlow.|\" } } }]}";
+
+    @Test
+    public void shouldLoadCompiledFlowLikeRawFlow() throws IOException {
+        String raw = TestUtil.loadFile("main_flow.json");
+        Flow expected = FlowHelper.createFlow(raw);
+
+        Flow flow = FlowCompiler.load(FlowCompiler.compile(raw));
+
+        assertThat(flow.getName(), equalTo(expected.getName()));
+        assertThat(flow.getNodes().size(), equalTo(expected.getNodes().size()));
+        for (int i = 0; i < expected.getNodes().size(); i++) {
+            Node node = flow.getNodes().get(i);
+            assertThat(node.getClass(), equalTo((Object) expected.getNodes().get(i).getClass()));
+            assertThat(node.getStep(), equalTo(expected.getNodes().get(i).getStep()));
+            assertThat(node.getTemplates().keySet(), equalTo(expected.getNodes().get(i).getTemplates().keySet()));
+        }
+    }
+
+    @Test
+    public void shouldLoadBlocksAndElementsOfUserNodes() throws IOException {
+        String raw = TestUtil.loadFile("main_flow.json");
+        UserNode expected = (UserNode) FlowHelper.createFlow(raw).getNodes().get(0);
+
+        UserNode entry = (UserNode) FlowCompiler.load(FlowCompiler.compile(raw)).getNodes().get(0);
+
+        assertThat(entry.getBlocks().size(), equalTo(expected.getBlocks().size()));
+        Block block = entry.getBlocks().get(0);
+        assertThat(block.getClass(), equalTo((Object) expected.getBlocks().get(0).getClass()));
+        List<Element> expectedElements = expected.getBlocks().get(0).getElements();
+        assertThat(block.getElements().size(), equalTo(expectedElements.size()));
+        TextElement text = (TextElement) block.getElements().get(0);
+        assertThat(text.getName(), equalTo(expectedElements.get(0).getName()));
+        assertThat(text.getTxt(), equalTo(((TextElement) expectedElements.get(0)).getTxt()));
+        FieldElement field = (FieldElement) block.getElements().get(1);
+        FieldElement expectedField = (FieldElement) expectedElements.get(1);
+        assertThat(field.getFieldType(), equalTo(expectedField.getFieldType()));
+        assertThat(field.getTxt(), equalTo(expectedField.getTxt()));
+        assertThat(field.isDtmf(), equalTo(expectedField.isDtmf()));
+        assertThat(field.getReprompt(), equalTo(expectedField.getReprompt()));
+        assertThat(field.getDtmfGrammar(), equalTo(expectedField.getDtmfGrammar()));
+    }
+
+    @Test
+    public void shouldLeaveOutDesignerData() {
+        Flow flow = FlowCompiler.load(FlowCompiler.compile(DESIGNER_RAW));
+
+        Node entry = flow.getNodes().get(0);
+        assertThat(flow.getMeta(), nullValue());
+        assertThat(entry.getXpos(), equalTo(0));
+        assertThat(entry.getYpos(), equalTo(0));
+        assertThat(entry.getCurrentBlockId(), equalTo(0));
+        assertFalse(entry.getTemplates().get("vxml").isDirty());
+        assertThat(entry.getTemplates().get("vxml").getContent(), equalTo("<vxml/>"));
+        assertThat(entry, instanceOf(UserNode.class));
+        assertTrue(((UserNode) entry).isContinueNode());
+    }
+
+    @Test
+    public void shouldCompileIntoLessBytesThanRawFlow() throws IOException {
+        String raw = TestUtil.loadFile("main_flow.json");
+
+        assertTrue(FlowCompiler.compile(raw).length < raw.length());
+    }
+
+    @Test
+    public void shouldNotCompileUnparsableRawFlow() {
+        assertThat(FlowCompiler.compile(""), nullValue());
+        assertThat(FlowCompiler.compile("{ not json"), nullValue());
+    }
+
+    @Test
+    public void shouldNotLoadFlowCompiledInAnotherFormat() {
+        byte[] compiled = FlowCompiler.compile(DESIGNER_RAW);
+        compiled[0] = (byte) (compiled[0] + 1);
+
+        assertThat(FlowCompiler.load(compiled), nullValue());
+        assertThat(FlowCompiler.load(null), nullValue());
+        assertThat(FlowCompiler.load(new byte[]{1, 2, 3}), nullValue());
+    }
+
+    @Test
+    public void shouldNotLoadCorruptedCompiledFlow() {
+        byte[] compiled = FlowCompiler.compile(DESIGNER_RAW);
+        // the length of the flow name is beyond the end of the compiled flow
+        compiled[1] = Byte.MAX_VALUE;
+
+        assertThat(FlowCompiler.load(compiled), nullValue());
+        assertThat(FlowCompiler.load(Arrays.copyOf(compiled, compiled.length / 2)), nullValue());
+    }
+}
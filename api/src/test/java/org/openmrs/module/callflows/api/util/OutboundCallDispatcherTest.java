@@ -0,0 +1,253 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.callflows.BaseTest;
+import org.openmrs.module.callflows.Constants;
+import org.openmrs.module.callflows.api.domain.Call;
+import org.openmrs.module.callflows.api.domain.Config;
+import org.openmrs.module.callflows.api.domain.OutboundQueueEntry;
+import org.openmrs.module.callflows.api.domain.types.CallStatus;
+import org.openmrs.module.callflows.api.domain.types.OutboundQueueStatus;
+import org.openmrs.module.callflows.api.helper.CallHelper;
+import org.openmrs.module.callflows.api.helper.ConfigHelper;
+import org.openmrs.module.callflows.api.service.CallService;
+import org.openmrs.module.callflows.api.service.CallSlotService;
+import org.openmrs.module.callflows.api.service.ConfigService;
+import org.openmrs.module.callflows.api.service.OutboundQueueService;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Outbound Call Dispatcher Tests
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Daemon.class})
+public class OutboundCallDispatcherTest extends BaseTest {
+
+    private static final long VERIFY_TIMEOUT_MILLIS = 2000L;
+
+    private static final String NODE_ID = "node-1";
+
+    private static final int WORKERS = 2;
+
+    private static final int ENTRY_ID = 1;
+
+    @Mock
+    private CallService callService;
+
+    @Mock
+    private ConfigService configService;
+
+    @Mock
+    private OutboundQueueService outboundQueueService;
+
+    @Mock
+    private CallSlotService callSlotService;
+
+    private OutboundCallDispatcher outboundCallDispatcher;
+
+    private Call call;
+
+    private Config config;
+
+    private Map<String, Object> params;
+
+    @Before
+    public void setUp() {
+        PowerMockito.mockStatic(Daemon.class);
+        given(Daemon.runInDaemonThread(any(Runnable.class), any(DaemonToken.class))).willAnswer(new Answer<Thread>() {
+            @Override
+            public Thread answer(InvocationOnMock invocation) {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return new Thread();
+            }
+        });
+        contextMockHelper.setService(CallService.class, callService);
+        contextMockHelper.setService(ConfigService.class, configService);
+        contextMockHelper.setService(OutboundQueueService.class, outboundQueueService);
+        contextMockHelper.setService(CallSlotService.class, callSlotService);
+
+        call = CallHelper.createOutboundCall();
+        config = ConfigHelper.createConfigs().get(0);
+        config.setOutboundCallLimit(WORKERS);
+        params = new HashMap<>();
+        params.put(Constants.PARAM_PHONE, "1234567890");
+        given(configService.allConfigs()).willReturn(Collections.singletonList(config));
+        given(callSlotService.countLeasedSlots(config)).willReturn(0L);
+
+        outboundCallDispatcher = new OutboundCallDispatcher();
+        outboundCallDispatcher.setNodeId(NODE_ID);
+        outboundCallDispatcher.setWorkers(WORKERS);
+        // the queue is polled by the tests only
+        outboundCallDispatcher.setPollMillis(Long.MAX_VALUE / 2);
+        outboundCallDispatcher.start();
+    }
+
+    @After
+    public void tearDown() {
+        outboundCallDispatcher.close();
+    }
+
+    @Test
+    public void shouldActivateAndPlaceClaimedQueuedCall() {
+        // Given
+        givenClaimedEntry(call.getCallId());
+        given(callService.activateQueuedCall(call.getCallId())).willReturn(call);
+        given(callService.placeOutboundCall(call, params)).willReturn(call);
+
+        // When
+        outboundCallDispatcher.claimAndDispatch();
+
+        // Then
+        verify(outboundQueueService, timeout(VERIFY_TIMEOUT_MILLIS)).finish(ENTRY_ID, OutboundQueueStatus.DONE,
+                call.getCallId(), call.getStatus().name());
+        verify(callService).activateQueuedCall(call.getCallId());
+        verify(callService).placeOutboundCall(call, params);
+    }
+
+    @Test
+    public void shouldCreateCallOfClaimedEntryWithoutCallId() {
+        // Given
+        givenClaimedEntry(null);
+        given(callService.makeCall(config.getName(), Constants.CALLFLOW_MAIN, params)).willReturn(call);
+
+        // When
+        outboundCallDispatcher.claimAndDispatch();
+
+        // Then
+        verify(outboundQueueService, timeout(VERIFY_TIMEOUT_MILLIS)).finish(ENTRY_ID, OutboundQueueStatus.DONE,
+                call.getCallId(), call.getStatus().name());
+        verify(callService, never()).activateQueuedCall(anyString());
+    }
+
+    @Test
+    public void shouldNotPlaceCallWhichIsNoLongerQueued() {
+        // Given
+        givenClaimedEntry(call.getCallId());
+        given(callService.activateQueuedCall(call.getCallId())).willReturn(null);
+
+        // When
+        outboundCallDispatcher.claimAndDispatch();
+
+        // Then
+        verify(outboundQueueService, timeout(VERIFY_TIMEOUT_MILLIS)).finish(ENTRY_ID, OutboundQueueStatus.DONE,
+                null, "Call is no longer queued");
+        verify(callService, never()).placeOutboundCall(any(Call.class), any(Map.class));
+    }
+
+    @Test
+    public void shouldPutEntryBackToQueueIfCallFoundNoFreeSlot() {
+        // Given
+        givenClaimedEntry(call.getCallId());
+        call.setStatus(CallStatus.QUEUED);
+        given(callService.activateQueuedCall(call.getCallId())).willReturn(call);
+
+        // When
+        outboundCallDispatcher.claimAndDispatch();
+
+        // Then
+        verify(outboundQueueService, timeout(VERIFY_TIMEOUT_MILLIS)).release(ENTRY_ID);
+        verify(callService, never()).placeOutboundCall(any(Call.class), any(Map.class));
+        verify(outboundQueueService, never()).finish(anyInt(), any(OutboundQueueStatus.class), anyString(),
+                anyString());
+    }
+
+    @Test
+    public void shouldFinishEntryAsFailedIfCallCannotBePlaced() {
+        // Given
+        givenClaimedEntry(null);
+        given(callService.makeCall(config.getName(), Constants.CALLFLOW_MAIN, params))
+                .willThrow(new IllegalStateException("Flow not found"));
+
+        // When
+        outboundCallDispatcher.claimAndDispatch();
+
+        // Then
+        verify(outboundQueueService, timeout(VERIFY_TIMEOUT_MILLIS)).finish(ENTRY_ID, OutboundQueueStatus.FAILED,
+                null, "Flow not found");
+    }
+
+    @Test
+    public void shouldClaimOnlyAsManyEntriesAsOutboundCallLimitAllows() {
+        // Given
+        given(callSlotService.countLeasedSlots(config)).willReturn(1L);
+
+        // When
+        outboundCallDispatcher.claimAndDispatch();
+
+        // Then
+        verify(outboundQueueService).claim(config.getName(), NODE_ID, WORKERS - 1);
+    }
+
+    @Test
+    public void shouldNotClaimEntriesOfConfigAtOutboundCallLimit() {
+        // Given
+        given(callSlotService.countLeasedSlots(config)).willReturn((long) WORKERS);
+
+        // When
+        outboundCallDispatcher.claimAndDispatch();
+
+        // Then
+        verify(outboundQueueService, never()).claim(anyString(), anyString(), anyInt());
+    }
+
+    @Test
+    public void shouldAddCallToSharedQueue() {
+        // Given
+        ArgumentCaptor<List> entries = ArgumentCaptor.forClass(List.class);
+
+        // When
+        outboundCallDispatcher.enqueue(config.getName(), Constants.CALLFLOW_MAIN, params);
+
+        // Then
+        verify(outboundQueueService).enqueue(entries.capture());
+        OutboundQueueEntry entry = (OutboundQueueEntry) entries.getValue().get(0);
+        assertThat(entry.getConfig(), equalTo(config.getName()));
+        assertThat(entry.getFlowName(), equalTo(Constants.CALLFLOW_MAIN));
+        assertThat(entry.getParams(), equalTo(params));
+        assertThat(entry.getStatus(), equalTo(OutboundQueueStatus.PENDING));
+    }
+
+    private void givenClaimedEntry(String callId) {
+        OutboundQueueEntry entry = new OutboundQueueEntry(config.getName(), Constants.CALLFLOW_MAIN, callId, params);
+        entry.setId(ENTRY_ID);
+        entry.setStatus(OutboundQueueStatus.CLAIMED);
+        given(outboundQueueService.claim(config.getName(), NODE_ID, WORKERS))
+                .willReturn(Collections.singletonList(entry));
+    }
+}
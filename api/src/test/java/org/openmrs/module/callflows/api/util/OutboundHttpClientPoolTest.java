@@ -0,0 +1,108 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.util;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.pool.PoolStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.callflows.BaseTest;
+import org.openmrs.module.callflows.Constants;
+import org.openmrs.module.callflows.api.domain.Config;
+import org.openmrs.module.callflows.api.helper.ConfigHelper;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Outbound HTTP Client Pool Tests
+ */
+public class OutboundHttpClientPoolTest extends BaseTest {
+
+    private OutboundHttpClientPool httpClientPool;
+
+    private Config voxeo;
+
+    @Before
+    public void setUp() {
+        httpClientPool = new OutboundHttpClientPool();
+        voxeo = ConfigHelper.createConfigs().get(0);
+    }
+
+    @After
+    public void tearDown() {
+        httpClientPool.close();
+    }
+
+    @Test
+    public void shouldShareClientBetweenCallsOfSameConfig() {
+        CloseableHttpClient client = httpClientPool.getClient(voxeo);
+
+        assertThat(httpClientPool.getClient(voxeo), sameInstance(client));
+    }
+
+    @Test
+    public void shouldReplaceClientWhenConnectionSettingsChange() {
+        CloseableHttpClient client = httpClientPool.getClient(voxeo);
+
+        voxeo.setOutgoingCallMaxConnections(5);
+
+        assertThat(httpClientPool.getClient(voxeo), not(sameInstance(client)));
+    }
+
+    @Test
+    public void shouldRetireReplacedClientInsteadOfClosingIt() {
+        httpClientPool.getClient(voxeo);
+        voxeo.setOutgoingCallMaxConnections(5);
+
+        httpClientPool.getClient(voxeo);
+
+        assertThat(httpClientPool.getRetiredCount(), equalTo(1));
+        assertThat(httpClientPool.getPoolStats().get(Constants.CONFIG_VOXEO).getMax(), equalTo(5));
+    }
+
+    @Test
+    public void shouldCloseRetiredClientsOnClose() {
+        httpClientPool.getClient(voxeo);
+        voxeo.setOutgoingCallMaxConnections(5);
+        httpClientPool.getClient(voxeo);
+
+        httpClientPool.close();
+
+        assertThat(httpClientPool.getRetiredCount(), equalTo(0));
+    }
+
+    @Test
+    public void shouldLimitConnectionsAsConfigured() {
+        voxeo.setOutgoingCallMaxConnections(5);
+        httpClientPool.getClient(voxeo);
+
+        PoolStats stats = httpClientPool.getPoolStats().get(Constants.CONFIG_VOXEO);
+
+        assertThat(stats.getMax(), equalTo(5));
+        assertThat(stats.getLeased(), equalTo(0));
+        assertFalse(httpClientPool.isSaturated(Constants.CONFIG_VOXEO));
+    }
+
+    @Test
+    public void shouldDropClientsOnClose() {
+        httpClientPool.getClient(voxeo);
+
+        httpClientPool.close();
+
+        assertTrue(httpClientPool.getPoolStats().isEmpty());
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.api.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.callflows.BaseTest;
+import org.openmrs.module.callflows.api.event.CallFlowEvent;
+import org.openmrs.module.callflows.api.metrics.CallFlowMetrics;
+import org.openmrs.module.callflows.api.metrics.MetricSource;
+import org.openmrs.module.callflows.api.service.CallFlowEventService;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Status Event Publisher Tests
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Daemon.class})
+public class StatusEventPublisherTest extends BaseTest {
+
+    private static final long VERIFY_TIMEOUT_MILLIS = 2000L;
+
+    private static final long OFFER_TIMEOUT_MILLIS = 50L;
+
+    @Mock
+    private CallFlowEventService callFlowEventService;
+
+    private StatusEventPublisher statusEventPublisher;
+
+    @Before
+    public void setUp() {
+        PowerMockito.mockStatic(Daemon.class);
+        given(Daemon.runInDaemonThread(any(Runnable.class), any(DaemonToken.class))).willAnswer(new Answer<Thread>() {
+            @Override
+            public Thread answer(InvocationOnMock invocation) {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return new Thread();
+            }
+        });
+
+        statusEventPublisher = new StatusEventPublisher();
+        statusEventPublisher.setCallFlowEventService(callFlowEventService);
+    }
+
+    @After
+    public void tearDown() {
+        statusEventPublisher.close();
+    }
+
+    @Test
+    public void shouldReplacePendingEventOfSameCallWithNewerOne() {
+        // Given
+        CallFlowEvent initiated = createEvent("1", "INITIATED");
+        CallFlowEvent completed = createEvent("1", "COMPLETED");
+        CallFlowEvent unknownFirst = createEvent("unknown", "FAILED");
+        CallFlowEvent unknownSecond = createEvent("unknown", "FAILED");
+
+        // When
+        statusEventPublisher.publish("1", initiated);
+        statusEventPublisher.publish(null, unknownFirst);
+        statusEventPublisher.publish("1", completed);
+        statusEventPublisher.publish(null, unknownSecond);
+        statusEventPublisher.start();
+
+        // Then
+        verify(callFlowEventService, timeout(VERIFY_TIMEOUT_MILLIS))
+                .sendEventMessages(Arrays.asList(completed, unknownFirst, unknownSecond));
+        assertThat(statusEventPublisher.getCoalescedCount(), equalTo(1L));
+    }
+
+    @Test
+    public void shouldSendPendingEventsInBatches() {
+        // Given
+        statusEventPublisher.setBatchSize(2);
+        CallFlowEvent first = createEvent("1", "COMPLETED");
+        CallFlowEvent second = createEvent("2", "COMPLETED");
+        CallFlowEvent third = createEvent("3", "COMPLETED");
+        statusEventPublisher.publish("1", first);
+        statusEventPublisher.publish("2", second);
+        statusEventPublisher.publish("3", third);
+
+        // When
+        statusEventPublisher.start();
+
+        // Then
+        verify(callFlowEventService, timeout(VERIFY_TIMEOUT_MILLIS)).sendEventMessages(Arrays.asList(first, second));
+        verify(callFlowEventService, timeout(VERIFY_TIMEOUT_MILLIS))
+                .sendEventMessages(Collections.singletonList(third));
+        statusEventPublisher.close();
+        assertThat(statusEventPublisher.getPublishedCount(), equalTo(3L));
+        assertThat(statusEventPublisher.getPendingCount(), equalTo(0));
+    }
+
+    @Test
+    public void shouldDropEventAtOnceIfBufferIsFull() {
+        // Given
+        statusEventPublisher.setCapacity(1);
+        statusEventPublisher.publish("1", createEvent("1", "COMPLETED"));
+
+        // When
+        long start = System.currentTimeMillis();
+        boolean accepted = statusEventPublisher.publish("2", createEvent("2", "COMPLETED"));
+
+        // Then
+        assertFalse(accepted);
+        assertTrue(System.currentTimeMillis() - start < OFFER_TIMEOUT_MILLIS);
+        assertThat(statusEventPublisher.getDroppedCount(), equalTo(1L));
+        assertThat(statusEventPublisher.getPendingCount(), equalTo(1));
+    }
+
+    @Test
+    public void shouldDropEventIfBufferStaysFullUntilOfferTimeout() {
+        // Given
+        statusEventPublisher.setCapacity(1);
+        statusEventPublisher.setOfferTimeoutMillis(OFFER_TIMEOUT_MILLIS);
+        statusEventPublisher.publish("1", createEvent("1", "COMPLETED"));
+
+        // When
+        long start = System.currentTimeMillis();
+        boolean accepted = statusEventPublisher.publish("2", createEvent("2", "COMPLETED"));
+
+        // Then
+        assertFalse(accepted);
+        assertTrue(System.currentTimeMillis() - start >= OFFER_TIMEOUT_MILLIS);
+        assertThat(statusEventPublisher.getDroppedCount(), equalTo(1L));
+    }
+
+    @Test
+    public void shouldAcceptNewerEventOfPendingCallEvenIfBufferIsFull() {
+        // Given
+        statusEventPublisher.setCapacity(1);
+        statusEventPublisher.publish("1", createEvent("1", "IN_PROGRESS"));
+
+        // When
+        boolean accepted = statusEventPublisher.publish("1", createEvent("1", "COMPLETED"));
+
+        // Then
+        assertTrue(accepted);
+        assertThat(statusEventPublisher.getDroppedCount(), equalTo(0L));
+    }
+
+    @Test
+    public void shouldCountEventsWhichCouldNotBeSentAsDropped() {
+        // Given
+        doThrow(new IllegalStateException("JMS is down")).when(callFlowEventService)
+                .sendEventMessages(any(List.class));
+        statusEventPublisher.publish("1", createEvent("1", "COMPLETED"));
+
+        // When
+        statusEventPublisher.start();
+        statusEventPublisher.close();
+
+        // Then
+        assertThat(statusEventPublisher.getDroppedCount(), equalTo(1L));
+        assertThat(statusEventPublisher.getPublishedCount(), equalTo(0L));
+    }
+
+    @Test
+    public void shouldReportBufferAsMetrics() {
+        // Given
+        CallFlowMetrics metrics = new CallFlowMetrics();
+        metrics.setSources(Collections.<MetricSource>singletonList(statusEventPublisher));
+        statusEventPublisher.setCapacity(1);
+        statusEventPublisher.publish("1", createEvent("1", "IN_PROGRESS"));
+        statusEventPublisher.publish("1", createEvent("1", "COMPLETED"));
+        statusEventPublisher.publish("2", createEvent("2", "COMPLETED"));
+
+        // When
+        String text = metrics.toPrometheusText();
+
+        // Then
+        assertThat(text, containsString("callflows_status_events_pending 1\n"));
+        assertThat(text, containsString("callflows_status_events_coalesced_total 1\n"));
+        assertThat(text, containsString("callflows_status_events_dropped_total 1\n"));
+        assertThat(text, containsString("callflows_status_events_published_total 0\n"));
+        assertThat(text, containsString("# TYPE callflows_status_events_lag_seconds gauge\n"));
+    }
+
+    private CallFlowEvent createEvent(String callId, String status) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("callId", callId);
+        data.put("status", status);
+        return new CallFlowEvent(CallFlowEventSubjectConstants.CALLFLOWS_CALL_STATUS, data);
+    }
+}
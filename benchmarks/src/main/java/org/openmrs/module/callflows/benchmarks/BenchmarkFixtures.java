@@ -0,0 +1,261 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.benchmarks;
+
+import org.apache.velocity.VelocityContext;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.Module;
+import org.openmrs.module.ModuleFactory;
+import org.openmrs.module.callflows.api.domain.Call;
+import org.openmrs.module.callflows.api.domain.flow.Flow;
+import org.openmrs.module.callflows.api.evaluation.impl.BaseEvaluationCommand;
+import org.openmrs.module.callflows.api.helper.CallHelper;
+import org.openmrs.module.callflows.api.helper.FlowHelper;
+import org.openmrs.module.callflows.api.util.FlowUtil;
+import org.openmrs.module.callflows.api.util.TestUtil;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory fixtures of the benchmarks, generated from the main flow and the calls of the API test helpers.
+ * <p>
+ * Generated flows repeat the user and system nodes of the main flow, so their templates are the ones of a real flow,
+ * while their size and the length of their chains of system nodes are chosen by the benchmark.
+ * </p>
+ */
+public final class BenchmarkFixtures {
+
+    /**
+     * The name of the generated flows
+     */
+    public static final String FLOW_NAME = "BenchmarkFlow";
+
+    /**
+     * The step of the user node ending a chain of system nodes
+     */
+    public static final String CHAIN_END = "chain-end";
+
+    private static final String MAIN_FLOW = "main_flow.json";
+
+    private static final String MODULE_ID = "callflows";
+
+    private static final String KEY_INTERNAL = "internal";
+
+    private static final String KEY_PARAMS = "params";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Generates the JSON of a flow made of pairs of a user node and its handler, every handler jumps to the next pair
+     * depending on the input of the caller
+     *
+     * @param pairs the number of user nodes
+     * @return the JSON of the flow
+     * @throws IOException if the main flow can not be read
+     */
+    public static String createFlowJson(int pairs) throws IOException {
+        ObjectNode mainFlow = loadMainFlow();
+        ArrayNode mainNodes = (ArrayNode) mainFlow.get("nodes");
+        ArrayNode nodes = OBJECT_MAPPER.createArrayNode();
+        for (int i = 0; i < pairs; i++) {
+            String next = step((i + 1) % pairs);
+            nodes.add(copyNode(mainNodes.get(0), step(i)));
+            nodes.add(copySystemNode(mainNodes.get(1), step(i) + "-handler",
+                    String.format("#if ($params.input == 1)%n  |%s|%n#else%n  |%s|%n#end%n", next, step(i))));
+        }
+        return toFlowJson(mainFlow, nodes);
+    }
+
+    /**
+     * Generates the JSON of a flow whose entry is followed by a chain of system nodes ending at a user node, so the
+     * whole chain is evaluated by a single request
+     *
+     * @param length the number of system nodes of the chain
+     * @return the JSON of the flow
+     * @throws IOException if the main flow can not be read
+     */
+    public static String createChainJson(int length) throws IOException {
+        ObjectNode mainFlow = loadMainFlow();
+        ArrayNode mainNodes = (ArrayNode) mainFlow.get("nodes");
+        ArrayNode nodes = OBJECT_MAPPER.createArrayNode();
+        nodes.add(copyNode(mainNodes.get(0), "entry"));
+        for (int i = 0; i < length; i++) {
+            String next = i + 1 < length ? chainStep(i + 1) : CHAIN_END;
+            nodes.add(copySystemNode(mainNodes.get(1), chainStep(i),
+                    String.format("#set ($visited = \"%s\")%n#if ($params.input == 1)%n  |%s|%n#else%n  |%s|%n#end%n",
+                            chainStep(i), next, CHAIN_END)));
+        }
+        nodes.add(copyNode(mainNodes.get(2), CHAIN_END));
+        return toFlowJson(mainFlow, nodes);
+    }
+
+    /**
+     * Parses a generated flow the way the test helpers do
+     *
+     * @param json of the flow
+     * @return the flow
+     * @throws IOException if the JSON is not a flow
+     */
+    public static Flow createFlow(String json) throws IOException {
+        return FlowHelper.createFlow(json);
+    }
+
+    /**
+     * Gets the step of a user node of a flow generated by {@link #createFlowJson(int)}
+     *
+     * @param index of the pair
+     * @return the step
+     */
+    public static String step(int index) {
+        return "step-" + index;
+    }
+
+    /**
+     * Gets the step of a system node of a flow generated by {@link #createChainJson(int)}
+     *
+     * @param index of the system node in the chain
+     * @return the step
+     */
+    public static String chainStep(int index) {
+        return "chain-" + index;
+    }
+
+    /**
+     * Creates an evaluation command holding a valid daemon token, so nodes can be evaluated outside of OpenMRS
+     *
+     * @return the evaluation command
+     */
+    public static BaseEvaluationCommand createEvaluationCommand() {
+        BaseEvaluationCommand evaluationCommand = new BaseEvaluationCommand();
+        evaluationCommand.setDaemonToken(createDaemonToken());
+        return evaluationCommand;
+    }
+
+    /**
+     * Creates a flow util evaluating nodes with the given command
+     *
+     * @param evaluationCommand to use
+     * @return the flow util
+     */
+    public static FlowUtil createFlowUtil(BaseEvaluationCommand evaluationCommand) {
+        return new FlowUtil().setEvaluationCommand(evaluationCommand);
+    }
+
+    /**
+     * Creates the context of a request of a caller who pressed 1, as built by the call controller
+     *
+     * @return the velocity context
+     */
+    public static VelocityContext createContext() {
+        Map<String, String> params = new HashMap<>();
+        params.put("input", "1");
+        Map<String, Object> internal = new HashMap<>();
+        internal.put("nextURL", "http://localhost/openmrs/ws/callflows/calls/1.vxml");
+        internal.put("callId", "1");
+        internal.put("baseURL", "http://localhost/openmrs/ws");
+        internal.put("callDirection", "OUTGOING");
+
+        VelocityContext context = new VelocityContext();
+        context.put(KEY_PARAMS, params);
+        context.put(KEY_INTERNAL, internal);
+        return context;
+    }
+
+    /**
+     * Creates an outbound call with a context of the given size
+     *
+     * @param contextSize the number of additional entries of the call context
+     * @return the call
+     */
+    public static Call createCall(int contextSize) {
+        Call call = CallHelper.createOutboundCall();
+        call.getContext().putAll(createContextData(contextSize));
+        return call;
+    }
+
+    /**
+     * Creates call context data mixing the value types which are persisted with a call
+     *
+     * @param size the number of entries
+     * @return the context data
+     */
+    public static Map<String, Object> createContextData(int size) {
+        Map<String, Object> data = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            switch (i % 4) {
+                case 0:
+                    data.put("text" + i, "value of entry " + i);
+                    break;
+                case 1:
+                    data.put("number" + i, i);
+                    break;
+                case 2:
+                    data.put("flag" + i, i % 3 == 0);
+                    break;
+                default:
+                    List<String> answers = new ArrayList<>();
+                    answers.add("answer-" + i);
+                    answers.add("answer-" + (i + 1));
+                    data.put("answers" + i, answers);
+                    break;
+            }
+        }
+        return data;
+    }
+
+    private static ObjectNode loadMainFlow() throws IOException {
+        return (ObjectNode) OBJECT_MAPPER.readTree(TestUtil.loadFile(MAIN_FLOW));
+    }
+
+    private static ObjectNode copyNode(JsonNode prototype, String step) throws IOException {
+        ObjectNode node = (ObjectNode) OBJECT_MAPPER.readTree(prototype.toString());
+        node.put("step", step);
+        return node;
+    }
+
+    private static ObjectNode copySystemNode(JsonNode prototype, String step, String content) throws IOException {
+        ObjectNode node = copyNode(prototype, step);
+        ((ObjectNode) node.get("templates").get("velocity")).put("content", content);
+        return node;
+    }
+
+    private static String toFlowJson(ObjectNode mainFlow, ArrayNode nodes) throws IOException {
+        mainFlow.put("name", FLOW_NAME);
+        mainFlow.put("nodes", nodes);
+        return OBJECT_MAPPER.writeValueAsString(mainFlow);
+    }
+
+    private static DaemonToken createDaemonToken() {
+        // the token of a module is only handed out when it is started, which never happens outside of OpenMRS
+        Module module = new Module(MODULE_ID);
+        module.setModuleId(MODULE_ID);
+        try {
+            Method getDaemonToken = ModuleFactory.class.getDeclaredMethod("getDaemonToken", Module.class);
+            getDaemonToken.setAccessible(true);
+            return (DaemonToken) getDaemonToken.invoke(null, module);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Unable to create the daemon token of the module", e);
+        }
+    }
+}
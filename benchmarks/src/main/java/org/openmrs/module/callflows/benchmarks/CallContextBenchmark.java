@@ -0,0 +1,96 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.benchmarks;
+
+import org.apache.velocity.VelocityContext;
+import org.openmrs.module.callflows.api.dao.converter.MapConverter;
+import org.openmrs.module.callflows.api.domain.Call;
+import org.openmrs.module.callflows.api.util.CallUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Capture of the velocity context into a call and conversion of the call context to and from its database column,
+ * both done by every request of a call
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CallContextBenchmark {
+
+    @Param({"5", "50", "500"})
+    private int contextSize;
+
+    private MapConverter mapConverter;
+
+    private CallUtil callUtil;
+
+    private Map<String, Object> contextData;
+
+    private byte[] encodedContext;
+
+    private VelocityContext velocityContext;
+
+    private Call call;
+
+    /**
+     * Builds the fixtures of the benchmark
+     */
+    @Setup
+    public void setUp() {
+        mapConverter = new MapConverter();
+        callUtil = new CallUtil();
+        contextData = BenchmarkFixtures.createContextData(contextSize);
+        encodedContext = mapConverter.convertToDatabaseColumn(contextData);
+
+        velocityContext = BenchmarkFixtures.createContext();
+        for (Map.Entry<String, Object> entry : contextData.entrySet()) {
+            velocityContext.put(entry.getKey(), entry.getValue());
+        }
+        call = BenchmarkFixtures.createCall(contextSize);
+    }
+
+    @Benchmark
+    public Map roundTrip() {
+        return mapConverter.convertToEntityAttribute(mapConverter.convertToDatabaseColumn(contextData));
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return mapConverter.convertToDatabaseColumn(contextData);
+    }
+
+    @Benchmark
+    public Map decode() {
+        return mapConverter.convertToEntityAttribute(encodedContext);
+    }
+
+    @Benchmark
+    public Call mergeContextWithCall() {
+        callUtil.mergeContextWithCall(velocityContext, call);
+        return call;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.benchmarks;
+
+import org.apache.velocity.VelocityContext;
+import org.openmrs.module.callflows.api.domain.FlowPosition;
+import org.openmrs.module.callflows.api.domain.flow.Flow;
+import org.openmrs.module.callflows.api.domain.flow.Node;
+import org.openmrs.module.callflows.api.metrics.CallFlowMetrics;
+import org.openmrs.module.callflows.api.service.impl.FlowServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluation of a chain of system nodes up to the next user node, done by every continuation request of a call
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FlowEvaluationBenchmark {
+
+    // the flow service gives up after 20 jumps
+    @Param({"1", "5", "15"})
+    private int chainLength;
+
+    private FlowServiceImpl flowService;
+
+    private Flow flow;
+
+    private Node chainStart;
+
+    private VelocityContext context;
+
+    /**
+     * Builds the fixtures of the benchmark
+     */
+    @Setup
+    public void setUp() throws IOException {
+        flowService = new FlowServiceImpl();
+        flowService.setFlowUtil(BenchmarkFixtures.createFlowUtil(BenchmarkFixtures.createEvaluationCommand()));
+        flowService.setMetrics(new CallFlowMetrics());
+        flow = BenchmarkFixtures.createFlow(BenchmarkFixtures.createChainJson(chainLength));
+        chainStart = flow.getNodes().get(1);
+        context = BenchmarkFixtures.createContext();
+
+        FlowPosition position = flowService.evalNode(flow, chainStart, context);
+        if (!BenchmarkFixtures.CHAIN_END.equals(position.getEnd().getStep())) {
+            throw new IllegalStateException("The chain ended at " + position.getEnd().getStep());
+        }
+    }
+
+    @Benchmark
+    public FlowPosition evalNode() throws IOException {
+        return flowService.evalNode(flow, chainStart, context);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.benchmarks;
+
+import org.openmrs.module.callflows.api.domain.flow.Flow;
+import org.openmrs.module.callflows.api.service.impl.FlowServiceImpl;
+import org.openmrs.module.callflows.api.util.FlowCompiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading of a flow from its raw JSON and from its compiled form, done every time a flow is
+ * missing from the flow cache
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FlowLoadingBenchmark {
+
+    @Param({"5", "25", "100"})
+    private int userNodes;
+
+    private FlowServiceImpl flowService;
+
+    private String json;
+
+    private byte[] compiled;
+
+    /**
+     * Builds the fixtures of the benchmark
+     */
+    @Setup
+    public void setUp() throws IOException {
+        flowService = new FlowServiceImpl();
+        json = BenchmarkFixtures.createFlowJson(userNodes);
+        compiled = FlowCompiler.compile(json);
+    }
+
+    @Benchmark
+    public Flow loadByJson() {
+        return flowService.loadByJson(json);
+    }
+
+    @Benchmark
+    public Flow loadCompiled() {
+        return FlowCompiler.load(compiled);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.benchmarks;
+
+import org.openmrs.module.callflows.api.domain.flow.Flow;
+import org.openmrs.module.callflows.api.domain.flow.Node;
+import org.openmrs.module.callflows.api.util.FlowUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the jumps returned by system nodes and lookup of the nodes they jump to
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FlowUtilBenchmark {
+
+    private static final String STEP_JUMP = "\n  |step-1|\n";
+
+    private static final String FLOW_AND_STEP_JUMP = "\n  |BenchmarkFlow.step-1|\n";
+
+    @Param({"5", "25", "100"})
+    private int userNodes;
+
+    private FlowUtil flowUtil;
+
+    private Flow flow;
+
+    private String lastStep;
+
+    /**
+     * Builds the fixtures of the benchmark
+     */
+    @Setup
+    public void setUp() throws IOException {
+        flowUtil = new FlowUtil();
+        flow = BenchmarkFixtures.createFlow(BenchmarkFixtures.createFlowJson(userNodes));
+        lastStep = BenchmarkFixtures.step(userNodes - 1);
+    }
+
+    @Benchmark
+    public String[] parseStep() {
+        return flowUtil.parse(STEP_JUMP, BenchmarkFixtures.FLOW_NAME);
+    }
+
+    @Benchmark
+    public String[] parseFlowAndStep() {
+        return flowUtil.parse(FLOW_AND_STEP_JUMP, BenchmarkFixtures.FLOW_NAME);
+    }
+
+    @Benchmark
+    public Node getNodeByStep() {
+        return flowUtil.getNodeByStep(flow, lastStep);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.benchmarks;
+
+import org.apache.velocity.VelocityContext;
+import org.openmrs.module.callflows.api.domain.flow.Flow;
+import org.openmrs.module.callflows.api.evaluation.EvaluationContext;
+import org.openmrs.module.callflows.api.evaluation.impl.BaseEvaluationCommand;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of a user node, either as the JSON of the test runner or as the VXML sent to the IVR provider
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TemplateRenderingBenchmark {
+
+    @Param({"json", "vxml"})
+    private String template;
+
+    private BaseEvaluationCommand evaluationCommand;
+
+    private EvaluationContext evaluationContext;
+
+    /**
+     * Builds the fixtures of the benchmark
+     */
+    @Setup
+    public void setUp() throws IOException {
+        evaluationCommand = BenchmarkFixtures.createEvaluationCommand();
+        Flow flow = BenchmarkFixtures.createFlow(BenchmarkFixtures.createFlowJson(5));
+        VelocityContext context = BenchmarkFixtures.createContext();
+        evaluationContext = new EvaluationContext()
+                .setFlow(flow)
+                .setNode(flow.getNodes().get(0))
+                .setContext(context)
+                .setTemplate(template);
+    }
+
+    @Benchmark
+    public String execute() throws IOException {
+        return evaluationCommand.execute(evaluationContext);
+    }
+}
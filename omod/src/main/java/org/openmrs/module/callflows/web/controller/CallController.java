@@ -15,7 +15,6 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import io.swagger.annotations.ApiParam;
-import org.apache.commons.collections.map.HashedMap;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -26,9 +25,13 @@ import org.apache.velocity.runtime.log.Log4JLogChute;
 import org.openmrs.Person;
 import org.openmrs.PersonAttribute;
 import org.openmrs.api.context.Context;
-import org.openmrs.api.context.ServiceContext;
+import org.openmrs.module.callflows.api.builder.CallContractBuilder;
+import org.openmrs.module.callflows.api.cache.BaseContextCache;
+import org.openmrs.module.callflows.api.contract.CallContract;
+import org.openmrs.module.callflows.api.contract.CallSearchResponse;
 import org.openmrs.module.callflows.api.contract.OutboundCallResponse;
 import org.openmrs.module.callflows.api.domain.Call;
+import org.openmrs.module.callflows.api.domain.CallFilter;
 import org.openmrs.module.callflows.api.domain.CallFlow;
 import org.openmrs.module.callflows.api.domain.Config;
 import org.openmrs.module.callflows.api.domain.Constants;
@@ -38,6 +41,7 @@ import org.openmrs.module.callflows.api.domain.flow.Flow;
 import org.openmrs.module.callflows.api.domain.flow.Node;
 import org.openmrs.module.callflows.api.domain.types.CallDirection;
 import org.openmrs.module.callflows.api.domain.types.CallStatus;
+import org.openmrs.module.callflows.api.metrics.CallFlowMetrics;
 import org.openmrs.module.callflows.api.service.CallFlowService;
 import org.openmrs.module.callflows.api.service.CallService;
 import org.openmrs.module.callflows.api.service.ConfigService;
@@ -52,6 +56,7 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -65,13 +70,11 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -129,16 +132,23 @@ public class CallController extends RestController {
   /** Separator which will be used for played messages */
   private static final String SEPERATOR_MESSAGE = "|";
 
-  private static final String FILE_NAME_INITIALS = "cfl_calls_";
   private static final String HEADER_CONTENT_DISPOSITION = "Content-Disposition";
   private static final String ATTACHMENT_FILENAME = "attachment; filename=";
   private static final String EXTENSION_ZIP = ".zip";
   private static final String ZIP_FILENAME = "calls_reference";
   private static final String HEADER_CONTENT_TYPE = "Content-Type";
-  private static final int DEFAULT_FETCH_SIZE = 10000;
-  private static final int NUMBER_OF_TEN_K_FILES = 5;
   private static final String TELEPHONE_NUMBER = "Telephone Number";
 
+  private static final int MAX_SEARCH_LIMIT = 500;
+
+  private static final String MISSING_PHONE_NUMBER = "Missing phone number";
+
+  private static final String ENDPOINT_INCOMING = "incoming";
+
+  private static final String ENDPOINT_CONTINUATION = "continuation";
+
+  private static final String OTHER_EXTENSION = "other";
+
   @Autowired
   @Qualifier("callflows.configService")
   private ConfigService configService;
@@ -163,6 +173,14 @@ public class CallController extends RestController {
   @Qualifier("callflows.callUtil")
   private CallUtil callUtil;
 
+  @Autowired
+  @Qualifier("callflows.baseContextCache")
+  private BaseContextCache baseContextCache;
+
+  @Autowired
+  @Qualifier("callflows.metrics")
+  private CallFlowMetrics metrics;
+
   @PostConstruct
   public void initialize() {
     try {
@@ -234,6 +252,7 @@ public class CallController extends RestController {
           @RequestHeader
           Map<String, String> headers) {
 
+    long start = System.nanoTime();
     LOGGER.debug(
         String.format("handleIncoming(name=%s, params=%s, headers=%s", flowName, params, headers));
 
@@ -334,6 +353,7 @@ public class CallController extends RestController {
       // is a different point
       // and hence we need to continue from here again
       call.setEndFlow(startCallFlow);
+      call.setEndFlowName(startCallFlow.getName());
       call.setEndNode(currentNode.getStep());
 
       // By default we don't persist the params in the database, as that's coming from the user
@@ -352,7 +372,11 @@ public class CallController extends RestController {
               flowName, params, headers));
       handleError(call, error);
     }
-    return buildOutput(error, output, currentNode, call, extension, config);
+    return recordRequest(
+        ENDPOINT_INCOMING,
+        extension,
+        start,
+        buildOutput(error, output, currentNode, call, extension, config));
   }
 
   /**
@@ -399,6 +423,7 @@ public class CallController extends RestController {
           @RequestHeader
           Map<String, String> headers) {
 
+    long start = System.nanoTime();
     LOGGER.debug(
         String.format(
             "handleContinuation(callId=%s, params=%s, headers=%s, extension=%s",
@@ -433,7 +458,7 @@ public class CallController extends RestController {
         callUtil.mergeCallWithContext(call, context);
 
         // Load flow object
-        Flow flow = flowService.load(call.getEndFlow().getName());
+        Flow flow = flowService.load(call.getEndFlowName());
 
         String jumpTo = params.get(Constants.PARAM_JUMP_TO);
         if (!StringUtils.isBlank(jumpTo)) {
@@ -455,7 +480,12 @@ public class CallController extends RestController {
         output = position.getOutput();
         currentNode = position.getEnd();
 
-        call.setEndFlow(callFlowService.findByName(position.getEndFlow().getName()));
+        // the end flow is referenced by id, it changes only if the call jumped to another flow
+        String endFlowName = position.getEndFlow().getName();
+        if (call.getEndFlow() == null || !endFlowName.equals(call.getEndFlowName())) {
+          call.setEndFlow(callFlowService.findReferenceByName(endFlowName));
+          call.setEndFlowName(endFlowName);
+        }
         call.setEndNode(currentNode.getStep());
 
         // retrieve existing played messages
@@ -496,7 +526,11 @@ public class CallController extends RestController {
               callId, params, headers));
       handleError(call, error);
     }
-    return buildOutput(error, output, currentNode, call, extension, config);
+    return recordRequest(
+        ENDPOINT_CONTINUATION,
+        extension,
+        start,
+        buildOutput(error, output, currentNode, call, extension, config));
   }
 
   /**
@@ -545,6 +579,53 @@ public class CallController extends RestController {
     return call != null ? new OutboundCallResponse(call) : null;
   }
 
+  /**
+   * REST API to initiate outbound calls to many recipients using the same configuration and flow.
+   * The calls are queued and placed in the background as the outbound call limit of the
+   * configuration allows
+   *
+   * @param configName to use
+   * @param name of the flow to invoke
+   * @param recipients the params of every recipient, each with a phone entry at the minimum
+   * @return the callId and status of the queued call of every recipient, in the same order
+   */
+  @ApiOperation(
+      value = "Initiates outbound calls to many recipients",
+      notes = "Queues outbound calls to many recipients, which are placed in the background",
+      response = OutboundCallResponse.class,
+      responseContainer = "List")
+  @ApiResponses(
+      value = {
+        @ApiResponse(
+            code = HttpURLConnection.HTTP_OK,
+            message = "Successfully queued the outbound calls")
+      })
+  @RequestMapping(value = "/out/{configName}/flows/{name}/bulk", method = RequestMethod.POST)
+  @ResponseBody
+  public List<OutboundCallResponse> handleOutgoingBulk(
+      @ApiParam(name = "configName", value = "Configuration name to use", required = true)
+          @PathVariable(value = "configName")
+          String configName,
+      @ApiParam(name = "name", value = "Name of the flow to invoke", required = true)
+          @PathVariable(value = "name")
+          String name,
+      @ApiParam(name = "recipients", value = "The parameters of every recipient") @RequestBody
+          List<Map<String, Object>> recipients) {
+    LOGGER.debug(
+        String.format(
+            "handleOutgoingBulk(config=%s, name = %s, recipients=%d",
+            configName, name, recipients.size()));
+    List<Call> calls = callService.makeCalls(configName, name, recipients);
+    List<OutboundCallResponse> responses = new ArrayList<>(calls.size());
+    for (Call call : calls) {
+      responses.add(
+          call != null
+              ? new OutboundCallResponse(call)
+              : new OutboundCallResponse(null, CallStatus.FAILED.name(), MISSING_PHONE_NUMBER));
+    }
+    return responses;
+  }
+
   @ApiOperation(
       value = "Handles an outgoing call by PersonUuid",
       notes = "Handles an outgoing call by PersonUuid")
@@ -594,10 +675,76 @@ public class CallController extends RestController {
     }
   }
 
+  /**
+   * REST API to search for calls, newest first. The next page is requested by passing the nextCursor of the
+   * current page as the before parameter.
+   */
+  @ApiOperation(
+      value = "Search for calls",
+      notes = "Search for the calls matching the given filters, newest first",
+      response = CallSearchResponse.class)
+  @ApiResponses(
+      value = {
+        @ApiResponse(code = HttpURLConnection.HTTP_OK, message = "Successfully searches calls")
+      })
+  @RequestMapping(value = "/calls", method = RequestMethod.GET)
+  @ResponseBody
+  public CallSearchResponse searchCalls(
+      @ApiParam(name = "status", value = "Statuses of the calls")
+          @RequestParam(value = "status", required = false)
+          List<CallStatus> statuses,
+      @ApiParam(name = "direction", value = "Direction of the calls")
+          @RequestParam(value = "direction", required = false)
+          CallDirection direction,
+      @ApiParam(name = "config", value = "IVR configuration of the calls")
+          @RequestParam(value = "config", required = false)
+          String config,
+      @ApiParam(name = "dateFrom", value = "Earliest creation date of the calls, in ISO format")
+          @RequestParam(value = "dateFrom", required = false)
+          String dateFrom,
+      @ApiParam(name = "dateTo", value = "Latest creation date of the calls, in ISO format")
+          @RequestParam(value = "dateTo", required = false)
+          String dateTo,
+      @ApiParam(name = "actorId", value = "Actor of the calls")
+          @RequestParam(value = "actorId", required = false)
+          String actorId,
+      @ApiParam(name = "refKey", value = "External reference of the calls")
+          @RequestParam(value = "refKey", required = false)
+          String refKey,
+      @ApiParam(name = "before", value = "The nextCursor of the previous page")
+          @RequestParam(value = "before", required = false)
+          Integer before,
+      @ApiParam(name = "limit", value = "Maximum number of calls in the page")
+          @RequestParam(value = "limit", required = false, defaultValue = "50")
+          int limit) {
+    if (limit < 1 || limit > MAX_SEARCH_LIMIT) {
+      throw new IllegalArgumentException(
+          String.format("The limit must be between 1 and %d", MAX_SEARCH_LIMIT));
+    }
+    CallFilter filter = buildFilter(statuses, direction, config, dateFrom, dateTo);
+    filter.setActorId(actorId);
+    filter.setRefKey(refKey);
+
+    // one more call than requested tells if there is a next page
+    List<Call> calls = callService.findCallSummaries(filter, before, limit + 1);
+    boolean more = calls.size() > limit;
+    List<CallContract> contracts = new ArrayList<>(Math.min(calls.size(), limit));
+    for (Call call : calls.subList(0, Math.min(calls.size(), limit))) {
+      contracts.add(CallContractBuilder.createFrom(call));
+    }
+    CallSearchResponse response = new CallSearchResponse(contracts);
+    response.setMore(more);
+    if (more) {
+      response.setNextCursor(contracts.get(contracts.size() - 1).getId());
+    }
+    return response;
+  }
+
   @ApiOperation(
       value = "Export calls details",
-      notes = "Export calls details",
-      response = Map.class)
+      notes =
+          "Export the details of the calls matching the given filters as a zip archive of CSV files "
+              + "with up to 10,000 calls each")
   @ApiResponses(
       value = {
         @ApiResponse(
@@ -605,52 +752,79 @@ public class CallController extends RestController {
             message = "Successfully exported calls details")
       })
   @RequestMapping(value = "/calls/export-details", method = RequestMethod.GET)
-  @ResponseBody
-  public Map<String, Object> exportCallsDetails(
-      @ApiParam(name = "set", value = "Number of set")
-          @RequestParam(defaultValue = "1", value = "set")
+  public void exportCallsDetails(
+      @ApiParam(name = "status", value = "Statuses of the exported calls")
+          @RequestParam(value = "status", required = false)
+          List<CallStatus> statuses,
+      @ApiParam(name = "direction", value = "Direction of the exported calls")
+          @RequestParam(value = "direction", required = false)
+          CallDirection direction,
+      @ApiParam(name = "config", value = "IVR configuration of the exported calls")
+          @RequestParam(value = "config", required = false)
+          String config,
+      @ApiParam(name = "dateFrom", value = "Earliest creation date of the exported calls, in ISO format")
+          @RequestParam(value = "dateFrom", required = false)
+          String dateFrom,
+      @ApiParam(name = "dateTo", value = "Latest creation date of the exported calls, in ISO format")
+          @RequestParam(value = "dateTo", required = false)
+          String dateTo,
+      @ApiParam(
+              name = "set",
+              value =
+                  "Set of the former export in sets of 50,000 calls, all the calls are in the first"
+                      + " set and the next ones are empty")
+          @RequestParam(value = "set", required = false)
           Integer set,
       HttpServletResponse response)
       throws IOException {
 
+    CallFilter filter = buildFilter(statuses, direction, config, dateFrom, dateTo);
+
     response.setHeader(
         HEADER_CONTENT_DISPOSITION, ATTACHMENT_FILENAME + ZIP_FILENAME + EXTENSION_ZIP);
     response.addHeader(HEADER_CONTENT_TYPE, MediaType.APPLICATION_OCTET_STREAM_VALUE);
     response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
     response.setCharacterEncoding(StandardCharsets.UTF_8.name());
 
-    // Logic: Fetching of data is divided into sets of 50,000 records, which should be downloaded as
-    // 'cfl_references.zip' file.
-    // Every zip contains 5 .csv files with 10,000 records each.
-    long totalNumberOfRecords = callService.retrieveCount();
-    int allowedNumberOfSets =
-        (int) ((totalNumberOfRecords / (NUMBER_OF_TEN_K_FILES * DEFAULT_FETCH_SIZE)) + 1);
-
-    List<Call> outboundCalls = null;
-    Path tempFiles = Files.createTempDirectory(null);
-    String tempDir = tempFiles.toString();
-
-    Map<String, String> fileNames = new HashedMap(5);
-    String currentFileName = null;
-    if (0 < set && set <= allowedNumberOfSets && totalNumberOfRecords > 0) {
-      for (int i = 1; i <= NUMBER_OF_TEN_K_FILES; i++) {
-        outboundCalls = callService.findAll(i + (5 * (set - 1)), DEFAULT_FETCH_SIZE);
-        if (!outboundCalls.isEmpty()) {
-          currentFileName = FILE_NAME_INITIALS + i;
-          fileNames.put(currentFileName, callUtil.generateFileName(tempDir, i));
-          callUtil.generateReports(fileNames.get(currentFileName), outboundCalls);
-        }
-      }
-      if (!fileNames.isEmpty()) {
-        callUtil.createZip(response, fileNames);
-        callUtil.deleteTempFile(tempDir, fileNames);
-      }
+    // The clients of the former export ask for the sets until one is empty, they all get the calls
+    // in the first set
+    if (set != null && set != 1) {
+      return;
     }
 
-    return null;
+    // The calls are streamed from the database straight into the zip archive of the response
+    callService.exportCalls(filter, response.getOutputStream());
   }
 
-  private ResponseEntity buildOutput(
+  private CallFilter buildFilter(
+      List<CallStatus> statuses,
+      CallDirection direction,
+      String config,
+      String dateFrom,
+      String dateTo) {
+    CallFilter filter = new CallFilter();
+    if (statuses != null) {
+      filter.setStatuses(new HashSet<>(statuses));
+    }
+    filter.setDirection(direction);
+    filter.setConfig(config);
+    filter.setDateFrom(parseDate(dateFrom));
+    filter.setDateTo(parseDate(dateTo));
+    return filter;
+  }
+
+  private Date parseDate(String date) {
+    if (StringUtils.isBlank(date)) {
+      return null;
+    }
+    Date parsed = DateUtil.parse(date);
+    if (parsed == null) {
+      throw new IllegalArgumentException(String.format("Invalid date %s", date));
+    }
+    return parsed;
+  }
+
+  private ResponseEntity<String> buildOutput(
       Exception error, String output, Node node, Call call, String extension, Config config) {
     Renderer renderer = null;
     if (configService.hasRenderer(extension)) {
@@ -665,6 +839,23 @@ public class CallController extends RestController {
         callUtil.buildStatus(error));
   }
 
+  private ResponseEntity<String> recordRequest(
+      String endpoint, String extension, long start, ResponseEntity<String> response) {
+    // only the extensions of the configured renderers are labelled, so requests can't flood the metrics
+    String extensionLabel =
+        configService.hasRenderer(extension) ? extension : OTHER_EXTENSION;
+    metrics.recordTime(
+        CallFlowMetrics.HTTP_REQUEST_SECONDS,
+        System.nanoTime() - start,
+        "endpoint",
+        endpoint,
+        "extension",
+        extensionLabel,
+        "status",
+        String.valueOf(response.getStatusCode().value()));
+    return response;
+  }
+
   private void handleError(Call call, Exception error) {
     LOGGER.error(error.toString(), error);
     // Say config/flow was not loaded yet, we don't have a call record in such cases
@@ -675,28 +866,14 @@ public class CallController extends RestController {
   }
 
   private VelocityContext initContext(Config config, Map<String, String> params) {
-    VelocityContext context = new VelocityContext();
+    // The utility classes and the services of the config come from its shared base context
+    VelocityContext context = baseContextCache.createContext(config);
     // put a internal key in the context for the application's needs
     // The internal keyword is reserved in all velocity templates for the app's use
     // The rest of the namespace is free for the callflow designer to use as desired
     context.put(KEY_INTERNAL, new HashMap<String, String>());
 
-    // Some classes have very useful static methods that are useful when designing callflows
-    // These are included here in upper case as variables will predominantly be in lower case
-    // These are included only for convenience
-    context.put("String", String.class);
-    context.put("Integer", Integer.class);
-    context.put("Long", Long.class);
-    context.put("Float", Float.class);
-    context.put("Double", Double.class);
-    context.put("Date", Date.class);
-    context.put("SimpleDateFormat", SimpleDateFormat.class);
-    context.put("Calendar", Calendar.class);
-    context.put("DateUtil", DateUtil.class);
-    context.put("Math", Math.class);
-
     loadParams(context, params);
-    loadBeans(context, config.getServicesMap());
     return context;
   }
 
@@ -711,26 +888,6 @@ public class CallController extends RestController {
     context.put(KEY_PARAMS, params);
   }
 
-  private void loadBeans(VelocityContext context, Map<String, String> bundlesToLoad) {
-    StringBuilder notFoundServices = new StringBuilder();
-
-    for (Map.Entry<String, String> entry : bundlesToLoad.entrySet()) {
-      Object service =
-          ServiceContext.getInstance().getApplicationContext().getBean(entry.getValue());
-      if (service != null) {
-        context.put(entry.getKey(), service);
-      } else {
-        notFoundServices.append(entry.getValue());
-        notFoundServices.append("\n");
-      }
-    }
-    // We couldn't find some services
-    if (!notFoundServices.toString().isEmpty()) {
-      throw new IllegalStateException(
-          String.format("Didn't load some services %s", notFoundServices));
-    }
-  }
-
   private void updateValueOfNextURL(
       HttpServletRequest request, String extension, VelocityContext context, Call call) {
     Map<String, Object> callContext = call.getContext();
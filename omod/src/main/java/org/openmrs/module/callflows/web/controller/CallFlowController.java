@@ -17,10 +17,13 @@ import io.swagger.annotations.ApiResponses;
 import io.swagger.annotations.ApiParam;
 import org.openmrs.module.callflows.api.builder.CallFlowBuilder;
 import org.openmrs.module.callflows.api.builder.CallFlowResponseBuilder;
+import org.openmrs.module.callflows.api.builder.CallFlowSummaryResponseBuilder;
 import org.openmrs.module.callflows.api.contract.CallFlowRequest;
 import org.openmrs.module.callflows.api.contract.CallFlowResponse;
+import org.openmrs.module.callflows.api.contract.CallFlowSummaryResponse;
 import org.openmrs.module.callflows.api.contract.SearchResponse;
 import org.openmrs.module.callflows.api.domain.CallFlow;
+import org.openmrs.module.callflows.api.domain.CallFlowSummary;
 import org.openmrs.module.callflows.api.exception.CallFlowAlreadyExistsException;
 import org.openmrs.module.callflows.api.service.CallFlowService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -53,6 +56,8 @@ public class CallFlowController extends RestController {
 
   private static final String LOOKUP_BY_NAME_PREFIX = "By Name";
 
+  private static final int MAX_SEARCH_LIMIT = 500;
+
   @Autowired
   @Qualifier("callflows.callFlowService")
   private CallFlowService callFlowService;
@@ -198,4 +203,52 @@ public class CallFlowController extends RestController {
     }
     return new SearchResponse(callFlowResponses);
   }
+
+  /**
+   * REST API to list the summaries of callflows, without their raw representations
+   *
+   * @param term the prefix of the names of the callflows
+   * @param startIndex the index of the first callflow in the page
+   * @param limit the maximum number of callflows in the page
+   * @return a page of the summaries of the found callflows, ordered by name
+   */
+  @ApiOperation(
+      value = "Search for call flow summaries",
+      notes = "Search for the summaries of the call flows by name prefix, without the raw call flows",
+      response = SearchResponse.class)
+  @ApiResponses(
+      value = {
+        @ApiResponse(
+            code = HttpURLConnection.HTTP_OK,
+            message = "Successfully searches call flow summaries")
+      })
+  @RequestMapping(value = "/flows/summaries", method = RequestMethod.GET)
+  @ResponseBody
+  public SearchResponse<CallFlowSummaryResponse> searchFlowSummaries(
+      @ApiParam(name = "term", value = "The prefix of the names of the call flows")
+          @RequestParam(value = "term", required = false, defaultValue = "")
+          String term,
+      @ApiParam(name = "startIndex", value = "Index of the first call flow in the page")
+          @RequestParam(value = "startIndex", required = false, defaultValue = "0")
+          int startIndex,
+      @ApiParam(name = "limit", value = "Maximum number of call flows in the page")
+          @RequestParam(value = "limit", required = false, defaultValue = "50")
+          int limit) {
+    if (startIndex < 0 || limit < 1 || limit > MAX_SEARCH_LIMIT) {
+      throw new IllegalArgumentException(
+          String.format(
+              "The start index must not be negative and the limit must be between 1 and %d",
+              MAX_SEARCH_LIMIT));
+    }
+    // one more call flow than requested tells if there is a next page
+    List<CallFlowSummary> summaries =
+        callFlowService.findSummariesByNamePrefix(term, startIndex, limit + 1);
+    List<CallFlowSummaryResponse> responses = new ArrayList<>(Math.min(summaries.size(), limit));
+    for (CallFlowSummary summary : summaries.subList(0, Math.min(summaries.size(), limit))) {
+      responses.add(CallFlowSummaryResponseBuilder.createFrom(summary));
+    }
+    SearchResponse<CallFlowSummaryResponse> response = new SearchResponse<>(responses);
+    response.setMore(summaries.size() > limit);
+    return response;
+  }
 }
@@ -0,0 +1,90 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.web.controller;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.openmrs.module.callflows.api.metrics.CallFlowMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.net.HttpURLConnection;
+import java.util.Map;
+
+/**
+ * Exposes the timers and counters of the module, in JSON or in the Prometheus text format when called with
+ * format=prometheus
+ */
+@Api(
+    value = "Metrics of the module",
+    tags = {"REST API to read the latency histograms and counters of the module"})
+@Controller
+@RequestMapping("/callflows")
+public class MetricsController extends RestController {
+
+  private static final MediaType PROMETHEUS_TEXT =
+      MediaType.valueOf("text/plain;version=0.0.4;charset=utf-8");
+
+  @Autowired
+  @Qualifier("callflows.metrics")
+  private CallFlowMetrics metrics;
+
+  /**
+   * API to get the metrics as JSON
+   *
+   * @return the timers with their counts and percentiles in milliseconds, and the counters
+   */
+  @ApiOperation(
+      value = "Get the metrics as JSON",
+      notes = "Get the metrics as JSON",
+      response = Map.class)
+  @ApiResponses(
+      value = {
+        @ApiResponse(code = HttpURLConnection.HTTP_OK, message = "Successfully returns the metrics")
+      })
+  @ResponseStatus(HttpStatus.OK)
+  @RequestMapping(value = "/metrics", method = RequestMethod.GET)
+  @ResponseBody
+  public Map<String, Object> getMetrics() {
+    return metrics.getSnapshot();
+  }
+
+  /**
+   * API to get the metrics in the Prometheus text exposition format
+   *
+   * @return the metrics text, timers are rendered as histograms in seconds
+   */
+  @ApiOperation(
+      value = "Get the metrics in the Prometheus text format",
+      notes = "Get the metrics in the Prometheus text format",
+      response = String.class)
+  @ApiResponses(
+      value = {
+        @ApiResponse(code = HttpURLConnection.HTTP_OK, message = "Successfully returns the metrics")
+      })
+  @RequestMapping(value = "/metrics", method = RequestMethod.GET, params = "format=prometheus")
+  public ResponseEntity<String> getPrometheusMetrics() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(PROMETHEUS_TEXT);
+    return new ResponseEntity<>(metrics.toPrometheusText(), headers, HttpStatus.OK);
+  }
+}
@@ -29,7 +29,9 @@ import org.openmrs.module.Module;
 import org.openmrs.module.ModuleFactory;
 import org.openmrs.module.callflows.BaseTest;
 import org.openmrs.module.callflows.Constants;
+import org.openmrs.module.callflows.api.cache.BaseContextCache;
 import org.openmrs.module.callflows.api.domain.Call;
+import org.openmrs.module.callflows.api.domain.CallFilter;
 import org.openmrs.module.callflows.api.domain.CallFlow;
 import org.openmrs.module.callflows.api.domain.Config;
 import org.openmrs.module.callflows.api.domain.FlowPosition;
@@ -40,6 +42,7 @@ import org.openmrs.module.callflows.api.domain.flow.TextElement;
 import org.openmrs.module.callflows.api.domain.flow.UserNode;
 import org.openmrs.module.callflows.api.domain.types.CallDirection;
 import org.openmrs.module.callflows.api.domain.types.CallStatus;
+import org.openmrs.module.callflows.api.metrics.CallFlowMetrics;
 import org.openmrs.module.callflows.api.evaluation.EvaluationCommand;
 import org.openmrs.module.callflows.api.evaluation.impl.BaseEvaluationCommand;
 import org.openmrs.module.callflows.api.helper.CallFlowHelper;
@@ -59,27 +62,31 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 import org.springframework.context.ApplicationContext;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static junit.framework.TestCase.assertNotNull;
+import static junit.framework.TestCase.assertNull;
 import static junit.framework.TestCase.assertTrue;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
@@ -90,6 +97,7 @@ import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.openmrs.module.callflows.api.domain.Constants.CALLFLOW_ENDED_STATUSES;
 import static org.openmrs.module.callflows.api.domain.Constants.CALLFLOW_ENDED_STATUSES_GP_KEY;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -130,6 +138,10 @@ public class CallControllerTest extends BaseTest {
 
   @Spy @InjectMocks private CallUtil callUtil = new CallUtil();
 
+  @Spy private BaseContextCache baseContextCache = new BaseContextCache();
+
+  @Spy private CallFlowMetrics metrics = new CallFlowMetrics();
+
   @Mock private HttpServletRequest request;
 
   @Mock private Person person;
@@ -223,6 +235,7 @@ public class CallControllerTest extends BaseTest {
     given(callFlowService.findByName(Constants.CALLFLOW_MAIN)).willReturn(mainFlow);
     given(callFlowService.findByName(Constants.CALLFLOW_MAIN2))
         .willThrow(new IllegalArgumentException(Constants.ERROR_MAIN_FLOW2));
+    given(callFlowService.findReferenceByName(Constants.CALLFLOW_MAIN)).willReturn(mainFlow);
     given(ServiceContext.getInstance().getApplicationContext().getBean(CALL_SERVICE_BEAN_NAME))
         .willReturn(CALL_SERVICE_BEAN_NAME);
 
@@ -609,6 +622,39 @@ public class CallControllerTest extends BaseTest {
     assertRenderer(Constants.CONFIG_RENDERER_VXML);
   }
 
+  @Test
+  public void shouldReferenceEndFlowOfCallContinuedIntoAnotherFlow() throws Exception {
+    // Given a call which ended in another flow
+    inboundCall.setEndFlow(null);
+    inboundCall.setEndFlowName(Constants.CALLFLOW_MAIN2);
+
+    // When we make a call continuation request which ends in the main flow
+    mockMvc
+        .perform(customGet("/callflows/calls/" + inboundCall.getCallId() + ".vxml"))
+        .andExpect(status().is(HttpStatus.OK.value()));
+
+    // Then only a reference to the main flow is set on the call
+    verify(callFlowService, times(1)).findReferenceByName(Constants.CALLFLOW_MAIN);
+    verify(callFlowService, never()).findByName(anyString());
+    assertThat(inboundCall.getEndFlow(), equalTo(mainFlow));
+    assertThat(inboundCall.getEndFlowName(), equalTo(Constants.CALLFLOW_MAIN));
+  }
+
+  @Test
+  public void shouldNotLookUpEndFlowOfCallContinuedInSameFlow() throws Exception {
+    // Given a call which ended in the main flow
+    inboundCall.setEndFlowName(Constants.CALLFLOW_MAIN);
+
+    // When we make a call continuation request which ends in the main flow again
+    mockMvc
+        .perform(customGet("/callflows/calls/" + inboundCall.getCallId() + ".vxml"))
+        .andExpect(status().is(HttpStatus.OK.value()));
+
+    // Then the call flow is not read
+    verify(callFlowService, never()).findReferenceByName(anyString());
+    verify(callFlowService, never()).findByName(anyString());
+  }
+
   @Test
   public void shouldHandleCallContinuationWithJsonExtension() throws Exception {
     // When we make a call continuation request for a existing inbound call with json
@@ -834,34 +880,152 @@ public class CallControllerTest extends BaseTest {
   }
 
   @Test
-  public void shouldReturnStatusOkayForGenerateReportWhenCallTableIsEmpty() throws Exception {
-    given(callService.retrieveCount()).willReturn(0L);
+  public void shouldReturnResultOfEveryRecipientForBulkOutboundCall() throws Exception {
+    // Given
+    Map<String, Object> recipient = new HashMap<>();
+    recipient.put("phone", "1234567890");
+    given(
+            callService.makeCalls(
+                eq(Constants.CONFIG_VOXEO), eq(Constants.CALLFLOW_MAIN), any(List.class)))
+        .willReturn(Arrays.asList(outboundCall, null));
 
-    // When we make a outbound call request
+    // When we make a bulk outbound call request
     mockMvc
-        .perform(customGet("/callflows/calls/export-details", "set", ""))
-        .andExpect(status().is(HttpStatus.OK.value()));
+        .perform(
+            post("/callflows/out/voxeo/flows/MainFlow/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(jsonBytes(Arrays.asList(recipient, new HashMap<String, Object>()))))
+        .andExpect(status().is(HttpStatus.OK.value()))
+        .andExpect(
+            content()
+                .string(
+                    "[{\"callId\":\"5c8f6f83-567c-4586-a3b6-368397d5aba8\","
+                        + "\"status\":\"OPENMRS_INITIATED\",\"reason\":null},"
+                        + "{\"callId\":null,\"status\":\"FAILED\","
+                        + "\"reason\":\"Missing phone number\"}]"));
 
-    verify(callService, times(1)).retrieveCount();
+    // Then all the recipients should have been passed to the callService at once
+    verify(callService, times(1))
+        .makeCalls(eq(Constants.CONFIG_VOXEO), eq(Constants.CALLFLOW_MAIN), any(List.class));
   }
 
   @Test
-  public void shouldReturnStatusOkayForGenerateReportWhenCallTableIsNotEmpty() throws Exception {
+  public void shouldReturnPageOfCallsWithCursorOfNextPage() throws Exception {
     // Given
-    List<Call> calls = new ArrayList<>(1);
-    calls.add(setUpCall());
+    given(callService.findCallSummaries(any(CallFilter.class), eq(10), eq(3)))
+        .willReturn(Arrays.asList(createCall(9), createCall(8), createCall(7)));
 
-    given(callService.retrieveCount()).willReturn(1L);
-    given(callService.findAll(1, 10000)).willReturn(calls);
+    // When we search for the page of calls
+    mockMvc
+        .perform(customGet("/callflows/calls?actorId=1&refKey=ref&before=10&limit=2"))
+        .andExpect(status().is(HttpStatus.OK.value()))
+        .andExpect(content().string(containsString("\"nextCursor\":8")))
+        .andExpect(content().string(containsString("\"more\":true")));
 
+    // Then
+    ArgumentCaptor<CallFilter> filterCaptor = ArgumentCaptor.forClass(CallFilter.class);
+    verify(callService, times(1)).findCallSummaries(filterCaptor.capture(), eq(10), eq(3));
+    assertThat(filterCaptor.getValue().getActorId(), equalTo("1"));
+    assertThat(filterCaptor.getValue().getRefKey(), equalTo("ref"));
+  }
+
+  @Test
+  public void shouldReturnLastPageOfCallsWithoutCursor() throws Exception {
+    // Given
+    given(callService.findCallSummaries(any(CallFilter.class), eq((Integer) null), eq(51)))
+        .willReturn(Arrays.asList(createCall(2), createCall(1)));
+
+    // When we search for the first page of calls
+    mockMvc
+        .perform(customGet("/callflows/calls"))
+        .andExpect(status().is(HttpStatus.OK.value()))
+        .andExpect(content().string(containsString("\"nextCursor\":null")))
+        .andExpect(content().string(containsString("\"more\":false")));
+  }
+
+  @Test
+  public void shouldReturnBadRequestForInvalidSearchLimit() throws Exception {
+    mockMvc
+        .perform(customGet("/callflows/calls?limit=0"))
+        .andExpect(status().is(HttpStatus.BAD_REQUEST.value()));
+
+    verify(callService, never())
+        .findCallSummaries(any(CallFilter.class), any(Integer.class), any(Integer.class));
+  }
+
+  @Test
+  public void shouldExportAllCallsIfNoFilterIsGiven() throws Exception {
     // When we make export call data request
     mockMvc
-        .perform(customGet("/callflows/calls/export-details", "set", ""))
+        .perform(customGet("/callflows/calls/export-details"))
+        .andExpect(status().is(HttpStatus.OK.value()));
+
+    // Then
+    ArgumentCaptor<CallFilter> filterCaptor = ArgumentCaptor.forClass(CallFilter.class);
+    verify(callService, times(1)).exportCalls(filterCaptor.capture(), any(OutputStream.class));
+    CallFilter filter = filterCaptor.getValue();
+    assertNull(filter.getStatuses());
+    assertNull(filter.getDirection());
+    assertNull(filter.getConfig());
+    assertNull(filter.getDateFrom());
+    assertNull(filter.getDateTo());
+  }
+
+  @Test
+  public void shouldExportCallsMatchingGivenFilter() throws Exception {
+    // When we make export call data request
+    mockMvc
+        .perform(
+            customGet(
+                "/callflows/calls/export-details?status=FAILED&status=COMPLETED&direction=OUTGOING"
+                    + "&config=voxeo&dateFrom=2020-01-01T00:00:00.000Z"))
+        .andExpect(status().is(HttpStatus.OK.value()));
+
+    // Then
+    ArgumentCaptor<CallFilter> filterCaptor = ArgumentCaptor.forClass(CallFilter.class);
+    verify(callService, times(1)).exportCalls(filterCaptor.capture(), any(OutputStream.class));
+    CallFilter filter = filterCaptor.getValue();
+    assertThat(
+        filter.getStatuses(),
+        equalTo((Set<CallStatus>) EnumSet.of(CallStatus.FAILED, CallStatus.COMPLETED)));
+    assertThat(filter.getDirection(), equalTo(CallDirection.OUTGOING));
+    assertThat(filter.getConfig(), equalTo(Constants.CONFIG_VOXEO));
+    assertNotNull(filter.getDateFrom());
+    assertNull(filter.getDateTo());
+  }
+
+  @Test
+  public void shouldExportAllCallsInFirstSetOfFormerExport() throws Exception {
+    // When we make export call data request of a client of the export in sets
+    mockMvc
+        .perform(customGet("/callflows/calls/export-details?set=1"))
         .andExpect(status().is(HttpStatus.OK.value()));
 
-    verify(callService, times(1)).retrieveCount();
-    verify(callService, times(1)).findAll(1, 10000);
-    verify(callUtil, times(1)).generateReports(anyString(), anyListOf(Call.class));
+    // Then all the calls are exported
+    ArgumentCaptor<CallFilter> filterCaptor = ArgumentCaptor.forClass(CallFilter.class);
+    verify(callService, times(1)).exportCalls(filterCaptor.capture(), any(OutputStream.class));
+    assertNull(filterCaptor.getValue().getStatuses());
+  }
+
+  @Test
+  public void shouldExportNothingInNextSetsOfFormerExport() throws Exception {
+    // When a client of the export in sets asks for the second set
+    mockMvc
+        .perform(customGet("/callflows/calls/export-details?set=2"))
+        .andExpect(status().is(HttpStatus.OK.value()))
+        .andExpect(content().string(""));
+
+    // Then no calls are exported, so the client stops asking
+    verify(callService, never()).exportCalls(any(CallFilter.class), any(OutputStream.class));
+  }
+
+  @Test
+  public void shouldReturnBadRequestForInvalidExportDate() throws Exception {
+    mockMvc
+        .perform(customGet("/callflows/calls/export-details?dateTo=yesterday"))
+        .andExpect(status().is(HttpStatus.BAD_REQUEST.value()));
+
+    verify(callService, never()).exportCalls(any(CallFilter.class), any(OutputStream.class));
   }
 
   @Test
@@ -936,16 +1100,6 @@ public class CallControllerTest extends BaseTest {
         .makeCall(eq(Constants.CONFIG_VOXEO), eq(Constants.CALLFLOW_MAIN), eq(additionalParams));
   }
 
-  private Call setUpCall() {
-    Call call = new Call();
-    call.setId(1);
-    call.setActorId("10");
-    call.setCallId("91882-92882-1882-9383ss-28292");
-    call.setDirection(CallDirection.OUTGOING);
-
-    return call;
-  }
-
   private void assertContext(VelocityContext context, Call call, String nextURL) {
     assertNotNull(context);
     assertTrue(context.containsKey("internal"));
@@ -1036,4 +1190,10 @@ public class CallControllerTest extends BaseTest {
         .header("Host", LOCALHOST)
         .contextPath(CONTEXT_PATH);
   }
+
+  private Call createCall(int id) {
+    Call call = CallHelper.createOutboundCall();
+    call.setId(id);
+    return call;
+  }
 }
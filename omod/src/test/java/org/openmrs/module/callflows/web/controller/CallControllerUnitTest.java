@@ -26,6 +26,7 @@ import org.openmrs.module.callflows.api.domain.CallFlow;
 import org.openmrs.module.callflows.api.domain.Config;
 import org.openmrs.module.callflows.api.domain.flow.Flow;
 import org.openmrs.module.callflows.api.domain.flow.Node;
+import org.openmrs.module.callflows.api.metrics.CallFlowMetrics;
 import org.openmrs.module.callflows.api.service.CallFlowService;
 import org.openmrs.module.callflows.api.service.CallService;
 import org.openmrs.module.callflows.api.service.ConfigService;
@@ -63,6 +64,9 @@ public class CallControllerUnitTest extends BaseTest {
   @InjectMocks
   private CallUtil callUtil = new CallUtil();
 
+  @Spy
+  private CallFlowMetrics metrics = new CallFlowMetrics();
+
   @InjectMocks
   private CallController testCallController = new CallController();
 
@@ -17,10 +17,14 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.openmrs.module.callflows.BaseTest;
 import org.openmrs.module.callflows.Constants;
+import org.openmrs.module.callflows.api.builder.CallFlowSummaryResponseBuilder;
 import org.openmrs.module.callflows.api.contract.CallFlowRequest;
 import org.openmrs.module.callflows.api.contract.CallFlowResponse;
+import org.openmrs.module.callflows.api.contract.CallFlowSummaryResponse;
 import org.openmrs.module.callflows.api.contract.SearchResponse;
 import org.openmrs.module.callflows.api.domain.CallFlow;
+import org.openmrs.module.callflows.api.domain.CallFlowSummary;
+import org.openmrs.module.callflows.api.domain.types.CallFlowStatus;
 import org.openmrs.module.callflows.api.exception.CallFlowAlreadyExistsException;
 import org.openmrs.module.callflows.api.helper.CallFlowContractHelper;
 import org.openmrs.module.callflows.api.helper.CallFlowHelper;
@@ -207,6 +211,41 @@ public class CallFlowControllerTest extends BaseTest {
 
     }
 
+    @Test
+    public void shouldReturnPageOfCallFlowSummaries() throws Exception {
+        // Given three flows found when a page of two flows is searched
+        List<CallFlowSummary> summaries = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            CallFlowSummary summary = new CallFlowSummary();
+            summary.setId(i);
+            summary.setName("MainFlow" + i);
+            summary.setStatus(CallFlowStatus.DRAFT);
+            summary.setNodeCount(2);
+            summaries.add(summary);
+        }
+        given(callFlowService.findSummariesByNamePrefix(Constants.CALLFLOW_MAIN_PREFIX, 0, 3)).willReturn(summaries);
+
+        List<CallFlowSummaryResponse> responses = new ArrayList<>();
+        responses.add(CallFlowSummaryResponseBuilder.createFrom(summaries.get(0)));
+        responses.add(CallFlowSummaryResponseBuilder.createFrom(summaries.get(1)));
+        SearchResponse<CallFlowSummaryResponse> expected = new SearchResponse<>(responses);
+        expected.setMore(true);
+
+        // When we search for a page of two flows , Then
+        mockMvc.perform(get("/callflows/flows/summaries")
+                .param("term", Constants.CALLFLOW_MAIN_PREFIX)
+                .param("limit", "2"))
+                .andExpect(status().is(HttpStatus.OK.value()))
+                .andExpect(content().contentType(Constants.APPLICATION_JSON_UTF8))
+                .andExpect(content().string(json(expected)));
+    }
+
+    @Test
+    public void shouldReturnStatusBadRequestForTooLargeSummaryPage() throws Exception {
+        mockMvc.perform(get("/callflows/flows/summaries").param("limit", "501"))
+                .andExpect(status().is(HttpStatus.BAD_REQUEST.value()));
+    }
+
     @Test
     public void shouldReturnStatusOKForSuccessfulDelete() throws Exception {
         // Given a valid flow by name mainFlow
@@ -0,0 +1,238 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.web.load;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.Module;
+import org.openmrs.module.ModuleFactory;
+import org.openmrs.module.callflows.api.domain.Call;
+import org.openmrs.module.callflows.api.domain.CallFlow;
+import org.openmrs.module.callflows.api.domain.Config;
+import org.openmrs.module.callflows.api.domain.Constants;
+import org.openmrs.module.callflows.api.domain.Renderer;
+import org.openmrs.module.callflows.api.domain.types.CallStatus;
+import org.openmrs.module.callflows.api.evaluation.EvaluationCommand;
+import org.openmrs.module.callflows.api.helper.CallFlowHelper;
+import org.openmrs.module.callflows.api.helper.ConfigHelper;
+import org.openmrs.module.callflows.api.helper.RendererHelper;
+import org.openmrs.module.callflows.api.service.CallFlowService;
+import org.openmrs.module.callflows.api.service.CallService;
+import org.openmrs.module.callflows.api.service.ConfigService;
+import org.openmrs.module.callflows.api.service.impl.CallServiceImpl;
+import org.openmrs.module.callflows.api.util.OutboundHttpClientPool;
+import org.openmrs.module.callflows.api.util.TestUtil;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.test.context.transaction.TestTransaction;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Load test of the module against the embedded database: N concurrent callers place outbound calls
+ * one after the other, each call is answered by the {@link IvrProviderSimulator} which drives it
+ * through the main flow. Prints the throughput and the latency percentiles of every endpoint.
+ *
+ * <p>Not part of the regular build, run it alone with eg: <code>
+ * mvn test -pl omod -Dtest=CallLoadHarness -DfailIfNoTests=false -Dcallflows.load.callers=50
+ * </code> The callers, the calls per caller, the think time and the scripted DTMF inputs are set
+ * with the <code>callflows.load.*</code> system properties below. The fixtures are committed so that
+ * the callers can see them, all the data is deleted once the run ends.
+ */
+@WebAppConfiguration
+public class CallLoadHarness extends BaseModuleWebContextSensitiveTest {
+
+  private static final Log LOGGER = LogFactory.getLog(CallLoadHarness.class);
+
+  private static final int CALLERS = Integer.getInteger("callflows.load.callers", 10);
+
+  private static final int CALLS_PER_CALLER =
+      Integer.getInteger("callflows.load.callsPerCaller", 20);
+
+  private static final long THINK_MILLIS = Long.getLong("callflows.load.thinkMillis", 200L);
+
+  private static final long DIALOG_TIMEOUT_MILLIS =
+      Long.getLong("callflows.load.timeoutMillis", 60000L);
+
+  private static final List<String> INPUTS =
+      Arrays.asList(System.getProperty("callflows.load.inputs", "1").split(","));
+
+  @Autowired private ConfigService configService;
+
+  @Autowired private CallFlowService callFlowService;
+
+  @Autowired private CallService callService;
+
+  @Autowired
+  @Qualifier("callflows.baseEvaluationCommand")
+  private EvaluationCommand evaluationCommand;
+
+  @Autowired
+  @Qualifier("callflows.outboundHttpClientPool")
+  private OutboundHttpClientPool httpClientPool;
+
+  @Autowired private WebApplicationContext webApplicationContext;
+
+  private Config config;
+
+  private CallFlow mainFlow;
+
+  private LoadReport report;
+
+  private IvrProviderSimulator simulator;
+
+  @Before
+  public void setUp() throws Exception {
+    // the simulated provider takes the place of the real one for a configuration without limit
+    config = ConfigHelper.createConfigs().get(0);
+    config.setOutgoingCallUriTemplate(IvrProviderSimulator.OUTBOUND_URI_TEMPLATE);
+    config.setOutgoingCallMethod("GET");
+    config.setTestUsersMap(new HashMap<String, String>());
+    config.setOutboundCallLimit(0);
+    config.setOutboundCallRetryAttempts(0);
+    configService.updateConfigs(Collections.singletonList(config));
+
+    List<Renderer> renderers = RendererHelper.createRenderers();
+    renderers.remove(1);
+    configService.updateRenderers(renderers);
+
+    mainFlow = CallFlowHelper.createMainFlow();
+    mainFlow.setRaw(TestUtil.loadFile("main_flow.json"));
+    callFlowService.create(mainFlow);
+
+    Context.getAdministrationService()
+        .saveGlobalProperty(
+            new GlobalProperty(
+                Constants.CALLFLOW_ENDED_STATUSES_GP_KEY, Constants.CALLFLOW_ENDED_STATUSES));
+
+    Module module = new Module("callflows");
+    module.setModuleId("callflows");
+    Method m = ModuleFactory.class.getDeclaredMethod("getDaemonToken", Module.class);
+    m.setAccessible(true);
+    evaluationCommand.setDaemonToken((DaemonToken) m.invoke(null, module));
+
+    report = new LoadReport();
+    simulator =
+        new IvrProviderSimulator(
+            MockMvcBuilders.webAppContextSetup(webApplicationContext).build(),
+            config.getName(),
+            INPUTS,
+            THINK_MILLIS,
+            report);
+    callServiceImpl().setHttpClientPool(simulator.getHttpClientPool());
+
+    // the callers and the simulator use their own sessions and transactions
+    TestTransaction.flagForCommit();
+    TestTransaction.end();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    simulator.close();
+    callServiceImpl().setHttpClientPool(httpClientPool);
+    configService.updateConfigs(new ArrayList<Config>());
+    deleteAllData();
+  }
+
+  @Test
+  public void shouldCarryConcurrentCalls() throws Exception {
+    ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+    try {
+      report.start();
+      List<Future<Void>> results = new ArrayList<>(CALLERS);
+      for (int caller = 0; caller < CALLERS; caller++) {
+        final int callerIndex = caller;
+        results.add(callers.submit(() -> placeCalls(callerIndex)));
+      }
+      for (Future<Void> result : results) {
+        result.get();
+      }
+      report.stop();
+    } finally {
+      callers.shutdownNow();
+    }
+
+    LOGGER.info(
+        String.format(
+            "%d callers x %d calls, think time %d ms, inputs %s%n%s",
+            CALLERS, CALLS_PER_CALLER, THINK_MILLIS, INPUTS, report.format()));
+    assertThat(report.getFailedCalls(), is(0L));
+    assertThat(report.getCompletedCalls(), is((long) CALLERS * CALLS_PER_CALLER));
+  }
+
+  private Void placeCalls(int caller) throws InterruptedException {
+    Context.openSession();
+    try {
+      authenticate();
+      for (int i = 0; i < CALLS_PER_CALLER; i++) {
+        Map<String, Object> params = new HashMap<>();
+        params.put(Constants.PARAM_PHONE, String.format("%010d", caller * CALLS_PER_CALLER + i));
+
+        long start = System.nanoTime();
+        Call call = callService.makeCall(config.getName(), mainFlow.getName(), params);
+        boolean placed = call != null && call.getStatus() != CallStatus.FAILED;
+        report.recordRequest("outbound", System.nanoTime() - start, placed);
+
+        // the dialog records its own outcome, only the calls never placed are counted here
+        if (!placed) {
+          report.recordCall(false);
+        } else {
+          simulator.awaitDialog(call.getCallId(), DIALOG_TIMEOUT_MILLIS);
+        }
+        Context.clearSession();
+      }
+      return null;
+    } finally {
+      Context.closeSession();
+    }
+  }
+
+  private CallServiceImpl callServiceImpl() {
+    return (CallServiceImpl) unwrapProxy(unwrapProxy(callService));
+  }
+
+  private static <T> T unwrapProxy(T bean) {
+    try {
+      T result = bean;
+      if (AopUtils.isAopProxy(bean) && bean instanceof Advised) {
+        Advised advised = (Advised) bean;
+        result = (T) advised.getTargetSource().getTarget();
+      }
+      return result;
+    } catch (Exception e) {
+      throw new RuntimeException("Could not unwrap proxy!", e);
+    }
+  }
+}
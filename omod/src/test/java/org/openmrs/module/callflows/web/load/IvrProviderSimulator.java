@@ -0,0 +1,303 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.web.load;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.callflows.api.domain.Config;
+import org.openmrs.module.callflows.api.domain.types.CallStatus;
+import org.openmrs.module.callflows.api.util.OutboundHttpClientPool;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * A local stand-in of an IVR provider. It receives the outbound requests of the module instead of
+ * the provider, then calls back the module the way the provider does: it fetches the entry VXML of
+ * the flow, answers every prompt with the scripted DTMF inputs after a think time, follows the
+ * submit URL of every page until the flow ends and posts the status updates of the call.
+ */
+public class IvrProviderSimulator implements Closeable {
+
+  /** Outbound call URI template to set in the configuration driven by the simulator */
+  public static final String OUTBOUND_URI_TEMPLATE =
+      "http://ivr-simulator/dial?callId=[internal.callId]&flow=[internal.jumpTo]&phone=[phone]";
+
+  private static final Log LOGGER = LogFactory.getLog(IvrProviderSimulator.class);
+
+  private static final Pattern SUBMIT_URL = Pattern.compile("<submit\\s+next=\"([^\"]+)\"");
+
+  private static final String MODULE_PATH = "/callflows/";
+
+  private static final String EXTENSION = "vxml";
+
+  private static final String ERROR_RESPONSE = "error";
+
+  private static final int MAX_STEPS = 50;
+
+  private final MockMvc mockMvc;
+
+  private final String configName;
+
+  private final List<String> inputs;
+
+  private final long thinkMillis;
+
+  private final LoadReport report;
+
+  private final ExecutorService callers =
+      Executors.newCachedThreadPool(
+          new ThreadFactoryBuilder().setNameFormat("ivr-simulator-%d").setDaemon(true).build());
+
+  private final ConcurrentMap<String, CompletableFuture<Boolean>> dialogs =
+      new ConcurrentHashMap<>();
+
+  private final CloseableHttpClient httpClient = new SimulatedHttpClient();
+
+  /**
+   * Creates a simulator
+   *
+   * @param mockMvc the web context of the module to call back
+   * @param configName the IVR configuration used in the callback URLs
+   * @param inputs the DTMF inputs sent to the successive prompts of a call, the last one is
+   *     repeated if the flow asks for more
+   * @param thinkMillis the time the callers take to answer a prompt
+   * @param report collects the requests made to the module and the outcome of the calls
+   */
+  public IvrProviderSimulator(
+      MockMvc mockMvc,
+      String configName,
+      List<String> inputs,
+      long thinkMillis,
+      LoadReport report) {
+    this.mockMvc = mockMvc;
+    this.configName = configName;
+    this.inputs = inputs;
+    this.thinkMillis = thinkMillis;
+    this.report = report;
+  }
+
+  /**
+   * Gets a client pool handing out the simulated provider instead of real connections
+   *
+   * @return the client pool to set in the call service
+   */
+  public OutboundHttpClientPool getHttpClientPool() {
+    return new OutboundHttpClientPool() {
+      @Override
+      public CloseableHttpClient getClient(Config config) {
+        return httpClient;
+      }
+    };
+  }
+
+  /**
+   * Waits until the simulated dialog of a call ends
+   *
+   * @param callId of the call
+   * @param timeoutMillis the longest time to wait
+   * @return true if the call went through the whole flow, false if it failed or timed out
+   */
+  public boolean awaitDialog(String callId, long timeoutMillis) throws InterruptedException {
+    try {
+      return dialogOf(callId).get(timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException | TimeoutException e) {
+      LOGGER.warn(
+          String.format("Dialog of call %s did not end in %d ms", callId, timeoutMillis), e);
+      return false;
+    } finally {
+      dialogs.remove(callId);
+    }
+  }
+
+  @Override
+  public void close() {
+    callers.shutdownNow();
+  }
+
+  private CompletableFuture<Boolean> dialogOf(String callId) {
+    return dialogs.computeIfAbsent(callId, key -> new CompletableFuture<>());
+  }
+
+  private boolean dial(String callId, String flowName) {
+    Context.openSession();
+    try {
+      boolean success = updateStatus(callId, CallStatus.IN_PROGRESS, "dialog start");
+      String content =
+          success
+              ? request(
+                  "in",
+                  get(MODULE_PATH + "in/" + configName + "/flows/" + flowName + "." + EXTENSION)
+                      .param("callId", callId))
+              : null;
+      for (int step = 0; content != null && step < MAX_STEPS; step++) {
+        String next = nextPath(content);
+        if (next == null) {
+          break;
+        }
+        Thread.sleep(thinkMillis);
+        String input = inputs.get(Math.min(step, inputs.size() - 1));
+        content = request("calls", get(next).param("input", input));
+      }
+      success = content != null;
+      success &=
+          updateStatus(
+              callId,
+              success ? CallStatus.COMPLETED : CallStatus.FAILED,
+              success ? "dialog end" : "dialog error");
+      report.recordCall(success);
+      return success;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      report.recordCall(false);
+      return false;
+    } finally {
+      Context.closeSession();
+    }
+  }
+
+  private boolean updateStatus(String callId, CallStatus status, String reason) {
+    String response =
+        request(
+            "status",
+            get(MODULE_PATH + "status/" + callId)
+                .param("status", status.name())
+                .param("reason", reason));
+    return response != null && !ERROR_RESPONSE.equals(response);
+  }
+
+  private String request(String endpoint, MockHttpServletRequestBuilder request) {
+    long start = System.nanoTime();
+    boolean success = false;
+    try {
+      MockHttpServletResponse response = mockMvc.perform(request).andReturn().getResponse();
+      success = response.getStatus() == HttpStatus.SC_OK;
+      return success ? response.getContentAsString() : null;
+    } catch (Exception e) {
+      LOGGER.warn(String.format("Request to the %s endpoint failed", endpoint), e);
+      return null;
+    } finally {
+      report.recordRequest(endpoint, System.nanoTime() - start, success);
+    }
+  }
+
+  private String nextPath(String content) {
+    Matcher matcher = SUBMIT_URL.matcher(content);
+    if (!matcher.find()) {
+      return null;
+    }
+    // the continuation URL is absolute, only the path from the module mapping is dispatched
+    String url = matcher.group(1);
+    int index = url.indexOf(MODULE_PATH);
+    return index < 0 ? null : url.substring(index);
+  }
+
+  private static CloseableHttpResponse response(int status, String body) {
+    SimulatedResponse response = new SimulatedResponse(status);
+    response.setEntity(new StringEntity(body, StandardCharsets.UTF_8));
+    return response;
+  }
+
+  /** Accepts every outbound call and starts its dialog, like a provider dialing the phone */
+  private final class SimulatedHttpClient extends CloseableHttpClient {
+
+    @Override
+    protected CloseableHttpResponse doExecute(
+        HttpHost target, HttpRequest request, HttpContext context) {
+      Map<String, String> params = new HashMap<>();
+      for (NameValuePair param :
+          URLEncodedUtils.parse(
+              URI.create(request.getRequestLine().getUri()), StandardCharsets.UTF_8.name())) {
+        params.put(param.getName(), param.getValue());
+      }
+      String callId = params.get("callId");
+      if (callId == null) {
+        return response(HttpStatus.SC_BAD_REQUEST, "Missing callId");
+      }
+      CompletableFuture<Boolean> dialog = dialogOf(callId);
+      callers.execute(
+          () -> {
+            try {
+              dialog.complete(dial(callId, params.get("flow")));
+            } catch (RuntimeException e) {
+              report.recordCall(false);
+              dialog.completeExceptionally(e);
+            }
+          });
+      return response(HttpStatus.SC_OK, "OK");
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public HttpParams getParams() {
+      return new BasicHttpParams();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public ClientConnectionManager getConnectionManager() {
+      return null;
+    }
+
+    @Override
+    public void close() {
+      // nothing to release
+    }
+  }
+
+  private static final class SimulatedResponse extends BasicHttpResponse
+      implements CloseableHttpResponse {
+
+    SimulatedResponse(int status) {
+      super(HttpVersion.HTTP_1_1, status, null);
+    }
+
+    @Override
+    public void close() {
+      // nothing to release
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ * <p>
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+
+package org.openmrs.module.callflows.web.load;
+
+import org.openmrs.module.callflows.api.metrics.LatencyHistogram;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput and latency percentiles of a load test run, per endpoint of the module as seen by the
+ * simulated IVR provider
+ */
+public class LoadReport {
+
+  private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final Map<String, LatencyHistogram> latencies = new ConcurrentSkipListMap<>();
+
+  private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+  private final LongAdder completedCalls = new LongAdder();
+
+  private final LongAdder failedCalls = new LongAdder();
+
+  private volatile long startNanos;
+
+  private volatile long stopNanos;
+
+  /** Marks the start of the run */
+  public void start() {
+    startNanos = System.nanoTime();
+  }
+
+  /** Marks the end of the run */
+  public void stop() {
+    stopNanos = System.nanoTime();
+  }
+
+  /**
+   * Records a request made to the module
+   *
+   * @param endpoint the label of the endpoint, eg: in, calls, status
+   * @param nanos the time the request took
+   * @param success false if the request failed or returned an unexpected status
+   */
+  public void recordRequest(String endpoint, long nanos, boolean success) {
+    latencies.computeIfAbsent(endpoint, key -> new LatencyHistogram()).record(nanos);
+    if (!success) {
+      errors.computeIfAbsent(endpoint, key -> new LongAdder()).increment();
+    }
+  }
+
+  /**
+   * Records the end of a call
+   *
+   * @param success true if the call went through the whole flow
+   */
+  public void recordCall(boolean success) {
+    if (success) {
+      completedCalls.increment();
+    } else {
+      failedCalls.increment();
+    }
+  }
+
+  public long getCompletedCalls() {
+    return completedCalls.sum();
+  }
+
+  public long getFailedCalls() {
+    return failedCalls.sum();
+  }
+
+  /**
+   * Formats the report as a table, one line per endpoint
+   *
+   * @return the report text
+   */
+  public String format() {
+    double seconds = Math.max(stopNanos - startNanos, 1) / NANOS_PER_SECOND;
+    StringBuilder report = new StringBuilder();
+    report.append(
+        String.format(
+            "calls: %d completed, %d failed in %.1f s (%.1f calls/s)%n",
+            getCompletedCalls(),
+            getFailedCalls(),
+            seconds,
+            (getCompletedCalls() + getFailedCalls()) / seconds));
+    report.append(
+        String.format(
+            "%-10s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+            "endpoint",
+            "requests",
+            "errors",
+            "req/s",
+            "mean ms",
+            "p50 ms",
+            "p90 ms",
+            "p99 ms",
+            "max ms"));
+    for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+      LatencyHistogram histogram = entry.getValue();
+      LongAdder endpointErrors = errors.get(entry.getKey());
+      long count = histogram.getCount();
+      report.append(
+          String.format(
+              "%-10s %10d %8d %10.1f %9.1f %9.0f %9.0f %9.0f %9.1f%n",
+              entry.getKey(),
+              count,
+              endpointErrors == null ? 0 : endpointErrors.sum(),
+              count / seconds,
+              count == 0 ? 0 : histogram.getSumNanos() / NANOS_PER_MILLI / count,
+              histogram.getPercentileMillis(50),
+              histogram.getPercentileMillis(90),
+              histogram.getPercentileMillis(99),
+              histogram.getMaxNanos() / NANOS_PER_MILLI));
+    }
+    return report.toString();
+  }
+}
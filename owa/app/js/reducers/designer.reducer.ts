@@ -13,6 +13,7 @@ import { IFlowTestResponse } from '../shared/model/flow-test-response.model';
 import { IFlowTestResponseBody } from '../shared/model/flow-test-response-body.model';
 import { IContinueFieldProps } from '../shared/model/continue-field-props.model';
 import { NodeUI, toModel, getNewUserNode, getNewSystemNode, toUI } from '../shared/model/node-ui';
+import { FLOW_SUMMARIES_PAGE_SIZE } from '../constants';
 
 export const ACTION_TYPES = {
   RESET: 'designerReducer/RESET',
@@ -256,14 +257,29 @@ export const getConfigs = () => async (dispatch) => {
 };
 
 export const getFlows = (filters: any = {}) => async (dispatch) => {
-  const term = filters.flowName ? filters.flowName : '';
-  const requestUrl = `${callflowsPath}/flows?lookup=By+Name&term=${term}`;
+  const term = encodeURIComponent(filters.flowName ? filters.flowName : '');
   await dispatch({
     type: ACTION_TYPES.FETCH_FLOWS,
-    payload: axiosInstance.get(requestUrl)
+    payload: fetchFlowSummaries(term)
   });
 };
 
+// the list shows the summaries only, the raw flow is fetched when a single flow is opened
+// the pages are fetched until the last one, so no flow is left out of the list and the pickers
+const fetchFlowSummaries = async (term: string) => {
+  let results = [];
+  let startIndex = 0;
+  let more = true;
+  while (more) {
+    const requestUrl = `${callflowsPath}/flows/summaries?term=${term}&startIndex=${startIndex}&limit=${FLOW_SUMMARIES_PAGE_SIZE}`;
+    const response = await axiosInstance.get(requestUrl);
+    results = results.concat(response.data.results);
+    more = response.data.more;
+    startIndex += FLOW_SUMMARIES_PAGE_SIZE;
+  }
+  return { data: { results } };
+};
+
 export const getFlow = (flowName: string) => async (dispatch) => {
   //currently there is no endpoint for fetching one instance
   const requestUrl = `${callflowsPath}/flows?lookup=By+Name&term=${flowName}`;
@@ -5,6 +5,8 @@ export interface IFlow {
   raw?: any;
   status?: FlowStatus;
   description?: string | null;
+  nodeCount?: number | null;
+  lastModified?: string | null;
 }
 
 export const defaultValue: Readonly<IFlow> = {